@@ -0,0 +1,30 @@
+package com.examples.streaming_platform.recommendation.benchmark;
+
+import com.examples.streaming_platform.recommendation.engine.TopKSelector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Neighbourhood collaborative filtering on the resident interaction matrix, the path
+ * {@code CollaborativeFilteringService} takes when no factor model covers the request.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CollaborativeFilteringBenchmark {
+
+    @Benchmark
+    public TopKSelector userBased(RecommendationData data, RecommendationData.Cursor cursor) {
+        return data.collaborativeFilteringEngine.recommendForUser(
+                data.sampleUserIds[cursor.next()], RecommendationData.LIMIT, 50, 0.1f);
+    }
+
+    @Benchmark
+    public TopKSelector itemBased(RecommendationData data, RecommendationData.Cursor cursor) {
+        return data.collaborativeFilteringEngine.recommendSimilarItems(
+                data.sampleItemIds[cursor.next()], RecommendationData.LIMIT, 2);
+    }
+}
@@ -0,0 +1,24 @@
+package com.examples.streaming_platform.recommendation.benchmark;
+
+import com.examples.streaming_platform.recommendation.engine.TopKSelector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Genre-profile scoring against the genre bitmap index, the scoring step of
+ * {@code ContentBasedFilteringService}.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ContentBasedBenchmark {
+
+    @Benchmark
+    public TopKSelector genreProfile(RecommendationData data, RecommendationData.Cursor cursor) {
+        int sample = cursor.next();
+        return data.genreIndex.score(data.genreProfiles.get(sample), data.seenItemIds.get(sample), RecommendationData.LIMIT);
+    }
+}
@@ -0,0 +1,24 @@
+package com.examples.streaming_platform.recommendation.benchmark;
+
+import com.examples.streaming_platform.recommendation.engine.TopKSelector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scoring a user's factor vector against every item, as {@code MatrixFactorizationService} does
+ * for each personalized request.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MatrixFactorizationBenchmark {
+
+    @Benchmark
+    public TopKSelector recommend(RecommendationData data, RecommendationData.Cursor cursor) {
+        int sample = cursor.next();
+        return data.factorModel.recommend(data.sampleUsers[sample], RecommendationData.LIMIT, data.seenItems[sample]);
+    }
+}
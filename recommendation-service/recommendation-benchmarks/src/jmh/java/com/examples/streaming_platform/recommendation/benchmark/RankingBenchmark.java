@@ -0,0 +1,48 @@
+package com.examples.streaming_platform.recommendation.benchmark;
+
+import com.examples.streaming_platform.recommendation.dto.RecommendationDTO;
+import com.examples.streaming_platform.recommendation.ranking.CandidateFilter;
+import com.examples.streaming_platform.recommendation.ranking.RankedList;
+import com.examples.streaming_platform.recommendation.ranking.ScoreBlender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ranking stages of {@code RecommendationService} on candidate lists precomputed by the
+ * real generators: the hybrid merge, and the dedup/limit step that filters seen items, fills
+ * the list from trending candidates and converts it to DTOs.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RankingBenchmark {
+
+    @Benchmark
+    public RankedList hybridMerge(RecommendationData data, RecommendationData.Cursor cursor) {
+        int sample = cursor.next();
+        ScoreBlender blender = blend(data, sample);
+        return blender.top(RecommendationData.LIMIT, CandidateFilter.ACCEPT_ALL);
+    }
+
+    @Benchmark
+    public List<RecommendationDTO> dedupAndLimit(RecommendationData data, RecommendationData.Cursor cursor) {
+        int sample = cursor.next();
+        ScoreBlender blender = blend(data, sample);
+        CandidateFilter unseen = CandidateFilter.excluding(data.seenItemIds.get(sample), data.dictionaries.items());
+        RankedList ranked = blender.top(RecommendationData.LIMIT, unseen);
+        ranked.fill(data.trendingCandidates, unseen);
+        return ranked.toRecommendations(data.dictionaries.items());
+    }
+
+    private static ScoreBlender blend(RecommendationData data, int sample) {
+        ScoreBlender blender = new ScoreBlender(ScoreBlender.Mode.SUM,
+                "hybrid", "Recommended based on your preferences", 2 * RecommendationData.LIMIT);
+        blender.add(data.collaborativeCandidates[sample], 0.6f);
+        blender.add(data.contentCandidates[sample], 0.4f);
+        return blender;
+    }
+}
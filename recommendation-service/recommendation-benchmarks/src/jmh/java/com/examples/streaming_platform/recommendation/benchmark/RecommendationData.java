@@ -0,0 +1,212 @@
+package com.examples.streaming_platform.recommendation.benchmark;
+
+import com.examples.streaming_platform.recommendation.engine.AlsTrainer;
+import com.examples.streaming_platform.recommendation.engine.CollaborativeFilteringEngine;
+import com.examples.streaming_platform.recommendation.engine.FactorModel;
+import com.examples.streaming_platform.recommendation.engine.GenreIndex;
+import com.examples.streaming_platform.recommendation.engine.IdDictionaries;
+import com.examples.streaming_platform.recommendation.engine.IdDictionary;
+import com.examples.streaming_platform.recommendation.engine.InteractionLog;
+import com.examples.streaming_platform.recommendation.engine.TopKSelector;
+import com.examples.streaming_platform.recommendation.engine.TrendingEngine;
+import com.examples.streaming_platform.recommendation.event.InteractionRecordedEvent;
+import com.examples.streaming_platform.recommendation.ranking.Candidates;
+import com.examples.streaming_platform.recommendation.sharding.ShardMembership;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Shared benchmark fixture: a synthetic dataset loaded into an in-memory H2 database, and the
+ * production engines built from it through their own load paths. Sample users are drawn once,
+ * with their profiles and candidate lists, so each benchmark only measures its own stage.
+ */
+@State(Scope.Benchmark)
+public class RecommendationData {
+
+    /** Number of precomputed sample users the benchmarks cycle through. */
+    public static final int SAMPLES = 1024;
+
+    /** Recommendations requested per call, the API default. */
+    public static final int LIMIT = 10;
+
+    @Param("10000")
+    public int users;
+
+    @Param("5000")
+    public int items;
+
+    @Param("20")
+    public int interactionsPerUser;
+
+    @Param("1.0")
+    public double skew;
+
+    @Param("30")
+    public int genres;
+
+    @Param("42")
+    public long seed;
+
+    public SyntheticInteractions dataset;
+    public IdDictionaries dictionaries;
+    public CollaborativeFilteringEngine collaborativeFilteringEngine;
+    public GenreIndex genreIndex;
+    public TrendingEngine trendingEngine;
+    public FactorModel factorModel;
+
+    public String[] sampleUserIds;
+    public String[] sampleItemIds;
+    public int[] sampleUsers;
+    public List<List<String>> seenItemIds;
+    public int[][] seenItems;
+    public List<Map<String, Integer>> genreProfiles;
+    public Candidates[] collaborativeCandidates;
+    public Candidates[] contentCandidates;
+    public Candidates trendingCandidates;
+
+    private AnnotationConfigApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataset = SyntheticInteractions.generate(users, items, interactionsPerUser, skew, genres, seed);
+
+        context = new AnnotationConfigApplicationContext();
+        // Every trial starts from empty dictionaries rather than a previous run's files
+        context.getEnvironment().getPropertySources().addFirst(
+                new MapPropertySource("benchmark", Map.of("recommendation.dictionary.persist", false)));
+        context.register(InMemoryDataSource.class, IdDictionaries.class, ShardMembership.class, InteractionLog.class,
+                CollaborativeFilteringEngine.class, GenreIndex.class, TrendingEngine.class);
+        context.refresh();
+        dataset.writeTo(context.getBean(JdbcTemplate.class));
+
+        dictionaries = context.getBean(IdDictionaries.class);
+        collaborativeFilteringEngine = context.getBean(CollaborativeFilteringEngine.class);
+        collaborativeFilteringEngine.refresh();
+        genreIndex = context.getBean(GenreIndex.class);
+        genreIndex.build();
+        trendingEngine = context.getBean(TrendingEngine.class);
+        trendingEngine.onInteractionRecorded(
+                new InteractionRecordedEvent(dataset.interactions(0, dataset.numInteractions())));
+
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            factorModel = new AlsTrainer(32, 5, 0.05f, 10f, pool)
+                    .train(collaborativeFilteringEngine.getMatrix(), seed);
+        } finally {
+            pool.shutdown();
+        }
+
+        IdDictionary userDictionary = dictionaries.users();
+        IdDictionary itemDictionary = dictionaries.items();
+        Random random = new Random(seed);
+        sampleUserIds = new String[SAMPLES];
+        sampleItemIds = new String[SAMPLES];
+        sampleUsers = new int[SAMPLES];
+        seenItemIds = new ArrayList<>(SAMPLES);
+        seenItems = new int[SAMPLES][];
+        genreProfiles = new ArrayList<>(SAMPLES);
+        collaborativeCandidates = new Candidates[SAMPLES];
+        contentCandidates = new Candidates[SAMPLES];
+        trendingCandidates = trendingCandidates(trendingEngine.top());
+
+        for (int sample = 0; sample < SAMPLES; sample++) {
+            int user = random.nextInt(users);
+            sampleUserIds[sample] = SyntheticInteractions.userId(user);
+            sampleUsers[sample] = userDictionary.indexOf(sampleUserIds[sample]);
+            List<String> seen = dataset.seenItemIds(user);
+            seenItemIds.add(seen);
+            seenItems[sample] = seen.stream().mapToInt(itemDictionary::indexOf).sorted().toArray();
+            sampleItemIds[sample] = seen.get(random.nextInt(seen.size()));
+            genreProfiles.add(dataset.genreProfile(user));
+
+            // The candidate lists the generators hand to the ranking stages for this user
+            collaborativeCandidates[sample] = Candidates.of(collaborativeFilteringEngine.recommendForUser(
+                    sampleUserIds[sample], LIMIT, 50, 0.1f), "collaborative-filtering", "Users like you");
+            contentCandidates[sample] = Candidates.of(genreIndex.score(
+                    genreProfiles.get(sample), seenItemIds.get(sample), LIMIT), "content-based", "Similar genres");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    private static Candidates trendingCandidates(TrendingEngine.Snapshot snapshot) {
+        TopKSelector selector = new TopKSelector(Math.max(1, snapshot.size()));
+        for (int rank = 0; rank < snapshot.size(); rank++) {
+            selector.offer(snapshot.item(rank), 1f - (float) rank / snapshot.size());
+        }
+        selector.sortDescending();
+        return Candidates.of(selector, "trending", "Trending this week");
+    }
+
+    /**
+     * Per-thread position in the sample users, so threads don't contend on a shared counter.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        public int next() {
+            int sample = next;
+            next = (next + 1) & (SAMPLES - 1);
+            return sample;
+        }
+    }
+
+    /**
+     * In-memory database holding the tables the engines load from, with their own defaults for
+     * every {@code @Value} setting.
+     */
+    @Configuration
+    static class InMemoryDataSource {
+
+        @Bean
+        static PropertySourcesPlaceholderConfigurer propertySourcesPlaceholderConfigurer() {
+            return new PropertySourcesPlaceholderConfigurer();
+        }
+
+        @Bean(destroyMethod = "destroy")
+        SingleConnectionDataSource dataSource() {
+            SingleConnectionDataSource dataSource = new SingleConnectionDataSource(
+                    "jdbc:h2:mem:benchmarks;MODE=PostgreSQL;NON_KEYWORDS=VALUE", "sa", "", true);
+            // The benchmark jar keeps only one java.sql.Driver service file, so name the driver
+            dataSource.setDriverClassName("org.h2.Driver");
+            new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+            return dataSource;
+        }
+
+        @Bean
+        JdbcTemplate jdbcTemplate(DataSource dataSource) {
+            return new JdbcTemplate(dataSource);
+        }
+
+        @Bean
+        PlatformTransactionManager transactionManager(DataSource dataSource) {
+            return new DataSourceTransactionManager(dataSource);
+        }
+    }
+}
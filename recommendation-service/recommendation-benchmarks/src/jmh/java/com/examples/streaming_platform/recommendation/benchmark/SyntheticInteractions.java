@@ -0,0 +1,268 @@
+package com.examples.streaming_platform.recommendation.benchmark;
+
+import com.examples.streaming_platform.recommendation.model.UserInteraction;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic catalogue and interaction history. Item popularity and genre popularity
+ * both follow a Zipf distribution, so a few items collect most interactions as in production
+ * traffic. The same configuration and seed always produce the same dataset.
+ */
+public final class SyntheticInteractions {
+
+    private static final UserInteraction.ItemType[] ITEM_TYPES = UserInteraction.ItemType.values();
+
+    private final int numUsers;
+    private final int numItems;
+    // Items of each user in CSR form
+    private final int[] userOffsets;
+    private final int[] userItems;
+    private final UserInteraction.InteractionType[] interactionTypes;
+    private final float[] values;
+    private final int[][] itemGenres;
+    private final String[] genreNames;
+    private final UserInteraction.ItemType[] itemTypes;
+
+    private SyntheticInteractions(int numUsers, int numItems, int[] userOffsets, int[] userItems,
+                                  UserInteraction.InteractionType[] interactionTypes, float[] values,
+                                  int[][] itemGenres, String[] genreNames, UserInteraction.ItemType[] itemTypes) {
+        this.numUsers = numUsers;
+        this.numItems = numItems;
+        this.userOffsets = userOffsets;
+        this.userItems = userItems;
+        this.interactionTypes = interactionTypes;
+        this.values = values;
+        this.itemGenres = itemGenres;
+        this.genreNames = genreNames;
+        this.itemTypes = itemTypes;
+    }
+
+    /**
+     * Generate a dataset.
+     *
+     * @param numUsers the number of users
+     * @param numItems the number of items
+     * @param interactionsPerUser the mean number of interactions per user
+     * @param skew the Zipf exponent of item popularity; 0 is uniform
+     * @param numGenres the number of genres
+     * @param seed the random seed
+     * @return the dataset
+     */
+    public static SyntheticInteractions generate(int numUsers, int numItems, int interactionsPerUser,
+                                                 double skew, int numGenres, long seed) {
+        Random random = new Random(seed);
+
+        // Popularity rank to item, so popular items are spread over the index range
+        int[] byRank = new int[numItems];
+        for (int item = 0; item < numItems; item++) {
+            byRank[item] = item;
+        }
+        for (int n = numItems - 1; n > 0; n--) {
+            int swap = random.nextInt(n + 1);
+            int item = byRank[n];
+            byRank[n] = byRank[swap];
+            byRank[swap] = item;
+        }
+        ZipfSampler itemSampler = new ZipfSampler(numItems, skew);
+        ZipfSampler genreSampler = new ZipfSampler(numGenres, 1.0);
+
+        String[] genreNames = new String[numGenres];
+        for (int genre = 0; genre < numGenres; genre++) {
+            genreNames[genre] = "genre-" + genre;
+        }
+        int[][] itemGenres = new int[numItems][];
+        UserInteraction.ItemType[] itemTypes = new UserInteraction.ItemType[numItems];
+        for (int item = 0; item < numItems; item++) {
+            int[] genres = new int[1 + random.nextInt(3)];
+            for (int n = 0; n < genres.length; n++) {
+                genres[n] = genreSampler.sample(random);
+            }
+            itemGenres[item] = Arrays.stream(genres).distinct().toArray();
+            itemTypes[item] = ITEM_TYPES[random.nextInt(ITEM_TYPES.length)];
+        }
+
+        int[] userOffsets = new int[numUsers + 1];
+        int[] userItems = new int[numUsers * interactionsPerUser * 2];
+        UserInteraction.InteractionType[] interactionTypes = new UserInteraction.InteractionType[userItems.length];
+        float[] values = new float[userItems.length];
+        int size = 0;
+        for (int user = 0; user < numUsers; user++) {
+            int count = Math.min(numItems, 1 + random.nextInt(2 * interactionsPerUser - 1));
+            int start = size;
+            while (size - start < count) {
+                int item = byRank[itemSampler.sample(random)];
+                if (contains(userItems, start, size, item)) {
+                    continue;
+                }
+                userItems[size] = item;
+                double kind = random.nextDouble();
+                if (kind < 0.6) {
+                    interactionTypes[size] = UserInteraction.InteractionType.VIEW;
+                    values[size] = 1f;
+                } else if (kind < 0.8) {
+                    interactionTypes[size] = UserInteraction.InteractionType.LIKE;
+                    values[size] = 1f;
+                } else {
+                    interactionTypes[size] = UserInteraction.InteractionType.RATING;
+                    values[size] = 1 + random.nextInt(5);
+                }
+                size++;
+            }
+            userOffsets[user + 1] = size;
+        }
+
+        return new SyntheticInteractions(numUsers, numItems, userOffsets, Arrays.copyOf(userItems, size),
+                Arrays.copyOf(interactionTypes, size), Arrays.copyOf(values, size), itemGenres, genreNames, itemTypes);
+    }
+
+    public int numUsers() {
+        return numUsers;
+    }
+
+    public int numItems() {
+        return numItems;
+    }
+
+    public int numInteractions() {
+        return userItems.length;
+    }
+
+    public static String userId(int user) {
+        return "user-" + user;
+    }
+
+    public static String itemId(int item) {
+        return "item-" + item;
+    }
+
+    /**
+     * Get the IDs of the items a user interacted with.
+     *
+     * @param user the user
+     * @return the item IDs
+     */
+    public List<String> seenItemIds(int user) {
+        List<String> seen = new ArrayList<>(userOffsets[user + 1] - userOffsets[user]);
+        for (int n = userOffsets[user]; n < userOffsets[user + 1]; n++) {
+            seen.add(itemId(userItems[n]));
+        }
+        return seen;
+    }
+
+    /**
+     * Count the genres of the items a user interacted with, as the content-based profile does.
+     *
+     * @param user the user
+     * @return the number of times each genre appears
+     */
+    public Map<String, Integer> genreProfile(int user) {
+        Map<String, Integer> profile = new HashMap<>();
+        for (int n = userOffsets[user]; n < userOffsets[user + 1]; n++) {
+            for (int genre : itemGenres[userItems[n]]) {
+                profile.merge(genreNames[genre], 1, Integer::sum);
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * Build interactions for the event-driven engines.
+     *
+     * @param from the first interaction
+     * @param count the number of interactions
+     * @return the interactions, wrapping around at the end of the history
+     */
+    public List<UserInteraction> interactions(int from, int count) {
+        List<UserInteraction> interactions = new ArrayList<>(count);
+        int user = 0;
+        for (int n = 0; n < count; n++) {
+            int index = (from + n) % userItems.length;
+            // Find the owning user of the interaction
+            if (index < userOffsets[user] || index >= userOffsets[user + 1]) {
+                user = owner(index);
+            }
+            interactions.add(UserInteraction.builder()
+                    .userId(userId(user))
+                    .itemId(itemId(userItems[index]))
+                    .itemType(itemTypes[userItems[index]])
+                    .interactionType(interactionTypes[index])
+                    .value((double) values[index])
+                    .build());
+        }
+        return interactions;
+    }
+
+    /**
+     * Store the catalogue and interactions in the tables the engines load from.
+     *
+     * @param jdbcTemplate the target database
+     */
+    public void writeTo(JdbcTemplate jdbcTemplate) {
+        List<Object[]> items = new ArrayList<>(numItems);
+        List<Object[]> genres = new ArrayList<>(numItems * 2);
+        for (int item = 0; item < numItems; item++) {
+            items.add(new Object[] {itemId(item), itemTypes[item].name()});
+            for (int genre : itemGenres[item]) {
+                genres.add(new Object[] {itemId(item), genreNames[genre]});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO content_items (item_id, item_type) VALUES (?, ?)", items);
+        jdbcTemplate.batchUpdate("INSERT INTO content_item_genres (item_id, genre) VALUES (?, ?)", genres);
+
+        List<Object[]> interactions = new ArrayList<>(userItems.length);
+        for (int user = 0; user < numUsers; user++) {
+            for (int n = userOffsets[user]; n < userOffsets[user + 1]; n++) {
+                interactions.add(new Object[] {userId(user), itemId(userItems[n]),
+                        itemTypes[userItems[n]].name(), interactionTypes[n].name(), values[n]});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO user_interactions " +
+                "(user_id, item_id, item_type, interaction_type, value) VALUES (?, ?, ?, ?, ?)", interactions);
+    }
+
+    private int owner(int index) {
+        // Every user has at least one interaction, so the offsets are strictly increasing
+        int user = Arrays.binarySearch(userOffsets, index);
+        return user < 0 ? -user - 2 : user;
+    }
+
+    private static boolean contains(int[] items, int from, int to, int item) {
+        for (int n = from; n < to; n++) {
+            if (items[n] == item) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Samples ranks 0..n-1 with probability proportional to 1 / (rank + 1)^exponent.
+     */
+    static final class ZipfSampler {
+        private final double[] cumulative;
+
+        ZipfSampler(int n, double exponent) {
+            cumulative = new double[n];
+            double sum = 0;
+            for (int rank = 0; rank < n; rank++) {
+                sum += 1.0 / Math.pow(rank + 1, exponent);
+                cumulative[rank] = sum;
+            }
+            for (int rank = 0; rank < n; rank++) {
+                cumulative[rank] /= sum;
+            }
+        }
+
+        int sample(Random random) {
+            int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(cumulative.length - 1, rank < 0 ? -rank - 1 : rank);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.examples.streaming_platform.recommendation.benchmark;
+
+import com.examples.streaming_platform.recommendation.engine.TrendingEngine;
+import com.examples.streaming_platform.recommendation.event.InteractionRecordedEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The trending engine's two hot paths: counting a batch of recorded interactions, and reading
+ * the current top items.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TrendingBenchmark {
+
+    /** Interactions per recorded event, about one ingest write batch. */
+    private static final int BATCH_SIZE = 100;
+
+    @State(Scope.Thread)
+    public static class Batches {
+        InteractionRecordedEvent[] events;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp(RecommendationData data) {
+            events = new InteractionRecordedEvent[RecommendationData.SAMPLES];
+            for (int n = 0; n < events.length; n++) {
+                events[n] = new InteractionRecordedEvent(data.dataset.interactions(n * BATCH_SIZE, BATCH_SIZE));
+            }
+        }
+
+        InteractionRecordedEvent next() {
+            InteractionRecordedEvent event = events[next];
+            next = (next + 1) & (RecommendationData.SAMPLES - 1);
+            return event;
+        }
+    }
+
+    @Benchmark
+    public void record(RecommendationData data, Batches batches) {
+        data.trendingEngine.onInteractionRecorded(batches.next());
+    }
+
+    @Benchmark
+    public TrendingEngine.Snapshot top(RecommendationData data) {
+        return data.trendingEngine.top();
+    }
+}
@@ -0,0 +1,21 @@
+-- The columns of the production tables that the engines read
+
+CREATE TABLE user_interactions (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id VARCHAR(255) NOT NULL,
+    item_id VARCHAR(255) NOT NULL,
+    item_type VARCHAR(50) NOT NULL,
+    interaction_type VARCHAR(50) NOT NULL,
+    value DOUBLE PRECISION,
+    timestamp TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP NOT NULL
+);
+
+CREATE TABLE content_items (
+    item_id VARCHAR(255) PRIMARY KEY,
+    item_type VARCHAR(50) NOT NULL
+);
+
+CREATE TABLE content_item_genres (
+    item_id VARCHAR(255) NOT NULL,
+    genre VARCHAR(100) NOT NULL
+);
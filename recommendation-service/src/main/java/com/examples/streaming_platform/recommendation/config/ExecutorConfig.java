@@ -0,0 +1,42 @@
+package com.examples.streaming_platform.recommendation.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors used by the recommendation pipeline.
+ */
+@Configuration
+public class ExecutorConfig {
+
+    /**
+     * Executor running recommendation pipeline stages concurrently. When its queue is full new
+     * stages are rejected, so a saturated pool cannot push a request past its latency budget.
+     *
+     * @param threads the number of worker threads
+     * @param queueCapacity the number of queued generator tasks
+     * @return the executor
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService recommendationExecutor(
+            @Value("${recommendation.executor.threads:16}") int threads,
+            @Value("${recommendation.executor.queue-capacity:1000}") int queueCapacity) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "recommendation-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        
+        return new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+}
@@ -0,0 +1,55 @@
+package com.examples.streaming_platform.recommendation.controller;
+
+import com.examples.streaming_platform.recommendation.engine.InteractionLog;
+import com.examples.streaming_platform.recommendation.service.ModelTrainingOrchestrator;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Controller for recommendation model endpoints.
+ */
+@RestController
+@RequestMapping("/api/v1/models")
+@RequiredArgsConstructor
+@Tag(name = "Models", description = "API for training recommendation models")
+@Slf4j
+public class ModelController {
+
+    private final ModelTrainingOrchestrator modelTrainingOrchestrator;
+    private final InteractionLog interactionLog;
+
+    /**
+     * Train and activate a new matrix factorization model from scratch, in the background.
+     *
+     * @return 202 if the run was started, 409 if a training run is already in progress
+     */
+    @PostMapping("/matrix-factorization/train")
+    @Operation(summary = "Train and activate a matrix factorization model")
+    public ResponseEntity<Void> trainMatrixFactorization() {
+        log.debug("Training matrix factorization model");
+        
+        return modelTrainingOrchestrator.submitFull()
+                ? ResponseEntity.accepted().build()
+                : ResponseEntity.status(HttpStatus.CONFLICT).build();
+    }
+
+    /**
+     * Rebuild the interaction log that training reads from the database, in the background.
+     *
+     * @return 202 if the replay was started, 409 if the log is disabled or a replay is running
+     */
+    @PostMapping("/interaction-log/replay")
+    @Operation(summary = "Rebuild the training interaction log from the database")
+    public ResponseEntity<Void> replayInteractionLog() {
+        log.debug("Replaying interaction log");
+        
+        return interactionLog.replay()
+                ? ResponseEntity.accepted().build()
+                : ResponseEntity.status(HttpStatus.CONFLICT).build();
+    }
+}
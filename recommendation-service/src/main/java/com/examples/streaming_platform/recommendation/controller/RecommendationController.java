@@ -1,14 +1,24 @@
 package com.examples.streaming_platform.recommendation.controller;
 
+import com.examples.streaming_platform.recommendation.dto.BulkJobStatusDTO;
+import com.examples.streaming_platform.recommendation.dto.BulkRecommendationRequestDTO;
 import com.examples.streaming_platform.recommendation.dto.RecommendationDTO;
+import com.examples.streaming_platform.recommendation.service.BulkRecommendationService;
+import com.examples.streaming_platform.recommendation.service.RecommendationResult;
 import com.examples.streaming_platform.recommendation.service.RecommendationService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -22,13 +32,25 @@ import java.util.List;
 @Slf4j
 public class RecommendationController {
 
+    static final String LATENCY_BUDGET_HEADER = "X-Latency-Budget-Ms";
+    static final String STAGES_HEADER = "X-Recommendation-Stages";
+    static final String MISSED_STAGES_HEADER = "X-Recommendation-Stages-Missed";
+    static final String BULK_JOB_HEADER = "X-Bulk-Job-Id";
+
     private final RecommendationService recommendationService;
+    private final BulkRecommendationService bulkRecommendationService;
+    
+    @Value("${recommendation.latency.budget-ms:200}")
+    private long defaultBudgetMs;
 
     /**
-     * Get personalized recommendations for a user.
+     * Get personalized recommendations for a user within a latency budget.
+     * The stages that finished in time and those that were cut are listed in response headers.
      *
      * @param userId the user ID
      * @param limit the maximum number of recommendations
+     * @param budgetHeader the latency budget in milliseconds, from the request header
+     * @param budgetMs the latency budget in milliseconds, from the query string
      * @return a list of recommendations
      */
     @GetMapping("/user/{userId}")
@@ -36,10 +58,21 @@ public class RecommendationController {
     public ResponseEntity<List<RecommendationDTO>> getRecommendationsForUser(
             @PathVariable String userId,
             @RequestParam(defaultValue = "10") 
-            @Parameter(description = "Maximum number of recommendations to return") int limit) {
+            @Parameter(description = "Maximum number of recommendations to return") int limit,
+            @RequestHeader(value = LATENCY_BUDGET_HEADER, required = false) Long budgetHeader,
+            @RequestParam(required = false)
+            @Parameter(description = "Latency budget in milliseconds") Long budgetMs) {
         
         log.debug("Getting recommendations for user: {}, limit: {}", userId, limit);
-        return ResponseEntity.ok(recommendationService.getRecommendationsForUser(userId, limit));
+        Long budget = budgetMs != null ? budgetMs : budgetHeader;
+        RecommendationResult result = budget != null
+                ? recommendationService.getRecommendationsForUser(userId, limit, budget)
+                : recommendationService.getRecommendationsForUser(userId, limit, defaultBudgetMs);
+        
+        return ResponseEntity.ok()
+                .header(STAGES_HEADER, String.join(",", result.getCompletedStages()))
+                .header(MISSED_STAGES_HEADER, String.join(",", result.getMissedStages()))
+                .body(result.getRecommendations());
     }
 
     /**
@@ -91,4 +124,49 @@ public class RecommendationController {
         log.debug("Getting popular content, limit: {}", limit);
         return ResponseEntity.ok(recommendationService.getPopularRecommendations(limit));
     }
+
+    /**
+     * Generate recommendations for a list of users or a user segment, streamed as newline-delimited
+     * JSON with one line per user. Progress can be followed with the job ID from the response header.
+     *
+     * @param request the users and the number of recommendations per user
+     * @return the stream of user recommendations, 400 if no users are selected,
+     *         or 503 if too many bulk jobs are running
+     */
+    @PostMapping("/bulk")
+    @Operation(summary = "Generate recommendations for many users as an NDJSON stream")
+    public ResponseEntity<StreamingResponseBody> getBulkRecommendations(
+            @Valid @RequestBody BulkRecommendationRequestDTO request) {
+        
+        if ((request.getUserIds() == null || request.getUserIds().isEmpty()) && request.getSegment() == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        BulkRecommendationService.BulkJob job = bulkRecommendationService.start(request);
+        if (job == null) {
+            log.warn("Too many bulk recommendation jobs running, rejecting request");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "60")
+                    .build();
+        }
+        
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .header(BULK_JOB_HEADER, job.getId())
+                .body(out -> bulkRecommendationService.stream(job, out));
+    }
+
+    /**
+     * Get the progress of a running or recently finished bulk job.
+     *
+     * @param jobId the job ID
+     * @return the job status, or 404 if the job is unknown
+     */
+    @GetMapping("/bulk/{jobId}")
+    @Operation(summary = "Get the progress of a bulk recommendation job")
+    public ResponseEntity<BulkJobStatusDTO> getBulkJobStatus(@PathVariable String jobId) {
+        return bulkRecommendationService.getStatus(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
 }
@@ -1,17 +1,25 @@
 package com.examples.streaming_platform.recommendation.controller;
 
+import com.examples.streaming_platform.recommendation.dto.InteractionBatchResultDTO;
 import com.examples.streaming_platform.recommendation.dto.UserInteractionDTO;
 import com.examples.streaming_platform.recommendation.model.UserInteraction;
+import com.examples.streaming_platform.recommendation.service.InteractionIngestService;
+import com.examples.streaming_platform.recommendation.service.InteractionWriteBuffer;
 import com.examples.streaming_platform.recommendation.service.UserInteractionService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
+
 /**
  * Controller for user interaction endpoints.
  */
@@ -23,12 +31,14 @@ import org.springframework.web.bind.annotation.*;
 public class UserInteractionController {
 
     private final UserInteractionService userInteractionService;
+    private final InteractionIngestService interactionIngestService;
+    private final InteractionWriteBuffer interactionWriteBuffer;
 
     /**
      * Record a user interaction.
      *
      * @param interactionDTO the interaction data
-     * @return the recorded interaction
+     * @return the recorded interaction, or the accepted interaction in asynchronous mode
      */
     @PostMapping
     @Operation(summary = "Record a user interaction")
@@ -36,8 +46,25 @@ public class UserInteractionController {
             @Valid @RequestBody UserInteractionDTO interactionDTO) {
         
         log.debug("Recording interaction: {}", interactionDTO);
-        UserInteraction interaction = userInteractionService.recordInteraction(interactionDTO);
-        return ResponseEntity.status(HttpStatus.CREATED).body(interaction);
+        return record(interactionDTO);
+    }
+
+    /**
+     * Record a batch of user interactions sent as a JSON array or as newline-delimited JSON.
+     *
+     * @param body the request body
+     * @return the status of each record
+     * @throws IOException if the body cannot be read
+     */
+    @PostMapping(value = "/batch", consumes = {
+            MediaType.APPLICATION_JSON_VALUE,
+            MediaType.APPLICATION_NDJSON_VALUE,
+            "application/x-ndjson"})
+    @Operation(summary = "Record a batch of user interactions")
+    public ResponseEntity<InteractionBatchResultDTO> recordInteractions(InputStream body) throws IOException {
+        InteractionBatchResultDTO result = interactionIngestService.ingest(body);
+        log.debug("Recorded interaction batch: {} of {} records created", result.getCreated(), result.getReceived());
+        return ResponseEntity.ok(result);
     }
 
     /**
@@ -64,8 +91,7 @@ public class UserInteractionController {
                 .interactionType(UserInteraction.InteractionType.VIEW)
                 .build();
         
-        UserInteraction interaction = userInteractionService.recordInteraction(interactionDTO);
-        return ResponseEntity.status(HttpStatus.CREATED).body(interaction);
+        return record(interactionDTO);
     }
 
     /**
@@ -96,8 +122,7 @@ public class UserInteractionController {
                 .value(rating)
                 .build();
         
-        UserInteraction interaction = userInteractionService.recordInteraction(interactionDTO);
-        return ResponseEntity.status(HttpStatus.CREATED).body(interaction);
+        return record(interactionDTO);
     }
 
     /**
@@ -128,7 +153,30 @@ public class UserInteractionController {
                 .value(minutes)
                 .build();
         
-        UserInteraction interaction = userInteractionService.recordInteraction(interactionDTO);
-        return ResponseEntity.status(HttpStatus.CREATED).body(interaction);
+        return record(interactionDTO);
+    }
+
+    /**
+     * Store an interaction, or enqueue it when asynchronous ingestion is enabled.
+     *
+     * @param interactionDTO the interaction data
+     * @return 201 with the stored interaction, 202 with the queued interaction,
+     *         or 503 if the write buffer is full
+     */
+    private ResponseEntity<UserInteraction> record(UserInteractionDTO interactionDTO) {
+        if (!interactionWriteBuffer.isEnabled()) {
+            UserInteraction interaction = userInteractionService.recordInteraction(interactionDTO);
+            return ResponseEntity.status(HttpStatus.CREATED).body(interaction);
+        }
+        
+        UserInteraction interaction = interactionWriteBuffer.enqueue(interactionDTO);
+        if (interaction == null) {
+            // Counted and logged at a bounded rate by the buffer
+            log.debug("Interaction write buffer full, rejecting interaction for user {}", interactionDTO.getUserId());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .build();
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(interaction);
     }
 }
@@ -0,0 +1,69 @@
+package com.examples.streaming_platform.recommendation.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.OffsetDateTime;
+
+/**
+ * DTO for the progress of a bulk recommendation job.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkJobStatusDTO {
+
+    /**
+     * The job ID, as returned in the X-Bulk-Job-Id header.
+     */
+    private String jobId;
+    
+    /**
+     * The job state.
+     */
+    private State state;
+    
+    /**
+     * When the job started.
+     */
+    private OffsetDateTime startedAt;
+    
+    /**
+     * The number of users selected by the request.
+     */
+    private long total;
+    
+    /**
+     * The number of users written to the stream so far, including failed ones.
+     */
+    private long processed;
+    
+    /**
+     * The number of users whose recommendations could not be computed.
+     */
+    private long failed;
+    
+    /**
+     * The average number of users processed per second.
+     */
+    private double usersPerSecond;
+    
+    /**
+     * The estimated seconds until the job completes, while it is running.
+     */
+    private Long etaSeconds;
+
+    /**
+     * State of a bulk job.
+     */
+    public enum State {
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+}
@@ -0,0 +1,53 @@
+package com.examples.streaming_platform.recommendation.dto;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO for a bulk recommendation job. Either a list of user IDs or a user segment selects the users.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkRecommendationRequestDTO {
+
+    /**
+     * The users to generate recommendations for; takes precedence over the segment.
+     */
+    private List<String> userIds;
+    
+    /**
+     * The user segment to generate recommendations for when no user IDs are given.
+     */
+    private Segment segment;
+    
+    /**
+     * For the {@link Segment#ACTIVE} segment, the number of days within which users must have interacted.
+     */
+    @Min(value = 1, message = "Active days must be at least 1")
+    @Builder.Default
+    private int activeDays = 30;
+    
+    /**
+     * The maximum number of recommendations per user.
+     */
+    @Min(value = 1, message = "Limit must be at least 1")
+    @Max(value = 100, message = "Limit must be at most 100")
+    @Builder.Default
+    private int limit = 10;
+
+    /**
+     * User segments a bulk job can cover.
+     */
+    public enum Segment {
+        ALL,        // Every user with rolled-up interactions
+        ACTIVE      // Users who interacted within the last activeDays days
+    }
+}
@@ -77,4 +77,9 @@ public class ContentItemDTO {
      * The keywords.
      */
     private Set<String> keywords = new HashSet<>();
+    
+    /**
+     * The content feature vector (embedding) used for similarity search.
+     */
+    private float[] featureVector;
 }
@@ -0,0 +1,80 @@
+package com.examples.streaming_platform.recommendation.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DTO for the outcome of a batch interaction upload.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class InteractionBatchResultDTO {
+
+    /**
+     * The number of records read from the request.
+     */
+    private int received;
+    
+    /**
+     * The number of records stored.
+     */
+    private int created;
+    
+    /**
+     * The number of records rejected by validation or parsing.
+     */
+    private int rejected;
+    
+    /**
+     * The number of valid records that could not be stored.
+     */
+    private int failed;
+    
+    /**
+     * The status of each record, in request order.
+     */
+    @Builder.Default
+    private List<RecordResult> results = new ArrayList<>();
+
+    /**
+     * Status of a single record.
+     */
+    public enum Status {
+        CREATED,
+        REJECTED,
+        FAILED
+    }
+
+    /**
+     * Outcome of a single record.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class RecordResult {
+
+        /**
+         * The zero-based position of the record in the request.
+         */
+        private int index;
+        
+        /**
+         * The record status.
+         */
+        private Status status;
+        
+        /**
+         * The reason a record was rejected or failed.
+         */
+        private String message;
+    }
+}
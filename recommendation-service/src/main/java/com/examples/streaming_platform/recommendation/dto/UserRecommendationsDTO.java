@@ -0,0 +1,35 @@
+package com.examples.streaming_platform.recommendation.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO for one user's recommendations, a line of a bulk recommendation stream.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UserRecommendationsDTO {
+
+    /**
+     * The user ID.
+     */
+    private String userId;
+    
+    /**
+     * The recommendations, best first; absent if they could not be computed.
+     */
+    private List<RecommendationDTO> recommendations;
+    
+    /**
+     * The reason the recommendations could not be computed.
+     */
+    private String error;
+}
@@ -0,0 +1,142 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A mapped model artifact being served, with the artifact's item rows resolved to this
+ * process's item indices. Readers hold a lease for the duration of a request; the mapping is
+ * released once the model has been retired and the last lease is closed.
+ */
+public final class ActiveModel implements AutoCloseable {
+
+    private final long modelId;
+    private final String version;
+    private final ModelArtifact artifact;
+    private final int[] itemIndices;
+    // One reference belongs to the registry until the model is retired, one to each open lease
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private ActiveModel(long modelId, String version, ModelArtifact artifact, int[] itemIndices) {
+        this.modelId = modelId;
+        this.version = version;
+        this.artifact = artifact;
+        this.itemIndices = itemIndices;
+    }
+
+    /**
+     * Map an artifact and warm it up: its pages are loaded and its item IDs resolved, so the
+     * first request is as fast as any other.
+     *
+     * @param modelId the model row ID
+     * @param version the model version
+     * @param file the artifact file
+     * @param items the item dictionary to resolve item IDs against
+     * @return the model, holding the registry's reference
+     * @throws IOException if the artifact can't be mapped
+     */
+    public static ActiveModel load(long modelId, String version, Path file, IdDictionary items) throws IOException {
+        ModelArtifact artifact = ModelArtifact.open(file);
+        try {
+            artifact.warmUp();
+            int[] itemIndices = new int[artifact.numItems()];
+            for (int row = 0; row < itemIndices.length; row++) {
+                itemIndices[row] = items.getOrAssign(artifact.itemId(row));
+            }
+            return new ActiveModel(modelId, version, artifact, itemIndices);
+        } catch (RuntimeException e) {
+            artifact.close();
+            throw e;
+        }
+    }
+
+    public long modelId() {
+        return modelId;
+    }
+
+    public String version() {
+        return version;
+    }
+
+    /**
+     * Score every item for a user and keep the best ones.
+     *
+     * @param userId the user ID
+     * @param limit the maximum number of items
+     * @param excludedItems item indices to skip, sorted ascending
+     * @return item indices sorted by descending score, or null if the user is not in the model
+     */
+    public TopKSelector recommend(String userId, int limit, int[] excludedItems) {
+        int user = artifact.userRow(userId);
+        if (user < 0) {
+            return null;
+        }
+
+        float[] vector = new float[artifact.rank()];
+        artifact.userVector(user, vector);
+
+        TopKSelector result = new TopKSelector(limit);
+        for (int row = 0; row < itemIndices.length; row++) {
+            float score = artifact.score(vector, row);
+            if (score > result.threshold() && Arrays.binarySearch(excludedItems, itemIndices[row]) < 0) {
+                result.offer(itemIndices[row], score);
+            }
+        }
+
+        result.sortDescending();
+        return result;
+    }
+
+    /**
+     * Get the stored neighbours of an item.
+     *
+     * @param itemId the item ID
+     * @param limit the maximum number of items
+     * @return item indices sorted by descending score, or null if the item has no stored neighbours
+     */
+    public TopKSelector similarItems(String itemId, int limit) {
+        int item = artifact.itemRow(itemId);
+        if (item < 0 || artifact.neighborsPerItem() == 0 || artifact.neighbor(item, 0) < 0) {
+            return null;
+        }
+
+        int count = Math.min(limit, artifact.neighborsPerItem());
+        TopKSelector result = new TopKSelector(count);
+        for (int rank = 0; rank < count && artifact.neighbor(item, rank) >= 0; rank++) {
+            result.offer(itemIndices[artifact.neighbor(item, rank)], artifact.neighborScore(item, rank));
+        }
+
+        result.sortDescending();
+        return result;
+    }
+
+    /**
+     * Take a lease on the model.
+     *
+     * @return false if the model has already been released
+     */
+    boolean retain() {
+        while (true) {
+            int current = references.get();
+            if (current == 0) {
+                return false;
+            }
+            if (references.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Give back a lease, or the registry's reference when the model is retired. The mapping is
+     * released with the last reference.
+     */
+    @Override
+    public void close() {
+        if (references.decrementAndGet() == 0) {
+            artifact.close();
+        }
+    }
+}
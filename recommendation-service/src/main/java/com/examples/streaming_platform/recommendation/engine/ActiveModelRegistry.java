@@ -0,0 +1,93 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the model artifact currently served. A new model is mapped and warmed up before it
+ * replaces the previous one in a single reference swap, so requests never see a half-loaded
+ * model. The previous mapping is released once the requests still holding it finish.
+ */
+@Component
+@Slf4j
+public class ActiveModelRegistry {
+
+    private final IdDictionaries dictionaries;
+    private final AtomicReference<ActiveModel> current = new AtomicReference<>();
+
+    public ActiveModelRegistry(IdDictionaries dictionaries) {
+        this.dictionaries = dictionaries;
+    }
+
+    /**
+     * Take a lease on the active model. The lease must be closed when the request is done with it.
+     *
+     * @return the active model, or null if none is loaded
+     */
+    public ActiveModel acquire() {
+        while (true) {
+            ActiveModel model = current.get();
+            // A model that was retired between the read and the lease is replaced already, so retry
+            if (model == null || model.retain()) {
+                return model;
+            }
+        }
+    }
+
+    /**
+     * Check whether a model is loaded.
+     *
+     * @return true if a model is being served
+     */
+    public boolean isLoaded() {
+        return current.get() != null;
+    }
+
+    /**
+     * Check whether a model row is the one being served.
+     *
+     * @param modelId the model row ID
+     * @return true if it is active
+     */
+    public boolean isActive(long modelId) {
+        ActiveModel model = current.get();
+        return model != null && model.modelId() == modelId;
+    }
+
+    /**
+     * Map, warm up and swap in a model artifact, unless it is already active.
+     *
+     * @param modelId the model row ID
+     * @param version the model version
+     * @param file the artifact file
+     * @throws IOException if the artifact can't be mapped; the current model stays active
+     */
+    public synchronized void activate(long modelId, String version, Path file) throws IOException {
+        if (isActive(modelId)) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        ActiveModel model = ActiveModel.load(modelId, version, file, dictionaries.items());
+        retire(current.getAndSet(model));
+        log.info("Activated model {} from {} in {} ms", version, file, System.currentTimeMillis() - start);
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        retire(current.getAndSet(null));
+    }
+
+    private void retire(ActiveModel model) {
+        if (model != null) {
+            // Drops the registry's reference; the mapping goes when the last lease is closed
+            model.close();
+            log.debug("Retired model {}", model.version());
+        }
+    }
+}
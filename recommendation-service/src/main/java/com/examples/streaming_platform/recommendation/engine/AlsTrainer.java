@@ -0,0 +1,285 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Implicit-feedback alternating least squares (Hu, Koren and Volinsky).
+ * Matrix values are raw interaction weights r; confidence is {@code 1 + alpha * r} and preference is 1
+ * for every observed pair. Each half-iteration solves all user (or item) vectors in parallel on a
+ * fork-join pool, one Cholesky solve of a {@code rank x rank} system per row.
+ */
+public final class AlsTrainer {
+
+    private static final int PARTITION_SIZE = 512;
+
+    private final int rank;
+    private final int iterations;
+    private final float regularization;
+    private final float alpha;
+    private final ForkJoinPool pool;
+
+    public AlsTrainer(int rank, int iterations, float regularization, float alpha, ForkJoinPool pool) {
+        this.rank = rank;
+        this.iterations = iterations;
+        this.regularization = regularization;
+        this.alpha = alpha;
+        this.pool = pool;
+    }
+
+    /**
+     * Train user and item factors.
+     *
+     * @param matrix the interaction weights
+     * @param seed the random seed for item factor initialisation
+     * @return the trained model
+     */
+    public FactorModel train(InteractionMatrix matrix, long seed) {
+        return train(matrix, seed, iteration -> { });
+    }
+
+    /**
+     * Train user and item factors, reporting each completed iteration.
+     *
+     * @param matrix the interaction weights
+     * @param seed the random seed for item factor initialisation
+     * @param onIteration receives the number of iterations completed so far
+     * @return the trained model
+     */
+    public FactorModel train(InteractionMatrix matrix, long seed, IntConsumer onIteration) {
+        float[] userFactors = new float[matrix.numUsers() * rank];
+        float[] itemFactors = new float[matrix.numItems() * rank];
+
+        Random random = new Random(seed);
+        for (int n = 0; n < itemFactors.length; n++) {
+            itemFactors[n] = (float) (random.nextGaussian() * 0.01);
+        }
+
+        return train(matrix, userFactors, itemFactors, iterations, onIteration);
+    }
+
+    /**
+     * Continue training from existing factors.
+     *
+     * @param matrix the interaction weights
+     * @param userFactors the initial user factors, sized for the matrix
+     * @param itemFactors the initial item factors, sized for the matrix
+     * @param iterations the number of alternating iterations
+     * @return the trained model
+     */
+    public FactorModel train(InteractionMatrix matrix, float[] userFactors, float[] itemFactors, int iterations) {
+        return train(matrix, userFactors, itemFactors, iterations, iteration -> { });
+    }
+
+    private FactorModel train(InteractionMatrix matrix, float[] userFactors, float[] itemFactors, int iterations,
+                              IntConsumer onIteration) {
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            solve(matrix, true, itemFactors, userFactors);
+            solve(matrix, false, userFactors, itemFactors);
+            onIteration.accept(iteration + 1);
+        }
+
+        BitSet trainedUsers = new BitSet(matrix.numUsers());
+        for (int user = 0; user < matrix.numUsers(); user++) {
+            if (matrix.hasUser(user)) {
+                trainedUsers.set(user);
+            }
+        }
+        BitSet trainedItems = new BitSet(matrix.numItems());
+        for (int item = 0; item < matrix.numItems(); item++) {
+            if (matrix.hasItem(item)) {
+                trainedItems.set(item);
+            }
+        }
+
+        return new FactorModel(rank, userFactors, itemFactors, trainedUsers, trainedItems);
+    }
+
+    /**
+     * Solve the vectors of the given rows with the other side held fixed.
+     *
+     * @param matrix the interaction weights
+     * @param byUser true to solve users (rows of the CSR layout), false to solve items
+     * @param fixed the fixed factors
+     * @param solved the factors to overwrite
+     */
+    public void solve(InteractionMatrix matrix, boolean byUser, float[] fixed, float[] solved) {
+        double[] gram = gram(fixed);
+        int rows = byUser ? matrix.numUsers() : matrix.numItems();
+        pool.invoke(new SolveTask(matrix, byUser, fixed, solved, gram, null, 0, rows));
+    }
+
+    /**
+     * Fold rows into an existing model: solve only the given rows with the other side held fixed,
+     * leaving every other row as it is. One half-step per row, so it is far cheaper than training.
+     *
+     * @param matrix the interaction weights of the rows to solve
+     * @param byUser true to solve users, false to solve items
+     * @param fixed the fixed factors
+     * @param solved the factors to update
+     * @param rows the rows to solve
+     */
+    public void foldIn(InteractionMatrix matrix, boolean byUser, float[] fixed, float[] solved, BitSet rows) {
+        double[] gram = gram(fixed);
+        int[] selected = rows.stream().toArray();
+        pool.invoke(new SolveTask(matrix, byUser, fixed, solved, gram, selected, 0, selected.length));
+    }
+
+    /**
+     * Compute the Gram matrix {@code F^T F} of a factor array plus the regularisation term.
+     *
+     * @param factors the factors
+     * @return the {@code rank x rank} matrix, row-major
+     */
+    public double[] gram(float[] factors) {
+        double[] gram = new double[rank * rank];
+        for (int offset = 0; offset < factors.length; offset += rank) {
+            for (int i = 0; i < rank; i++) {
+                double fi = factors[offset + i];
+                if (fi == 0) {
+                    continue;
+                }
+                for (int j = i; j < rank; j++) {
+                    gram[i * rank + j] += fi * factors[offset + j];
+                }
+            }
+        }
+        for (int i = 0; i < rank; i++) {
+            for (int j = 0; j < i; j++) {
+                gram[i * rank + j] = gram[j * rank + i];
+            }
+            gram[i * rank + i] += regularization;
+        }
+        return gram;
+    }
+
+    private void solveRow(InteractionMatrix matrix, boolean byUser, int row,
+                          float[] fixed, double[] gram, float[] solved, double[] a, double[] b) {
+        int start = byUser ? matrix.rowStart(row) : matrix.columnStart(row);
+        int end = byUser ? matrix.rowEnd(row) : matrix.columnEnd(row);
+        int out = row * rank;
+
+        if (start == end) {
+            for (int f = 0; f < rank; f++) {
+                solved[out + f] = 0f;
+            }
+            return;
+        }
+
+        // A = F^T F + lambda I + F^T (C - I) F,  b = F^T C p
+        System.arraycopy(gram, 0, a, 0, a.length);
+        Arrays.fill(b, 0.0);
+
+        for (int p = start; p < end; p++) {
+            int other = byUser ? matrix.rowItem(p) : matrix.columnUser(p);
+            float value = byUser ? matrix.rowValue(p) : matrix.columnValue(p);
+            double confidence = 1.0 + alpha * value;
+            int offset = other * rank;
+
+            for (int i = 0; i < rank; i++) {
+                double fi = fixed[offset + i];
+                double scaled = (confidence - 1.0) * fi;
+                for (int j = 0; j < rank; j++) {
+                    a[i * rank + j] += scaled * fixed[offset + j];
+                }
+                b[i] += confidence * fi;
+            }
+        }
+
+        choleskySolve(a, b);
+        for (int f = 0; f < rank; f++) {
+            solved[out + f] = (float) b[f];
+        }
+    }
+
+    /**
+     * Solve {@code A x = b} for a symmetric positive definite A in place; the result is left in b.
+     */
+    private void choleskySolve(double[] a, double[] b) {
+        int n = rank;
+
+        // Decompose A = L L^T, storing L in the lower triangle
+        for (int j = 0; j < n; j++) {
+            double diagonal = a[j * n + j];
+            for (int k = 0; k < j; k++) {
+                diagonal -= a[j * n + k] * a[j * n + k];
+            }
+            diagonal = Math.sqrt(Math.max(diagonal, 1e-12));
+            a[j * n + j] = diagonal;
+
+            for (int i = j + 1; i < n; i++) {
+                double sum = a[i * n + j];
+                for (int k = 0; k < j; k++) {
+                    sum -= a[i * n + k] * a[j * n + k];
+                }
+                a[i * n + j] = sum / diagonal;
+            }
+        }
+
+        // Forward substitution L y = b
+        for (int i = 0; i < n; i++) {
+            double sum = b[i];
+            for (int k = 0; k < i; k++) {
+                sum -= a[i * n + k] * b[k];
+            }
+            b[i] = sum / a[i * n + i];
+        }
+
+        // Back substitution L^T x = y
+        for (int i = n - 1; i >= 0; i--) {
+            double sum = b[i];
+            for (int k = i + 1; k < n; k++) {
+                sum -= a[k * n + i] * b[k];
+            }
+            b[i] = sum / a[i * n + i];
+        }
+    }
+
+    /**
+     * Fork-join task solving a range of rows, or a range of positions in a list of selected rows.
+     */
+    private final class SolveTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final InteractionMatrix matrix;
+        private final boolean byUser;
+        private final float[] fixed;
+        private final float[] solved;
+        private final double[] gram;
+        private final int[] rows;
+        private final int from;
+        private final int to;
+
+        private SolveTask(InteractionMatrix matrix, boolean byUser, float[] fixed, float[] solved,
+                          double[] gram, int[] rows, int from, int to) {
+            this.matrix = matrix;
+            this.byUser = byUser;
+            this.fixed = fixed;
+            this.solved = solved;
+            this.gram = gram;
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARTITION_SIZE) {
+                double[] a = new double[rank * rank];
+                double[] b = new double[rank];
+                for (int n = from; n < to; n++) {
+                    solveRow(matrix, byUser, rows == null ? n : rows[n], fixed, gram, solved, a, b);
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new SolveTask(matrix, byUser, fixed, solved, gram, rows, from, middle),
+                    new SolveTask(matrix, byUser, fixed, solved, gram, rows, middle, to));
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import com.examples.streaming_platform.recommendation.event.ShardMembershipChangedEvent;
+import com.examples.streaming_platform.recommendation.model.UserInteraction;
+import com.examples.streaming_platform.recommendation.sharding.ShardMembership;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Resident collaborative filtering engine.
+ * Holds the user-item matrix in memory, rebuilds it in the background and swaps it atomically,
+ * so scoring never touches the database. With sharded serving the matrix only holds the rows of
+ * the users this instance owns, and user-based neighbours are drawn from those users.
+ * Once the interaction log is complete the matrix is rebuilt from it rather than the database.
+ */
+@Component
+@Slf4j
+public class CollaborativeFilteringEngine {
+
+    private static final String LOAD_QUERY =
+            "SELECT user_id, item_id, MAX(COALESCE(value, 1.0)) FROM user_interactions " +
+            "WHERE interaction_type <> 'DISLIKE' " +
+            "GROUP BY user_id, item_id";
+
+    // Scratch space above this many table slots is dropped after use rather than pooled
+    private static final int MAX_POOLED_CAPACITY = 1 << 16;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final IdDictionaries dictionaries;
+    private final ShardMembership shardMembership;
+    private final InteractionLog interactionLog;
+    private final AtomicReference<InteractionMatrix> matrix = new AtomicReference<>();
+    // Scratch space is sized to the candidates of a request, and pooled rather than held per thread
+    private final Queue<Scratch> scratchPool = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+    private final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "interaction-matrix-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${recommendation.engine.enabled:true}")
+    private boolean enabled;
+
+    @Value("${recommendation.engine.fetch-size:10000}")
+    private int fetchSize;
+
+    public CollaborativeFilteringEngine(JdbcTemplate jdbcTemplate,
+                                        PlatformTransactionManager transactionManager,
+                                        IdDictionaries dictionaries,
+                                        ShardMembership shardMembership,
+                                        InteractionLog interactionLog) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.dictionaries = dictionaries;
+        this.shardMembership = shardMembership;
+        this.interactionLog = interactionLog;
+    }
+
+    /**
+     * Check whether a matrix has been loaded.
+     *
+     * @return true if the engine can serve requests
+     */
+    public boolean isReady() {
+        return matrix.get() != null;
+    }
+
+    /**
+     * Get the current matrix snapshot.
+     *
+     * @return the matrix, or null before the first load
+     */
+    public InteractionMatrix getMatrix() {
+        return matrix.get();
+    }
+
+    /**
+     * Get the item ID for an item index.
+     *
+     * @param item the item index
+     * @return the item ID
+     */
+    public String itemId(int item) {
+        return dictionaries.items().idOf(item);
+    }
+
+    /**
+     * Rebuild the matrix from the database and swap it in.
+     * Runs at startup and then on a fixed delay.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${recommendation.engine.refresh-interval-ms:300000}")
+    public synchronized void refresh() {
+        if (!enabled) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+
+        try {
+            InteractionMatrix current = matrix.get();
+            InteractionMatrix.Builder builder = InteractionMatrix.builder(
+                    current != null ? current.nonZeros() : 1 << 16);
+            IdDictionary users = dictionaries.users();
+            IdDictionary items = dictionaries.items();
+
+            if (interactionLog.isReady()) {
+                InteractionMatrix rebuilt = loadFromLog(builder, users, items, start);
+                matrix.set(rebuilt);
+                log.info("Loaded interaction matrix from the interaction log: {} users, {} items, {} entries in {}ms",
+                        rebuilt.numUsers(), rebuilt.numItems(), rebuilt.nonZeros(),
+                        System.currentTimeMillis() - start);
+                return;
+            }
+
+            // Stream rows with a server-side cursor instead of materializing the result set
+            readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(
+                    connection -> {
+                        PreparedStatement statement = connection.prepareStatement(LOAD_QUERY);
+                        statement.setFetchSize(fetchSize);
+                        return statement;
+                    },
+                    new RowCallbackHandler() {
+                        // Rows of a user tend to arrive together, so remember the last ownership check
+                        private String lastUserId;
+                        private boolean lastOwned;
+
+                        @Override
+                        public void processRow(ResultSet rs) throws SQLException {
+                            String userId = rs.getString(1);
+                            if (!userId.equals(lastUserId)) {
+                                lastUserId = userId;
+                                lastOwned = shardMembership.owns(userId);
+                            }
+                            if (lastOwned) {
+                                builder.add(users.getOrAssign(userId), items.getOrAssign(rs.getString(2)),
+                                        rs.getFloat(3));
+                            }
+                        }
+                    }));
+
+            InteractionMatrix rebuilt = builder.build(users.size(), items.size(), start);
+            matrix.set(rebuilt);
+
+            log.info("Loaded interaction matrix: {} users, {} items, {} entries in {}ms",
+                    rebuilt.numUsers(), rebuilt.numItems(), rebuilt.nonZeros(),
+                    System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("Error loading interaction matrix, keeping previous snapshot", e);
+        }
+    }
+
+    /**
+     * Scan the interaction log into the matrix, keeping the highest value per (user, item) the way
+     * the load query does.
+     *
+     * @param builder the matrix builder
+     * @param users the user dictionary
+     * @param items the item dictionary
+     * @param start the time the rebuild started
+     * @return the matrix
+     */
+    private InteractionMatrix loadFromLog(InteractionMatrix.Builder builder, IdDictionary users, IdDictionary items,
+                                          long start) {
+        // Ownership per user index: 0 not checked yet, 1 owned, 2 owned by another shard
+        byte[] owned = new byte[users.size()];
+        interactionLog.scan((user, item, type, value, timestamp) -> {
+            if (type == UserInteraction.InteractionType.DISLIKE) {
+                return;
+            }
+            if (shardMembership.isEnabled()) {
+                if (user >= owned.length) {
+                    if (!shardMembership.owns(users.idOf(user))) {
+                        return;
+                    }
+                } else {
+                    if (owned[user] == 0) {
+                        owned[user] = (byte) (shardMembership.owns(users.idOf(user)) ? 1 : 2);
+                    }
+                    if (owned[user] == 2) {
+                        return;
+                    }
+                }
+            }
+            builder.add(user, item, Float.isNaN(value) ? 1f : value);
+        });
+
+        int numUsers = users.size();
+        return builder.mergeDuplicates(numUsers, Math::max, false).build(numUsers, items.size(), start);
+    }
+
+    /**
+     * Reload the matrix in the background when the users owned by this instance change. Changes
+     * arriving while a reload is queued are covered by that reload.
+     *
+     * @param event the membership change
+     */
+    @EventListener
+    public void onShardMembershipChanged(ShardMembershipChangedEvent event) {
+        if (!refreshQueued.compareAndSet(false, true)) {
+            return;
+        }
+        refreshExecutor.execute(() -> {
+            refreshQueued.set(false);
+            refresh();
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    /**
+     * Score unseen items for a user from the preferences of the most similar users (cosine similarity).
+     *
+     * @param userId the user ID
+     * @param limit the maximum number of items
+     * @param neighborhoodSize the maximum number of neighbours
+     * @param similarityThreshold the minimum neighbour similarity
+     * @return the top items sorted by descending score, or null if the engine is not loaded
+     */
+    public TopKSelector recommendForUser(String userId, int limit, int neighborhoodSize, float similarityThreshold) {
+        InteractionMatrix m = matrix.get();
+        if (m == null) {
+            return null;
+        }
+
+        TopKSelector result = new TopKSelector(limit);
+        int user = dictionaries.users().indexOf(userId);
+        if (!m.hasUser(user)) {
+            return result;
+        }
+
+        float userNorm = m.userNorm(user);
+        if (userNorm == 0f) {
+            // No positive values, so no similarity is defined
+            return result;
+        }
+
+        Scratch s = acquireScratch();
+        try {
+            // Accumulate dot products with every user who shares an item
+            for (int p = m.rowStart(user); p < m.rowEnd(user); p++) {
+                int item = m.rowItem(p);
+                float value = m.rowValue(p);
+                s.seen.add(item, 0f);
+
+                for (int q = m.columnStart(item); q < m.columnEnd(item); q++) {
+                    int other = m.columnUser(q);
+                    if (other != user) {
+                        s.users.add(other, value * m.columnValue(q));
+                    }
+                }
+            }
+
+            // Keep the closest neighbours above the threshold
+            TopKSelector neighbours = s.neighbours;
+            neighbours.reset(neighborhoodSize);
+            for (int entry = 0; entry < s.users.size(); entry++) {
+                int other = s.users.key(entry);
+                float otherNorm = m.userNorm(other);
+                if (otherNorm == 0f) {
+                    continue;
+                }
+                float similarity = s.users.sum(entry) / (userNorm * otherNorm);
+                if (similarity >= similarityThreshold) {
+                    neighbours.offer(other, similarity);
+                }
+            }
+
+            // Score unseen items by similarity-weighted neighbour preference
+            float similaritySum = 0f;
+            for (int n = 0; n < neighbours.size(); n++) {
+                int neighbour = neighbours.id(n);
+                float similarity = neighbours.score(n);
+                similaritySum += similarity;
+
+                for (int p = m.rowStart(neighbour); p < m.rowEnd(neighbour); p++) {
+                    int item = m.rowItem(p);
+                    if (!s.seen.contains(item)) {
+                        s.items.add(item, similarity * m.rowValue(p));
+                    }
+                }
+            }
+
+            if (similaritySum > 0f) {
+                for (int entry = 0; entry < s.items.size(); entry++) {
+                    result.offer(s.items.key(entry), s.items.sum(entry) / similaritySum);
+                }
+            }
+        } finally {
+            releaseScratch(s);
+        }
+        result.sortDescending();
+        return result;
+    }
+
+    /**
+     * Find the items most similar to an item (cosine similarity over the users who interacted with both).
+     *
+     * @param itemId the reference item ID
+     * @param limit the maximum number of items
+     * @param minCooccurrences the minimum number of shared users
+     * @return the top items sorted by descending similarity, or null if the engine is not loaded
+     */
+    public TopKSelector recommendSimilarItems(String itemId, int limit, int minCooccurrences) {
+        InteractionMatrix m = matrix.get();
+        if (m == null) {
+            return null;
+        }
+
+        TopKSelector result = new TopKSelector(limit);
+        int item = dictionaries.items().indexOf(itemId);
+        if (!m.hasItem(item)) {
+            return result;
+        }
+
+        float itemNorm = m.itemNorm(item);
+        if (itemNorm == 0f) {
+            return result;
+        }
+
+        Scratch s = acquireScratch();
+        try {
+            // Walk item -> users -> items, accumulating dot products and co-occurrence counts
+            for (int q = m.columnStart(item); q < m.columnEnd(item); q++) {
+                int user = m.columnUser(q);
+                float value = m.columnValue(q);
+
+                for (int p = m.rowStart(user); p < m.rowEnd(user); p++) {
+                    int other = m.rowItem(p);
+                    if (other != item) {
+                        s.items.add(other, value * m.rowValue(p));
+                    }
+                }
+            }
+
+            for (int entry = 0; entry < s.items.size(); entry++) {
+                int other = s.items.key(entry);
+                float otherNorm = m.itemNorm(other);
+                if (s.items.count(entry) >= minCooccurrences && otherNorm != 0f) {
+                    result.offer(other, s.items.sum(entry) / (itemNorm * otherNorm));
+                }
+            }
+        } finally {
+            releaseScratch(s);
+        }
+        result.sortDescending();
+        return result;
+    }
+
+    private Scratch acquireScratch() {
+        Scratch s = scratchPool.poll();
+        return s != null ? s : new Scratch();
+    }
+
+    /**
+     * Clear scratch space and return it to the pool, unless a large request grew it past the
+     * pooled bound.
+     */
+    private void releaseScratch(Scratch s) {
+        s.users.clear();
+        s.items.clear();
+        s.seen.clear();
+        if (s.users.capacity() <= MAX_POOLED_CAPACITY && s.items.capacity() <= MAX_POOLED_CAPACITY
+                && s.seen.capacity() <= MAX_POOLED_CAPACITY) {
+            scratchPool.offer(s);
+        }
+    }
+
+    /**
+     * Working space of one scoring call, growing with the users and items it touches.
+     */
+    private static final class Scratch {
+        private final SparseAccumulator users = new SparseAccumulator(1024);
+        private final SparseAccumulator items = new SparseAccumulator(1024);
+        private final SparseAccumulator seen = new SparseAccumulator(256);
+        private final TopKSelector neighbours = new TopKSelector(0);
+    }
+}
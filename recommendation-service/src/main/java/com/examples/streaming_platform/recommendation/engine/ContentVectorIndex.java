@@ -0,0 +1,354 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import com.examples.streaming_platform.recommendation.event.ContentItemSavedEvent;
+import com.examples.streaming_platform.recommendation.model.ContentItem;
+import com.examples.streaming_platform.recommendation.model.UserInteraction;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Approximate nearest-neighbour index over content feature vectors.
+ * The HNSW graph is persisted next to the model files together with the latest {@code last_updated}
+ * read from the database; on startup it is read back and only items updated since then are
+ * re-inserted or removed. Saved items are inserted as they are stored, and removed when their
+ * vector is cleared.
+ */
+@Component
+@Slf4j
+public class ContentVectorIndex {
+
+    private static final int FILE_MAGIC = 0x43564931; // "CVI1"
+
+    // Items committed shortly after a load read later updates can carry an earlier last_updated
+    private static final long CATCH_UP_OVERLAP_MILLIS = 300_000L;
+
+    private static final String VECTOR_QUERY =
+            "SELECT item_id, feature_vector, last_updated FROM content_items WHERE feature_vector IS NOT NULL";
+
+    private static final String UPDATED_VECTOR_QUERY =
+            "SELECT item_id, feature_vector, last_updated FROM content_items WHERE last_updated > ?";
+
+    private static final String ITEM_TYPE_QUERY =
+            "SELECT item_id, item_type FROM content_items WHERE feature_vector IS NOT NULL";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final IdDictionaries dictionaries;
+    private final Map<Integer, UserInteraction.ItemType> itemTypes = new ConcurrentHashMap<>();
+    // Inserts and the swap to a compacted index hold this lock, so no insert lands on a replaced index
+    private final Object insertLock = new Object();
+    private volatile HnswIndex index;
+    private volatile boolean modified;
+    // Latest last_updated read from the database, in epoch milliseconds
+    private volatile long updatedThrough;
+
+    @Value("${recommendation.model.path:models/}")
+    private String modelPath;
+
+    @Value("${recommendation.engine.fetch-size:10000}")
+    private int fetchSize;
+
+    @Value("${recommendation.vector-index.file-name:content-vectors.hnsw}")
+    private String fileName;
+
+    @Value("${recommendation.vector-index.m:16}")
+    private int maxConnections;
+
+    @Value("${recommendation.vector-index.ef-construction:200}")
+    private int efConstruction;
+
+    @Value("${recommendation.vector-index.ef-search:64}")
+    private int efSearch;
+
+    @Value("${recommendation.vector-index.max-tombstone-ratio:0.25}")
+    private double maxTombstoneRatio;
+
+    public ContentVectorIndex(JdbcTemplate jdbcTemplate,
+                              PlatformTransactionManager transactionManager,
+                              IdDictionaries dictionaries) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.dictionaries = dictionaries;
+    }
+
+    /**
+     * Check whether an item has a feature vector in the index.
+     *
+     * @param itemId the item ID
+     * @return true if the item is indexed
+     */
+    public boolean contains(String itemId) {
+        HnswIndex current = index;
+        return current != null && current.contains(dictionaries.items().indexOf(itemId));
+    }
+
+    /**
+     * Find the items whose feature vectors are most similar to an item's.
+     *
+     * @param itemId the reference item ID
+     * @param limit the maximum number of items
+     * @return item indices sorted by descending cosine similarity, or null if the item is not indexed
+     */
+    public TopKSelector similarItems(String itemId, int limit) {
+        HnswIndex current = index;
+        int item = dictionaries.items().indexOf(itemId);
+        if (current == null || !current.contains(item)) {
+            return null;
+        }
+
+        return current.searchByItem(item, limit, Math.max(efSearch, limit));
+    }
+
+    /**
+     * Get the item ID for an item index.
+     *
+     * @param item the item index
+     * @return the item ID
+     */
+    public String itemId(int item) {
+        return dictionaries.items().idOf(item);
+    }
+
+    /**
+     * Get the type of an indexed item.
+     *
+     * @param item the item index
+     * @return the item type, or null if unknown
+     */
+    public UserInteraction.ItemType itemType(int item) {
+        return itemTypes.get(item);
+    }
+
+    /**
+     * Load the persisted index, or build it from the database if there is none.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long start = System.currentTimeMillis();
+        Path file = indexFile();
+
+        loadItemTypes();
+        if (Files.exists(file)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                if (in.readInt() != FILE_MAGIC) {
+                    throw new IOException("Not a content vector index file");
+                }
+                long savedThrough = in.readLong();
+                index = HnswIndex.read(in, dictionaries.items());
+                updatedThrough = savedThrough;
+                int updated = insertVectors(UPDATED_VECTOR_QUERY,
+                        new Timestamp(savedThrough - CATCH_UP_OVERLAP_MILLIS));
+                log.info("Loaded content vector index with {} items from {} ({} updated since) in {} ms",
+                        index.size(), file, updated, System.currentTimeMillis() - start);
+                return;
+            } catch (Exception e) {
+                log.warn("Could not load content vector index from {}, rebuilding", file, e);
+                index = null;
+                updatedThrough = 0L;
+            }
+        }
+
+        int inserted = insertVectors(VECTOR_QUERY, null);
+        modified = true;
+        log.info("Built content vector index with {} items in {} ms", inserted, System.currentTimeMillis() - start);
+        save();
+    }
+
+    /**
+     * Index a content item after its transaction commits.
+     *
+     * @param event the saved item
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onContentItemSaved(ContentItemSavedEvent event) {
+        ContentItem item = event.getItem();
+        float[] vector = FeatureVectors.decode(item.getFeatureVector());
+        if (vector == null) {
+            remove(dictionaries.items().indexOf(item.getId()));
+            return;
+        }
+
+        int itemIndex = dictionaries.items().getOrAssign(item.getId());
+        if (insert(itemIndex, vector)) {
+            itemTypes.put(itemIndex, item.getItemType());
+        }
+    }
+
+    /**
+     * Write the index to disk if it changed since it was last written, first compacting it if
+     * replaced vectors make up too much of the graph.
+     */
+    @Scheduled(initialDelayString = "${recommendation.vector-index.save-interval-ms:300000}",
+            fixedDelayString = "${recommendation.vector-index.save-interval-ms:300000}")
+    public synchronized void save() {
+        HnswIndex current = index;
+        if (current == null || !modified) {
+            return;
+        }
+
+        double tombstoneRatio = current.tombstoneRatio();
+        if (tombstoneRatio > maxTombstoneRatio) {
+            current = compact(current, tombstoneRatio);
+        }
+
+        Path file = indexFile();
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        modified = false;
+        try {
+            Files.createDirectories(file.getParent());
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(FILE_MAGIC);
+                out.writeLong(updatedThrough);
+                current.write(out, dictionaries.items());
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Saved content vector index with {} items to {}", current.size(), file);
+        } catch (IOException e) {
+            modified = true;
+            log.error("Error saving content vector index to {}", file, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        save();
+    }
+
+    /**
+     * Build a compacted copy of the index while searches and inserts carry on against it, then
+     * bring over the changes made meanwhile and swap the copy in.
+     *
+     * @param current the index to compact
+     * @param tombstoneRatio the index's tombstone ratio
+     * @return the index now serving
+     */
+    private HnswIndex compact(HnswIndex current, double tombstoneRatio) {
+        long start = System.currentTimeMillis();
+        HnswIndex compacted = current.compacted();
+        synchronized (insertLock) {
+            if (index != current) {
+                return index;
+            }
+            current.replayOnto(compacted);
+            index = compacted;
+        }
+        log.info("Compacted content vector index with tombstone ratio {} to {} items in {} ms",
+                String.format("%.2f", tombstoneRatio), compacted.size(), System.currentTimeMillis() - start);
+        return compacted;
+    }
+
+    /**
+     * Stream feature vectors from the database into the index, removing items whose vector was
+     * cleared, and advance the latest {@code last_updated} read.
+     *
+     * @param query the vector query
+     * @param updatedAfter the lower bound for {@code last_updated}, or null for every item
+     * @return the number of vectors inserted
+     */
+    private int insertVectors(String query, Timestamp updatedAfter) {
+        IdDictionary items = dictionaries.items();
+        int[] inserted = {0};
+        long[] latest = {updatedThrough};
+
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(
+                connection -> {
+                    PreparedStatement statement = connection.prepareStatement(query);
+                    statement.setFetchSize(fetchSize);
+                    if (updatedAfter != null) {
+                        statement.setTimestamp(1, updatedAfter);
+                    }
+                    return statement;
+                },
+                (RowCallbackHandler) rs -> {
+                    float[] vector = FeatureVectors.decode(rs.getBytes(2));
+                    if (vector == null) {
+                        remove(items.indexOf(rs.getString(1)));
+                    } else if (insert(items.getOrAssign(rs.getString(1)), vector)) {
+                        inserted[0]++;
+                    }
+                    latest[0] = Math.max(latest[0], rs.getTimestamp(3).getTime());
+                }));
+
+        updatedThrough = latest[0];
+        return inserted[0];
+    }
+
+    /**
+     * Insert a vector, creating the index from the first vector's dimension.
+     *
+     * @param item the item index
+     * @param vector the feature vector
+     * @return true if the vector was inserted
+     */
+    private boolean insert(int item, float[] vector) {
+        synchronized (insertLock) {
+            HnswIndex current = index;
+            if (current == null) {
+                current = new HnswIndex(vector.length, maxConnections, efConstruction);
+                index = current;
+            }
+
+            if (vector.length != current.dimension()) {
+                log.warn("Skipping feature vector of item {}: dimension {} does not match index dimension {}",
+                        dictionaries.items().idOf(item), vector.length, current.dimension());
+                return false;
+            }
+
+            current.insert(item, vector);
+            modified = true;
+            return true;
+        }
+    }
+
+    /**
+     * Remove an item whose feature vector was cleared.
+     *
+     * @param item the item index, or -1 for an item that was never indexed
+     */
+    private void remove(int item) {
+        synchronized (insertLock) {
+            HnswIndex current = index;
+            if (current != null && current.remove(item)) {
+                itemTypes.remove(item);
+                modified = true;
+            }
+        }
+    }
+
+    private void loadItemTypes() {
+        IdDictionary items = dictionaries.items();
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(ITEM_TYPE_QUERY,
+                (RowCallbackHandler) rs -> itemTypes.put(items.getOrAssign(rs.getString(1)),
+                        UserInteraction.ItemType.valueOf(rs.getString(2)))));
+    }
+
+    private Path indexFile() {
+        return Paths.get(modelPath, fileName);
+    }
+}
@@ -0,0 +1,108 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import java.util.BitSet;
+
+/**
+ * Latent factor model: one {@code rank}-dimensional float vector per user and per item,
+ * stored row-major in flat arrays indexed by dense user and item indices.
+ */
+public final class FactorModel {
+
+    private final int rank;
+    private final float[] userFactors;
+    private final float[] itemFactors;
+    private final BitSet trainedUsers;
+    private final BitSet trainedItems;
+
+    public FactorModel(int rank, float[] userFactors, float[] itemFactors, BitSet trainedUsers, BitSet trainedItems) {
+        this.rank = rank;
+        this.userFactors = userFactors;
+        this.itemFactors = itemFactors;
+        this.trainedUsers = trainedUsers;
+        this.trainedItems = trainedItems;
+    }
+
+    public int rank() {
+        return rank;
+    }
+
+    public int numUsers() {
+        return userFactors.length / rank;
+    }
+
+    public int numItems() {
+        return itemFactors.length / rank;
+    }
+
+    public float[] userFactors() {
+        return userFactors;
+    }
+
+    public float[] itemFactors() {
+        return itemFactors;
+    }
+
+    public boolean hasUser(int user) {
+        return user >= 0 && trainedUsers.get(user);
+    }
+
+    public boolean hasItem(int item) {
+        return item >= 0 && trainedItems.get(item);
+    }
+
+    /**
+     * Score a (user, item) pair.
+     *
+     * @param user the user index
+     * @param item the item index
+     * @return the dot product of the user and item vectors
+     */
+    public float score(int user, int item) {
+        int u = user * rank;
+        int i = item * rank;
+        float sum = 0f;
+        for (int f = 0; f < rank; f++) {
+            sum += userFactors[u + f] * itemFactors[i + f];
+        }
+        return sum;
+    }
+
+    /**
+     * Score every trained item for a user and keep the best ones.
+     *
+     * @param user the user index
+     * @param limit the maximum number of items
+     * @param excludedItems item indices to skip, sorted ascending
+     * @return the top items sorted by descending score
+     */
+    public TopKSelector recommend(int user, int limit, int[] excludedItems) {
+        TopKSelector result = new TopKSelector(limit);
+        if (!hasUser(user)) {
+            return result;
+        }
+
+        int u = user * rank;
+        int numItems = numItems();
+        int excluded = 0;
+        for (int item = 0, i = 0; item < numItems; item++, i += rank) {
+            // Both sequences ascend, so skip exclusions with a merge instead of a lookup
+            while (excluded < excludedItems.length && excludedItems[excluded] < item) {
+                excluded++;
+            }
+            if ((excluded < excludedItems.length && excludedItems[excluded] == item) || !trainedItems.get(item)) {
+                continue;
+            }
+
+            float sum = 0f;
+            for (int f = 0; f < rank; f++) {
+                sum += userFactors[u + f] * itemFactors[i + f];
+            }
+            if (sum > result.threshold()) {
+                result.offer(item, sum);
+            }
+        }
+
+        result.sortDescending();
+        return result;
+    }
+}
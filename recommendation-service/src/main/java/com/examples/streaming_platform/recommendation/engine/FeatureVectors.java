@@ -0,0 +1,45 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Codec for {@code content_items.feature_vector}: packed IEEE-754 float32 values, little-endian.
+ */
+public final class FeatureVectors {
+
+    private FeatureVectors() {
+    }
+
+    /**
+     * Decode a stored feature vector.
+     *
+     * @param bytes the stored bytes
+     * @return the vector, or null if the input is null, empty or not a whole number of floats
+     */
+    public static float[] decode(byte[] bytes) {
+        if (bytes == null || bytes.length == 0 || bytes.length % Float.BYTES != 0) {
+            return null;
+        }
+
+        float[] vector = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    /**
+     * Encode a feature vector for storage.
+     *
+     * @param vector the vector
+     * @return the packed bytes, or null if the input is null
+     */
+    public static byte[] encode(float[] vector) {
+        if (vector == null) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+}
@@ -0,0 +1,611 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Hierarchical navigable small world graph for approximate nearest-neighbour search by cosine similarity.
+ * Nodes are keyed by dense item index and vectors are normalised on insert, so similarity is a dot product.
+ * Searches run concurrently under a read lock; inserts take the write lock. Re-inserting or
+ * removing an item tombstones its node, which stays in the graph for navigation but is never
+ * returned. {@link #compacted} builds a copy of the graph without its tombstones.
+ */
+public final class HnswIndex {
+
+    private static final int FILE_MAGIC = 0x484E5357; // "HNSW"
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int dimension;
+    private final int maxConnections;
+    private final int maxConnectionsLevel0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Random random = new Random(42);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ThreadLocal<SearchScratch> scratch = new ThreadLocal<>();
+
+    private float[] vectors;
+    private int[] nodeItems;
+    // links[node][level] holds the neighbour count at [0] followed by neighbour nodes
+    private int[][][] links;
+    private int[] itemNodes = new int[0];
+    private final BitSet deleted = new BitSet();
+    private int size;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    // Nodes of the source index a compacted copy was built from
+    private int compactedFrom;
+
+    public HnswIndex(int dimension, int maxConnections, int efConstruction) {
+        this.dimension = dimension;
+        this.maxConnections = maxConnections;
+        this.maxConnectionsLevel0 = maxConnections * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1.0 / Math.log(Math.max(2, maxConnections));
+        this.vectors = new float[INITIAL_CAPACITY * dimension];
+        this.nodeItems = new int[INITIAL_CAPACITY];
+        this.links = new int[INITIAL_CAPACITY][][];
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    /**
+     * Get the number of live (non-tombstoned) items.
+     *
+     * @return the item count
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size - deleted.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the fraction of nodes that are tombstones.
+     *
+     * @return the tombstone ratio, 0 for an empty index
+     */
+    public double tombstoneRatio() {
+        lock.readLock().lock();
+        try {
+            return size == 0 ? 0.0 : (double) deleted.cardinality() / size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Check whether an item is indexed.
+     *
+     * @param item the item index
+     * @return true if the item has a live node
+     */
+    public boolean contains(int item) {
+        lock.readLock().lock();
+        try {
+            return item >= 0 && item < itemNodes.length && itemNodes[item] >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Insert or replace an item's vector.
+     *
+     * @param item the item index
+     * @param vector the feature vector; must match the index dimension
+     */
+    public void insert(int item, float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException(
+                    "Expected vector of dimension " + dimension + " but got " + vector.length);
+        }
+
+        lock.writeLock().lock();
+        try {
+            ensureItemCapacity(item + 1);
+            if (itemNodes[item] >= 0) {
+                deleted.set(itemNodes[item]);
+            }
+
+            int node = size;
+            ensureNodeCapacity(node + 1);
+            normalize(vector, vectors, node * dimension);
+            nodeItems[node] = item;
+            itemNodes[item] = node;
+
+            int level = (int) Math.floor(-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+            links[node] = new int[level + 1][];
+            for (int lc = 0; lc <= level; lc++) {
+                links[node][lc] = new int[maxConnections(lc) + 2];
+            }
+            size++;
+
+            if (entryPoint < 0) {
+                entryPoint = node;
+                maxLevel = level;
+                return;
+            }
+
+            SearchScratch s = scratch();
+            int current = entryPoint;
+            for (int lc = maxLevel; lc > level; lc--) {
+                current = greedyClosest(vectors, node * dimension, current, lc);
+            }
+
+            for (int lc = Math.min(level, maxLevel); lc >= 0; lc--) {
+                TopKSelector candidates = searchLayer(vectors, node * dimension, current, efConstruction, lc, s);
+                candidates.sortDescending();
+                current = candidates.id(0);
+
+                int connections = Math.min(maxConnections, candidates.size());
+                for (int n = 0; n < connections; n++) {
+                    int neighbour = candidates.id(n);
+                    addLink(node, lc, neighbour);
+                    addLink(neighbour, lc, node);
+                }
+            }
+
+            if (level > maxLevel) {
+                entryPoint = node;
+                maxLevel = level;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Find the items most similar to an indexed item.
+     *
+     * @param item the item index
+     * @param k the number of neighbours
+     * @param ef the search breadth (at least k)
+     * @return item indices sorted by descending cosine similarity, excluding the item itself
+     */
+    public TopKSelector searchByItem(int item, int k, int ef) {
+        lock.readLock().lock();
+        try {
+            TopKSelector result = new TopKSelector(k);
+            if (item < 0 || item >= itemNodes.length || itemNodes[item] < 0) {
+                return result;
+            }
+            return search(vectors, itemNodes[item] * dimension, k, ef, item, result);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the items most similar to a vector.
+     *
+     * @param vector the query vector
+     * @param k the number of neighbours
+     * @param ef the search breadth (at least k)
+     * @return item indices sorted by descending cosine similarity
+     */
+    public TopKSelector search(float[] vector, int k, int ef) {
+        float[] query = new float[dimension];
+        normalize(vector, query, 0);
+
+        lock.readLock().lock();
+        try {
+            return search(query, 0, k, ef, -1, new TopKSelector(k));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Remove an item, tombstoning its node.
+     *
+     * @param item the item index
+     * @return true if the item was indexed
+     */
+    public boolean remove(int item) {
+        lock.writeLock().lock();
+        try {
+            if (item < 0 || item >= itemNodes.length || itemNodes[item] < 0) {
+                return false;
+            }
+            deleted.set(itemNodes[item]);
+            itemNodes[item] = -1;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Build a copy of the graph from its live nodes, without tombstones. Only copying the live
+     * vectors takes the read lock; the copy is built without holding it, so searches and inserts
+     * carry on. Changes made meanwhile are brought over with {@link #replayOnto}.
+     *
+     * @return the compacted copy
+     */
+    public HnswIndex compacted() {
+        int nodes;
+        int[] liveItems;
+        float[] liveVectors;
+
+        lock.readLock().lock();
+        try {
+            nodes = size;
+            liveItems = new int[size - deleted.cardinality()];
+            liveVectors = new float[liveItems.length * dimension];
+            int live = 0;
+            for (int node = deleted.nextClearBit(0); node < size; node = deleted.nextClearBit(node + 1)) {
+                liveItems[live] = nodeItems[node];
+                System.arraycopy(vectors, node * dimension, liveVectors, live * dimension, dimension);
+                live++;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        HnswIndex compacted = new HnswIndex(dimension, maxConnections, efConstruction);
+        for (int live = 0; live < liveItems.length; live++) {
+            compacted.insert(liveItems[live], Arrays.copyOfRange(liveVectors, live * dimension, (live + 1) * dimension));
+        }
+        compacted.compactedFrom = nodes;
+        return compacted;
+    }
+
+    /**
+     * Apply the inserts and removals this index took since a compacted copy was built from it.
+     * Callers keep further changes out until the copy has replaced this index.
+     *
+     * @param compacted a copy built by {@link #compacted} on this index
+     */
+    public void replayOnto(HnswIndex compacted) {
+        lock.readLock().lock();
+        try {
+            // Inserts append nodes, and a node replaced since is tombstoned in favour of a later one
+            for (int node = compacted.compactedFrom; node < size; node++) {
+                if (!deleted.get(node)) {
+                    compacted.insert(nodeItems[node],
+                            Arrays.copyOfRange(vectors, node * dimension, (node + 1) * dimension));
+                }
+            }
+            for (int item = 0; item < compacted.itemNodes.length; item++) {
+                if (compacted.itemNodes[item] >= 0 && (item >= itemNodes.length || itemNodes[item] < 0)) {
+                    compacted.remove(item);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Write the index. Item indices are written as IDs so the file does not depend on this
+     * process's dictionary.
+     *
+     * @param out the output
+     * @param items the item dictionary
+     * @throws IOException if writing fails
+     */
+    public void write(DataOutputStream out, IdDictionary items) throws IOException {
+        lock.readLock().lock();
+        try {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(dimension);
+            out.writeInt(maxConnections);
+            out.writeInt(efConstruction);
+            out.writeInt(size);
+            out.writeInt(entryPoint);
+            out.writeInt(maxLevel);
+
+            for (int node = 0; node < size; node++) {
+                out.writeUTF(items.idOf(nodeItems[node]));
+                out.writeBoolean(deleted.get(node));
+                for (int d = 0; d < dimension; d++) {
+                    out.writeFloat(vectors[node * dimension + d]);
+                }
+                out.writeInt(links[node].length);
+                for (int[] level : links[node]) {
+                    out.writeInt(level[0]);
+                    for (int n = 1; n <= level[0]; n++) {
+                        out.writeInt(level[n]);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Read an index written by {@link #write}.
+     *
+     * @param in the input
+     * @param items the item dictionary used to map stored IDs to indices
+     * @return the index
+     * @throws IOException if the input is not a valid index
+     */
+    public static HnswIndex read(DataInputStream in, IdDictionary items) throws IOException {
+        if (in.readInt() != FILE_MAGIC) {
+            throw new IOException("Not an HNSW index file");
+        }
+
+        HnswIndex index = new HnswIndex(in.readInt(), in.readInt(), in.readInt());
+        int size = in.readInt();
+        index.ensureNodeCapacity(size);
+        index.size = size;
+        index.entryPoint = in.readInt();
+        index.maxLevel = in.readInt();
+
+        for (int node = 0; node < size; node++) {
+            int item = items.getOrAssign(in.readUTF());
+            boolean isDeleted = in.readBoolean();
+            for (int d = 0; d < index.dimension; d++) {
+                index.vectors[node * index.dimension + d] = in.readFloat();
+            }
+
+            int levels = in.readInt();
+            index.links[node] = new int[levels][];
+            for (int lc = 0; lc < levels; lc++) {
+                int count = in.readInt();
+                int[] level = new int[index.maxConnections(lc) + 2];
+                level[0] = count;
+                for (int n = 1; n <= count; n++) {
+                    level[n] = in.readInt();
+                }
+                index.links[node][lc] = level;
+            }
+
+            index.nodeItems[node] = item;
+            if (isDeleted) {
+                index.deleted.set(node);
+            } else {
+                index.ensureItemCapacity(item + 1);
+                index.itemNodes[item] = node;
+            }
+        }
+
+        return index;
+    }
+
+    private TopKSelector search(float[] query, int offset, int k, int ef, int excludedItem, TopKSelector result) {
+        if (entryPoint < 0) {
+            return result;
+        }
+
+        int current = entryPoint;
+        for (int lc = maxLevel; lc > 0; lc--) {
+            current = greedyClosest(query, offset, current, lc);
+        }
+
+        // Widen the beam so tombstones and the query item do not crowd out results
+        TopKSelector candidates = searchLayer(query, offset, current, Math.max(ef, k + 1), 0, scratch());
+        for (int n = 0; n < candidates.size(); n++) {
+            int node = candidates.id(n);
+            if (!deleted.get(node) && nodeItems[node] != excludedItem) {
+                result.offer(nodeItems[node], candidates.score(n));
+            }
+        }
+
+        result.sortDescending();
+        return result;
+    }
+
+    /**
+     * Walk greedily towards the query on one level.
+     */
+    private int greedyClosest(float[] query, int offset, int start, int level) {
+        int current = start;
+        float currentSimilarity = similarity(query, offset, current);
+        boolean improved = true;
+
+        while (improved) {
+            improved = false;
+            int[] neighbours = links[current][level];
+            for (int n = 1; n <= neighbours[0]; n++) {
+                float candidateSimilarity = similarity(query, offset, neighbours[n]);
+                if (candidateSimilarity > currentSimilarity) {
+                    current = neighbours[n];
+                    currentSimilarity = candidateSimilarity;
+                    improved = true;
+                }
+            }
+        }
+
+        return current;
+    }
+
+    /**
+     * Best-first search of one level, keeping the ef most similar nodes.
+     */
+    private TopKSelector searchLayer(float[] query, int offset, int start, int ef, int level, SearchScratch s) {
+        int generation = s.nextGeneration(size);
+        TopKSelector results = new TopKSelector(ef);
+        s.candidateCount = 0;
+
+        float startSimilarity = similarity(query, offset, start);
+        s.visited[start] = generation;
+        s.pushCandidate(start, startSimilarity);
+        results.offer(start, startSimilarity);
+
+        while (s.candidateCount > 0) {
+            float bestSimilarity = s.candidateScores[0];
+            int best = s.popCandidate();
+            if (results.size() >= ef && bestSimilarity < results.threshold()) {
+                break;
+            }
+
+            int[] neighbours = links[best].length > level ? links[best][level] : null;
+            if (neighbours == null) {
+                continue;
+            }
+            for (int n = 1; n <= neighbours[0]; n++) {
+                int neighbour = neighbours[n];
+                if (s.visited[neighbour] == generation) {
+                    continue;
+                }
+                s.visited[neighbour] = generation;
+
+                float neighbourSimilarity = similarity(query, offset, neighbour);
+                if (results.size() < ef || neighbourSimilarity > results.threshold()) {
+                    s.pushCandidate(neighbour, neighbourSimilarity);
+                    results.offer(neighbour, neighbourSimilarity);
+                }
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Link a node to a neighbour, pruning to the most similar neighbours when over capacity.
+     */
+    private void addLink(int node, int level, int neighbour) {
+        int[] neighbours = links[node][level];
+        int capacity = maxConnections(level);
+        neighbours[++neighbours[0]] = neighbour;
+        if (neighbours[0] <= capacity) {
+            return;
+        }
+
+        TopKSelector keep = new TopKSelector(capacity);
+        for (int n = 1; n <= neighbours[0]; n++) {
+            keep.offer(neighbours[n], similarity(vectors, node * dimension, neighbours[n]));
+        }
+        neighbours[0] = keep.size();
+        for (int n = 0; n < keep.size(); n++) {
+            neighbours[n + 1] = keep.id(n);
+        }
+    }
+
+    private int maxConnections(int level) {
+        return level == 0 ? maxConnectionsLevel0 : maxConnections;
+    }
+
+    private float similarity(float[] query, int offset, int node) {
+        int base = node * dimension;
+        float sum = 0f;
+        for (int d = 0; d < dimension; d++) {
+            sum += query[offset + d] * vectors[base + d];
+        }
+        return sum;
+    }
+
+    private void normalize(float[] vector, float[] target, int offset) {
+        double norm = 0.0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        float scale = norm > 0 ? (float) (1.0 / Math.sqrt(norm)) : 0f;
+        for (int d = 0; d < dimension; d++) {
+            target[offset + d] = vector[d] * scale;
+        }
+    }
+
+    private void ensureNodeCapacity(int capacity) {
+        if (capacity <= nodeItems.length) {
+            return;
+        }
+        int grown = Math.max(capacity, nodeItems.length * 2);
+        vectors = Arrays.copyOf(vectors, grown * dimension);
+        nodeItems = Arrays.copyOf(nodeItems, grown);
+        links = Arrays.copyOf(links, grown);
+    }
+
+    private void ensureItemCapacity(int capacity) {
+        if (capacity <= itemNodes.length) {
+            return;
+        }
+        int previous = itemNodes.length;
+        itemNodes = Arrays.copyOf(itemNodes, Math.max(capacity, previous * 2));
+        Arrays.fill(itemNodes, previous, itemNodes.length, -1);
+    }
+
+    private SearchScratch scratch() {
+        SearchScratch s = scratch.get();
+        if (s == null) {
+            s = new SearchScratch();
+            scratch.set(s);
+        }
+        return s;
+    }
+
+    /**
+     * Per-thread visited stamps and a max-heap of candidates ordered by similarity.
+     */
+    private static final class SearchScratch {
+        private int[] visited = new int[0];
+        private int generation;
+        private int[] candidateNodes = new int[64];
+        private float[] candidateScores = new float[64];
+        private int candidateCount;
+
+        private int nextGeneration(int nodes) {
+            if (visited.length < nodes) {
+                visited = new int[Math.max(nodes, visited.length * 2)];
+                generation = 0;
+            }
+            if (++generation == Integer.MAX_VALUE) {
+                Arrays.fill(visited, 0);
+                generation = 1;
+            }
+            return generation;
+        }
+
+        private void pushCandidate(int node, float score) {
+            if (candidateCount == candidateNodes.length) {
+                candidateNodes = Arrays.copyOf(candidateNodes, candidateCount * 2);
+                candidateScores = Arrays.copyOf(candidateScores, candidateCount * 2);
+            }
+            int index = candidateCount++;
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (candidateScores[parent] >= score) {
+                    break;
+                }
+                candidateNodes[index] = candidateNodes[parent];
+                candidateScores[index] = candidateScores[parent];
+                index = parent;
+            }
+            candidateNodes[index] = node;
+            candidateScores[index] = score;
+        }
+
+        private int popCandidate() {
+            int top = candidateNodes[0];
+            int lastNode = candidateNodes[--candidateCount];
+            float lastScore = candidateScores[candidateCount];
+
+            int index = 0;
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= candidateCount) {
+                    break;
+                }
+                if (child + 1 < candidateCount && candidateScores[child + 1] > candidateScores[child]) {
+                    child++;
+                }
+                if (candidateScores[child] <= lastScore) {
+                    break;
+                }
+                candidateNodes[index] = candidateNodes[child];
+                candidateScores[index] = candidateScores[child];
+                index = child;
+            }
+            if (candidateCount > 0) {
+                candidateNodes[index] = lastNode;
+                candidateScores[index] = lastScore;
+            }
+            return top;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Process-wide user and item ID dictionaries shared by the in-memory engines.
+ * <p>
+ * Each dictionary is persisted as an append-only file of its IDs in index order, stored under the
+ * model path. The files are read back before any engine assigns an index, so users and items keep
+ * their indices across restarts; IDs assigned since the last write are appended periodically and on
+ * shutdown. A record cut short by a crash is truncated when the file is read.
+ */
+@Component
+@Slf4j
+public class IdDictionaries {
+
+    private static final int MAGIC = 0x49444431; // "IDD1"
+
+    private final IdDictionary users = new IdDictionary();
+    private final IdDictionary items = new IdDictionary();
+    private final DictionaryFile usersFile;
+    private final DictionaryFile itemsFile;
+    private final boolean persist;
+
+    public IdDictionaries(@Value("${recommendation.model.path:models/}") String modelPath,
+                          @Value("${recommendation.dictionary.persist:true}") boolean persist,
+                          @Value("${recommendation.dictionary.users-file-name:users.dict}") String usersFileName,
+                          @Value("${recommendation.dictionary.items-file-name:items.dict}") String itemsFileName) {
+        this.persist = persist;
+        this.usersFile = new DictionaryFile(users, Paths.get(modelPath, usersFileName));
+        this.itemsFile = new DictionaryFile(items, Paths.get(modelPath, itemsFileName));
+    }
+
+    /**
+     * Get the user ID dictionary.
+     *
+     * @return the user dictionary
+     */
+    public IdDictionary users() {
+        return users;
+    }
+
+    /**
+     * Get the item ID dictionary.
+     *
+     * @return the item dictionary
+     */
+    public IdDictionary items() {
+        return items;
+    }
+
+    /**
+     * Check whether indices are persisted, and so keep their meaning across restarts.
+     *
+     * @return true if the dictionaries are persisted
+     */
+    public boolean isPersistent() {
+        return persist;
+    }
+
+    /**
+     * Read the persisted dictionaries back.
+     */
+    @PostConstruct
+    public void load() {
+        if (!persist) {
+            return;
+        }
+
+        usersFile.load();
+        itemsFile.load();
+    }
+
+    /**
+     * Append the IDs assigned since the last write.
+     */
+    @Scheduled(initialDelayString = "${recommendation.dictionary.save-interval-ms:60000}",
+            fixedDelayString = "${recommendation.dictionary.save-interval-ms:60000}")
+    public synchronized void save() {
+        if (!persist) {
+            return;
+        }
+
+        usersFile.append();
+        itemsFile.append();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        save();
+    }
+
+    /**
+     * A dictionary and the file it is persisted to: a magic number, then one record per index
+     * holding the ID's length in UTF-8 bytes as an unsigned short and the bytes.
+     */
+    private static final class DictionaryFile {
+        private final IdDictionary dictionary;
+        private final Path file;
+        // Number of IDs already in the file
+        private int persisted;
+
+        private DictionaryFile(IdDictionary dictionary, Path file) {
+            this.dictionary = dictionary;
+            this.file = file;
+        }
+
+        private void load() {
+            if (!Files.exists(file)) {
+                return;
+            }
+
+            long start = System.currentTimeMillis();
+            long valid = 0;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not an ID dictionary file");
+                }
+                valid = Integer.BYTES;
+
+                while (true) {
+                    int length;
+                    try {
+                        length = in.readUnsignedShort();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    byte[] bytes = new byte[length];
+                    in.readFully(bytes);
+
+                    String id = new String(bytes, StandardCharsets.UTF_8);
+                    if (dictionary.getOrAssign(id) != persisted) {
+                        throw new IOException("Duplicate ID " + id + " at index " + persisted);
+                    }
+                    persisted++;
+                    valid += Short.BYTES + length;
+                }
+                log.info("Loaded {} IDs from {} in {} ms", persisted, file, System.currentTimeMillis() - start);
+            } catch (EOFException e) {
+                log.warn("Truncating incomplete record after {} IDs in {}", persisted, file);
+            } catch (IOException e) {
+                log.error("Could not read ID dictionary {}, keeping the first {} IDs", file, persisted, e);
+            }
+
+            if (valid == 0) {
+                persisted = 0;
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                if (channel.size() > valid) {
+                    channel.truncate(valid);
+                }
+            } catch (IOException e) {
+                log.error("Could not truncate ID dictionary {}", file, e);
+            }
+        }
+
+        private void append() {
+            int size = dictionary.size();
+            if (size == persisted) {
+                return;
+            }
+
+            try {
+                Files.createDirectories(file.toAbsolutePath().getParent());
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    // Rewrite a file that held no valid records, so record positions match indices
+                    long offset = persisted == 0 ? 0 : channel.size();
+                    channel.truncate(offset);
+                    channel.position(offset);
+                    try {
+                        DataOutputStream out = new DataOutputStream(
+                                new BufferedOutputStream(Channels.newOutputStream(channel)));
+                        if (offset == 0) {
+                            out.writeInt(MAGIC);
+                        }
+                        for (int index = persisted; index < size; index++) {
+                            byte[] bytes = dictionary.idOf(index).getBytes(StandardCharsets.UTF_8);
+                            out.writeShort(bytes.length);
+                            out.write(bytes);
+                        }
+                        out.flush();
+                        channel.force(false);
+                    } catch (IOException e) {
+                        // Drop the partial write so the next append continues from a complete record
+                        channel.truncate(offset);
+                        throw e;
+                    }
+                }
+                log.debug("Appended {} IDs to {}", size - persisted, file);
+                persisted = size;
+            } catch (IOException e) {
+                log.error("Error appending to ID dictionary {}", file, e);
+            }
+        }
+    }
+}
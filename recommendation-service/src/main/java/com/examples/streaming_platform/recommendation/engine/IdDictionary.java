@@ -0,0 +1,122 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Append-only dictionary that assigns dense int indices to string IDs.
+ * Indices are never reassigned, so arrays indexed by them stay valid across model refreshes.
+ * <p>
+ * IDs are looked up in an open-addressing table of int slots with linear probing, so an entry costs
+ * two ints of table and the ID reference instead of a boxed map entry. Lookups don't lock: the table
+ * is replaced, never resized in place, and a slot is only filled after its ID has been stored.
+ */
+public class IdDictionary {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Slots hold index + 1, so 0 marks an empty slot; kept at most half full
+    private volatile AtomicIntegerArray table = new AtomicIntegerArray(2 * INITIAL_CAPACITY);
+    private volatile String[] ids = new String[INITIAL_CAPACITY];
+    private volatile int size;
+
+    /**
+     * Get the index of an ID.
+     *
+     * @param id the ID
+     * @return the index, or -1 if the ID has not been assigned one
+     */
+    public int indexOf(String id) {
+        AtomicIntegerArray slots = table;
+        int mask = slots.length() - 1;
+        for (int slot = hash(id) & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots.get(slot);
+            if (entry == 0) {
+                return -1;
+            }
+            // Read the IDs after the slot, so an array grown for a new entry is seen with it
+            if (ids[entry - 1].equals(id)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    /**
+     * Get the index of an ID, assigning the next free index if it is new.
+     *
+     * @param id the ID
+     * @return the index
+     */
+    public int getOrAssign(String id) {
+        int index = indexOf(id);
+        if (index >= 0) {
+            return index;
+        }
+
+        synchronized (this) {
+            index = indexOf(id);
+            if (index >= 0) {
+                return index;
+            }
+
+            int next = size;
+            String[] current = ids;
+            if (next == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[next] = id;
+            ids = current;
+
+            AtomicIntegerArray slots = table;
+            if (2 * (next + 1) > slots.length()) {
+                slots = rehash(current, next, 2 * slots.length());
+            }
+            insert(slots, id, next);
+            table = slots;
+            size = next + 1;
+            return next;
+        }
+    }
+
+    /**
+     * Get the ID stored at an index.
+     *
+     * @param index the index
+     * @return the ID
+     */
+    public String idOf(int index) {
+        return ids[index];
+    }
+
+    /**
+     * Get the number of assigned indices.
+     *
+     * @return the dictionary size
+     */
+    public int size() {
+        return size;
+    }
+
+    private static AtomicIntegerArray rehash(String[] ids, int count, int capacity) {
+        AtomicIntegerArray slots = new AtomicIntegerArray(capacity);
+        for (int index = 0; index < count; index++) {
+            insert(slots, ids[index], index);
+        }
+        return slots;
+    }
+
+    private static void insert(AtomicIntegerArray slots, String id, int index) {
+        int mask = slots.length() - 1;
+        int slot = hash(id) & mask;
+        while (slots.get(slot) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots.set(slot, index + 1);
+    }
+
+    private static int hash(String id) {
+        // Spread the string hash so similar IDs don't cluster in neighbouring slots
+        int hash = id.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
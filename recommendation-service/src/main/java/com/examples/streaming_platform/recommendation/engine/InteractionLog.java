@@ -0,0 +1,604 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import com.examples.streaming_platform.recommendation.event.InteractionRecordedEvent;
+import com.examples.streaming_platform.recommendation.model.UserInteraction;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Append-only binary log of user interactions, scanned by training instead of querying the database.
+ * <p>
+ * Interactions are appended after their transaction commits as fixed-width records of user index,
+ * item index, epoch timestamp, value and type, into memory-mapped segment files of a fixed size.
+ * Indices come from {@link IdDictionaries}, so the log is only trusted while the dictionaries are
+ * persisted. Scans read the mappings sequentially and allocate nothing per record.
+ * <p>
+ * The log only holds interactions recorded through this instance, so it is only usable when one
+ * instance records every interaction, and it refuses to start alongside sharded serving. It is
+ * complete only after a replay from the database or a clean shutdown: a marker written at shutdown
+ * is removed at startup, so after a crash the log is replayed before it is read again. A replay switches appends to an
+ * empty log before it streams {@code user_interactions}, so nothing recorded meanwhile is lost.
+ * Until the replay finishes, the ids of live and replayed interactions are tracked so an
+ * interaction that is both committed in time for the snapshot and appended live is logged once.
+ * <p>
+ * Scans take a reference on each segment they read, and a dropped segment is unmapped once the
+ * last scan reading it is done.
+ */
+@Component
+@Slf4j
+public class InteractionLog {
+
+    private static final int RECORD_BYTES = 24;
+    private static final int HEADER_BYTES = 16;
+    private static final int MAGIC = 0x494C4F47; // "ILOG"
+    private static final int VERSION = 1;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String COMPLETE_MARKER = "complete";
+
+    // Record layout; the type is stored as ordinal + 1 and written last, so 0 marks free space
+    private static final int USER_OFFSET = 0;
+    private static final int ITEM_OFFSET = 4;
+    private static final int TIMESTAMP_OFFSET = 8;
+    private static final int VALUE_OFFSET = 16;
+    private static final int TYPE_OFFSET = 20;
+
+    private static final UserInteraction.InteractionType[] TYPES = UserInteraction.InteractionType.values();
+
+    private static final String REPLAY_QUERY =
+            "SELECT id, user_id, item_id, interaction_type, value, timestamp FROM user_interactions";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final IdDictionaries dictionaries;
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentRecords;
+    private final ExecutorService executor;
+    private final AtomicBoolean replaying = new AtomicBoolean();
+    // Replaced, never modified, so scans work on the segments present when they started
+    private volatile List<Segment> segments = List.of();
+    private volatile boolean complete;
+    private volatile boolean writable;
+    private int nextSegment;
+    // Ids replayed from the snapshot and appended live while a replay runs; guarded by the log's lock
+    private Roaring64Bitmap replayedIds;
+    private Roaring64Bitmap liveIds;
+
+    @Value("${recommendation.interaction-log.replay-on-startup:true}")
+    private boolean replayOnStartup;
+
+    @Value("${recommendation.engine.fetch-size:10000}")
+    private int fetchSize;
+
+    @Value("${recommendation.interactions.retention-days:365}")
+    private int retentionDays;
+
+    public InteractionLog(JdbcTemplate jdbcTemplate,
+                          PlatformTransactionManager transactionManager,
+                          IdDictionaries dictionaries,
+                          @Value("${recommendation.interaction-log.enabled:false}") boolean enabled,
+                          @Value("${recommendation.interaction-log.path:interaction-log/}") String path,
+                          @Value("${recommendation.interaction-log.segment-size-mb:64}") int segmentSizeMb,
+                          @Value("${recommendation.sharding.enabled:false}") boolean sharded) {
+        if (enabled && sharded) {
+            // Every instance would train on its own share of the interactions
+            throw new IllegalStateException("The interaction log only holds interactions recorded through "
+                    + "this instance; disable recommendation.interaction-log.enabled with sharded serving");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.dictionaries = dictionaries;
+        this.enabled = enabled;
+        this.directory = Paths.get(path);
+        this.segmentRecords = (int) (((long) segmentSizeMb << 20) - HEADER_BYTES) / RECORD_BYTES;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "interaction-log-replay");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Receives the records of a scan.
+     */
+    @FunctionalInterface
+    public interface RecordConsumer {
+
+        /**
+         * Accept one interaction.
+         *
+         * @param user the user index
+         * @param item the item index
+         * @param type the interaction type
+         * @param value the interaction value, or NaN if it has none
+         * @param timestampMillis the interaction time in epoch milliseconds
+         */
+        void accept(int user, int item, UserInteraction.InteractionType type, float value, long timestampMillis);
+    }
+
+    /**
+     * Check whether the log holds every interaction and can be scanned instead of the database.
+     *
+     * @return true if the log is complete
+     */
+    public boolean isReady() {
+        return complete;
+    }
+
+    /**
+     * Open the segments left by the previous run and check whether they can be trusted.
+     */
+    @PostConstruct
+    public synchronized void open() {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            Files.createDirectories(directory);
+            boolean trusted = readCompleteMarker();
+            Files.deleteIfExists(directory.resolve(COMPLETE_MARKER));
+            if (!trusted) {
+                log.info("Interaction log in {} is missing or incomplete, it needs a replay", directory);
+                reset();
+                return;
+            }
+
+            List<Segment> opened = new ArrayList<>();
+            for (Path file : segmentFiles()) {
+                opened.add(Segment.open(file));
+                nextSegment = segmentNumber(file) + 1;
+            }
+            segments = List.copyOf(opened);
+            complete = true;
+            writable = true;
+            log.info("Opened interaction log with {} records in {} segments", records(), opened.size());
+        } catch (IOException | IllegalStateException e) {
+            log.error("Could not open interaction log in {}, it needs a replay", directory, e);
+            complete = false;
+            writable = false;
+        }
+    }
+
+    /**
+     * Replay the log from the database at startup if it can't be trusted.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void replayIfIncomplete() {
+        if (enabled && replayOnStartup && !complete) {
+            replay();
+        }
+    }
+
+    /**
+     * Queue a rebuild of the log from {@code user_interactions}, unless one is already running.
+     * The log is not read until the rebuild completes.
+     *
+     * @return true if a rebuild was queued
+     */
+    public boolean replay() {
+        if (!enabled || !replaying.compareAndSet(false, true)) {
+            return false;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    runReplay();
+                } finally {
+                    replaying.set(false);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            replaying.set(false);
+            return false;
+        }
+    }
+
+    /**
+     * Append interactions after their transaction commits.
+     *
+     * @param event the stored interactions
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onInteractionRecorded(InteractionRecordedEvent event) {
+        if (!writable) {
+            return;
+        }
+
+        IdDictionary users = dictionaries.users();
+        IdDictionary items = dictionaries.items();
+        synchronized (this) {
+            for (UserInteraction interaction : event.getInteractions()) {
+                Long id = interaction.getId();
+                if (replayedIds != null && id != null) {
+                    if (replayedIds.contains(id)) {
+                        continue;
+                    }
+                    liveIds.addLong(id);
+                }
+                Double value = interaction.getValue();
+                append(users.getOrAssign(interaction.getUserId()), items.getOrAssign(interaction.getItemId()),
+                        interaction.getInteractionType(), value != null ? value.floatValue() : Float.NaN,
+                        interaction.getTimestamp().toInstant().toEpochMilli());
+            }
+        }
+    }
+
+    /**
+     * Scan every record in the log in append order.
+     * Records appended while the scan runs may or may not be included.
+     *
+     * @param consumer receives the records
+     * @return the number of records scanned
+     */
+    public long scan(RecordConsumer consumer) {
+        long scanned = 0;
+        for (Segment segment : segments) {
+            // Dropped since the list was read
+            if (!segment.retain()) {
+                continue;
+            }
+            try {
+                MappedByteBuffer buffer = segment.buffer;
+                int count = segment.count;
+                for (int record = 0, position = HEADER_BYTES; record < count; record++, position += RECORD_BYTES) {
+                    consumer.accept(buffer.getInt(position + USER_OFFSET), buffer.getInt(position + ITEM_OFFSET),
+                            TYPES[buffer.getInt(position + TYPE_OFFSET) - 1], buffer.getFloat(position + VALUE_OFFSET),
+                            buffer.getLong(position + TIMESTAMP_OFFSET));
+                }
+                scanned += count;
+            } finally {
+                segment.release();
+            }
+        }
+        return scanned;
+    }
+
+    /**
+     * Delete full segments whose newest interaction is past the raw interaction retention.
+     */
+    @Scheduled(cron = "${recommendation.interactions.maintenance-schedule:0 5 * * * ?}")
+    public synchronized void dropExpiredSegments() {
+        List<Segment> current = segments;
+        if (current.size() < 2) {
+            return;
+        }
+
+        long cutoff = System.currentTimeMillis() - Duration.ofDays(retentionDays).toMillis();
+        List<Segment> kept = new ArrayList<>(current.size());
+        for (int n = 0; n < current.size(); n++) {
+            Segment segment = current.get(n);
+            // The last segment takes appends
+            if (n < current.size() - 1 && segment.maxTimestamp() < cutoff) {
+                try {
+                    Files.deleteIfExists(segment.file);
+                    segment.release();
+                    log.info("Dropped expired interaction log segment {}", segment.file);
+                    continue;
+                } catch (IOException e) {
+                    log.error("Could not delete interaction log segment {}", segment.file, e);
+                }
+            }
+            kept.add(segment);
+        }
+        segments = List.copyOf(kept);
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        executor.shutdownNow();
+        if (!complete) {
+            return;
+        }
+
+        // The records refer to dictionary indices, so the dictionaries must be on disk first
+        segments.forEach(segment -> segment.buffer.force());
+        dictionaries.save();
+        try {
+            writeCompleteMarker();
+        } catch (IOException e) {
+            log.error("Could not mark interaction log in {} complete, it will be replayed", directory, e);
+        }
+    }
+
+    /**
+     * Stream every interaction from the database into an empty log.
+     */
+    private void runReplay() {
+        long start = System.currentTimeMillis();
+        synchronized (this) {
+            complete = false;
+            try {
+                reset();
+            } catch (IOException e) {
+                log.error("Could not clear interaction log in {}", directory, e);
+                writable = false;
+                return;
+            }
+            replayedIds = new Roaring64Bitmap();
+            liveIds = new Roaring64Bitmap();
+            writable = true;
+        }
+
+        IdDictionary users = dictionaries.users();
+        IdDictionary items = dictionaries.items();
+        try {
+            // One statement reads one snapshot, taken after appends switched to the new log
+            readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(
+                    connection -> {
+                        PreparedStatement statement = connection.prepareStatement(REPLAY_QUERY);
+                        statement.setFetchSize(fetchSize);
+                        return statement;
+                    },
+                    (RowCallbackHandler) rs -> {
+                        long id = rs.getLong(1);
+                        int user = users.getOrAssign(rs.getString(2));
+                        int item = items.getOrAssign(rs.getString(3));
+                        UserInteraction.InteractionType type = UserInteraction.InteractionType.valueOf(rs.getString(4));
+                        float value = rs.getFloat(5);
+                        if (rs.wasNull()) {
+                            value = Float.NaN;
+                        }
+                        long timestamp = rs.getTimestamp(6).getTime();
+                        synchronized (this) {
+                            // Committed in time for the snapshot and already appended live
+                            if (liveIds.contains(id)) {
+                                return;
+                            }
+                            replayedIds.addLong(id);
+                            append(user, item, type, value, timestamp);
+                        }
+                    }));
+        } catch (RuntimeException e) {
+            log.error("Interaction log replay failed, training keeps reading the database", e);
+            synchronized (this) {
+                writable = false;
+                replayedIds = null;
+                liveIds = null;
+            }
+            return;
+        }
+
+        synchronized (this) {
+            replayedIds = null;
+            liveIds = null;
+            if (!writable) {
+                log.error("Interaction log replay lost appends, training keeps reading the database");
+                return;
+            }
+            complete = true;
+        }
+        log.info("Replayed {} interactions into the interaction log in {} ms",
+                records(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Append one record, starting a new segment when the last one is full.
+     * Callers hold the log's lock.
+     */
+    private void append(int user, int item, UserInteraction.InteractionType type, float value, long timestamp) {
+        if (!writable) {
+            return;
+        }
+
+        try {
+            List<Segment> current = segments;
+            Segment segment = current.isEmpty() ? null : current.get(current.size() - 1);
+            if (segment == null || segment.count == segment.capacity) {
+                if (segment != null) {
+                    segment.buffer.force();
+                }
+                segment = Segment.create(directory.resolve(String.format("%010d%s", nextSegment++, SEGMENT_SUFFIX)),
+                        segmentRecords);
+                List<Segment> extended = new ArrayList<>(current);
+                extended.add(segment);
+                segments = List.copyOf(extended);
+            }
+            segment.append(user, item, type, value, timestamp);
+        } catch (IOException e) {
+            // A gap can't be filled in later, so stop trusting the log until it is replayed
+            log.error("Could not append to interaction log in {}, it needs a replay", directory, e);
+            writable = false;
+            complete = false;
+        }
+    }
+
+    /**
+     * Delete every segment and start an empty log. Callers hold the log's lock.
+     */
+    private void reset() throws IOException {
+        segments.forEach(Segment::release);
+        segments = List.of();
+        nextSegment = 0;
+        for (Path file : segmentFiles()) {
+            Files.delete(file);
+        }
+    }
+
+    private long records() {
+        long records = 0;
+        for (Segment segment : segments) {
+            records += segment.count;
+        }
+        return records;
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * Check the marker left by a clean shutdown against the dictionaries it was written with.
+     */
+    private boolean readCompleteMarker() throws IOException {
+        Path marker = directory.resolve(COMPLETE_MARKER);
+        if (!dictionaries.isPersistent() || !Files.exists(marker)) {
+            return false;
+        }
+
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(marker))) {
+            int users = in.readInt();
+            int items = in.readInt();
+            // Indices past the loaded dictionaries would be reassigned to other IDs
+            return dictionaries.users().size() >= users && dictionaries.items().size() >= items;
+        }
+    }
+
+    private void writeCompleteMarker() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(directory.resolve(COMPLETE_MARKER)))) {
+            out.writeInt(dictionaries.users().size());
+            out.writeInt(dictionaries.items().size());
+        }
+    }
+
+    private static int segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * One segment file, mapped for its whole size: a header of magic, version, record size and
+     * capacity, then the records.
+     */
+    private static final class Segment {
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        // Records written; published after each record so scans only see complete ones
+        private volatile int count;
+        // One reference belongs to the log until the segment is dropped, one to each running scan
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private Segment(Path file, MappedByteBuffer buffer, int capacity, int count) {
+            this.file = file;
+            this.buffer = buffer;
+            this.capacity = capacity;
+            this.count = count;
+        }
+
+        private static Segment create(Path file, int capacity) throws IOException {
+            MappedByteBuffer buffer = map(file, HEADER_BYTES + (long) capacity * RECORD_BYTES);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, RECORD_BYTES);
+            buffer.putInt(12, capacity);
+            return new Segment(file, buffer, capacity, 0);
+        }
+
+        private static Segment open(Path file) throws IOException {
+            MappedByteBuffer buffer = map(file, Files.size(file));
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != RECORD_BYTES) {
+                throw new IllegalStateException("Not an interaction log segment: " + file);
+            }
+            int capacity = buffer.getInt(12);
+
+            // Records are filled in order, so the used ones are a prefix
+            int low = 0;
+            int high = capacity;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (buffer.getInt(HEADER_BYTES + middle * RECORD_BYTES + TYPE_OFFSET) != 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return new Segment(file, buffer, capacity, low);
+        }
+
+        private static MappedByteBuffer map(Path file, long size) throws IOException {
+            try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                return buffer;
+            }
+        }
+
+        private void append(int user, int item, UserInteraction.InteractionType type, float value, long timestamp) {
+            int position = HEADER_BYTES + count * RECORD_BYTES;
+            buffer.putInt(position + USER_OFFSET, user);
+            buffer.putInt(position + ITEM_OFFSET, item);
+            buffer.putLong(position + TIMESTAMP_OFFSET, timestamp);
+            buffer.putFloat(position + VALUE_OFFSET, value);
+            buffer.putInt(position + TYPE_OFFSET, type.ordinal() + 1);
+            count++;
+        }
+
+        /**
+         * Take a reference for a scan.
+         *
+         * @return false if the segment has already been dropped and unmapped
+         */
+        private boolean retain() {
+            while (true) {
+                int current = references.get();
+                if (current == 0) {
+                    return false;
+                }
+                if (references.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Give back a scan's reference, or the log's when the segment is dropped. The mapping is
+         * released with the last reference.
+         */
+        private void release() {
+            if (references.decrementAndGet() == 0) {
+                MappedBuffers.unmap(buffer);
+            }
+        }
+
+        private long maxTimestamp() {
+            long max = Long.MIN_VALUE;
+            for (int record = 0; record < count; record++) {
+                max = Math.max(max, buffer.getLong(HEADER_BYTES + record * RECORD_BYTES + TIMESTAMP_OFFSET));
+            }
+            return max;
+        }
+    }
+}
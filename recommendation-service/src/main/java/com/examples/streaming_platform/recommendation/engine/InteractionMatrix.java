@@ -0,0 +1,295 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import java.util.Arrays;
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * Immutable sparse user-item matrix stored in both CSR (by user) and CSC (by item) layout.
+ * Rows and columns are dense indices from {@link IdDictionaries}; values are aggregated preferences.
+ */
+public final class InteractionMatrix {
+
+    private final int numUsers;
+    private final int numItems;
+
+    // CSR: items and values for user u are in [userOffsets[u], userOffsets[u + 1])
+    private final int[] userOffsets;
+    private final int[] rowItems;
+    private final float[] rowValues;
+
+    // CSC: users and values for item i are in [itemOffsets[i], itemOffsets[i + 1])
+    private final int[] itemOffsets;
+    private final int[] columnUsers;
+    private final float[] columnValues;
+
+    private final float[] userNorms;
+    private final float[] itemNorms;
+    private final long builtAtMillis;
+
+    private InteractionMatrix(int numUsers, int numItems,
+                              int[] userOffsets, int[] rowItems, float[] rowValues,
+                              int[] itemOffsets, int[] columnUsers, float[] columnValues,
+                              float[] userNorms, float[] itemNorms, long builtAtMillis) {
+        this.numUsers = numUsers;
+        this.numItems = numItems;
+        this.userOffsets = userOffsets;
+        this.rowItems = rowItems;
+        this.rowValues = rowValues;
+        this.itemOffsets = itemOffsets;
+        this.columnUsers = columnUsers;
+        this.columnValues = columnValues;
+        this.userNorms = userNorms;
+        this.itemNorms = itemNorms;
+        this.builtAtMillis = builtAtMillis;
+    }
+
+    public int numUsers() {
+        return numUsers;
+    }
+
+    public int numItems() {
+        return numItems;
+    }
+
+    public int nonZeros() {
+        return rowItems.length;
+    }
+
+    /**
+     * Get the time the source data was read. Interactions recorded before this time are included.
+     *
+     * @return the snapshot time in epoch milliseconds
+     */
+    public long builtAtMillis() {
+        return builtAtMillis;
+    }
+
+    /**
+     * Check whether a user has a row in this matrix.
+     *
+     * @param user the user index
+     * @return true if the user has at least one interaction
+     */
+    public boolean hasUser(int user) {
+        return user >= 0 && user < numUsers && userOffsets[user] < userOffsets[user + 1];
+    }
+
+    /**
+     * Check whether an item has a column in this matrix.
+     *
+     * @param item the item index
+     * @return true if the item has at least one interaction
+     */
+    public boolean hasItem(int item) {
+        return item >= 0 && item < numItems && itemOffsets[item] < itemOffsets[item + 1];
+    }
+
+    public int rowStart(int user) {
+        return userOffsets[user];
+    }
+
+    public int rowEnd(int user) {
+        return userOffsets[user + 1];
+    }
+
+    public int rowItem(int position) {
+        return rowItems[position];
+    }
+
+    public float rowValue(int position) {
+        return rowValues[position];
+    }
+
+    /**
+     * Copy the item indices of a user's row.
+     *
+     * @param user the user index
+     * @return the item indices, in storage order
+     */
+    public int[] rowItemsCopy(int user) {
+        return Arrays.copyOfRange(rowItems, userOffsets[user], userOffsets[user + 1]);
+    }
+
+    public int columnStart(int item) {
+        return itemOffsets[item];
+    }
+
+    public int columnEnd(int item) {
+        return itemOffsets[item + 1];
+    }
+
+    public int columnUser(int position) {
+        return columnUsers[position];
+    }
+
+    public float columnValue(int position) {
+        return columnValues[position];
+    }
+
+    public float userNorm(int user) {
+        return userNorms[user];
+    }
+
+    public float itemNorm(int item) {
+        return itemNorms[item];
+    }
+
+    /**
+     * Create a builder for a new matrix.
+     *
+     * @param expectedNonZeros the expected number of entries
+     * @return a new builder
+     */
+    public static Builder builder(int expectedNonZeros) {
+        return new Builder(expectedNonZeros);
+    }
+
+    /**
+     * Accumulates (user, item, value) triples in primitive arrays and lays them out as CSR and CSC.
+     * Each (user, item) pair must be added at most once.
+     */
+    public static final class Builder {
+
+        private int[] users;
+        private int[] items;
+        private float[] values;
+        private int size;
+
+        private Builder(int expectedNonZeros) {
+            int capacity = Math.max(16, expectedNonZeros);
+            this.users = new int[capacity];
+            this.items = new int[capacity];
+            this.values = new float[capacity];
+        }
+
+        /**
+         * Add an entry.
+         *
+         * @param user the user index
+         * @param item the item index
+         * @param value the preference value
+         * @return this builder
+         */
+        public Builder add(int user, int item, float value) {
+            if (size == users.length) {
+                int capacity = size * 2;
+                users = Arrays.copyOf(users, capacity);
+                items = Arrays.copyOf(items, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            users[size] = user;
+            items[size] = item;
+            values[size] = value;
+            size++;
+            return this;
+        }
+
+        /**
+         * Merge the entries added for the same (user, item) into one, for sources that hold raw
+         * interactions rather than one aggregated row per pair.
+         *
+         * @param numUsers the number of user rows (at least the highest user index plus one)
+         * @param combiner combines the values of two entries for the same pair
+         * @param positiveOnly whether to drop merged entries whose value is not positive
+         * @return this builder
+         */
+        public Builder mergeDuplicates(int numUsers, DoubleBinaryOperator combiner, boolean positiveOnly) {
+            // Group entries by user with a counting sort, packing item and value bits into one long
+            int[] offsets = new int[numUsers + 1];
+            for (int n = 0; n < size; n++) {
+                offsets[users[n] + 1]++;
+            }
+            for (int u = 0; u < numUsers; u++) {
+                offsets[u + 1] += offsets[u];
+            }
+            int[] cursor = Arrays.copyOf(offsets, numUsers);
+            long[] entries = new long[size];
+            for (int n = 0; n < size; n++) {
+                entries[cursor[users[n]]++] = ((long) items[n] << 32) | (Float.floatToRawIntBits(values[n]) & 0xFFFFFFFFL);
+            }
+
+            // Sorting a user's entries brings the entries of each item together
+            int merged = 0;
+            for (int u = 0; u < numUsers; u++) {
+                int end = offsets[u + 1];
+                Arrays.sort(entries, offsets[u], end);
+                for (int n = offsets[u]; n < end; ) {
+                    int item = (int) (entries[n] >>> 32);
+                    double value = Float.intBitsToFloat((int) entries[n]);
+                    for (n++; n < end && (int) (entries[n] >>> 32) == item; n++) {
+                        value = combiner.applyAsDouble(value, Float.intBitsToFloat((int) entries[n]));
+                    }
+                    if (!positiveOnly || value > 0) {
+                        users[merged] = u;
+                        items[merged] = item;
+                        values[merged] = (float) value;
+                        merged++;
+                    }
+                }
+            }
+            size = merged;
+            return this;
+        }
+
+        /**
+         * Build the matrix.
+         *
+         * @param numUsers the number of user rows (at least the highest user index plus one)
+         * @param numItems the number of item columns (at least the highest item index plus one)
+         * @param snapshotAtMillis the time the source data was read
+         * @return the matrix
+         */
+        public InteractionMatrix build(int numUsers, int numItems, long snapshotAtMillis) {
+            int[] userOffsets = new int[numUsers + 1];
+            int[] itemOffsets = new int[numItems + 1];
+            for (int n = 0; n < size; n++) {
+                userOffsets[users[n] + 1]++;
+                itemOffsets[items[n] + 1]++;
+            }
+            for (int u = 0; u < numUsers; u++) {
+                userOffsets[u + 1] += userOffsets[u];
+            }
+            for (int i = 0; i < numItems; i++) {
+                itemOffsets[i + 1] += itemOffsets[i];
+            }
+
+            // Counting sort into both layouts
+            int[] rowItems = new int[size];
+            float[] rowValues = new float[size];
+            int[] columnUsers = new int[size];
+            float[] columnValues = new float[size];
+            int[] rowCursor = Arrays.copyOf(userOffsets, numUsers);
+            int[] columnCursor = Arrays.copyOf(itemOffsets, numItems);
+            float[] userNorms = new float[numUsers];
+            float[] itemNorms = new float[numItems];
+
+            for (int n = 0; n < size; n++) {
+                int user = users[n];
+                int item = items[n];
+                float value = values[n];
+
+                int row = rowCursor[user]++;
+                rowItems[row] = item;
+                rowValues[row] = value;
+
+                int column = columnCursor[item]++;
+                columnUsers[column] = user;
+                columnValues[column] = value;
+
+                userNorms[user] += value * value;
+                itemNorms[item] += value * value;
+            }
+            for (int u = 0; u < numUsers; u++) {
+                userNorms[u] = (float) Math.sqrt(userNorms[u]);
+            }
+            for (int i = 0; i < numItems; i++) {
+                itemNorms[i] = (float) Math.sqrt(itemNorms[i]);
+            }
+
+            return new InteractionMatrix(numUsers, numItems,
+                    userOffsets, rowItems, rowValues,
+                    itemOffsets, columnUsers, columnValues,
+                    userNorms, itemNorms, snapshotAtMillis);
+        }
+    }
+}
@@ -0,0 +1,520 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import com.examples.streaming_platform.recommendation.event.InteractionRecordedEvent;
+import com.examples.streaming_platform.recommendation.model.UserInteraction;
+import com.examples.streaming_platform.recommendation.sharding.ShardMembership;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Precomputed top-K co-occurrence neighbours per item.
+ * Two items co-occur for every user with a positive interaction with both, that is any interaction
+ * in the collaborative filtering matrix (every type but DISLIKE), not only views.
+ * Neighbour lists are held in an array indexed by item index and persisted to {@code item_neighbors}.
+ * A scheduled batch job recomputes every item with fork-join over item partitions, and an incremental
+ * job recomputes the items with new interactions once the matrix snapshot includes them, followed by
+ * the co-occurring items whose own lists the new counts would change.
+ * With sharded serving the matrix only covers this instance's users, so nothing is recomputed and
+ * the table, maintained by an unsharded instance, is reloaded whenever it changes.
+ */
+@Component
+@Slf4j
+public class ItemNeighborIndex {
+
+    private static final String LOAD_QUERY =
+            "SELECT item_id, neighbor_item_id, cooccurrence_count FROM item_neighbors " +
+            "ORDER BY item_id, neighbor_rank";
+
+    private static final String LAST_UPDATE_QUERY = "SELECT MAX(updated_at) FROM item_neighbors";
+
+    private static final String DELETE_ALL = "DELETE FROM item_neighbors";
+
+    private static final String DELETE_ITEM = "DELETE FROM item_neighbors WHERE item_id = ?";
+
+    private static final String INSERT =
+            "INSERT INTO item_neighbors (item_id, neighbor_rank, neighbor_item_id, cooccurrence_count, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?)";
+
+    private static final int PARTITION_SIZE = 256;
+
+    private static final int INSERT_BATCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+    private final IdDictionaries dictionaries;
+    private final CollaborativeFilteringEngine collaborativeFilteringEngine;
+    private final ShardMembership shardMembership;
+    private final Map<Integer, Long> dirtyItems = new ConcurrentHashMap<>();
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<>();
+    private final ForkJoinPool pool;
+    private volatile AtomicReferenceArray<Neighbors> neighbors = new AtomicReferenceArray<>(0);
+    private boolean loaded;
+    private Timestamp loadedUpdate;
+
+    @Value("${recommendation.item-neighbors.k:50}")
+    private int k;
+
+    @Value("${recommendation.item-neighbors.min-cooccurrences:3}")
+    private int minCooccurrences;
+
+    public ItemNeighborIndex(JdbcTemplate jdbcTemplate,
+                             PlatformTransactionManager transactionManager,
+                             IdDictionaries dictionaries,
+                             CollaborativeFilteringEngine collaborativeFilteringEngine,
+                             ShardMembership shardMembership,
+                             @Value("${recommendation.item-neighbors.parallelism:2}") int parallelism) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.dictionaries = dictionaries;
+        this.collaborativeFilteringEngine = collaborativeFilteringEngine;
+        this.shardMembership = shardMembership;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Get the precomputed neighbours of an item.
+     *
+     * @param itemId the item ID
+     * @return the neighbours sorted by descending co-occurrence, or null if none are stored
+     */
+    public Neighbors get(String itemId) {
+        int item = dictionaries.items().indexOf(itemId);
+        AtomicReferenceArray<Neighbors> current = neighbors;
+        if (item < 0 || item >= current.length()) {
+            return null;
+        }
+        return current.get(item);
+    }
+
+    /**
+     * Mark the items of new interactions for recomputation. The items of the user's history that
+     * gain a co-occurrence are found when the interacted item is recomputed, since the counts are
+     * symmetric.
+     *
+     * @param event the interaction event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onInteractionRecorded(InteractionRecordedEvent event) {
+        if (shardMembership.isEnabled()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (UserInteraction interaction : event.getInteractions()) {
+            dirtyItems.put(dictionaries.items().getOrAssign(interaction.getItemId()), now);
+        }
+    }
+
+    /**
+     * Recompute every item's neighbours and rewrite the table.
+     */
+    @Scheduled(cron = "${recommendation.item-neighbors.rebuild-schedule:0 30 2 * * ?}")
+    public synchronized void rebuild() {
+        if (shardMembership.isEnabled()) {
+            log.debug("Skipping item neighbour rebuild, a shard only holds part of the users");
+            return;
+        }
+
+        InteractionMatrix matrix = collaborativeFilteringEngine.getMatrix();
+        if (matrix == null) {
+            log.debug("Skipping item neighbour rebuild, interaction matrix not loaded yet");
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+
+        int[] items = new int[matrix.numItems()];
+        int count = 0;
+        for (int item = 0; item < matrix.numItems(); item++) {
+            if (matrix.hasItem(item)) {
+                items[count++] = item;
+            }
+        }
+        int[] withInteractions = Arrays.copyOf(items, count);
+
+        Neighbors[] computed = new Neighbors[matrix.numItems()];
+        pool.invoke(new ComputeTask(matrix, withInteractions, 0, withInteractions.length, computed, null));
+
+        transaction.executeWithoutResult(status -> {
+            jdbcTemplate.update(DELETE_ALL);
+            insert(computed, withInteractions);
+        });
+
+        AtomicReferenceArray<Neighbors> rebuilt = new AtomicReferenceArray<>(
+                Math.max(computed.length, dictionaries.items().size()));
+        for (int item : withInteractions) {
+            rebuilt.set(item, computed[item]);
+        }
+        neighbors = rebuilt;
+        dirtyItems.values().removeIf(markedAt -> markedAt < matrix.builtAtMillis());
+
+        log.info("Rebuilt item neighbours for {} items in {}ms",
+                withInteractions.length, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Load stored neighbours on the first run, build them if none exist, then recompute items
+     * whose new interactions are included in the current matrix snapshot.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${recommendation.item-neighbors.update-interval-ms:60000}")
+    public synchronized void applyUpdates() {
+        try {
+            if (shardMembership.isEnabled()) {
+                reloadIfUpdated();
+                return;
+            }
+
+            if (!loaded) {
+                loadFromDatabase();
+                loaded = true;
+            }
+
+            InteractionMatrix matrix = collaborativeFilteringEngine.getMatrix();
+            if (matrix == null) {
+                return;
+            }
+
+            if (isEmpty()) {
+                rebuild();
+                return;
+            }
+
+            // Only drain items whose change is visible in the snapshot
+            int[] items = new int[dirtyItems.size()];
+            int count = 0;
+            for (Map.Entry<Integer, Long> entry : dirtyItems.entrySet()) {
+                int item = entry.getKey();
+                if (count < items.length && item < matrix.numItems()
+                        && entry.getValue() < matrix.builtAtMillis()
+                        && dirtyItems.remove(item, entry.getValue())) {
+                    items[count++] = item;
+                }
+            }
+            if (count == 0) {
+                return;
+            }
+            int[] changed = Arrays.copyOf(items, count);
+
+            Neighbors[] computed = new Neighbors[matrix.numItems()];
+            Set<Integer> affected = ConcurrentHashMap.newKeySet();
+            pool.invoke(new ComputeTask(matrix, changed, 0, changed.length, computed, affected));
+
+            // Then the co-occurring items whose lists the changed items' new counts would alter
+            int[] updated = Arrays.copyOf(changed, changed.length + affected.size());
+            int total = changed.length;
+            for (int item : affected) {
+                if (computed[item] == null) {
+                    updated[total++] = item;
+                }
+            }
+            pool.invoke(new ComputeTask(matrix, updated, changed.length, total, computed, null));
+            updated = Arrays.copyOf(updated, total);
+            int[] written = updated;
+
+            transaction.executeWithoutResult(status -> {
+                List<Object[]> deletes = new ArrayList<>(written.length);
+                for (int item : written) {
+                    deletes.add(new Object[]{dictionaries.items().idOf(item)});
+                }
+                jdbcTemplate.batchUpdate(DELETE_ITEM, deletes);
+                insert(computed, written);
+            });
+
+            AtomicReferenceArray<Neighbors> current = ensureCapacity(dictionaries.items().size());
+            for (int item : updated) {
+                current.set(item, computed[item]);
+            }
+
+            log.debug("Updated item neighbours for {} items with new interactions and {} co-occurring items",
+                    changed.length, updated.length - changed.length);
+        } catch (Exception e) {
+            log.error("Error updating item neighbours", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Reload the stored neighbour lists if they were written since the last load.
+     */
+    private void reloadIfUpdated() {
+        Timestamp lastUpdate = jdbcTemplate.queryForObject(LAST_UPDATE_QUERY, Timestamp.class);
+        if (lastUpdate == null || lastUpdate.equals(loadedUpdate)) {
+            return;
+        }
+
+        loadFromDatabase();
+        loaded = true;
+        loadedUpdate = lastUpdate;
+    }
+
+    /**
+     * Load neighbour lists stored by a previous run, replacing the current ones, so items whose
+     * rows were removed don't keep their old lists.
+     */
+    private void loadFromDatabase() {
+        IdDictionary items = dictionaries.items();
+        Map<Integer, List<int[]>> rows = new HashMap<>();
+
+        jdbcTemplate.query(LOAD_QUERY, (RowCallbackHandler) rs -> rows
+                .computeIfAbsent(items.getOrAssign(rs.getString(1)), item -> new ArrayList<>())
+                .add(new int[]{items.getOrAssign(rs.getString(2)), rs.getInt(3)}));
+
+        AtomicReferenceArray<Neighbors> loadedNeighbors = new AtomicReferenceArray<>(items.size());
+        rows.forEach((item, list) -> {
+            int[] neighbourItems = new int[list.size()];
+            int[] counts = new int[list.size()];
+            for (int i = 0; i < list.size(); i++) {
+                neighbourItems[i] = list.get(i)[0];
+                counts[i] = list.get(i)[1];
+            }
+            loadedNeighbors.set(item, new Neighbors(neighbourItems, counts));
+        });
+        neighbors = loadedNeighbors;
+
+        log.info("Loaded stored item neighbours for {} items", rows.size());
+    }
+
+    /**
+     * Insert neighbour rows for the given items in batches.
+     */
+    private void insert(Neighbors[] computed, int[] items) {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        List<Object[]> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+
+        for (int item : items) {
+            Neighbors itemNeighbors = computed[item];
+            String itemId = dictionaries.items().idOf(item);
+
+            for (int rank = 0; rank < itemNeighbors.size(); rank++) {
+                batch.add(new Object[]{itemId, rank, dictionaries.items().idOf(itemNeighbors.item(rank)),
+                        itemNeighbors.count(rank), now});
+                if (batch.size() == INSERT_BATCH_SIZE) {
+                    jdbcTemplate.batchUpdate(INSERT, batch);
+                    batch.clear();
+                }
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT, batch);
+        }
+    }
+
+    private boolean isEmpty() {
+        AtomicReferenceArray<Neighbors> current = neighbors;
+        for (int i = 0; i < current.length(); i++) {
+            if (current.get(i) != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Grow the neighbour array so it can hold the given number of items. Called by the
+     * (synchronized) writers only.
+     */
+    private AtomicReferenceArray<Neighbors> ensureCapacity(int size) {
+        AtomicReferenceArray<Neighbors> current = neighbors;
+        if (current.length() >= size) {
+            return current;
+        }
+
+        AtomicReferenceArray<Neighbors> grown = new AtomicReferenceArray<>(Math.max(size, current.length() * 2));
+        for (int i = 0; i < current.length(); i++) {
+            grown.set(i, current.get(i));
+        }
+        neighbors = grown;
+        return grown;
+    }
+
+    /**
+     * Count co-occurrences of one item with every other item and keep the top K.
+     *
+     * @param affected if not null, receives the co-occurring items whose own lists the counts would
+     *                 change: those that list this item, or that it would now enter
+     */
+    private Neighbors computeNeighbors(InteractionMatrix matrix, int item, Set<Integer> affected) {
+        Scratch s = scratch.get();
+        if (s == null || s.stamp.length < matrix.numItems()) {
+            s = new Scratch(matrix.numItems());
+            scratch.set(s);
+        }
+        int generation = s.nextGeneration();
+
+        int touched = 0;
+        for (int q = matrix.columnStart(item); q < matrix.columnEnd(item); q++) {
+            int user = matrix.columnUser(q);
+            for (int p = matrix.rowStart(user); p < matrix.rowEnd(user); p++) {
+                int other = matrix.rowItem(p);
+                if (other == item) {
+                    continue;
+                }
+                if (s.stamp[other] != generation) {
+                    s.stamp[other] = generation;
+                    s.counts[other] = 0;
+                    s.touched[touched++] = other;
+                }
+                s.counts[other]++;
+            }
+        }
+
+        AtomicReferenceArray<Neighbors> current = neighbors;
+        TopKSelector top = s.top;
+        top.reset(k);
+        for (int t = 0; t < touched; t++) {
+            int other = s.touched[t];
+            if (s.counts[other] >= minCooccurrences) {
+                top.offer(other, s.counts[other]);
+            }
+            if (affected != null && changesList(other < current.length() ? current.get(other) : null,
+                    item, s.counts[other])) {
+                affected.add(other);
+            }
+        }
+        top.sortDescending();
+
+        int[] neighbourItems = new int[top.size()];
+        int[] counts = new int[top.size()];
+        for (int rank = 0; rank < top.size(); rank++) {
+            neighbourItems[rank] = top.id(rank);
+            counts[rank] = (int) top.score(rank);
+        }
+        return new Neighbors(neighbourItems, counts);
+    }
+
+    /**
+     * Check whether an item's stored list is changed by its co-occurrence count with another item.
+     */
+    private boolean changesList(Neighbors stored, int item, int count) {
+        if (count < minCooccurrences) {
+            return false;
+        }
+        int listed = stored != null ? stored.countOf(item) : -1;
+        if (listed >= 0) {
+            return listed != count;
+        }
+        return stored == null || stored.size() < k || count > stored.count(stored.size() - 1);
+    }
+
+    /**
+     * Neighbour list of one item, sorted by descending co-occurrence count.
+     */
+    public static final class Neighbors {
+        private final int[] items;
+        private final int[] counts;
+
+        private Neighbors(int[] items, int[] counts) {
+            this.items = items;
+            this.counts = counts;
+        }
+
+        public int size() {
+            return items.length;
+        }
+
+        public int item(int rank) {
+            return items[rank];
+        }
+
+        public int count(int rank) {
+            return counts[rank];
+        }
+
+        private int countOf(int item) {
+            for (int rank = 0; rank < items.length; rank++) {
+                if (items[rank] == item) {
+                    return counts[rank];
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Fork-join task that splits a range of items into partitions.
+     */
+    private final class ComputeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final InteractionMatrix matrix;
+        private final int[] items;
+        private final int from;
+        private final int to;
+        private final Neighbors[] out;
+        private final Set<Integer> affected;
+
+        private ComputeTask(InteractionMatrix matrix, int[] items, int from, int to, Neighbors[] out,
+                            Set<Integer> affected) {
+            this.matrix = matrix;
+            this.items = items;
+            this.from = from;
+            this.to = to;
+            this.out = out;
+            this.affected = affected;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARTITION_SIZE) {
+                for (int i = from; i < to; i++) {
+                    out[items[i]] = computeNeighbors(matrix, items[i], affected);
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new ComputeTask(matrix, items, from, middle, out, affected),
+                    new ComputeTask(matrix, items, middle, to, out, affected));
+        }
+    }
+
+    /**
+     * Per-thread counting arrays, reset by generation stamp.
+     */
+    private static final class Scratch {
+        private final int[] stamp;
+        private final int[] counts;
+        private final int[] touched;
+        private final TopKSelector top = new TopKSelector(0);
+        private int generation;
+
+        private Scratch(int numItems) {
+            this.stamp = new int[numItems];
+            this.counts = new int[numItems];
+            this.touched = new int[numItems];
+        }
+
+        private int nextGeneration() {
+            if (++generation == Integer.MAX_VALUE) {
+                Arrays.fill(stamp, 0);
+                generation = 1;
+            }
+            return generation;
+        }
+    }
+}
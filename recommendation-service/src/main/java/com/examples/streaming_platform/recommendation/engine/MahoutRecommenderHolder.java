@@ -0,0 +1,355 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.impl.model.GenericDataModel;
+import org.apache.mahout.cf.taste.impl.model.GenericUserPreferenceArray;
+import org.apache.mahout.cf.taste.impl.neighborhood.ThresholdUserNeighborhood;
+import org.apache.mahout.cf.taste.impl.recommender.GenericUserBasedRecommender;
+import org.apache.mahout.cf.taste.impl.similarity.CachingUserSimilarity;
+import org.apache.mahout.cf.taste.impl.similarity.PearsonCorrelationSimilarity;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.cf.taste.recommender.UserBasedRecommender;
+import org.apache.mahout.cf.taste.similarity.UserSimilarity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ToIntFunction;
+
+/**
+ * Long-lived Mahout user-based recommender.
+ * The data model is loaded once and then tailed: rows with an id above the last seen id are merged
+ * into a copy of the preference map and a rebuilt recommender is swapped in atomically.
+ * Ids become visible when their transaction commits rather than in id order, so each delta re-reads
+ * a trailing window of {@code delta-id-slack} ids below the last seen one and skips the rows it has
+ * already applied. A periodic full reload picks up anything committed later than that.
+ * Users and items are identified to Mahout by their indices in the shared ID dictionaries, so
+ * string IDs of any format are supported.
+ */
+@Component
+@Slf4j
+public class MahoutRecommenderHolder {
+
+    private static final String FULL_LOAD_QUERY =
+            "SELECT user_id, item_id, MAX(COALESCE(value, 1.0)), MAX(id) FROM user_interactions " +
+            "WHERE interaction_type <> 'DISLIKE' " +
+            "GROUP BY user_id, item_id";
+
+    private static final String DELTA_QUERY =
+            "SELECT user_id, item_id, COALESCE(value, 1.0), id FROM user_interactions " +
+            "WHERE id > ? AND interaction_type <> 'DISLIKE' " +
+            "ORDER BY id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final IdDictionaries dictionaries;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final Timer fullLoadTimer;
+    private final Timer deltaLoadTimer;
+    private int refreshesSinceFullLoad;
+
+    @Value("${recommendation.mahout.enabled:false}")
+    private boolean enabled;
+
+    @Value("${recommendation.mahout.full-reload-every:60}")
+    private int fullReloadEvery;
+
+    @Value("${recommendation.mahout.delta-id-slack:10000}")
+    private long deltaIdSlack;
+
+    @Value("${recommendation.engine.fetch-size:10000}")
+    private int fetchSize;
+
+    @Value("${recommendation.algorithm.similarity-threshold:0.1}")
+    private double similarityThreshold;
+
+    public MahoutRecommenderHolder(JdbcTemplate jdbcTemplate,
+                                   PlatformTransactionManager transactionManager,
+                                   IdDictionaries dictionaries,
+                                   MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dictionaries = dictionaries;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+
+        this.fullLoadTimer = Timer.builder("recommendation.mahout.load.duration")
+                .description("Time to load or refresh the Mahout data model")
+                .tag("type", "full")
+                .register(meterRegistry);
+        this.deltaLoadTimer = Timer.builder("recommendation.mahout.load.duration")
+                .description("Time to load or refresh the Mahout data model")
+                .tag("type", "delta")
+                .register(meterRegistry);
+
+        Gauge.builder("recommendation.mahout.refresh.lag", this, MahoutRecommenderHolder::refreshLagSeconds)
+                .description("Seconds since the model was last refreshed")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("recommendation.mahout.model.size", this, holder -> holder.modelSize(Snapshot::users))
+                .description("Number of entries in the Mahout data model")
+                .tag("dimension", "users")
+                .register(meterRegistry);
+        Gauge.builder("recommendation.mahout.model.size", this, holder -> holder.modelSize(Snapshot::items))
+                .description("Number of entries in the Mahout data model")
+                .tag("dimension", "items")
+                .register(meterRegistry);
+        Gauge.builder("recommendation.mahout.model.size", this, holder -> holder.modelSize(Snapshot::preferences))
+                .description("Number of entries in the Mahout data model")
+                .tag("dimension", "preferences")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Check whether a recommender has been loaded.
+     *
+     * @return true if the holder can serve requests
+     */
+    public boolean isReady() {
+        return snapshot.get() != null;
+    }
+
+    /**
+     * Recommend items for a user from the current recommender.
+     *
+     * @param userId the user ID
+     * @param limit the maximum number of items
+     * @return the recommended items, identified by item index, empty if the holder is not loaded or
+     *         the user is unknown
+     * @throws TasteException if Mahout fails to score the user
+     */
+    public List<RecommendedItem> recommend(String userId, int limit) throws TasteException {
+        Snapshot current = snapshot.get();
+        if (current == null) {
+            return Collections.emptyList();
+        }
+
+        int user = dictionaries.users().indexOf(userId);
+        if (user < 0 || current.userData.get(user) == null) {
+            return Collections.emptyList();
+        }
+
+        return current.recommender.recommend(user, limit);
+    }
+
+    /**
+     * Apply new interactions to the model, or reload it from scratch on the first run and
+     * every {@code full-reload-every} refreshes.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${recommendation.mahout.refresh-interval-ms:60000}")
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            Snapshot current = snapshot.get();
+            if (current == null || ++refreshesSinceFullLoad >= fullReloadEvery) {
+                fullLoadTimer.record(this::loadFull);
+                refreshesSinceFullLoad = 0;
+            } else {
+                deltaLoadTimer.record(() -> loadDelta(current));
+            }
+        } catch (Exception e) {
+            log.error("Error refreshing Mahout model, keeping previous snapshot", e);
+        }
+    }
+
+    /**
+     * Load every (user, item) preference and build a new recommender.
+     */
+    private void loadFull() {
+        Map<Long, Map<Long, Float>> preferences = new HashMap<>();
+        long[] maxId = {0L};
+
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(
+                connection -> {
+                    PreparedStatement statement = connection.prepareStatement(FULL_LOAD_QUERY);
+                    statement.setFetchSize(fetchSize);
+                    return statement;
+                },
+                (RowCallbackHandler) rs -> {
+                    maxId[0] = Math.max(maxId[0], rs.getLong(4));
+                    addPreference(preferences, rs.getString(1), rs.getString(2), rs.getFloat(3));
+                }));
+
+        FastByIDMap<PreferenceArray> userData = new FastByIDMap<>(preferences.size());
+        preferences.forEach((userId, items) -> userData.put(userId, toPreferenceArray(userId, items)));
+
+        // The first delta re-reads the trailing window; merging keeps the highest value, so that is harmless
+        Snapshot loaded = buildSnapshot(userData, maxId[0], Set.of());
+        snapshot.set(loaded);
+        log.info("Loaded Mahout model: {} users, {} items, {} preferences",
+                loaded.users(), loaded.items(), loaded.preferences());
+    }
+
+    /**
+     * Merge interactions newer than the snapshot's watermark, and those in the trailing window that
+     * committed since the last delta, into a copy of its preferences.
+     *
+     * @param current the snapshot to extend
+     */
+    private void loadDelta(Snapshot current) {
+        Map<Long, Map<Long, Float>> changed = new HashMap<>();
+        long[] maxId = {current.lastSeenId};
+        Set<Long> windowIds = new HashSet<>();
+
+        jdbcTemplate.query(DELTA_QUERY,
+                (RowCallbackHandler) rs -> {
+                    long id = rs.getLong(4);
+                    windowIds.add(id);
+                    if (current.windowIds.contains(id)) {
+                        return;
+                    }
+                    maxId[0] = Math.max(maxId[0], id);
+                    addPreference(changed, rs.getString(1), rs.getString(2), rs.getFloat(3));
+                },
+                current.lastSeenId - deltaIdSlack);
+        windowIds.removeIf(id -> id <= maxId[0] - deltaIdSlack);
+
+        if (changed.isEmpty()) {
+            current.windowIds = windowIds;
+            current.refreshedAtMillis = System.currentTimeMillis();
+            return;
+        }
+
+        // Copy-on-write: the serving snapshot keeps its own map
+        FastByIDMap<PreferenceArray> userData = new FastByIDMap<>(current.userData.size() + changed.size());
+        current.userData.entrySet().forEach(entry -> userData.put(entry.getKey(), entry.getValue()));
+
+        changed.forEach((userId, items) -> {
+            PreferenceArray existing = current.userData.get(userId);
+            if (existing != null) {
+                for (int i = 0; i < existing.length(); i++) {
+                    items.merge(existing.getItemID(i), existing.getValue(i), Math::max);
+                }
+            }
+            userData.put(userId, toPreferenceArray(userId, items));
+        });
+
+        snapshot.set(buildSnapshot(userData, maxId[0], windowIds));
+        log.debug("Applied Mahout model delta: {} users changed, watermark {}", changed.size(), maxId[0]);
+    }
+
+    /**
+     * Build the data model, similarity and recommender for a preference map.
+     *
+     * @param userData the preferences by user
+     * @param lastSeenId the highest interaction id included
+     * @param windowIds the ids applied within the trailing window below {@code lastSeenId}
+     * @return the snapshot
+     */
+    private Snapshot buildSnapshot(FastByIDMap<PreferenceArray> userData, long lastSeenId, Set<Long> windowIds) {
+        try {
+            DataModel dataModel = new GenericDataModel(userData);
+            UserSimilarity similarity = new CachingUserSimilarity(
+                    new PearsonCorrelationSimilarity(dataModel), dataModel);
+            UserBasedRecommender recommender = new GenericUserBasedRecommender(
+                    dataModel,
+                    new ThresholdUserNeighborhood(similarityThreshold, similarity, dataModel),
+                    similarity);
+
+            int preferences = 0;
+            for (Map.Entry<Long, PreferenceArray> entry : userData.entrySet()) {
+                preferences += entry.getValue().length();
+            }
+
+            return new Snapshot(userData, recommender, lastSeenId, windowIds,
+                    dataModel.getNumUsers(), dataModel.getNumItems(), preferences);
+        } catch (TasteException e) {
+            throw new IllegalStateException("Failed to build Mahout recommender", e);
+        }
+    }
+
+    /**
+     * Merge one row into a preference map, keeping the highest value per (user, item).
+     */
+    private void addPreference(Map<Long, Map<Long, Float>> preferences, String userId, String itemId, float value) {
+        long user = dictionaries.users().getOrAssign(userId);
+        long item = dictionaries.items().getOrAssign(itemId);
+
+        preferences.computeIfAbsent(user, id -> new HashMap<>())
+                .merge(item, value, Math::max);
+    }
+
+    private PreferenceArray toPreferenceArray(long userId, Map<Long, Float> items) {
+        PreferenceArray array = new GenericUserPreferenceArray(items.size());
+        array.setUserID(0, userId);
+
+        int i = 0;
+        for (Map.Entry<Long, Float> item : items.entrySet()) {
+            array.setItemID(i, item.getKey());
+            array.setValue(i, item.getValue());
+            i++;
+        }
+
+        return array;
+    }
+
+    private double refreshLagSeconds() {
+        Snapshot current = snapshot.get();
+        return current == null ? Double.NaN
+                : (System.currentTimeMillis() - current.refreshedAtMillis) / 1000.0;
+    }
+
+    private double modelSize(ToIntFunction<Snapshot> dimension) {
+        Snapshot current = snapshot.get();
+        return current == null ? 0 : dimension.applyAsInt(current);
+    }
+
+    /**
+     * Recommender state served between refreshes. Only the refresh thread updates the window ids
+     * and refresh time.
+     */
+    private static final class Snapshot {
+        private final FastByIDMap<PreferenceArray> userData;
+        private final UserBasedRecommender recommender;
+        private final long lastSeenId;
+        private volatile Set<Long> windowIds;
+        private final int users;
+        private final int items;
+        private final int preferences;
+        private volatile long refreshedAtMillis = System.currentTimeMillis();
+
+        private Snapshot(FastByIDMap<PreferenceArray> userData, UserBasedRecommender recommender,
+                         long lastSeenId, Set<Long> windowIds, int users, int items, int preferences) {
+            this.userData = userData;
+            this.recommender = recommender;
+            this.lastSeenId = lastSeenId;
+            this.windowIds = windowIds;
+            this.users = users;
+            this.items = items;
+            this.preferences = preferences;
+        }
+
+        private int users() {
+            return users;
+        }
+
+        private int items() {
+            return items;
+        }
+
+        private int preferences() {
+            return preferences;
+        }
+    }
+}
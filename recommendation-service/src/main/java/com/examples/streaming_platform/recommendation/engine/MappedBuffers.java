@@ -0,0 +1,55 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Releases file mappings immediately instead of waiting for their buffers to be collected.
+ */
+@Slf4j
+final class MappedBuffers {
+
+    private static final MethodHandle INVOKE_CLEANER = lookupCleaner();
+
+    private MappedBuffers() {
+    }
+
+    /**
+     * Unmap a buffer. It must not be used afterwards; callers make sure no reader is left.
+     *
+     * @param buffer the mapped buffer
+     * @return false if the buffer is left to the garbage collector
+     */
+    static boolean unmap(MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return false;
+        }
+        try {
+            INVOKE_CLEANER.invokeExact((ByteBuffer) buffer);
+            return true;
+        } catch (Throwable e) {
+            log.warn("Could not unmap buffer, leaving it to the garbage collector", e);
+            return false;
+        }
+    }
+
+    private static MethodHandle lookupCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Mapped files will be unmapped by the garbage collector", e);
+            return null;
+        }
+    }
+}
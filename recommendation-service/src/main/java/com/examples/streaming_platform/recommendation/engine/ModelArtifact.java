@@ -0,0 +1,537 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+
+/**
+ * Binary model artifact that is served straight from a read-only memory mapping.
+ * <p>
+ * All values are little-endian and every section starts on a 64-byte boundary:
+ * <ul>
+ *   <li>header: magic, format version, rank, neighbours per item, then the offset and length of
+ *       each of the five sections below</li>
+ *   <li>user IDs and item IDs: count, hash table capacity, {@code count + 1} byte offsets, an
+ *       open-addressing table of rows by ID hash, then the UTF-8 bytes of the IDs</li>
+ *   <li>user factors and item factors: {@code count * rank} floats, row-major</li>
+ *   <li>neighbours: {@code items * k} item rows (-1 padded), then {@code items * k} scores relative
+ *       to each item's top neighbour</li>
+ * </ul>
+ * Rows are positions within the artifact, independent of any process's ID dictionaries.
+ */
+public final class ModelArtifact implements Closeable {
+
+    private static final int MAGIC = 0x524D4131; // "RMA1"
+    private static final int FORMAT_VERSION = 1;
+    private static final int SECTIONS = 5;
+    private static final int HEADER_SIZE = 16 + SECTIONS * 16;
+    private static final int ALIGNMENT = 64;
+    private static final int EMPTY = -1;
+
+    private final MappedByteBuffer[] sections;
+    private final MappedIds userIds;
+    private final MappedIds itemIds;
+    private final FloatBuffer userFactors;
+    private final FloatBuffer itemFactors;
+    private final IntBuffer neighborItems;
+    private final FloatBuffer neighborScores;
+    private final int rank;
+    private final int neighborsPerItem;
+
+    private ModelArtifact(MappedByteBuffer[] sections, int rank, int neighborsPerItem) {
+        this.sections = sections;
+        this.rank = rank;
+        this.neighborsPerItem = neighborsPerItem;
+        this.userIds = new MappedIds(sections[0]);
+        this.itemIds = new MappedIds(sections[1]);
+        this.userFactors = sections[2].asFloatBuffer();
+        this.itemFactors = sections[3].asFloatBuffer();
+        int scoresStart = itemIds.count * neighborsPerItem * Integer.BYTES;
+        this.neighborItems = sections[4].asIntBuffer();
+        this.neighborScores = sections[4].slice(scoresStart, sections[4].capacity() - scoresStart)
+                .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+    }
+
+    /**
+     * Map an artifact file.
+     *
+     * @param file the artifact file
+     * @return the mapped artifact
+     * @throws IOException if the file can't be mapped or is not an artifact
+     */
+    public static ModelArtifact open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Keep reading until the header is complete or the file ends
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException("Not a model artifact: " + file);
+            }
+            int version = header.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported model artifact version " + version + ": " + file);
+            }
+            int rank = header.getInt();
+            int neighborsPerItem = header.getInt();
+
+            MappedByteBuffer[] sections = new MappedByteBuffer[SECTIONS];
+            for (int section = 0; section < SECTIONS; section++) {
+                long offset = header.getLong();
+                long length = header.getLong();
+                if (length > Integer.MAX_VALUE || offset + length > channel.size()) {
+                    throw new IOException("Invalid section " + section + " in model artifact " + file);
+                }
+                sections[section] = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+                sections[section].order(ByteOrder.LITTLE_ENDIAN);
+            }
+
+            // The mappings stay valid after the channel is closed
+            return new ModelArtifact(sections, rank, neighborsPerItem);
+        }
+    }
+
+    /**
+     * Write the trained rows of a model, and the neighbours of its items, as an artifact.
+     * The file is written next to its final path and moved into place once complete.
+     *
+     * @param file the artifact file
+     * @param model the trained model
+     * @param users the user dictionary the model is indexed by
+     * @param items the item dictionary the model is indexed by
+     * @param neighbors the neighbours of an item index, or null if it has none
+     * @param neighborsPerItem the maximum number of neighbours stored per item
+     * @throws IOException if the file can't be written
+     */
+    public static void write(Path file, FactorModel model, IdDictionary users, IdDictionary items,
+                             IntFunction<ItemNeighborIndex.Neighbors> neighbors, int neighborsPerItem)
+            throws IOException {
+        int[] userRows = trainedRows(model.numUsers(), model::hasUser);
+        int[] itemRows = trainedRows(model.numItems(), model::hasItem);
+
+        // Neighbours are stored as artifact rows, so map item indices to rows
+        int[] rowOfItem = new int[Math.max(items.size(), model.numItems())];
+        Arrays.fill(rowOfItem, EMPTY);
+        for (int row = 0; row < itemRows.length; row++) {
+            rowOfItem[itemRows[row]] = row;
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             Output out = new Output(channel, HEADER_SIZE)) {
+            long[] bounds = new long[SECTIONS * 2];
+
+            bounds[0] = out.align();
+            writeIds(out, userRows, users);
+            bounds[1] = out.position() - bounds[0];
+
+            bounds[2] = out.align();
+            writeIds(out, itemRows, items);
+            bounds[3] = out.position() - bounds[2];
+
+            bounds[4] = out.align();
+            writeFactors(out, model.userFactors(), userRows, model.rank());
+            bounds[5] = out.position() - bounds[4];
+
+            bounds[6] = out.align();
+            writeFactors(out, model.itemFactors(), itemRows, model.rank());
+            bounds[7] = out.position() - bounds[6];
+
+            bounds[8] = out.align();
+            writeNeighbors(out, itemRows, rowOfItem, neighbors, neighborsPerItem);
+            bounds[9] = out.position() - bounds[8];
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(model.rank()).putInt(neighborsPerItem);
+            for (long bound : bounds) {
+                header.putLong(bound);
+            }
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Touch every page of the mapping, so the first requests don't fault them in from disk.
+     */
+    public void warmUp() {
+        for (MappedByteBuffer section : sections) {
+            section.load();
+        }
+    }
+
+    public int rank() {
+        return rank;
+    }
+
+    public int numUsers() {
+        return userIds.count;
+    }
+
+    public int numItems() {
+        return itemIds.count;
+    }
+
+    public int neighborsPerItem() {
+        return neighborsPerItem;
+    }
+
+    /**
+     * Find a user's row.
+     *
+     * @param userId the user ID
+     * @return the row, or -1 if the user is not in the model
+     */
+    public int userRow(String userId) {
+        return userIds.row(userId);
+    }
+
+    /**
+     * Find an item's row.
+     *
+     * @param itemId the item ID
+     * @return the row, or -1 if the item is not in the model
+     */
+    public int itemRow(String itemId) {
+        return itemIds.row(itemId);
+    }
+
+    /**
+     * Decode the ID of a user row.
+     *
+     * @param row the user row
+     * @return the user ID
+     */
+    public String userId(int row) {
+        return userIds.id(row);
+    }
+
+    /**
+     * Decode the ID of an item row.
+     *
+     * @param row the item row
+     * @return the item ID
+     */
+    public String itemId(int row) {
+        return itemIds.id(row);
+    }
+
+    /**
+     * Copy a user's factor vector.
+     *
+     * @param row the user row
+     * @param vector receives the {@code rank} factors
+     */
+    public void userVector(int row, float[] vector) {
+        userFactors.get(row * rank, vector, 0, rank);
+    }
+
+    /**
+     * Copy an item's factor vector.
+     *
+     * @param row the item row
+     * @param vector receives the {@code rank} factors
+     */
+    public void itemVector(int row, float[] vector) {
+        itemFactors.get(row * rank, vector, 0, rank);
+    }
+
+    /**
+     * Score an item row against a user vector.
+     *
+     * @param vector the user vector
+     * @param row the item row
+     * @return the dot product
+     */
+    public float score(float[] vector, int row) {
+        int offset = row * rank;
+        float sum = 0f;
+        for (int f = 0; f < rank; f++) {
+            sum += vector[f] * itemFactors.get(offset + f);
+        }
+        return sum;
+    }
+
+    /**
+     * Get a stored neighbour of an item.
+     *
+     * @param row the item row
+     * @param rank the neighbour rank
+     * @return the neighbour's item row, or -1 past the last neighbour
+     */
+    public int neighbor(int row, int rank) {
+        return neighborItems.get(row * neighborsPerItem + rank);
+    }
+
+    /**
+     * Get the score of a stored neighbour of an item.
+     *
+     * @param row the item row
+     * @param rank the neighbour rank
+     * @return the neighbour score
+     */
+    public float neighborScore(int row, int rank) {
+        return neighborScores.get(row * neighborsPerItem + rank);
+    }
+
+    /**
+     * Unmap the artifact. It must not be used afterwards; callers make sure no reader is left.
+     */
+    @Override
+    public void close() {
+        for (MappedByteBuffer section : sections) {
+            if (!MappedBuffers.unmap(section)) {
+                return;
+            }
+        }
+    }
+
+    private static int[] trainedRows(int count, IntPredicate trained) {
+        int[] rows = new int[count];
+        int size = 0;
+        for (int index = 0; index < count; index++) {
+            if (trained.test(index)) {
+                rows[size++] = index;
+            }
+        }
+        return Arrays.copyOf(rows, size);
+    }
+
+    private static void writeIds(Output out, int[] rows, IdDictionary dictionary) throws IOException {
+        byte[][] ids = new byte[rows.length][];
+        for (int row = 0; row < rows.length; row++) {
+            ids[row] = dictionary.idOf(rows[row]).getBytes(StandardCharsets.UTF_8);
+        }
+
+        // At most half full, so probes stay short
+        int capacity = Integer.highestOneBit(Math.max(2, rows.length * 2 - 1)) << 1;
+        int[] table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        for (int row = 0; row < rows.length; row++) {
+            int slot = hash(ids[row]) & (capacity - 1);
+            while (table[slot] != EMPTY) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            table[slot] = row;
+        }
+
+        out.putInt(rows.length);
+        out.putInt(capacity);
+        int offset = 0;
+        for (byte[] id : ids) {
+            out.putInt(offset);
+            offset += id.length;
+        }
+        out.putInt(offset);
+        for (int slot : table) {
+            out.putInt(slot);
+        }
+        for (byte[] id : ids) {
+            out.putBytes(id);
+        }
+    }
+
+    private static void writeFactors(Output out, float[] factors, int[] rows, int rank) throws IOException {
+        for (int index : rows) {
+            for (int f = 0; f < rank; f++) {
+                out.putFloat(factors[index * rank + f]);
+            }
+        }
+    }
+
+    private static void writeNeighbors(Output out, int[] itemRows, int[] rowOfItem,
+                                       IntFunction<ItemNeighborIndex.Neighbors> neighbors, int k)
+            throws IOException {
+        float[] scores = new float[k];
+        for (int item : itemRows) {
+            ItemNeighborIndex.Neighbors itemNeighbors = neighbors.apply(item);
+            int written = 0;
+            for (int rank = 0; itemNeighbors != null && rank < itemNeighbors.size() && written < k; rank++) {
+                int neighbor = itemNeighbors.item(rank);
+                // Neighbours outside the model can't be served from it
+                if (neighbor < rowOfItem.length && rowOfItem[neighbor] != EMPTY) {
+                    out.putInt(rowOfItem[neighbor]);
+                    scores[written++] = (float) itemNeighbors.count(rank) / itemNeighbors.count(0);
+                }
+            }
+            for (int pad = written; pad < k; pad++) {
+                out.putInt(EMPTY);
+                scores[pad] = 0f;
+            }
+            // Scores follow all rows, so park them in a second pass below
+            out.deferFloats(scores);
+        }
+        out.writeDeferredFloats();
+    }
+
+    /**
+     * Hash of UTF-8 ID bytes; the same function is used to build and probe the ID tables.
+     */
+    private static int hash(byte[] bytes) {
+        int h = Arrays.hashCode(bytes) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Read-only view of an ID section.
+     */
+    private static final class MappedIds {
+        private final ByteBuffer buffer;
+        private final int count;
+        private final int capacity;
+        private final int tableStart;
+        private final int bytesStart;
+
+        private MappedIds(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.count = buffer.getInt(0);
+            this.capacity = buffer.getInt(4);
+            this.tableStart = 8 + (count + 1) * Integer.BYTES;
+            this.bytesStart = tableStart + capacity * Integer.BYTES;
+        }
+
+        private int row(String id) {
+            byte[] key = id.getBytes(StandardCharsets.UTF_8);
+            for (int slot = hash(key) & (capacity - 1); ; slot = (slot + 1) & (capacity - 1)) {
+                int row = buffer.getInt(tableStart + slot * Integer.BYTES);
+                if (row == EMPTY) {
+                    return -1;
+                }
+                if (matches(row, key)) {
+                    return row;
+                }
+            }
+        }
+
+        private String id(int row) {
+            int start = offset(row);
+            byte[] bytes = new byte[offset(row + 1) - start];
+            buffer.get(bytesStart + start, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private boolean matches(int row, byte[] key) {
+            int start = offset(row);
+            if (offset(row + 1) - start != key.length) {
+                return false;
+            }
+            for (int n = 0; n < key.length; n++) {
+                if (buffer.get(bytesStart + start + n) != key[n]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int offset(int row) {
+            return buffer.getInt(8 + row * Integer.BYTES);
+        }
+    }
+
+    /**
+     * Buffered little-endian writer over a file channel that tracks its absolute position.
+     */
+    private static final class Output implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        private float[] deferred = new float[0];
+        private int deferredSize;
+        private long position;
+
+        private Output(FileChannel channel, long position) throws IOException {
+            this.channel = channel;
+            this.position = position;
+            channel.position(position);
+        }
+
+        private long position() {
+            return position;
+        }
+
+        private long align() throws IOException {
+            while (position % ALIGNMENT != 0) {
+                ensure(1);
+                buffer.put((byte) 0);
+                position++;
+            }
+            return position;
+        }
+
+        private void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+            position += Integer.BYTES;
+        }
+
+        private void putFloat(float value) throws IOException {
+            ensure(Float.BYTES);
+            buffer.putFloat(value);
+            position += Float.BYTES;
+        }
+
+        private void putBytes(byte[] bytes) throws IOException {
+            int written = 0;
+            while (written < bytes.length) {
+                ensure(1);
+                int chunk = Math.min(buffer.remaining(), bytes.length - written);
+                buffer.put(bytes, written, chunk);
+                written += chunk;
+            }
+            position += bytes.length;
+        }
+
+        private void deferFloats(float[] values) {
+            if (deferredSize + values.length > deferred.length) {
+                deferred = Arrays.copyOf(deferred, Math.max(deferred.length * 2, deferredSize + values.length));
+            }
+            System.arraycopy(values, 0, deferred, deferredSize, values.length);
+            deferredSize += values.length;
+        }
+
+        private void writeDeferredFloats() throws IOException {
+            for (int n = 0; n < deferredSize; n++) {
+                putFloat(deferred[n]);
+            }
+            deferred = new float[0];
+            deferredSize = 0;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,506 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import com.examples.streaming_platform.recommendation.event.InteractionRecordedEvent;
+import com.examples.streaming_platform.recommendation.model.UserInteraction;
+import com.examples.streaming_platform.recommendation.sharding.ShardMembership;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Time-decayed popularity of every item. Each interaction adds its weight to the item's score and
+ * scores decay exponentially, losing {@code 1 - time-decay-factor} of their value per decay period.
+ * <p>
+ * Scores use forward decay: an interaction at time t adds {@code weight * e^(lambda * (t - landmark))}
+ * instead of decaying every score as time passes. All scores decay by the same factor, so their
+ * order never changes and an update is O(1); the decay is only applied when a score is read. The
+ * landmark moves forward from time to time to keep the values in range. Since scores only grow,
+ * the top items are tracked exactly in an indexed min-heap.
+ * <p>
+ * Scores are written back to {@code content_items.popularity_log_score} in periodic batches, as
+ * the natural log of the forward-decayed score relative to a fixed epoch. That value doesn't change
+ * while an item gets no interactions, so only updated items are written, and ordering by it ranks
+ * items by current popularity whenever their rows were written. Each write adds the score the
+ * instance accumulated since its last write to the stored one (a log-sum-exp in the update), so
+ * instances writing the same item add up rather than overwrite each other. {@code popularity_score}
+ * gets the plain decayed score at the time of the write, for display. The in-memory scores are the
+ * stored ones at startup plus this instance's interactions since.
+ */
+@Component
+@Slf4j
+public class PopularityEngine {
+
+    private static final String LOAD_QUERY =
+            "SELECT item_id, item_type, popularity_log_score FROM content_items WHERE popularity_log_score IS NOT NULL";
+
+    // Used once, when no score has ever been written
+    private static final String BACKFILL_QUERY =
+            "SELECT item_id, item_type, interaction_type, EXTRACT(EPOCH FROM bucket_start) * 1000, " +
+            "interaction_count, value_sum FROM item_interactions_hourly";
+
+    // ln(e^stored + e^added), starting from the added score when nothing is stored yet
+    private static final String ACCUMULATED_LOG_SCORE =
+            "GREATEST(popularity_log_score, ?) + COALESCE(LN(1 + EXP(-LEAST(ABS(popularity_log_score - ?), 700))), 0)";
+
+    private static final String UPDATE_QUERY =
+            "UPDATE content_items SET popularity_log_score = " + ACCUMULATED_LOG_SCORE + ", " +
+            "popularity_score = EXP(GREATEST(" + ACCUMULATED_LOG_SCORE + " - ?, -700)) WHERE item_id = ?";
+
+    private static final int WRITE_BATCH_SIZE = 1000;
+
+    // Landmark rebase threshold for the forward-decay exponent, far below double overflow
+    private static final double MAX_EXPONENT = 50.0;
+
+    // 2020-01-01T00:00:00Z, the reference time of the stored log scores
+    private static final long EPOCH_MILLIS = 1_577_836_800_000L;
+
+    private static final Map<UserInteraction.InteractionType, Double> WEIGHTS =
+            new EnumMap<>(UserInteraction.InteractionType.class);
+
+    static {
+        WEIGHTS.put(UserInteraction.InteractionType.VIEW, 1.0);
+        WEIGHTS.put(UserInteraction.InteractionType.WATCH_TIME, 1.0);
+        WEIGHTS.put(UserInteraction.InteractionType.CLICK, 0.5);
+        WEIGHTS.put(UserInteraction.InteractionType.LIKE, 3.0);
+        WEIGHTS.put(UserInteraction.InteractionType.ADD_TO_LIST, 3.0);
+        // Ratings are weighted by their value, see ratingWeight()
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+    private final TransactionTemplate readOnlyTransaction;
+    private final IdDictionaries dictionaries;
+    private final ShardMembership shardMembership;
+    private final int topN;
+    // Decay rate per millisecond
+    private final double lambda;
+    private long landmarkMillis;
+    private double[] scores = new double[0];
+    // Score added by this instance's interactions and not yet written, at the same landmark
+    private double[] unwritten = new double[0];
+    private UserInteraction.ItemType[] itemTypes = new UserInteraction.ItemType[0];
+    private final BitSet dirty = new BitSet();
+    private final int[] heapItems;
+    private int[] heapPositions = new int[0];
+    private int heapSize;
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private volatile boolean snapshotStale;
+    private volatile boolean ready;
+
+    @Value("${recommendation.engine.fetch-size:10000}")
+    private int fetchSize;
+
+    @Value("${recommendation.popularity.snapshot-interval-ms:1000}")
+    private long snapshotIntervalMs;
+
+    public PopularityEngine(JdbcTemplate jdbcTemplate,
+                            PlatformTransactionManager transactionManager,
+                            IdDictionaries dictionaries,
+                            ShardMembership shardMembership,
+                            @Value("${recommendation.algorithm.time-decay-factor:0.95}") double decayFactor,
+                            @Value("${recommendation.popularity.decay-period-hours:24}") double decayPeriodHours,
+                            @Value("${recommendation.popularity.top-n:100}") int topN) {
+        if (decayFactor <= 0 || decayFactor > 1) {
+            throw new IllegalArgumentException("time-decay-factor must be in (0, 1], got " + decayFactor);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.dictionaries = dictionaries;
+        this.shardMembership = shardMembership;
+        this.topN = topN;
+        this.lambda = -Math.log(decayFactor) / (decayPeriodHours * 3_600_000L);
+        this.landmarkMillis = System.currentTimeMillis();
+        this.heapItems = new int[topN];
+    }
+
+    /**
+     * Check whether the scores have been loaded.
+     *
+     * @return true if popular items can be served from memory
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Get the current most popular items. The snapshot is rebuilt at most once per snapshot interval.
+     *
+     * @return the top items by decayed score, most popular first
+     */
+    public Snapshot top() {
+        long now = System.currentTimeMillis();
+        Snapshot current = snapshot;
+        if (snapshotStale && now - current.builtAtMillis >= snapshotIntervalMs) {
+            current = refreshSnapshot(now);
+        }
+        return current;
+    }
+
+    /**
+     * Load the stored scores, or rebuild them from the hourly item rollup if none were ever written.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long start = System.currentTimeMillis();
+        IdDictionary items = dictionaries.items();
+        int[] loaded = {0};
+
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(
+                connection -> {
+                    PreparedStatement statement = connection.prepareStatement(LOAD_QUERY);
+                    statement.setFetchSize(fetchSize);
+                    return statement;
+                },
+                (RowCallbackHandler) rs -> {
+                    restore(items.getOrAssign(rs.getString(1)),
+                            UserInteraction.ItemType.valueOf(rs.getString(2)), rs.getDouble(3));
+                    loaded[0]++;
+                }));
+
+        if (loaded[0] == 0) {
+            readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(
+                    connection -> {
+                        PreparedStatement statement = connection.prepareStatement(BACKFILL_QUERY);
+                        statement.setFetchSize(fetchSize);
+                        return statement;
+                    },
+                    (RowCallbackHandler) rs -> {
+                        UserInteraction.InteractionType type = UserInteraction.InteractionType.valueOf(rs.getString(3));
+                        double weight = type == UserInteraction.InteractionType.RATING
+                                ? ratingWeight(rs.getDouble(6) / Math.max(1, rs.getLong(5))) * rs.getLong(5)
+                                : WEIGHTS.getOrDefault(type, 0.0) * rs.getLong(5);
+                        if (weight <= 0) {
+                            return;
+                        }
+                        record(items.getOrAssign(rs.getString(1)), UserInteraction.ItemType.valueOf(rs.getString(2)),
+                                rs.getLong(4), weight);
+                    }));
+            if (!shardMembership.isDesignated()) {
+                // Only the designated member stores the rebuilt scores, so they aren't added up per member
+                synchronized (this) {
+                    Arrays.fill(unwritten, 0.0);
+                    dirty.clear();
+                }
+            }
+            log.info("No stored popularity scores, rebuilt them from the hourly item rollup");
+        }
+
+        ready = true;
+        log.info("Loaded popularity scores of {} items in {} ms", loaded[0], System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Add recorded interactions to the scores of their items.
+     *
+     * @param event the stored interactions
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onInteractionRecorded(InteractionRecordedEvent event) {
+        IdDictionary items = dictionaries.items();
+        for (UserInteraction interaction : event.getInteractions()) {
+            double weight = weight(interaction);
+            if (weight > 0) {
+                long timestamp = interaction.getTimestamp() != null
+                        ? interaction.getTimestamp().toInstant().toEpochMilli()
+                        : System.currentTimeMillis();
+                record(items.getOrAssign(interaction.getItemId()), interaction.getItemType(), timestamp, weight);
+            }
+        }
+    }
+
+    /**
+     * Add the scores accumulated since the last write to {@code content_items}.
+     */
+    @Scheduled(initialDelayString = "${recommendation.popularity.write-interval-ms:60000}",
+            fixedDelayString = "${recommendation.popularity.write-interval-ms:60000}")
+    public void writeScores() {
+        if (!ready) {
+            return;
+        }
+
+        IdDictionary items = dictionaries.items();
+        List<Object[]> updates = new ArrayList<>();
+        BitSet written;
+        double[] writtenScores;
+        long writtenLandmark;
+        synchronized (this) {
+            written = (BitSet) dirty.clone();
+            dirty.clear();
+            writtenScores = new double[written.length()];
+            writtenLandmark = landmarkMillis;
+            double nowOffset = lambda * (System.currentTimeMillis() - EPOCH_MILLIS);
+            for (int item = written.nextSetBit(0); item >= 0; item = written.nextSetBit(item + 1)) {
+                double added = storedScore(unwritten[item]);
+                writtenScores[item] = unwritten[item];
+                updates.add(new Object[] {added, added, added, added, nowOffset, items.idOf(item)});
+            }
+        }
+        if (updates.isEmpty()) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            transaction.executeWithoutResult(status -> {
+                for (int from = 0; from < updates.size(); from += WRITE_BATCH_SIZE) {
+                    jdbcTemplate.batchUpdate(UPDATE_QUERY,
+                            updates.subList(from, Math.min(updates.size(), from + WRITE_BATCH_SIZE)));
+                }
+            });
+            synchronized (this) {
+                // Interactions recorded during the write stay unwritten, rescaled if the landmark moved
+                double scale = Math.exp(lambda * (writtenLandmark - landmarkMillis));
+                for (int item = written.nextSetBit(0); item >= 0; item = written.nextSetBit(item + 1)) {
+                    unwritten[item] = Math.max(0.0, unwritten[item] - writtenScores[item] * scale);
+                }
+            }
+            log.debug("Wrote popularity scores of {} items in {} ms", updates.size(), System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            // Keep the scores dirty so the next run writes them
+            synchronized (this) {
+                dirty.or(written);
+            }
+            log.error("Error writing popularity scores of {} items", updates.size(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writeScores();
+    }
+
+    /**
+     * Add a weighted interaction to an item's forward-decayed score.
+     */
+    private synchronized void record(int item, UserInteraction.ItemType itemType, long timestampMillis, double weight) {
+        long now = System.currentTimeMillis();
+        rebase(now);
+        ensureItemCapacity(item + 1);
+        // Interactions from the future count as happening now
+        double added = weight * Math.exp(lambda * (Math.min(timestampMillis, now) - landmarkMillis));
+        scores[item] += added;
+        unwritten[item] += added;
+        if (itemType != null) {
+            itemTypes[item] = itemType;
+        }
+        dirty.set(item);
+        offer(item);
+        snapshotStale = true;
+    }
+
+    /**
+     * Add a stored score, which is already written.
+     */
+    private synchronized void restore(int item, UserInteraction.ItemType itemType, double storedScore) {
+        ensureItemCapacity(item + 1);
+        scores[item] += Math.exp(storedScore - lambda * (landmarkMillis - EPOCH_MILLIS));
+        itemTypes[item] = itemType;
+        offer(item);
+        snapshotStale = true;
+    }
+
+    /**
+     * Move the landmark to now once scores have grown large, scaling every score down to match.
+     * The order of the scores, and so the heap, is unchanged.
+     */
+    private void rebase(long nowMillis) {
+        double exponent = lambda * (nowMillis - landmarkMillis);
+        if (exponent < MAX_EXPONENT) {
+            return;
+        }
+        double scale = Math.exp(-exponent);
+        for (int item = 0; item < scores.length; item++) {
+            scores[item] *= scale;
+            unwritten[item] *= scale;
+        }
+        landmarkMillis = nowMillis;
+    }
+
+    private double storedScore(double score) {
+        return Math.log(score) + lambda * (landmarkMillis - EPOCH_MILLIS);
+    }
+
+    private double decayed(double score, long nowMillis) {
+        return score * Math.exp(-lambda * (nowMillis - landmarkMillis));
+    }
+
+    private static double weight(UserInteraction interaction) {
+        if (interaction.getInteractionType() == UserInteraction.InteractionType.RATING) {
+            return ratingWeight(interaction.getValue() != null ? interaction.getValue() : 0.0);
+        }
+        return WEIGHTS.getOrDefault(interaction.getInteractionType(), 0.0);
+    }
+
+    private static double ratingWeight(double rating) {
+        // A five-star rating counts like a like, a one-star rating barely counts
+        return Math.max(0.0, Math.min(5.0, rating)) * 0.6;
+    }
+
+    private synchronized Snapshot refreshSnapshot(long now) {
+        if (!snapshotStale) {
+            return snapshot;
+        }
+
+        Integer[] order = new Integer[heapSize];
+        for (int h = 0; h < heapSize; h++) {
+            order[h] = heapItems[h];
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+
+        IdDictionary items = dictionaries.items();
+        int[] indices = new int[order.length];
+        String[] ids = new String[order.length];
+        UserInteraction.ItemType[] types = new UserInteraction.ItemType[order.length];
+        float[] decayedScores = new float[order.length];
+        for (int rank = 0; rank < order.length; rank++) {
+            indices[rank] = order[rank];
+            ids[rank] = items.idOf(order[rank]);
+            types[rank] = itemTypes[order[rank]];
+            decayedScores[rank] = (float) decayed(scores[order[rank]], now);
+        }
+
+        snapshotStale = false;
+        snapshot = new Snapshot(indices, ids, types, decayedScores, now);
+        return snapshot;
+    }
+
+    /**
+     * Offer an item whose score increased to the top-N min-heap.
+     */
+    private void offer(int item) {
+        int position = heapPositions[item];
+        if (position >= 0) {
+            siftDown(position);
+        } else if (heapSize < topN) {
+            heapItems[heapSize] = item;
+            heapPositions[item] = heapSize;
+            siftUp(heapSize++);
+        } else if (heapSize > 0 && scores[item] > scores[heapItems[0]]) {
+            heapPositions[heapItems[0]] = -1;
+            heapItems[0] = item;
+            heapPositions[item] = 0;
+            siftDown(0);
+        }
+    }
+
+    private void siftUp(int index) {
+        int item = heapItems[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (scores[heapItems[parent]] <= scores[item]) {
+                break;
+            }
+            move(parent, index);
+            index = parent;
+        }
+        heapItems[index] = item;
+        heapPositions[item] = index;
+    }
+
+    private void siftDown(int index) {
+        int item = heapItems[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && scores[heapItems[child + 1]] < scores[heapItems[child]]) {
+                child++;
+            }
+            if (scores[heapItems[child]] >= scores[item]) {
+                break;
+            }
+            move(child, index);
+            index = child;
+        }
+        heapItems[index] = item;
+        heapPositions[item] = index;
+    }
+
+    private void move(int from, int to) {
+        heapItems[to] = heapItems[from];
+        heapPositions[heapItems[to]] = to;
+    }
+
+    private void ensureItemCapacity(int capacity) {
+        if (capacity <= scores.length) {
+            return;
+        }
+        int previous = scores.length;
+        int grown = Math.max(capacity, Math.max(1024, previous * 2));
+        scores = Arrays.copyOf(scores, grown);
+        unwritten = Arrays.copyOf(unwritten, grown);
+        itemTypes = Arrays.copyOf(itemTypes, grown);
+        heapPositions = Arrays.copyOf(heapPositions, grown);
+        Arrays.fill(heapPositions, previous, grown, -1);
+    }
+
+    /**
+     * Immutable view of the most popular items at a point in time.
+     */
+    public static final class Snapshot {
+
+        private static final Snapshot EMPTY =
+                new Snapshot(new int[0], new String[0], new UserInteraction.ItemType[0], new float[0], 0L);
+
+        private final int[] items;
+        private final String[] itemIds;
+        private final UserInteraction.ItemType[] itemTypes;
+        private final float[] scores;
+        private final long builtAtMillis;
+
+        private Snapshot(int[] items, String[] itemIds, UserInteraction.ItemType[] itemTypes, float[] scores,
+                         long builtAtMillis) {
+            this.items = items;
+            this.itemIds = itemIds;
+            this.itemTypes = itemTypes;
+            this.scores = scores;
+            this.builtAtMillis = builtAtMillis;
+        }
+
+        public int size() {
+            return itemIds.length;
+        }
+
+        public int item(int rank) {
+            return items[rank];
+        }
+
+        public String itemId(int rank) {
+            return itemIds[rank];
+        }
+
+        public UserInteraction.ItemType itemType(int rank) {
+            return itemTypes[rank];
+        }
+
+        /**
+         * Get the decayed score of an item when the snapshot was built.
+         *
+         * @param rank the rank of the item
+         * @return the score
+         */
+        public float score(int rank) {
+            return scores[rank];
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import java.util.Arrays;
+
+/**
+ * Sums and counts per int key, in an open-addressing table sized to the keys actually touched
+ * rather than to the whole index space. Entries are kept in insertion order and cleared in time
+ * proportional to their number, so an accumulator can be reused across requests.
+ */
+final class SparseAccumulator {
+
+    private static final int EMPTY = -1;
+
+    // Open-addressing table from key to entry
+    private int[] slots;
+    private int mask;
+    // Entries in insertion order
+    private int[] keys;
+    private float[] sums;
+    private int[] counts;
+    private int size;
+
+    /**
+     * Create an accumulator.
+     *
+     * @param expectedKeys the expected number of distinct keys
+     */
+    SparseAccumulator(int expectedKeys) {
+        int entryCapacity = Math.max(8, expectedKeys);
+        int capacity = Integer.highestOneBit(entryCapacity * 2 - 1) * 2;
+        this.slots = new int[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(slots, EMPTY);
+        this.keys = new int[entryCapacity];
+        this.sums = new float[entryCapacity];
+        this.counts = new int[entryCapacity];
+    }
+
+    /**
+     * Add a value to a key's sum and count it.
+     *
+     * @param key the key, not negative
+     * @param value the value
+     */
+    void add(int key, float value) {
+        int entry = entryOf(key);
+        if (entry < 0) {
+            entry = insert(key);
+        }
+        sums[entry] += value;
+        counts[entry]++;
+    }
+
+    /**
+     * Check whether a key has been added since the last clear.
+     *
+     * @param key the key
+     * @return true if the key is present
+     */
+    boolean contains(int key) {
+        return entryOf(key) >= 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int key(int entry) {
+        return keys[entry];
+    }
+
+    float sum(int entry) {
+        return sums[entry];
+    }
+
+    int count(int entry) {
+        return counts[entry];
+    }
+
+    /**
+     * Get the number of table slots, which bounds the memory the accumulator holds on to.
+     *
+     * @return the table capacity
+     */
+    int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * Remove every key, in time proportional to the number of keys.
+     */
+    void clear() {
+        for (int entry = 0; entry < size; entry++) {
+            // Probe past slots already emptied until the entry's own slot
+            int slot = mix(keys[entry]) & mask;
+            while (slots[slot] != entry) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = EMPTY;
+        }
+        size = 0;
+    }
+
+    private int entryOf(int key) {
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == EMPTY) {
+                return -1;
+            }
+            if (keys[entry] == key) {
+                return entry;
+            }
+        }
+    }
+
+    private int insert(int key) {
+        if (size == keys.length) {
+            int capacity = size * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            sums = Arrays.copyOf(sums, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        // Keep the table at most half full
+        if ((size + 1) * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+
+        int entry = size++;
+        keys[entry] = key;
+        sums[entry] = 0f;
+        counts[entry] = 0;
+        int slot = mix(key) & mask;
+        while (slots[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = entry;
+        return entry;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(slots, EMPTY);
+        for (int entry = 0; entry < size; entry++) {
+            int slot = mix(keys[entry]) & mask;
+            while (slots[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = entry;
+        }
+    }
+
+    private static int mix(int key) {
+        return key * 0x9E3779B9;
+    }
+}
@@ -0,0 +1,129 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+/**
+ * Bounded min-heap that keeps the k highest-scoring int IDs without boxing.
+ * Instances are reusable via {@link #reset(int)}.
+ */
+public final class TopKSelector {
+
+    private int k;
+    private int[] ids;
+    private float[] scores;
+    private int size;
+    private boolean sorted;
+
+    public TopKSelector(int k) {
+        this.ids = new int[Math.max(1, k)];
+        this.scores = new float[Math.max(1, k)];
+        this.k = k;
+    }
+
+    /**
+     * Clear the selector and set a new bound.
+     *
+     * @param k the number of entries to keep
+     */
+    public void reset(int k) {
+        if (k > ids.length) {
+            ids = new int[k];
+            scores = new float[k];
+        }
+        this.k = k;
+        this.size = 0;
+        this.sorted = false;
+    }
+
+    /**
+     * Offer a candidate.
+     *
+     * @param id the candidate ID
+     * @param score the candidate score
+     */
+    public void offer(int id, float score) {
+        if (size < k) {
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (k > 0 && score > scores[0]) {
+            ids[0] = id;
+            scores[0] = score;
+            siftDown(0, size);
+        }
+    }
+
+    /**
+     * Get the lowest score currently kept, which a candidate must beat once the heap is full.
+     *
+     * @return the minimum kept score, or negative infinity while the heap is not full
+     */
+    public float threshold() {
+        return size < k ? Float.NEGATIVE_INFINITY : scores[0];
+    }
+
+    /**
+     * Sort the kept entries by descending score. Must be called before {@link #id(int)} and
+     * {@link #score(int)}; no further offers are allowed until the next reset.
+     */
+    public void sortDescending() {
+        if (sorted) {
+            return;
+        }
+        // Heap sort: repeatedly move the minimum to the end
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+        sorted = true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int id(int rank) {
+        return ids[rank];
+    }
+
+    public float score(int rank) {
+        return scores[rank];
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (scores[index] >= scores[parent]) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index, int length) {
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= length) {
+                return;
+            }
+            int smallest = left;
+            int right = left + 1;
+            if (right < length && scores[right] < scores[left]) {
+                smallest = right;
+            }
+            if (scores[index] <= scores[smallest]) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
@@ -0,0 +1,426 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import com.examples.streaming_platform.recommendation.event.InteractionRecordedEvent;
+import com.examples.streaming_platform.recommendation.model.UserInteraction;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Sliding-window interaction counts for trending content.
+ * Counts are kept per item in a ring of hourly buckets; when an hour leaves the window its bucket is
+ * subtracted from the running totals. The top items by total are tracked in an indexed min-heap, which
+ * stays exact under increments and is rebuilt whenever buckets expire. The window is seeded once at
+ * startup from the hourly item rollup plus the raw interactions not yet rolled up, and then fed by
+ * recorded interactions.
+ */
+@Component
+@Slf4j
+public class TrendingEngine {
+
+    private static final String SEED_QUERY =
+            "SELECT item_id, item_type, FLOOR(EXTRACT(EPOCH FROM bucket_start) / 3600), interaction_count " +
+            "FROM item_interactions_hourly " +
+            "WHERE interaction_type IN ('VIEW', 'RATING') AND bucket_start >= ? " +
+            "UNION ALL " +
+            "SELECT item_id, item_type, FLOOR(EXTRACT(EPOCH FROM timestamp) / 3600), COUNT(*) " +
+            "FROM user_interactions " +
+            "WHERE interaction_type IN ('VIEW', 'RATING') AND timestamp >= ? AND timestamp < ? " +
+            "AND id > (SELECT last_interaction_id FROM interaction_rollup_state WHERE name = 'rollups') " +
+            "GROUP BY 1, 2, 3";
+
+    private static final Set<UserInteraction.InteractionType> TRENDING_TYPES =
+            EnumSet.of(UserInteraction.InteractionType.VIEW, UserInteraction.InteractionType.RATING);
+
+    private static final long HOUR_MILLIS = 3_600_000L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final IdDictionaries dictionaries;
+    private final int windowHours;
+    private final int topN;
+    private final BucketCounts[] buckets;
+    private long currentHour = -1;
+    private int[] totals = new int[0];
+    private UserInteraction.ItemType[] itemTypes = new UserInteraction.ItemType[0];
+    private final int[] heapItems;
+    private int[] heapPositions = new int[0];
+    private int heapSize;
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private volatile boolean snapshotStale;
+    private volatile boolean ready;
+
+    @Value("${recommendation.engine.fetch-size:10000}")
+    private int fetchSize;
+
+    @Value("${recommendation.trending.snapshot-interval-ms:1000}")
+    private long snapshotIntervalMs;
+
+    public TrendingEngine(JdbcTemplate jdbcTemplate,
+                          PlatformTransactionManager transactionManager,
+                          IdDictionaries dictionaries,
+                          @Value("${recommendation.trending.window-hours:168}") int windowHours,
+                          @Value("${recommendation.trending.top-n:100}") int topN) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.dictionaries = dictionaries;
+        this.windowHours = windowHours;
+        this.topN = topN;
+        this.buckets = new BucketCounts[windowHours];
+        for (int b = 0; b < windowHours; b++) {
+            buckets[b] = new BucketCounts();
+        }
+        this.heapItems = new int[topN];
+    }
+
+    /**
+     * Check whether the window has been seeded from the database.
+     *
+     * @return true if trending items can be served from memory
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Get the current trending items. The snapshot is rebuilt at most once per snapshot interval.
+     *
+     * @return the top items by interaction count in the window, most interactions first
+     */
+    public Snapshot top() {
+        long now = System.currentTimeMillis();
+        Snapshot current = snapshot;
+        if ((snapshotStale && now - current.builtAtMillis >= snapshotIntervalMs)
+                || now / HOUR_MILLIS != current.builtAtMillis / HOUR_MILLIS) {
+            current = refreshSnapshot(now);
+        }
+        return current;
+    }
+
+    /**
+     * Seed the window from the interactions stored before startup.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        long start = System.currentTimeMillis();
+        long startHour = start / HOUR_MILLIS;
+        Timestamp since = new Timestamp((startHour - windowHours + 1) * HOUR_MILLIS);
+        Timestamp until = new Timestamp(start);
+        IdDictionary items = dictionaries.items();
+
+        synchronized (this) {
+            advance(start);
+        }
+
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(
+                connection -> {
+                    PreparedStatement statement = connection.prepareStatement(SEED_QUERY);
+                    statement.setFetchSize(fetchSize);
+                    statement.setTimestamp(1, since);
+                    statement.setTimestamp(2, since);
+                    statement.setTimestamp(3, until);
+                    return statement;
+                },
+                (RowCallbackHandler) rs -> record(
+                        items.getOrAssign(rs.getString(1)),
+                        UserInteraction.ItemType.valueOf(rs.getString(2)),
+                        rs.getLong(3) * HOUR_MILLIS,
+                        rs.getInt(4))));
+
+        ready = true;
+        log.info("Seeded trending window of {} hours in {} ms", windowHours, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Count recorded views and ratings.
+     *
+     * @param event the stored interactions
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onInteractionRecorded(InteractionRecordedEvent event) {
+        for (UserInteraction interaction : event.getInteractions()) {
+            if (TRENDING_TYPES.contains(interaction.getInteractionType())) {
+                long timestamp = interaction.getTimestamp() != null
+                        ? interaction.getTimestamp().toInstant().toEpochMilli()
+                        : System.currentTimeMillis();
+                record(dictionaries.items().getOrAssign(interaction.getItemId()),
+                        interaction.getItemType(), timestamp, 1);
+            }
+        }
+    }
+
+    /**
+     * Add interactions to the bucket for their hour. Interactions older than the window are ignored
+     * and interactions from the future are counted in the current hour.
+     *
+     * @param item the item index
+     * @param itemType the item type
+     * @param timestampMillis the interaction time
+     * @param count the number of interactions
+     */
+    private synchronized void record(int item, UserInteraction.ItemType itemType, long timestampMillis, int count) {
+        advance(System.currentTimeMillis());
+
+        long hour = Math.min(timestampMillis / HOUR_MILLIS, currentHour);
+        if (hour <= currentHour - windowHours) {
+            return;
+        }
+
+        ensureItemCapacity(item + 1);
+        buckets[(int) (hour % windowHours)].increment(item, count);
+        totals[item] += count;
+        itemTypes[item] = itemType;
+        offer(item);
+        snapshotStale = true;
+    }
+
+    /**
+     * Expire the buckets of hours that have left the window.
+     *
+     * @param nowMillis the current time
+     */
+    private void advance(long nowMillis) {
+        long nowHour = nowMillis / HOUR_MILLIS;
+        if (currentHour < 0) {
+            currentHour = nowHour;
+            return;
+        }
+        if (nowHour <= currentHour) {
+            return;
+        }
+
+        long expired = Math.min(nowHour - currentHour, windowHours);
+        for (long hour = currentHour + 1; hour <= currentHour + expired; hour++) {
+            BucketCounts bucket = buckets[(int) (hour % windowHours)];
+            for (int slot = 0; slot < bucket.keys.length; slot++) {
+                if (bucket.keys[slot] >= 0) {
+                    totals[bucket.keys[slot]] -= bucket.values[slot];
+                }
+            }
+            bucket.clear();
+        }
+        currentHour = nowHour;
+
+        // Totals went down, so the heap has to be rebuilt from scratch
+        for (int h = 0; h < heapSize; h++) {
+            heapPositions[heapItems[h]] = -1;
+        }
+        heapSize = 0;
+        for (int item = 0; item < totals.length; item++) {
+            if (totals[item] > 0) {
+                offer(item);
+            }
+        }
+        snapshotStale = true;
+    }
+
+    private synchronized Snapshot refreshSnapshot(long now) {
+        advance(now);
+        if (!snapshotStale && snapshot.builtAtMillis / HOUR_MILLIS == now / HOUR_MILLIS) {
+            return snapshot;
+        }
+
+        Integer[] order = new Integer[heapSize];
+        for (int h = 0; h < heapSize; h++) {
+            order[h] = heapItems[h];
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(totals[b], totals[a]));
+
+        IdDictionary items = dictionaries.items();
+        int[] indices = new int[order.length];
+        String[] ids = new String[order.length];
+        UserInteraction.ItemType[] types = new UserInteraction.ItemType[order.length];
+        int[] counts = new int[order.length];
+        for (int rank = 0; rank < order.length; rank++) {
+            indices[rank] = order[rank];
+            ids[rank] = items.idOf(order[rank]);
+            types[rank] = itemTypes[order[rank]];
+            counts[rank] = totals[order[rank]];
+        }
+
+        snapshotStale = false;
+        snapshot = new Snapshot(indices, ids, types, counts, now);
+        return snapshot;
+    }
+
+    /**
+     * Offer an item whose total increased to the top-N min-heap.
+     */
+    private void offer(int item) {
+        int position = heapPositions[item];
+        if (position >= 0) {
+            siftDown(position);
+        } else if (heapSize < topN) {
+            heapItems[heapSize] = item;
+            heapPositions[item] = heapSize;
+            siftUp(heapSize++);
+        } else if (heapSize > 0 && totals[item] > totals[heapItems[0]]) {
+            heapPositions[heapItems[0]] = -1;
+            heapItems[0] = item;
+            heapPositions[item] = 0;
+            siftDown(0);
+        }
+    }
+
+    private void siftUp(int index) {
+        int item = heapItems[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (totals[heapItems[parent]] <= totals[item]) {
+                break;
+            }
+            move(parent, index);
+            index = parent;
+        }
+        heapItems[index] = item;
+        heapPositions[item] = index;
+    }
+
+    private void siftDown(int index) {
+        int item = heapItems[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && totals[heapItems[child + 1]] < totals[heapItems[child]]) {
+                child++;
+            }
+            if (totals[heapItems[child]] >= totals[item]) {
+                break;
+            }
+            move(child, index);
+            index = child;
+        }
+        heapItems[index] = item;
+        heapPositions[item] = index;
+    }
+
+    private void move(int from, int to) {
+        heapItems[to] = heapItems[from];
+        heapPositions[heapItems[to]] = to;
+    }
+
+    private void ensureItemCapacity(int capacity) {
+        if (capacity <= totals.length) {
+            return;
+        }
+        int previous = totals.length;
+        int grown = Math.max(capacity, Math.max(1024, previous * 2));
+        totals = Arrays.copyOf(totals, grown);
+        itemTypes = Arrays.copyOf(itemTypes, grown);
+        heapPositions = Arrays.copyOf(heapPositions, grown);
+        Arrays.fill(heapPositions, previous, grown, -1);
+    }
+
+    /**
+     * Immutable view of the trending items at a point in time.
+     */
+    public static final class Snapshot {
+
+        private static final Snapshot EMPTY =
+                new Snapshot(new int[0], new String[0], new UserInteraction.ItemType[0], new int[0], 0L);
+
+        private final int[] items;
+        private final String[] itemIds;
+        private final UserInteraction.ItemType[] itemTypes;
+        private final int[] counts;
+        private final long builtAtMillis;
+
+        private Snapshot(int[] items, String[] itemIds, UserInteraction.ItemType[] itemTypes, int[] counts,
+                         long builtAtMillis) {
+            this.items = items;
+            this.itemIds = itemIds;
+            this.itemTypes = itemTypes;
+            this.counts = counts;
+            this.builtAtMillis = builtAtMillis;
+        }
+
+        public int size() {
+            return itemIds.length;
+        }
+
+        public int item(int rank) {
+            return items[rank];
+        }
+
+        public String itemId(int rank) {
+            return itemIds[rank];
+        }
+
+        public UserInteraction.ItemType itemType(int rank) {
+            return itemTypes[rank];
+        }
+
+        public int count(int rank) {
+            return counts[rank];
+        }
+    }
+
+    /**
+     * Open-addressing map from item index to the interaction count of one hour.
+     */
+    private static final class BucketCounts {
+        private int[] keys = emptyKeys(64);
+        private int[] values = new int[64];
+        private int size;
+
+        private void increment(int key, int delta) {
+            if ((size + 1) * 4 > keys.length * 3) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int slot = (key * 0x9E3779B9) >>> 1 & mask;
+            while (keys[slot] >= 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] < 0) {
+                keys[slot] = key;
+                size++;
+            }
+            values[slot] += delta;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = emptyKeys(oldKeys.length * 2);
+            values = new int[oldKeys.length * 2];
+            size = 0;
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldKeys[slot] >= 0) {
+                    increment(oldKeys[slot], oldValues[slot]);
+                }
+            }
+        }
+
+        private void clear() {
+            if (size == 0) {
+                return;
+            }
+            keys = emptyKeys(64);
+            values = new int[64];
+            size = 0;
+        }
+
+        private static int[] emptyKeys(int capacity) {
+            int[] keys = new int[capacity];
+            Arrays.fill(keys, -1);
+            return keys;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.examples.streaming_platform.recommendation.event;
+
+import com.examples.streaming_platform.recommendation.model.ContentItem;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Event published after a content item has been created or updated.
+ */
+@Getter
+@RequiredArgsConstructor
+public class ContentItemSavedEvent {
+
+    /**
+     * The stored content item.
+     */
+    private final ContentItem item;
+}
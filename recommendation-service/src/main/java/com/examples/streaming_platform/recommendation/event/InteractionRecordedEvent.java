@@ -0,0 +1,21 @@
+package com.examples.streaming_platform.recommendation.event;
+
+import com.examples.streaming_platform.recommendation.model.UserInteraction;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Event published after user interactions have been stored.
+ * In-memory engines listen for it to keep their state in step with the database.
+ */
+@Getter
+@RequiredArgsConstructor
+public class InteractionRecordedEvent {
+
+    /**
+     * The stored interactions.
+     */
+    private final List<UserInteraction> interactions;
+}
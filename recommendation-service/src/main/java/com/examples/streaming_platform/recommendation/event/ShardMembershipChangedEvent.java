@@ -0,0 +1,19 @@
+package com.examples.streaming_platform.recommendation.event;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Event published when the set of serving shards changes, so engines can reload the users they own.
+ */
+@Getter
+@RequiredArgsConstructor
+public class ShardMembershipChangedEvent {
+
+    /**
+     * The members of the new ring, sorted.
+     */
+    private final List<String> members;
+}
@@ -5,6 +5,7 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.BatchSize;
 
 import java.time.OffsetDateTime;
 import java.util.HashSet;
@@ -48,13 +49,16 @@ public class ContentItem {
     @Column(name = "average_rating")
     private Double averageRating;
 
-    @Column(name = "popularity_score")
+    // Decayed popularity as of the engine's last write; maintained by the popularity engine, never
+    // written through the entity
+    @Column(name = "popularity_score", insertable = false, updatable = false)
     private Double popularityScore;
 
     @Column(name = "last_updated", nullable = false)
     private OffsetDateTime lastUpdated;
 
     @ElementCollection
+    @BatchSize(size = 100)
     @CollectionTable(
         name = "content_item_genres",
         joinColumns = @JoinColumn(name = "item_id")
@@ -63,6 +67,7 @@ public class ContentItem {
     private Set<String> genres = new HashSet<>();
 
     @ElementCollection
+    @BatchSize(size = 100)
     @CollectionTable(
         name = "content_item_actors",
         joinColumns = @JoinColumn(name = "item_id")
@@ -71,6 +76,7 @@ public class ContentItem {
     private Set<String> actors = new HashSet<>();
 
     @ElementCollection
+    @BatchSize(size = 100)
     @CollectionTable(
         name = "content_item_keywords",
         joinColumns = @JoinColumn(name = "item_id")
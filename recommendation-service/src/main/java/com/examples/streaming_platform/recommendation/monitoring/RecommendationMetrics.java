@@ -0,0 +1,114 @@
+package com.examples.streaming_platform.recommendation.monitoring;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Metrics of the recommendation pipeline: the duration and candidate count of each stage, and how
+ * often a stage falls back to a cheaper source. Stages and fallbacks are a small fixed set of
+ * names, so the meters are registered once and cached.
+ */
+@Component
+public class RecommendationMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> candidateCounts = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public RecommendationMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Time a stage and record how many candidates it produced.
+     *
+     * @param stage the stage name
+     * @param work the stage
+     * @param count the number of candidates in the stage's result
+     * @param <T> the result type
+     * @return the stage's result
+     */
+    public <T> T record(String stage, Supplier<T> work, ToIntFunction<T> count) {
+        T result = time(stage, work);
+        candidateCount(stage).record(count.applyAsInt(result));
+        return result;
+    }
+
+    /**
+     * Time a stage that does not produce candidates.
+     *
+     * @param stage the stage name
+     * @param work the stage
+     * @param <T> the result type
+     * @return the stage's result
+     */
+    public <T> T time(String stage, Supplier<T> work) {
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = work.get();
+        } catch (RuntimeException e) {
+            timer(stage, "failure").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+        timer(stage, "success").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return result;
+    }
+
+    /**
+     * Count a stage falling back to another source.
+     *
+     * @param stage the stage that could not serve
+     * @param fallback the source served instead
+     */
+    public void fallback(String stage, String fallback) {
+        counter("recommendation.fallbacks", "Fallbacks from a recommendation stage to a cheaper source",
+                "stage", stage, "fallback", fallback).increment();
+    }
+
+    /**
+     * Count how a pipeline stage of a live request ended.
+     *
+     * @param stage the stage name
+     * @param outcome completed, failed, timed_out or rejected
+     */
+    public void stageOutcome(String stage, String outcome) {
+        counter("recommendation.stage.outcomes", "Pipeline stages of live requests by how they ended",
+                "stage", stage, "outcome", outcome).increment();
+    }
+
+    private Timer timer(String stage, String outcome) {
+        return timers.computeIfAbsent(stage + '|' + outcome, key -> Timer.builder("recommendation.stage.duration")
+                .description("Time taken by a recommendation stage")
+                .tag("stage", stage)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    private DistributionSummary candidateCount(String stage) {
+        return candidateCounts.computeIfAbsent(stage, key -> DistributionSummary.builder("recommendation.stage.candidates")
+                .description("Candidates produced by a recommendation stage")
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    private Counter counter(String name, String description, String tag1, String value1, String tag2, String value2) {
+        return counters.computeIfAbsent(name + '|' + value1 + '|' + value2, key -> Counter.builder(name)
+                .description(description)
+                .tag(tag1, value1)
+                .tag(tag2, value2)
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,45 @@
+package com.examples.streaming_platform.recommendation.ranking;
+
+import com.examples.streaming_platform.recommendation.engine.IdDictionary;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Collection;
+
+/**
+ * Stage of the ranking pipeline that decides whether a candidate may be recommended.
+ */
+@FunctionalInterface
+public interface CandidateFilter {
+
+    CandidateFilter ACCEPT_ALL = item -> true;
+
+    /**
+     * Check a candidate.
+     *
+     * @param item the item index
+     * @return true if the item may be recommended
+     */
+    boolean accept(int item);
+
+    /**
+     * Build a filter that rejects the given items, such as the ones a user has already seen.
+     *
+     * @param itemIds the item IDs to reject
+     * @param dictionary the item dictionary candidates are indexed by
+     * @return the filter
+     */
+    static CandidateFilter excluding(Collection<String> itemIds, IdDictionary dictionary) {
+        if (itemIds.isEmpty()) {
+            return ACCEPT_ALL;
+        }
+
+        RoaringBitmap excluded = new RoaringBitmap();
+        for (String itemId : itemIds) {
+            int item = dictionary.indexOf(itemId);
+            if (item >= 0) {
+                excluded.add(item);
+            }
+        }
+        return item -> !excluded.contains(item);
+    }
+}
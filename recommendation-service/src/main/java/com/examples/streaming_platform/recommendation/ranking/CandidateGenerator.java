@@ -0,0 +1,19 @@
+package com.examples.streaming_platform.recommendation.ranking;
+
+import com.examples.streaming_platform.recommendation.service.UserContext;
+
+/**
+ * Stage of the ranking pipeline that proposes scored candidates for a user.
+ */
+@FunctionalInterface
+public interface CandidateGenerator {
+
+    /**
+     * Generate candidates for a user.
+     *
+     * @param context the user context
+     * @param limit the maximum number of candidates
+     * @return the candidates, best first
+     */
+    Candidates generate(UserContext context, int limit);
+}
@@ -0,0 +1,129 @@
+package com.examples.streaming_platform.recommendation.ranking;
+
+import com.examples.streaming_platform.recommendation.dto.RecommendationDTO;
+import com.examples.streaming_platform.recommendation.engine.IdDictionary;
+import com.examples.streaming_platform.recommendation.engine.TopKSelector;
+import com.examples.streaming_platform.recommendation.model.UserInteraction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Scored candidates from one generator, best first, held as parallel primitive arrays of item
+ * indices, scores and item types. Every candidate in the list shares the generator's algorithm
+ * and reason labels.
+ */
+public final class Candidates {
+
+    private static final UserInteraction.ItemType[] ITEM_TYPES = UserInteraction.ItemType.values();
+
+    private final String algorithm;
+    private final String reason;
+    private int[] items;
+    private float[] scores;
+    private byte[] itemTypes;
+    private int size;
+
+    public Candidates(String algorithm, String reason, int capacity) {
+        this.algorithm = algorithm;
+        this.reason = reason;
+        this.items = new int[Math.max(1, capacity)];
+        this.scores = new float[items.length];
+        this.itemTypes = new byte[items.length];
+    }
+
+    /**
+     * Copy the entries of a sorted selector.
+     *
+     * @param selector the selector, already sorted by descending score
+     * @param algorithm the algorithm name
+     * @param reason the recommendation reason
+     * @return the candidates
+     */
+    public static Candidates of(TopKSelector selector, String algorithm, String reason) {
+        Candidates candidates = new Candidates(algorithm, reason, selector.size());
+        for (int rank = 0; rank < selector.size(); rank++) {
+            candidates.add(selector.id(rank), selector.score(rank), null);
+        }
+        return candidates;
+    }
+
+    /**
+     * Append a candidate.
+     *
+     * @param item the item index
+     * @param score the candidate score
+     * @param itemType the item type, or null if the generator doesn't know it
+     */
+    public void add(int item, float score, UserInteraction.ItemType itemType) {
+        if (size == items.length) {
+            int capacity = size * 2;
+            items = Arrays.copyOf(items, capacity);
+            scores = Arrays.copyOf(scores, capacity);
+            itemTypes = Arrays.copyOf(itemTypes, capacity);
+        }
+        items[size] = item;
+        scores[size] = score;
+        itemTypes[size] = (byte) (itemType == null ? -1 : itemType.ordinal());
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int item(int index) {
+        return items[index];
+    }
+
+    public float score(int index) {
+        return scores[index];
+    }
+
+    /**
+     * Get the encoded type of a candidate.
+     *
+     * @param index the candidate position
+     * @return the item type ordinal, or -1 if unknown
+     */
+    public byte itemTypeOrdinal(int index) {
+        return itemTypes[index];
+    }
+
+    public String algorithm() {
+        return algorithm;
+    }
+
+    public String reason() {
+        return reason;
+    }
+
+    /**
+     * Convert the first candidates to DTOs.
+     *
+     * @param dictionary the item dictionary the indices belong to
+     * @param limit the maximum number of recommendations
+     * @return a list of recommendations
+     */
+    public List<RecommendationDTO> toRecommendations(IdDictionary dictionary, int limit) {
+        int count = Math.min(size, limit);
+        List<RecommendationDTO> recommendations = new ArrayList<>(count);
+        for (int index = 0; index < count; index++) {
+            recommendations.add(toRecommendation(dictionary, items[index], scores[index], itemTypes[index],
+                    algorithm, reason));
+        }
+        return recommendations;
+    }
+
+    static RecommendationDTO toRecommendation(IdDictionary dictionary, int item, float score, byte itemType,
+                                              String algorithm, String reason) {
+        return RecommendationDTO.builder()
+                .itemId(dictionary.idOf(item))
+                .itemType(itemType < 0 ? null : ITEM_TYPES[itemType].name())
+                .score((double) score)
+                .algorithm(algorithm)
+                .reason(reason)
+                .build();
+    }
+}
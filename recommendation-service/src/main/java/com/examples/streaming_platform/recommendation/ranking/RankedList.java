@@ -0,0 +1,97 @@
+package com.examples.streaming_platform.recommendation.ranking;
+
+import com.examples.streaming_platform.recommendation.dto.RecommendationDTO;
+import com.examples.streaming_platform.recommendation.engine.IdDictionary;
+import com.examples.streaming_platform.recommendation.engine.TopKSelector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Final, bounded list of ranked items. Blended items are added first and fill-in candidates are
+ * appended while there is room. Items only become DTOs in {@link #toRecommendations(IdDictionary)},
+ * where they are ordered by score.
+ */
+public final class RankedList {
+
+    private final int limit;
+    private final int[] items;
+    private final float[] scores;
+    private final byte[] itemTypes;
+    private final String[] algorithms;
+    private final String[] reasons;
+    private int size;
+
+    public RankedList(int limit) {
+        this.limit = limit;
+        this.items = new int[limit];
+        this.scores = new float[limit];
+        this.itemTypes = new byte[limit];
+        this.algorithms = new String[limit];
+        this.reasons = new String[limit];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size >= limit;
+    }
+
+    /**
+     * Append fill-in candidates that pass the filter and are not listed yet, until the list is full.
+     *
+     * @param fill the fill-in candidates, best first
+     * @param filter the candidate filter
+     */
+    public void fill(Candidates fill, CandidateFilter filter) {
+        for (int index = 0; index < fill.size() && !isFull(); index++) {
+            int item = fill.item(index);
+            if (filter.accept(item) && !contains(item)) {
+                add(item, fill.score(index), fill.itemTypeOrdinal(index), fill.algorithm(), fill.reason());
+            }
+        }
+    }
+
+    /**
+     * Convert the list to DTOs, ordered by descending score.
+     *
+     * @param dictionary the item dictionary the indices belong to
+     * @return a list of recommendations
+     */
+    public List<RecommendationDTO> toRecommendations(IdDictionary dictionary) {
+        TopKSelector order = new TopKSelector(size);
+        for (int index = 0; index < size; index++) {
+            order.offer(index, scores[index]);
+        }
+        order.sortDescending();
+
+        List<RecommendationDTO> recommendations = new ArrayList<>(size);
+        for (int rank = 0; rank < order.size(); rank++) {
+            int index = order.id(rank);
+            recommendations.add(Candidates.toRecommendation(dictionary, items[index], scores[index],
+                    itemTypes[index], algorithms[index], reasons[index]));
+        }
+        return recommendations;
+    }
+
+    void add(int item, float score, byte itemType, String algorithm, String reason) {
+        items[size] = item;
+        scores[size] = score;
+        itemTypes[size] = itemType;
+        algorithms[size] = algorithm;
+        reasons[size] = reason;
+        size++;
+    }
+
+    private boolean contains(int item) {
+        // The list is bounded by the request limit, so a scan beats a hash set here
+        for (int index = 0; index < size; index++) {
+            if (items[index] == item) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
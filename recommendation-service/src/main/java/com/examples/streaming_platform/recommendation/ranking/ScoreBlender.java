@@ -0,0 +1,187 @@
+package com.examples.streaming_platform.recommendation.ranking;
+
+import com.examples.streaming_platform.recommendation.engine.TopKSelector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stage of the ranking pipeline that merges the candidates of several generators, each with its
+ * own weight, into one score per item. Items are kept in an open-addressing table keyed by item
+ * index, so blending allocates nothing per candidate.
+ */
+public final class ScoreBlender {
+
+    /**
+     * How the weighted scores of an item proposed by several generators are combined.
+     */
+    public enum Mode {
+        /** Add the weighted scores, so agreement between generators raises an item. */
+        SUM,
+        /** Keep the highest weighted score. */
+        MAX
+    }
+
+    private static final int EMPTY = -1;
+
+    private final Mode mode;
+    private final String blendedAlgorithm;
+    private final String blendedReason;
+    private final List<Candidates> sources = new ArrayList<>(4);
+    // Open-addressing table from item index to entry
+    private int[] keys;
+    private int[] entries;
+    private int mask;
+    // Entries in insertion order
+    private int[] items;
+    private float[] scores;
+    private byte[] itemTypes;
+    private byte[] sourceOf;
+    private byte[] sourceCount;
+    private int size;
+
+    /**
+     * Create a blender.
+     *
+     * @param mode how scores are combined
+     * @param blendedAlgorithm the algorithm label of items proposed by several generators in {@link Mode#SUM}
+     * @param blendedReason the reason given for items proposed by several generators in {@link Mode#SUM}
+     * @param expectedItems the expected number of distinct items
+     */
+    public ScoreBlender(Mode mode, String blendedAlgorithm, String blendedReason, int expectedItems) {
+        this.mode = mode;
+        this.blendedAlgorithm = blendedAlgorithm;
+        this.blendedReason = blendedReason;
+        int capacity = Integer.highestOneBit(Math.max(8, expectedItems) * 2 - 1) * 2;
+        this.keys = new int[capacity];
+        this.entries = new int[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(keys, EMPTY);
+        int entryCapacity = Math.max(8, expectedItems);
+        this.items = new int[entryCapacity];
+        this.scores = new float[entryCapacity];
+        this.itemTypes = new byte[entryCapacity];
+        this.sourceOf = new byte[entryCapacity];
+        this.sourceCount = new byte[entryCapacity];
+    }
+
+    /**
+     * Blend in a generator's candidates.
+     *
+     * @param candidates the candidates
+     * @param weight the weight applied to their scores
+     */
+    public void add(Candidates candidates, float weight) {
+        byte source = (byte) sources.size();
+        sources.add(candidates);
+
+        for (int index = 0; index < candidates.size(); index++) {
+            int item = candidates.item(index);
+            float score = candidates.score(index) * weight;
+            int entry = find(item);
+
+            if (entry < 0) {
+                entry = insert(item);
+                scores[entry] = score;
+                itemTypes[entry] = candidates.itemTypeOrdinal(index);
+                sourceOf[entry] = source;
+                sourceCount[entry] = 1;
+                continue;
+            }
+
+            sourceCount[entry]++;
+            if (itemTypes[entry] < 0) {
+                itemTypes[entry] = candidates.itemTypeOrdinal(index);
+            }
+            if (mode == Mode.SUM) {
+                scores[entry] += score;
+            } else if (score > scores[entry]) {
+                scores[entry] = score;
+                sourceOf[entry] = source;
+            }
+        }
+    }
+
+    /**
+     * Select the highest blended scores that pass a filter.
+     *
+     * @param limit the maximum number of items
+     * @param filter the candidate filter
+     * @return the selected items, best first
+     */
+    public RankedList top(int limit, CandidateFilter filter) {
+        TopKSelector selector = new TopKSelector(limit);
+        for (int entry = 0; entry < size; entry++) {
+            if (scores[entry] > selector.threshold() && filter.accept(items[entry])) {
+                selector.offer(entry, scores[entry]);
+            }
+        }
+        selector.sortDescending();
+
+        RankedList ranked = new RankedList(limit);
+        for (int rank = 0; rank < selector.size(); rank++) {
+            int entry = selector.id(rank);
+            boolean blended = mode == Mode.SUM && sourceCount[entry] > 1;
+            Candidates source = sources.get(sourceOf[entry]);
+            ranked.add(items[entry], scores[entry], itemTypes[entry],
+                    blended ? blendedAlgorithm : source.algorithm(),
+                    blended ? blendedReason : source.reason());
+        }
+        return ranked;
+    }
+
+    private int find(int item) {
+        for (int slot = mix(item) & mask; ; slot = (slot + 1) & mask) {
+            if (keys[slot] == EMPTY) {
+                return -1;
+            }
+            if (keys[slot] == item) {
+                return entries[slot];
+            }
+        }
+    }
+
+    private int insert(int item) {
+        if (size == items.length) {
+            int capacity = size * 2;
+            items = Arrays.copyOf(items, capacity);
+            scores = Arrays.copyOf(scores, capacity);
+            itemTypes = Arrays.copyOf(itemTypes, capacity);
+            sourceOf = Arrays.copyOf(sourceOf, capacity);
+            sourceCount = Arrays.copyOf(sourceCount, capacity);
+        }
+        // Keep the table at most half full
+        if ((size + 1) * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+
+        int entry = size++;
+        items[entry] = item;
+        place(item, entry);
+        return entry;
+    }
+
+    private void rehash(int capacity) {
+        keys = new int[capacity];
+        entries = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(keys, EMPTY);
+        for (int entry = 0; entry < size; entry++) {
+            place(items[entry], entry);
+        }
+    }
+
+    private void place(int item, int entry) {
+        int slot = mix(item) & mask;
+        while (keys[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = item;
+        entries[slot] = entry;
+    }
+
+    private static int mix(int item) {
+        return item * 0x9E3779B9;
+    }
+}
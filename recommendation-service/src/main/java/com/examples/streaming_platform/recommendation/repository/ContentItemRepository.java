@@ -7,6 +7,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -101,7 +102,7 @@ public interface ContentItemRepository extends JpaRepository<ContentItem, String
             ")" +
             "SELECT ci.* FROM content_items ci" +
             " JOIN similar_items si ON ci.item_id = si.item_id" +
-            " ORDER BY si.overlap_count DESC, ci.popularity_score DESC" +
+            " ORDER BY si.overlap_count DESC, ci.popularity_log_score DESC NULLS LAST" +
             " LIMIT :limit",
             nativeQuery = true)
     List<ContentItem> findSimilarContentByGenres(
@@ -110,10 +111,32 @@ public interface ContentItemRepository extends JpaRepository<ContentItem, String
             @Param("limit") int limit);
 
     /**
-     * Find the most popular content items.
+     * Find the IDs of the most popular content items.
      *
      * @param limit the maximum number of items to return
-     * @return a list of popular content items
+     * @return a list of item IDs, most popular first
      */
-    List<ContentItem> findByOrderByPopularityScoreDesc(int limit);
+    @Query(value = "SELECT item_id FROM content_items " +
+            "ORDER BY popularity_log_score DESC NULLS LAST " +
+            "LIMIT :limit",
+            nativeQuery = true)
+    List<String> findMostPopularIds(@Param("limit") int limit);
+
+    /**
+     * Find content items by ID with their genres fetched in the same query.
+     *
+     * @param ids the item IDs
+     * @return the content items that exist
+     */
+    @Query("SELECT DISTINCT ci FROM ContentItem ci LEFT JOIN FETCH ci.genres WHERE ci.id IN :ids")
+    List<ContentItem> findAllWithGenresByIdIn(@Param("ids") Collection<String> ids);
+
+    /**
+     * Find the IDs of content items that have any of the specified genres.
+     *
+     * @param genres the set of genres
+     * @return a list of item IDs
+     */
+    @Query("SELECT DISTINCT ci.id FROM ContentItem ci JOIN ci.genres g WHERE g IN :genres")
+    List<String> findIdsByGenresIn(@Param("genres") Set<String> genres);
 }
@@ -9,6 +9,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,13 +20,19 @@ import java.util.Optional;
 public interface UserInteractionRepository extends JpaRepository<UserInteraction, Long> {
 
     /**
-     * Find interactions by user ID.
+     * Highest interaction id folded into the rollups. Queries over the rollups add the raw rows
+     * past it, which are at most a few maintenance runs' worth and found through the id index.
+     */
+    String ROLLUP_WATERMARK = "(SELECT last_interaction_id FROM interaction_rollup_state WHERE name = 'rollups')";
+
+    /**
+     * Find interactions by user ID. Returns a list rather than a page, so no count query is run.
      *
      * @param userId the user ID
      * @param pageable pagination information
-     * @return a page of user interactions
+     * @return the user interactions of the requested page
      */
-    Page<UserInteraction> findByUserId(String userId, Pageable pageable);
+    List<UserInteraction> findByUserId(String userId, Pageable pageable);
 
     /**
      * Find interactions by item ID.
@@ -37,14 +44,15 @@ public interface UserInteractionRepository extends JpaRepository<UserInteraction
     Page<UserInteraction> findByItemId(String itemId, Pageable pageable);
 
     /**
-     * Find interactions by user ID and interaction type.
+     * Find interactions by user ID and interaction type. Returns a list rather than a page, so no
+     * count query is run.
      *
      * @param userId the user ID
      * @param interactionType the interaction type
      * @param pageable pagination information
-     * @return a page of user interactions
+     * @return the user interactions of the requested page
      */
-    Page<UserInteraction> findByUserIdAndInteractionType(
+    List<UserInteraction> findByUserIdAndInteractionType(
             String userId, 
             UserInteraction.InteractionType interactionType, 
             Pageable pageable);
@@ -71,22 +79,72 @@ public interface UserInteractionRepository extends JpaRepository<UserInteraction
             OffsetDateTime startTime, 
             OffsetDateTime endTime);
 
+    /**
+     * Find the most recent interactions of each of several users with a single query.
+     *
+     * @param userIds the user IDs
+     * @param limit the maximum number of interactions per user
+     * @return the interactions, grouped by user and newest first within each user
+     */
+    @Query(value = "SELECT * FROM (" +
+            "SELECT ui.*, ROW_NUMBER() OVER (PARTITION BY ui.user_id ORDER BY ui.timestamp DESC) AS recency " +
+            "FROM user_interactions ui WHERE ui.user_id IN :userIds) recent " +
+            "WHERE recency <= :limit " +
+            "ORDER BY user_id, recency",
+            nativeQuery = true)
+    List<UserInteraction> findRecentByUserIds(
+            @Param("userIds") Collection<String> userIds,
+            @Param("limit") int limit);
+
+    /**
+     * Find the most recent interactions of one type for each of several users with a single query.
+     *
+     * @param userIds the user IDs
+     * @param interactionType the interaction type name
+     * @param limit the maximum number of interactions per user
+     * @return the interactions, grouped by user and newest first within each user
+     */
+    @Query(value = "SELECT * FROM (" +
+            "SELECT ui.*, ROW_NUMBER() OVER (PARTITION BY ui.user_id ORDER BY ui.timestamp DESC) AS recency " +
+            "FROM user_interactions ui WHERE ui.user_id IN :userIds AND ui.interaction_type = :interactionType) recent " +
+            "WHERE recency <= :limit " +
+            "ORDER BY user_id, recency",
+            nativeQuery = true)
+    List<UserInteraction> findRecentByUserIdsAndInteractionType(
+            @Param("userIds") Collection<String> userIds,
+            @Param("interactionType") String interactionType,
+            @Param("limit") int limit);
+
+    /**
+     * Count the interactions recorded after a point in time.
+     *
+     * @param since the start time, exclusive
+     * @return the number of interactions
+     */
+    long countByTimestampAfter(OffsetDateTime since);
+
     /**
      * Find users who interacted with the same items as the specified user.
+     * Reads the {@code user_item_interactions} rollup plus the raw interactions that are not rolled up yet.
      *
      * @param userId the user ID
      * @param interactionType the interaction type
      * @param minInteractions minimum number of common interactions
      * @return a list of user IDs with similar interactions
      */
-    @Query(value = "SELECT ui2.user_id FROM user_interactions ui1 " +
-            "JOIN user_interactions ui2 ON ui1.item_id = ui2.item_id " +
-            "WHERE ui1.user_id = :userId " +
-            "AND ui1.interaction_type = :interactionType " +
-            "AND ui2.interaction_type = :interactionType " +
-            "AND ui2.user_id != :userId " +
-            "GROUP BY ui2.user_id " +
-            "HAVING COUNT(DISTINCT ui1.item_id) >= :minInteractions",
+    @Query(value = "WITH recent AS MATERIALIZED (" +
+            "SELECT DISTINCT user_id, item_id FROM user_interactions " +
+            "WHERE interaction_type = :interactionType AND id > " + ROLLUP_WATERMARK + "), " +
+            "mine AS MATERIALIZED (" +
+            "SELECT item_id FROM user_item_interactions WHERE user_id = :userId AND interaction_type = :interactionType " +
+            "UNION SELECT item_id FROM recent WHERE user_id = :userId) " +
+            "SELECT user_id FROM (" +
+            "SELECT ui2.user_id, ui2.item_id FROM user_item_interactions ui2 JOIN mine ON ui2.item_id = mine.item_id " +
+            "WHERE ui2.interaction_type = :interactionType AND ui2.user_id != :userId " +
+            "UNION SELECT r.user_id, r.item_id FROM recent r JOIN mine ON r.item_id = mine.item_id " +
+            "WHERE r.user_id != :userId) shared " +
+            "GROUP BY user_id " +
+            "HAVING COUNT(*) >= :minInteractions",
             nativeQuery = true)
     List<String> findSimilarUsers(
             @Param("userId") String userId,
@@ -95,21 +153,27 @@ public interface UserInteractionRepository extends JpaRepository<UserInteraction
 
     /**
      * Find items that are frequently interacted with together with the specified item.
+     * Reads the {@code user_item_interactions} rollup plus the raw interactions that are not rolled up yet.
      *
      * @param itemId the item ID
      * @param interactionType the interaction type
      * @param minCooccurrences minimum number of co-occurrences
      * @return a list of item IDs that frequently co-occur
      */
-    @Query(value = "SELECT ui2.item_id FROM user_interactions ui1 " +
-            "JOIN user_interactions ui2 ON ui1.user_id = ui2.user_id " +
-            "WHERE ui1.item_id = :itemId " +
-            "AND ui1.interaction_type = :interactionType " +
-            "AND ui2.interaction_type = :interactionType " +
-            "AND ui2.item_id != :itemId " +
-            "GROUP BY ui2.item_id " +
-            "HAVING COUNT(DISTINCT ui1.user_id) >= :minCooccurrences " +
-            "ORDER BY COUNT(DISTINCT ui1.user_id) DESC",
+    @Query(value = "WITH recent AS MATERIALIZED (" +
+            "SELECT DISTINCT user_id, item_id FROM user_interactions " +
+            "WHERE interaction_type = :interactionType AND id > " + ROLLUP_WATERMARK + "), " +
+            "users AS MATERIALIZED (" +
+            "SELECT user_id FROM user_item_interactions WHERE item_id = :itemId AND interaction_type = :interactionType " +
+            "UNION SELECT user_id FROM recent WHERE item_id = :itemId) " +
+            "SELECT item_id FROM (" +
+            "SELECT ui2.user_id, ui2.item_id FROM user_item_interactions ui2 JOIN users ON ui2.user_id = users.user_id " +
+            "WHERE ui2.interaction_type = :interactionType AND ui2.item_id != :itemId " +
+            "UNION SELECT r.user_id, r.item_id FROM recent r JOIN users ON r.user_id = users.user_id " +
+            "WHERE r.item_id != :itemId) shared " +
+            "GROUP BY item_id " +
+            "HAVING COUNT(*) >= :minCooccurrences " +
+            "ORDER BY COUNT(*) DESC",
             nativeQuery = true)
     List<String> findCooccurringItems(
             @Param("itemId") String itemId,
@@ -118,21 +182,98 @@ public interface UserInteractionRepository extends JpaRepository<UserInteraction
 
     /**
      * Find trending items based on recent interaction counts.
+     * Reads the {@code item_interactions_hourly} rollup, so interactions since the last rollup run are not included.
      *
      * @param interactionTypes the interaction types to consider
      * @param since the start time for trending calculation
      * @param limit the maximum number of items to return
      * @return a list of trending item IDs
      */
-    @Query(value = "SELECT item_id FROM user_interactions " +
+    @Query(value = "SELECT item_id FROM item_interactions_hourly " +
             "WHERE interaction_type IN :interactionTypes " +
-            "AND timestamp >= :since " +
+            "AND bucket_start >= :since " +
             "GROUP BY item_id " +
-            "ORDER BY COUNT(*) DESC " +
+            "ORDER BY SUM(interaction_count) DESC " +
             "LIMIT :limit",
             nativeQuery = true)
     List<String> findTrendingItems(
             @Param("interactionTypes") List<String> interactionTypes,
             @Param("since") OffsetDateTime since,
             @Param("limit") int limit);
+
+    /**
+     * Find a page of user IDs, in ID order, for batch jobs over all users.
+     * Reads the {@code user_item_interactions} rollup plus the raw interactions that are not rolled up yet.
+     *
+     * @param after the last user ID of the previous page, or an empty string for the first page
+     * @param limit the maximum number of user IDs to return
+     * @return the user IDs following {@code after}
+     */
+    @Query(value = "SELECT user_id FROM (" +
+            "(SELECT user_id FROM user_item_interactions " +
+            "WHERE user_id > :after " +
+            "GROUP BY user_id " +
+            "ORDER BY user_id " +
+            "LIMIT :limit) " +
+            "UNION SELECT user_id FROM user_interactions " +
+            "WHERE id > " + ROLLUP_WATERMARK + " AND user_id > :after) users " +
+            "ORDER BY user_id " +
+            "LIMIT :limit",
+            nativeQuery = true)
+    List<String> findUserIdsAfter(
+            @Param("after") String after,
+            @Param("limit") int limit);
+
+    /**
+     * Find a page of users who interacted since a point in time, in ID order, for batch jobs over active users.
+     * Reads the {@code user_item_interactions} rollup plus the raw interactions that are not rolled up yet.
+     *
+     * @param after the last user ID of the previous page, or an empty string for the first page
+     * @param since the start time
+     * @param limit the maximum number of user IDs to return
+     * @return the user IDs following {@code after}
+     */
+    @Query(value = "SELECT user_id FROM (" +
+            "(SELECT user_id FROM user_item_interactions " +
+            "WHERE user_id > :after " +
+            "GROUP BY user_id " +
+            "HAVING MAX(last_interaction_at) >= :since " +
+            "ORDER BY user_id " +
+            "LIMIT :limit) " +
+            "UNION SELECT user_id FROM user_interactions " +
+            "WHERE id > " + ROLLUP_WATERMARK + " AND user_id > :after AND timestamp >= :since) active " +
+            "ORDER BY user_id " +
+            "LIMIT :limit",
+            nativeQuery = true)
+    List<String> findActiveUserIdsAfter(
+            @Param("after") String after,
+            @Param("since") OffsetDateTime since,
+            @Param("limit") int limit);
+
+    /**
+     * Count the users with interactions, rolled up or not.
+     *
+     * @return the number of users
+     */
+    @Query(value = "SELECT COUNT(*) FROM (" +
+            "SELECT user_id FROM user_item_interactions " +
+            "UNION SELECT user_id FROM user_interactions WHERE id > " + ROLLUP_WATERMARK + ") users",
+            nativeQuery = true)
+    long countUsers();
+
+    /**
+     * Count the users who interacted since a point in time, from the rollup and the raw interactions
+     * that are not rolled up yet.
+     *
+     * @param since the start time
+     * @return the number of users
+     */
+    @Query(value = "SELECT COUNT(*) FROM (" +
+            "SELECT user_id FROM user_item_interactions " +
+            "GROUP BY user_id " +
+            "HAVING MAX(last_interaction_at) >= :since " +
+            "UNION SELECT user_id FROM user_interactions " +
+            "WHERE id > " + ROLLUP_WATERMARK + " AND timestamp >= :since) active",
+            nativeQuery = true)
+    long countActiveUsers(@Param("since") OffsetDateTime since);
 }
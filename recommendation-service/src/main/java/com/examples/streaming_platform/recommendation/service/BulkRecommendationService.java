@@ -0,0 +1,449 @@
+package com.examples.streaming_platform.recommendation.service;
+
+import com.examples.streaming_platform.recommendation.dto.BulkJobStatusDTO;
+import com.examples.streaming_platform.recommendation.dto.BulkRecommendationRequestDTO;
+import com.examples.streaming_platform.recommendation.dto.RecommendationDTO;
+import com.examples.streaming_platform.recommendation.dto.UserRecommendationsDTO;
+import com.examples.streaming_platform.recommendation.repository.UserInteractionRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.OffsetDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Bulk recommendation jobs for campaigns and precomputation. The selected users are split into
+ * partitions that are ranked in parallel on a dedicated pool, each partition loading its users'
+ * contexts with one query. Results are streamed as newline-delimited JSON in request order, and
+ * only a bounded number of partitions is in flight at a time, so memory use does not grow with
+ * the number of users.
+ */
+@Service
+@Slf4j
+public class BulkRecommendationService {
+
+    private static final byte NEWLINE = '\n';
+
+    private final RecommendationService recommendationService;
+    private final UserContextService userContextService;
+    private final UserInteractionRepository userInteractionRepository;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService executor;
+    // Releases the slots of jobs whose stream was never started, e.g. because the client went away
+    private final ScheduledExecutorService expiryScheduler;
+    private final Semaphore jobPermits;
+    // Running jobs and the most recently finished ones, oldest first
+    private final Map<String, BulkJob> jobs = new LinkedHashMap<>();
+    private final AtomicInteger activeJobs = new AtomicInteger();
+    private final Counter succeededCounter;
+    private final Counter failedCounter;
+
+    @Value("${recommendation.bulk.partition-size:256}")
+    private int partitionSize;
+
+    @Value("${recommendation.bulk.max-in-flight-partitions:8}")
+    private int maxInFlightPartitions;
+
+    @Value("${recommendation.bulk.retained-jobs:100}")
+    private int retainedJobs;
+
+    @Value("${recommendation.bulk.progress-log-interval-ms:10000}")
+    private long progressLogIntervalMs;
+
+    @Value("${recommendation.bulk.stream-start-timeout-ms:30000}")
+    private long streamStartTimeoutMs;
+
+    public BulkRecommendationService(RecommendationService recommendationService,
+                                     UserContextService userContextService,
+                                     UserInteractionRepository userInteractionRepository,
+                                     ObjectMapper objectMapper,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${recommendation.bulk.threads:4}") int threads,
+                                     @Value("${recommendation.bulk.max-concurrent-jobs:2}") int maxConcurrentJobs) {
+        this.recommendationService = recommendationService;
+        this.userContextService = userContextService;
+        this.userInteractionRepository = userInteractionRepository;
+        this.objectMapper = objectMapper;
+        this.jobPermits = new Semaphore(maxConcurrentJobs);
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "bulk-recommendation-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        this.expiryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bulk-recommendation-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Gauge.builder("recommendation.bulk.jobs.active", activeJobs, AtomicInteger::get)
+                .description("Bulk recommendation jobs in progress")
+                .register(meterRegistry);
+        this.succeededCounter = Counter.builder("recommendation.bulk.users")
+                .description("Users processed by bulk recommendation jobs")
+                .tag("outcome", "success")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("recommendation.bulk.users")
+                .description("Users processed by bulk recommendation jobs")
+                .tag("outcome", "failure")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Start a bulk job, counting the users it covers, unless too many jobs are already running.
+     * The job holds its slot until {@link #stream(BulkJob, OutputStream)} returns, or until
+     * {@code stream-start-timeout-ms} passes without the stream being started.
+     *
+     * @param request the job request
+     * @return the job, or null if the maximum number of concurrent jobs is running
+     */
+    public BulkJob start(BulkRecommendationRequestDTO request) {
+        if (!jobPermits.tryAcquire()) {
+            return null;
+        }
+
+        try {
+            UserSource users = userSource(request);
+            BulkJob job = new BulkJob(UUID.randomUUID().toString(), request.getLimit(), users, users.count());
+            synchronized (jobs) {
+                jobs.put(job.id, job);
+                // Forget the oldest finished jobs
+                jobs.values().removeIf(retained -> jobs.size() > retainedJobs
+                        && retained.state != BulkJobStatusDTO.State.RUNNING);
+            }
+            activeJobs.incrementAndGet();
+            expiryScheduler.schedule(() -> expire(job), streamStartTimeoutMs, TimeUnit.MILLISECONDS);
+            log.info("Started bulk recommendation job {} for {} users", job.id, job.total);
+            return job;
+        } catch (RuntimeException e) {
+            jobPermits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Run a bulk job, writing one JSON line per user to the output in selection order.
+     * Users whose recommendations fail are written with an error message instead.
+     *
+     * @param job the job returned by {@link #start(BulkRecommendationRequestDTO)}
+     * @param out the output stream
+     * @throws IOException if the output cannot be written, for example because the client went away
+     * @throws IllegalStateException if the job expired before its stream was started
+     */
+    public void stream(BulkJob job, OutputStream out) throws IOException {
+        if (!job.claimed.compareAndSet(false, true)) {
+            throw new IllegalStateException("Bulk job " + job.id + " expired before its stream was started");
+        }
+        Deque<Future<byte[]>> inFlight = new ArrayDeque<>(maxInFlightPartitions);
+        try {
+            // Fill candidates and the resident engines are shared by every user of the job
+            Function<UserContext, List<RecommendationDTO>> ranker = recommendationService.batchRanker(job.limit);
+
+            job.users.forEachPartition(partitionSize, partition -> {
+                inFlight.add(executor.submit(() -> rank(job, partition, ranker)));
+                // Write the oldest partition before starting more than the in-flight bound
+                if (inFlight.size() >= maxInFlightPartitions) {
+                    write(job, inFlight.poll(), out);
+                }
+            });
+            while (!inFlight.isEmpty()) {
+                write(job, inFlight.poll(), out);
+            }
+
+            job.state = BulkJobStatusDTO.State.COMPLETED;
+            log.info("Bulk recommendation job {} completed: {} users, {} failed, {} users/s",
+                    job.id, job.processed.get(), job.failed.get(), Math.round(job.usersPerSecond()));
+        } catch (IOException | RuntimeException e) {
+            job.state = BulkJobStatusDTO.State.FAILED;
+            inFlight.forEach(future -> future.cancel(true));
+            log.warn("Bulk recommendation job {} failed after {} of {} users",
+                    job.id, job.processed.get(), job.total, e);
+            throw e;
+        } finally {
+            activeJobs.decrementAndGet();
+            jobPermits.release();
+        }
+    }
+
+    /**
+     * Release the slot of a job whose stream has not been started, for example because the
+     * request timed out or the client disconnected before the response body was written.
+     *
+     * @param job the job
+     */
+    private void expire(BulkJob job) {
+        if (!job.claimed.compareAndSet(false, true)) {
+            return;
+        }
+        job.state = BulkJobStatusDTO.State.FAILED;
+        activeJobs.decrementAndGet();
+        jobPermits.release();
+        log.warn("Bulk recommendation job {} expired: its stream was not started within {} ms",
+                job.id, streamStartTimeoutMs);
+    }
+
+    /**
+     * Get the progress of a running or recently finished job.
+     *
+     * @param jobId the job ID
+     * @return the job status, if the job is known
+     */
+    public Optional<BulkJobStatusDTO> getStatus(String jobId) {
+        synchronized (jobs) {
+            return Optional.ofNullable(jobs.get(jobId)).map(BulkJob::toStatus);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        expiryScheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Rank a partition of users and encode their lines.
+     *
+     * @param job the job
+     * @param userIds the users of the partition
+     * @param ranker the job's ranker
+     * @return the encoded lines
+     * @throws IOException if a line cannot be encoded
+     */
+    private byte[] rank(BulkJob job, List<String> userIds, Function<UserContext, List<RecommendationDTO>> ranker)
+            throws IOException {
+        ByteArrayOutputStream lines = new ByteArrayOutputStream(userIds.size() * 128 * job.limit);
+        Map<String, UserContext> contexts;
+        try {
+            contexts = userContextService.loadAll(userIds);
+        } catch (RuntimeException e) {
+            log.warn("Failed to load contexts for a partition of {} users in bulk job {}", userIds.size(), job.id, e);
+            contexts = Map.of();
+        }
+
+        for (String userId : userIds) {
+            UserRecommendationsDTO line;
+            UserContext context = contexts.get(userId);
+            try {
+                if (context == null) {
+                    throw new IllegalStateException("User context could not be loaded");
+                }
+                line = UserRecommendationsDTO.builder()
+                        .userId(userId)
+                        .recommendations(ranker.apply(context))
+                        .build();
+                succeededCounter.increment();
+            } catch (RuntimeException e) {
+                log.debug("Failed to rank user {} in bulk job {}", userId, job.id, e);
+                line = UserRecommendationsDTO.builder().userId(userId).error(e.getMessage()).build();
+                job.failed.incrementAndGet();
+                failedCounter.increment();
+            }
+            lines.write(objectMapper.writeValueAsBytes(line));
+            lines.write(NEWLINE);
+        }
+        return lines.toByteArray();
+    }
+
+    /**
+     * Wait for a partition and write its lines.
+     *
+     * @param job the job
+     * @param partition the partition's pending lines
+     * @param out the output stream
+     * @throws IOException if the output cannot be written
+     */
+    private void write(BulkJob job, Future<byte[]> partition, OutputStream out) throws IOException {
+        byte[] lines;
+        try {
+            lines = partition.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for bulk job " + job.id, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Bulk job " + job.id + " partition failed", e.getCause());
+        }
+        out.write(lines);
+        out.flush();
+
+        int users = countLines(lines);
+        job.processed.addAndGet(users);
+        long now = System.nanoTime();
+        if (now - job.lastProgressLog >= TimeUnit.MILLISECONDS.toNanos(progressLogIntervalMs)) {
+            job.lastProgressLog = now;
+            log.info("Bulk recommendation job {}: {} of {} users, {} users/s, ETA {} s", job.id,
+                    job.processed.get(), job.total, Math.round(job.usersPerSecond()), job.etaSeconds());
+        }
+    }
+
+    private static int countLines(byte[] lines) {
+        int count = 0;
+        for (byte b : lines) {
+            if (b == NEWLINE) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Choose where a job's users come from.
+     *
+     * @param request the job request
+     * @return the user source
+     */
+    private UserSource userSource(BulkRecommendationRequestDTO request) {
+        if (request.getUserIds() != null && !request.getUserIds().isEmpty()) {
+            // Each user is written once, in the order given
+            List<String> userIds = new ArrayList<>(new LinkedHashSet<>(request.getUserIds()));
+            return new UserSource() {
+                @Override
+                public long count() {
+                    return userIds.size();
+                }
+
+                @Override
+                public void forEachPartition(int size, PartitionConsumer consumer) throws IOException {
+                    for (List<String> partition : Lists.partition(userIds, size)) {
+                        consumer.accept(List.copyOf(partition));
+                    }
+                }
+            };
+        }
+        if (request.getSegment() == null) {
+            throw new IllegalArgumentException("Either userIds or segment is required");
+        }
+
+        OffsetDateTime activeSince = OffsetDateTime.now().minusDays(request.getActiveDays());
+        boolean active = request.getSegment() == BulkRecommendationRequestDTO.Segment.ACTIVE;
+        return new UserSource() {
+            @Override
+            public long count() {
+                return active
+                        ? userInteractionRepository.countActiveUsers(activeSince)
+                        : userInteractionRepository.countUsers();
+            }
+
+            @Override
+            public void forEachPartition(int size, PartitionConsumer consumer) throws IOException {
+                // Users are paged by ID from the per-user rollup, so no cursor is held open
+                String after = "";
+                while (true) {
+                    List<String> partition = active
+                            ? userInteractionRepository.findActiveUserIdsAfter(after, activeSince, size)
+                            : userInteractionRepository.findUserIdsAfter(after, size);
+                    if (partition.isEmpty()) {
+                        return;
+                    }
+                    consumer.accept(partition);
+                    if (partition.size() < size) {
+                        return;
+                    }
+                    after = partition.get(partition.size() - 1);
+                }
+            }
+        };
+    }
+
+    /**
+     * Users selected by a bulk job, produced a partition at a time.
+     */
+    private interface UserSource {
+
+        long count();
+
+        void forEachPartition(int size, PartitionConsumer consumer) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface PartitionConsumer {
+
+        void accept(List<String> userIds) throws IOException;
+    }
+
+    /**
+     * A bulk job and its progress.
+     */
+    public static final class BulkJob {
+        private final String id;
+        private final int limit;
+        private final UserSource users;
+        private final long total;
+        private final OffsetDateTime startedAt = OffsetDateTime.now();
+        private final long startNanos = System.nanoTime();
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        // Set once by whichever comes first: the stream starting or the job expiring
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private volatile BulkJobStatusDTO.State state = BulkJobStatusDTO.State.RUNNING;
+        // Only touched by the thread writing the stream
+        private long lastProgressLog = startNanos;
+
+        private BulkJob(String id, int limit, UserSource users, long total) {
+            this.id = id;
+            this.limit = limit;
+            this.users = users;
+            this.total = total;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        private double usersPerSecond() {
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            return seconds > 0 ? processed.get() / seconds : 0;
+        }
+
+        private Long etaSeconds() {
+            double rate = usersPerSecond();
+            if (state != BulkJobStatusDTO.State.RUNNING || rate <= 0) {
+                return null;
+            }
+            return Math.round(Math.max(0, total - processed.get()) / rate);
+        }
+
+        private BulkJobStatusDTO toStatus() {
+            return BulkJobStatusDTO.builder()
+                    .jobId(id)
+                    .state(state)
+                    .startedAt(startedAt)
+                    .total(total)
+                    .processed(processed.get())
+                    .failed(failed.get())
+                    .usersPerSecond(usersPerSecond())
+                    .etaSeconds(etaSeconds())
+                    .build();
+        }
+    }
+}
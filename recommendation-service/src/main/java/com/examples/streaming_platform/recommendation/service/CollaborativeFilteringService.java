@@ -1,27 +1,23 @@
 package com.examples.streaming_platform.recommendation.service;
 
 import com.examples.streaming_platform.recommendation.dto.RecommendationDTO;
+import com.examples.streaming_platform.recommendation.engine.CollaborativeFilteringEngine;
+import com.examples.streaming_platform.recommendation.engine.IdDictionaries;
+import com.examples.streaming_platform.recommendation.engine.ItemNeighborIndex;
+import com.examples.streaming_platform.recommendation.engine.MahoutRecommenderHolder;
+import com.examples.streaming_platform.recommendation.engine.TopKSelector;
 import com.examples.streaming_platform.recommendation.model.UserInteraction;
+import com.examples.streaming_platform.recommendation.ranking.Candidates;
 import com.examples.streaming_platform.recommendation.repository.UserInteractionRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.mahout.cf.taste.common.TasteException;
-import org.apache.mahout.cf.taste.impl.model.jdbc.PostgreSQLJDBCDataModel;
-import org.apache.mahout.cf.taste.impl.neighborhood.ThresholdUserNeighborhood;
-import org.apache.mahout.cf.taste.impl.recommender.GenericUserBasedRecommender;
-import org.apache.mahout.cf.taste.impl.similarity.PearsonCorrelationSimilarity;
-import org.apache.mahout.cf.taste.model.DataModel;
-import org.apache.mahout.cf.taste.neighborhood.UserNeighborhood;
 import org.apache.mahout.cf.taste.recommender.RecommendedItem;
-import org.apache.mahout.cf.taste.recommender.UserBasedRecommender;
-import org.apache.mahout.cf.taste.similarity.UserSimilarity;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * Service for collaborative filtering recommendations.
@@ -31,8 +27,17 @@ import java.util.stream.Collectors;
 @Slf4j
 public class CollaborativeFilteringService {
 
+    private static final int MIN_COOCCURRENCES = 3;
+
     private final UserInteractionRepository userInteractionRepository;
-    private final DataSource dataSource;
+    private final CollaborativeFilteringEngine collaborativeFilteringEngine;
+    private final MahoutRecommenderHolder mahoutRecommenderHolder;
+    private final ItemNeighborIndex itemNeighborIndex;
+    private final MatrixFactorizationService matrixFactorizationService;
+    private final IdDictionaries dictionaries;
+
+    @Value("${recommendation.features.matrix-factorization:true}")
+    private boolean enableMatrixFactorization;
     
     @Value("${recommendation.algorithm.neighborhood-size:50}")
     private int neighborhoodSize;
@@ -48,60 +53,102 @@ public class CollaborativeFilteringService {
      * @return a list of recommendations
      */
     public List<RecommendationDTO> getUserBasedRecommendations(String userId, int limit) {
+        return getUserBasedCandidates(userId, limit).toRecommendations(dictionaries.items(), limit);
+    }
+
+    /**
+     * Get user-based collaborative filtering candidates.
+     * Users covered by the active matrix factorization model are scored against its item factors.
+     * Otherwise they are served from the in-memory neighbourhood engine once it has loaded, with the
+     * long-lived Mahout recommender as a fallback when the engine is disabled or still loading.
+     *
+     * @param userId the user ID
+     * @param limit the maximum number of candidates
+     * @return the candidates, best first
+     */
+    public Candidates getUserBasedCandidates(String userId, int limit) {
+        if (enableMatrixFactorization) {
+            TopKSelector factorizedItems = matrixFactorizationService.recommend(userId, limit);
+
+            if (factorizedItems != null) {
+                return Candidates.of(factorizedItems, "matrix_factorization", "Based on your viewing patterns");
+            }
+        }
+
+        TopKSelector topItems = collaborativeFilteringEngine.recommendForUser(
+                userId, limit, neighborhoodSize, (float) similarityThreshold);
+
+        if (topItems != null) {
+            return Candidates.of(topItems, "collaborative_filtering", "Based on similar users' preferences");
+        }
+
+        return getMahoutUserBasedCandidates(userId, limit);
+    }
+
+    /**
+     * Get user-based candidates from the shared Mahout recommender.
+     *
+     * @param userId the user ID
+     * @param limit the maximum number of candidates
+     * @return the candidates, best first
+     */
+    private Candidates getMahoutUserBasedCandidates(String userId, int limit) {
+        Candidates candidates = new Candidates(
+                "collaborative_filtering", "Based on similar users' preferences", limit);
+        
         try {
-            // Create data model from database
-            DataModel dataModel = new PostgreSQLJDBCDataModel(
-                    dataSource,
-                    "user_interactions",
-                    "user_id",
-                    "item_id",
-                    "value",
-                    "timestamp");
-            
-            // Define user similarity metric
-            UserSimilarity similarity = new PearsonCorrelationSimilarity(dataModel);
-            
-            // Define user neighborhood
-            UserNeighborhood neighborhood = new ThresholdUserNeighborhood(
-                    similarityThreshold, similarity, dataModel);
-            
-            // Create recommender
-            UserBasedRecommender recommender = new GenericUserBasedRecommender(
-                    dataModel, neighborhood, similarity);
-            
             // Get recommendations
-            List<RecommendedItem> recommendedItems = recommender.recommend(
-                    Long.parseLong(userId), limit);
+            List<RecommendedItem> recommendedItems = mahoutRecommenderHolder.recommend(userId, limit);
             
-            // Convert to DTOs
-            return recommendedItems.stream()
-                    .map(item -> RecommendationDTO.builder()
-                            .itemId(String.valueOf(item.getItemID()))
-                            .score(item.getValue())
-                            .algorithm("collaborative_filtering")
-                            .reason("Based on similar users' preferences")
-                            .build())
-                    .collect(Collectors.toList());
+            for (RecommendedItem item : recommendedItems) {
+                // Mahout item IDs are item indices
+                candidates.add((int) item.getItemID(), item.getValue(), null);
+            }
             
         } catch (TasteException e) {
             log.error("Error generating collaborative filtering recommendations", e);
-            return new ArrayList<>();
         }
+        
+        return candidates;
     }
 
     /**
      * Get item-based recommendations using co-occurrence.
+     * Served from the precomputed neighbour index when the item has an entry, or from the neighbours
+     * stored with the active model.
      *
      * @param itemId the item ID
      * @param limit the maximum number of recommendations
      * @return a list of recommendations
      */
     public List<RecommendationDTO> getItemBasedRecommendations(String itemId, int limit) {
+        ItemNeighborIndex.Neighbors neighbors = itemNeighborIndex.get(itemId);
+
+        if (neighbors != null) {
+            return toRecommendations(neighbors, limit);
+        }
+
+        // Neighbours stored with the active model cover the time before the index has loaded
+        TopKSelector modelNeighbors = matrixFactorizationService.similarItems(itemId, limit);
+
+        if (modelNeighbors != null) {
+            return Candidates.of(modelNeighbors, "item_cooccurrence", "Users who viewed this also viewed")
+                    .toRecommendations(dictionaries.items(), limit);
+        }
+
+        TopKSelector similarItems = collaborativeFilteringEngine.recommendSimilarItems(
+                itemId, limit, MIN_COOCCURRENCES);
+
+        if (similarItems != null) {
+            return Candidates.of(similarItems, "item_cooccurrence", "Users who viewed this also viewed")
+                    .toRecommendations(dictionaries.items(), limit);
+        }
+
         // Get co-occurring items
         List<String> cooccurringItems = userInteractionRepository.findCooccurringItems(
                 itemId,
                 UserInteraction.InteractionType.VIEW.name(),
-                3);
+                MIN_COOCCURRENCES);
         
         // Convert to DTOs
         List<RecommendationDTO> recommendations = new ArrayList<>();
@@ -119,4 +166,27 @@ public class CollaborativeFilteringService {
         
         return recommendations;
     }
+
+    /**
+     * Convert precomputed neighbours to DTOs, scoring by co-occurrence relative to the top neighbour.
+     *
+     * @param neighbors the neighbours, sorted by descending co-occurrence
+     * @param limit the maximum number of recommendations
+     * @return a list of recommendations
+     */
+    private List<RecommendationDTO> toRecommendations(ItemNeighborIndex.Neighbors neighbors, int limit) {
+        int count = Math.min(neighbors.size(), limit);
+        List<RecommendationDTO> recommendations = new ArrayList<>(count);
+
+        for (int rank = 0; rank < count; rank++) {
+            recommendations.add(RecommendationDTO.builder()
+                    .itemId(collaborativeFilteringEngine.itemId(neighbors.item(rank)))
+                    .score((double) neighbors.count(rank) / neighbors.count(0))
+                    .algorithm("item_cooccurrence")
+                    .reason("Users who viewed this also viewed")
+                    .build());
+        }
+
+        return recommendations;
+    }
 }
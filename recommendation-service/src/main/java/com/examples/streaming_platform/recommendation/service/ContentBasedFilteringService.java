@@ -1,18 +1,20 @@
 package com.examples.streaming_platform.recommendation.service;
 
 import com.examples.streaming_platform.recommendation.dto.RecommendationDTO;
+import com.examples.streaming_platform.recommendation.engine.ContentVectorIndex;
+import com.examples.streaming_platform.recommendation.engine.GenreIndex;
+import com.examples.streaming_platform.recommendation.engine.IdDictionaries;
+import com.examples.streaming_platform.recommendation.engine.IdDictionary;
+import com.examples.streaming_platform.recommendation.engine.TopKSelector;
 import com.examples.streaming_platform.recommendation.model.ContentItem;
 import com.examples.streaming_platform.recommendation.model.UserInteraction;
+import com.examples.streaming_platform.recommendation.ranking.Candidates;
 import com.examples.streaming_platform.recommendation.repository.ContentItemRepository;
-import com.examples.streaming_platform.recommendation.repository.UserInteractionRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Service for content-based filtering recommendations.
@@ -22,8 +24,15 @@ import java.util.stream.Collectors;
 @Slf4j
 public class ContentBasedFilteringService {
 
+    private static final String ALGORITHM = "content_based";
+    private static final String GENRE_REASON = "Based on your genre preferences";
+
     private final ContentItemRepository contentItemRepository;
-    private final UserInteractionRepository userInteractionRepository;
+    private final ContentItemService contentItemService;
+    private final UserContextService userContextService;
+    private final ContentVectorIndex contentVectorIndex;
+    private final GenreIndex genreIndex;
+    private final IdDictionaries dictionaries;
 
     /**
      * Get content-based recommendations for a user.
@@ -33,87 +42,122 @@ public class ContentBasedFilteringService {
      * @return a list of recommendations
      */
     public List<RecommendationDTO> getRecommendationsForUser(String userId, int limit) {
-        // Get user's recent positive interactions
-        List<UserInteraction> userInteractions = userInteractionRepository
-                .findByUserIdAndInteractionType(
-                        userId,
-                        UserInteraction.InteractionType.RATING,
-                        PageRequest.of(0, 20, Sort.by("timestamp").descending()))
-                .getContent();
-        
-        // Extract genres from items the user has interacted with positively
-        Set<String> userPreferredGenres = new HashSet<>();
-        Map<String, Integer> genreFrequency = new HashMap<>();
-        
-        for (UserInteraction interaction : userInteractions) {
-            // Only consider positive ratings (> 3.5)
-            if (interaction.getValue() != null && interaction.getValue() > 3.5) {
-                Optional<ContentItem> contentItem = contentItemRepository.findById(interaction.getItemId());
-                
-                if (contentItem.isPresent()) {
-                    for (String genre : contentItem.get().getGenres()) {
-                        userPreferredGenres.add(genre);
-                        genreFrequency.put(genre, genreFrequency.getOrDefault(genre, 0) + 1);
-                    }
-                }
-            }
-        }
+        return getRecommendationsForUser(userContextService.load(userId), limit);
+    }
+
+    /**
+     * Get content-based recommendations from an already loaded user context.
+     *
+     * @param context the user context
+     * @param limit the maximum number of recommendations
+     * @return a list of recommendations
+     */
+    public List<RecommendationDTO> getRecommendationsForUser(UserContext context, int limit) {
+        return getCandidatesForUser(context, limit).toRecommendations(dictionaries.items(), limit);
+    }
+
+    /**
+     * Get content-based candidates from an already loaded user context, scored by genre overlap
+     * with the genres of items the user has rated positively. Seen items are left out.
+     *
+     * @param context the user context
+     * @param limit the maximum number of candidates
+     * @return the candidates, best first
+     */
+    public Candidates getCandidatesForUser(UserContext context, int limit) {
+        // Genres from items the user has rated positively
+        Map<String, Integer> genreFrequency = context.getGenreFrequency();
         
-        // If user has no preferred genres, return empty list
-        if (userPreferredGenres.isEmpty()) {
-            return Collections.emptyList();
+        // If user has no preferred genres, there is nothing to match
+        if (genreFrequency.isEmpty()) {
+            return new Candidates(ALGORITHM, GENRE_REASON, 0);
         }
         
-        // Find content with matching genres
-        List<ContentItem> matchingContent = contentItemRepository.findByGenresIn(userPreferredGenres);
-        
-        // Filter out items the user has already interacted with
-        Set<String> interactedItemIds = userInteractions.stream()
-                .map(UserInteraction::getItemId)
-                .collect(Collectors.toSet());
-        
-        List<ContentItem> newMatchingContent = matchingContent.stream()
-                .filter(item -> !interactedItemIds.contains(item.getId()))
-                .collect(Collectors.toList());
+        // Score against the resident genre index; the query below only serves until it is built
+        if (!genreIndex.isReady()) {
+            return getCandidatesFromDatabase(context, genreFrequency, limit);
+        }
         
-        // Score items based on genre overlap with user preferences
-        List<ScoredItem> scoredItems = new ArrayList<>();
+        TopKSelector topItems = genreIndex.score(genreFrequency, context.getSeenItemIds(), limit);
+        Candidates candidates = new Candidates(ALGORITHM, GENRE_REASON, topItems.size());
         
-        for (ContentItem item : newMatchingContent) {
-            double score = calculateGenreMatchScore(item.getGenres(), genreFrequency);
-            scoredItems.add(new ScoredItem(item, score));
+        for (int rank = 0; rank < topItems.size(); rank++) {
+            UserInteraction.ItemType itemType = genreIndex.itemType(topItems.id(rank));
+            if (itemType != null) {
+                candidates.add(topItems.id(rank), topItems.score(rank), itemType);
+            }
         }
         
-        // Sort by score and limit
-        scoredItems.sort(Comparator.comparing(ScoredItem::getScore).reversed());
+        return candidates;
+    }
+
+    /**
+     * Score content with matching genres loaded from the database.
+     *
+     * @param context the user context
+     * @param genreFrequency the user's genre preferences with frequency
+     * @param limit the maximum number of candidates
+     * @return the candidates, best first
+     */
+    private Candidates getCandidatesFromDatabase(UserContext context, Map<String, Integer> genreFrequency, int limit) {
+        // Find content with matching genres, hydrated through the shared content cache
+        Map<String, ContentItem> matchingContent = contentItemService.getContentItems(
+                contentItemRepository.findIdsByGenresIn(genreFrequency.keySet()));
+        
+        // Score unseen items based on genre overlap with user preferences, keeping the best
+        IdDictionary items = dictionaries.items();
+        int totalUserGenreCount = genreFrequency.values().stream().mapToInt(Integer::intValue).sum();
+        TopKSelector topItems = new TopKSelector(limit);
+        
+        for (ContentItem item : matchingContent.values()) {
+            if (!context.getSeenItemIds().contains(item.getId())) {
+                topItems.offer(items.getOrAssign(item.getId()),
+                        calculateGenreMatchScore(item.getGenres(), genreFrequency, totalUserGenreCount));
+            }
+        }
+        topItems.sortDescending();
         
-        // Convert to DTOs
-        List<RecommendationDTO> recommendations = new ArrayList<>();
+        Candidates candidates = new Candidates(ALGORITHM, GENRE_REASON, topItems.size());
         
-        for (int i = 0; i < Math.min(scoredItems.size(), limit); i++) {
-            ScoredItem scoredItem = scoredItems.get(i);
-            ContentItem item = scoredItem.getItem();
-            
-            recommendations.add(RecommendationDTO.builder()
-                    .itemId(item.getId())
-                    .itemType(item.getItemType().name())
-                    .score(scoredItem.getScore())
-                    .algorithm("content_based")
-                    .reason("Based on your genre preferences")
-                    .build());
+        for (int rank = 0; rank < topItems.size(); rank++) {
+            ContentItem item = matchingContent.get(items.idOf(topItems.id(rank)));
+            candidates.add(topItems.id(rank), topItems.score(rank), item.getItemType());
         }
         
-        return recommendations;
+        return candidates;
     }
 
     /**
-     * Get similar content based on genre overlap.
+     * Get similar content by feature-vector cosine similarity, falling back to genre overlap
+     * for items without a feature vector.
      *
      * @param itemId the reference item ID
      * @param limit the maximum number of recommendations
      * @return a list of recommendations
      */
     public List<RecommendationDTO> getSimilarContent(String itemId, int limit) {
+        TopKSelector neighbours = contentVectorIndex.similarItems(itemId, limit);
+        if (neighbours != null && neighbours.size() > 0) {
+            List<RecommendationDTO> recommendations = new ArrayList<>(neighbours.size());
+            
+            for (int rank = 0; rank < neighbours.size(); rank++) {
+                UserInteraction.ItemType itemType = contentVectorIndex.itemType(neighbours.id(rank));
+                if (itemType == null) {
+                    continue;
+                }
+                
+                recommendations.add(RecommendationDTO.builder()
+                        .itemId(contentVectorIndex.itemId(neighbours.id(rank)))
+                        .itemType(itemType.name())
+                        .score((double) neighbours.score(rank))
+                        .algorithm(ALGORITHM)
+                        .reason("Similar to content you've watched")
+                        .build());
+            }
+            
+            return recommendations;
+        }
+        
         // Get similar content from repository
         List<ContentItem> similarContent = contentItemRepository.findSimilarContentByGenres(itemId, 1, limit);
         
@@ -125,7 +169,7 @@ public class ContentBasedFilteringService {
                     .itemId(item.getId())
                     .itemType(item.getItemType().name())
                     .score(0.9) // Default score for similar content
-                    .algorithm("content_based")
+                    .algorithm(ALGORITHM)
                     .reason("Similar to content you've watched")
                     .build());
         }
@@ -138,40 +182,21 @@ public class ContentBasedFilteringService {
      *
      * @param itemGenres the item's genres
      * @param userGenreFrequency the user's genre preferences with frequency
+     * @param totalUserGenreCount the sum of the user's genre frequencies
      * @return the match score
      */
-    private double calculateGenreMatchScore(Set<String> itemGenres, Map<String, Integer> userGenreFrequency) {
-        double score = 0.0;
-        int totalUserGenreCount = userGenreFrequency.values().stream().mapToInt(Integer::intValue).sum();
+    private float calculateGenreMatchScore(Set<String> itemGenres, Map<String, Integer> userGenreFrequency,
+                                           int totalUserGenreCount) {
+        float score = 0f;
         
         for (String genre : itemGenres) {
-            if (userGenreFrequency.containsKey(genre)) {
+            Integer frequency = userGenreFrequency.get(genre);
+            if (frequency != null) {
                 // Weight by frequency of genre in user preferences
-                score += (double) userGenreFrequency.get(genre) / totalUserGenreCount;
+                score += (float) frequency / totalUserGenreCount;
             }
         }
         
         return score;
     }
-
-    /**
-     * Helper class for scoring items.
-     */
-    private static class ScoredItem {
-        private final ContentItem item;
-        private final double score;
-
-        public ScoredItem(ContentItem item, double score) {
-            this.item = item;
-            this.score = score;
-        }
-
-        public ContentItem getItem() {
-            return item;
-        }
-
-        public double getScore() {
-            return score;
-        }
-    }
 }
@@ -1,27 +1,82 @@
 package com.examples.streaming_platform.recommendation.service;
 
 import com.examples.streaming_platform.recommendation.dto.ContentItemDTO;
+import com.examples.streaming_platform.recommendation.engine.FeatureVectors;
+import com.examples.streaming_platform.recommendation.event.ContentItemSavedEvent;
 import com.examples.streaming_platform.recommendation.model.ContentItem;
 import com.examples.streaming_platform.recommendation.repository.ContentItemRepository;
-import lombok.RequiredArgsConstructor;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service for managing content items.
  */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class ContentItemService {
 
+    // Keeps each IN list well below driver parameter limits
+    private static final int LOOKUP_CHUNK_SIZE = 500;
+
     private final ContentItemRepository contentItemRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate readOnlyTransaction;
+    private final LoadingCache<String, Optional<ContentItem>> items;
+
+    public ContentItemService(ContentItemRepository contentItemRepository,
+                              ApplicationEventPublisher eventPublisher,
+                              PlatformTransactionManager transactionManager,
+                              MeterRegistry meterRegistry,
+                              @Value("${recommendation.content-cache.max-size:50000}") long maxSize,
+                              @Value("${recommendation.content-cache.ttl-seconds:600}") long ttlSeconds) {
+        this.contentItemRepository = contentItemRepository;
+        this.eventPublisher = eventPublisher;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        // Misses are cached as empty too, so unknown IDs in interaction data don't hit the database every time
+        this.items = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build(new CacheLoader<>() {
+                    @Override
+                    public Optional<ContentItem> load(String id) {
+                        return loadAll(List.of(id)).get(id);
+                    }
+
+                    @Override
+                    public Map<String, Optional<ContentItem>> loadAll(Iterable<? extends String> ids) {
+                        return fetch(ids);
+                    }
+                });
+
+        GuavaCacheMetrics.monitor(meterRegistry, items, "content_items");
+    }
 
     /**
      * Get a content item by ID.
@@ -29,9 +84,47 @@ public class ContentItemService {
      * @param id the item ID
      * @return the content item, if found
      */
-    @Transactional(readOnly = true)
     public Optional<ContentItem> getContentItem(String id) {
-        return contentItemRepository.findById(id);
+        return items.getUnchecked(id);
+    }
+
+    /**
+     * Get many content items by ID. Items not already cached are loaded together, a chunk of
+     * IDs per query, with their genres, actors and keywords initialized.
+     *
+     * @param ids the item IDs
+     * @return the content items that exist, keyed by ID in the order the IDs were given
+     */
+    public Map<String, ContentItem> getContentItems(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+
+        Map<String, Optional<ContentItem>> found;
+        try {
+            found = items.getAll(ids);
+        } catch (ExecutionException e) {
+            throw new UncheckedExecutionException(e.getCause());
+        }
+        Map<String, ContentItem> result = new LinkedHashMap<>();
+        for (String id : ids) {
+            Optional<ContentItem> item = found.get(id);
+            if (item != null && item.isPresent()) {
+                result.put(id, item.get());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Drop a saved item from the cache once its transaction has committed.
+     *
+     * @param event the saved content item
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onContentItemSaved(ContentItemSavedEvent event) {
+        items.invalidate(event.getItem().getId());
     }
 
     /**
@@ -47,7 +140,10 @@ public class ContentItemService {
         ContentItem item = mapToEntity(itemDTO);
         item.setLastUpdated(OffsetDateTime.now());
         
-        return contentItemRepository.save(item);
+        ContentItem saved = contentItemRepository.save(item);
+        eventPublisher.publishEvent(new ContentItemSavedEvent(saved));
+        
+        return saved;
     }
 
     /**
@@ -79,9 +175,33 @@ public class ContentItemService {
      * @param limit the maximum number of items to return
      * @return a list of popular content items
      */
-    @Transactional(readOnly = true)
     public List<ContentItem> findMostPopular(int limit) {
-        return contentItemRepository.findByOrderByPopularityScoreDesc(limit);
+        return List.copyOf(getContentItems(contentItemRepository.findMostPopularIds(limit)).values());
+    }
+
+    /**
+     * Load content items in chunks, fetching genres in the query and batch-fetching the other
+     * collections so nothing is left lazy once the entities are cached.
+     *
+     * @param ids the item IDs
+     * @return every requested ID, mapped to its item or to empty if it doesn't exist
+     */
+    private Map<String, Optional<ContentItem>> fetch(Iterable<? extends String> ids) {
+        Map<String, Optional<ContentItem>> result = new HashMap<>();
+        for (List<? extends String> chunk : Iterables.partition(ids, LOOKUP_CHUNK_SIZE)) {
+            readOnlyTransaction.executeWithoutResult(status -> {
+                for (ContentItem item : contentItemRepository.findAllWithGenresByIdIn(List.copyOf(chunk))) {
+                    Hibernate.initialize(item.getActors());
+                    Hibernate.initialize(item.getKeywords());
+                    result.put(item.getId(), Optional.of(item));
+                }
+            });
+            for (String id : chunk) {
+                result.putIfAbsent(id, Optional.empty());
+            }
+        }
+
+        return result;
     }
 
     /**
@@ -115,6 +235,10 @@ public class ContentItemService {
             item.setKeywords(dto.getKeywords());
         }
         
+        if (dto.getFeatureVector() != null) {
+            item.setFeatureVector(FeatureVectors.encode(dto.getFeatureVector()));
+        }
+        
         return item;
     }
 }
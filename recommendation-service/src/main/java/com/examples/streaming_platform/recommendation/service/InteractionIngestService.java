@@ -0,0 +1,200 @@
+package com.examples.streaming_platform.recommendation.service;
+
+import com.examples.streaming_platform.recommendation.dto.InteractionBatchResultDTO;
+import com.examples.streaming_platform.recommendation.dto.UserInteractionDTO;
+import com.examples.streaming_platform.recommendation.event.InteractionRecordedEvent;
+import com.examples.streaming_platform.recommendation.model.UserInteraction;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Service for bulk interaction ingestion with JDBC batch inserts.
+ */
+@Service
+@Slf4j
+public class InteractionIngestService {
+
+    private static final String INSERT =
+            "INSERT INTO user_interactions " +
+            "(user_id, item_id, item_type, interaction_type, value, timestamp, context_data) " +
+            "VALUES (?, ?, ?, ?, ?, ?, CAST(? AS jsonb))";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final UserInteractionService userInteractionService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${recommendation.ingest.batch-size:1000}")
+    private int batchSize;
+
+    public InteractionIngestService(JdbcTemplate jdbcTemplate,
+                                    PlatformTransactionManager transactionManager,
+                                    ObjectMapper objectMapper,
+                                    Validator validator,
+                                    UserInteractionService userInteractionService,
+                                    ApplicationEventPublisher eventPublisher) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.userInteractionService = userInteractionService;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Read interactions from a JSON array or newline-delimited JSON stream and store them in batches.
+     * Each batch commits on its own, so a failing batch does not roll back the ones before it.
+     * Parsing stops at the first malformed record.
+     *
+     * @param body the request body
+     * @return the per-record outcome
+     * @throws IOException if the body cannot be read
+     */
+    public InteractionBatchResultDTO ingest(InputStream body) throws IOException {
+        InteractionBatchResultDTO result = new InteractionBatchResultDTO();
+        List<UserInteraction> pending = new ArrayList<>(batchSize);
+        List<Integer> pendingIndexes = new ArrayList<>(batchSize);
+        int index = 0;
+
+        try (MappingIterator<UserInteractionDTO> records =
+                     objectMapper.readerFor(UserInteractionDTO.class).readValues(body)) {
+            while (true) {
+                UserInteractionDTO record;
+                try {
+                    if (!records.hasNextValue()) {
+                        break;
+                    }
+                    record = records.nextValue();
+                } catch (JsonProcessingException e) {
+                    result.getResults().add(new InteractionBatchResultDTO.RecordResult(
+                            index++, InteractionBatchResultDTO.Status.REJECTED,
+                            "Malformed record: " + e.getOriginalMessage()));
+                    result.setRejected(result.getRejected() + 1);
+                    break;
+                }
+
+                int recordIndex = index++;
+                Set<ConstraintViolation<UserInteractionDTO>> violations = validator.validate(record);
+                if (!violations.isEmpty()) {
+                    result.getResults().add(new InteractionBatchResultDTO.RecordResult(
+                            recordIndex, InteractionBatchResultDTO.Status.REJECTED,
+                            violations.stream()
+                                    .map(ConstraintViolation::getMessage)
+                                    .sorted()
+                                    .collect(Collectors.joining(", "))));
+                    result.setRejected(result.getRejected() + 1);
+                    continue;
+                }
+
+                pending.add(userInteractionService.toEntity(record));
+                pendingIndexes.add(recordIndex);
+                if (pending.size() >= batchSize) {
+                    flush(pending, pendingIndexes, result);
+                }
+            }
+        }
+
+        flush(pending, pendingIndexes, result);
+        result.setReceived(index);
+        result.getResults().sort((a, b) -> Integer.compare(a.getIndex(), b.getIndex()));
+
+        log.debug("Ingested interaction batch: received={}, created={}, rejected={}, failed={}",
+                result.getReceived(), result.getCreated(), result.getRejected(), result.getFailed());
+        return result;
+    }
+
+    /**
+     * Insert interactions with one JDBC batch in one transaction and publish them once committed.
+     * The generated ids are set on the interactions.
+     *
+     * @param interactions the interactions
+     */
+    public void insert(List<UserInteraction> interactions) {
+        if (interactions.isEmpty()) {
+            return;
+        }
+
+        transaction.executeWithoutResult(status -> {
+            jdbcTemplate.execute(connection -> connection.prepareStatement(INSERT, new String[] {"id"}),
+                    (PreparedStatementCallback<Void>) ps -> {
+                        for (UserInteraction interaction : interactions) {
+                            ps.setString(1, interaction.getUserId());
+                            ps.setString(2, interaction.getItemId());
+                            ps.setString(3, interaction.getItemType().name());
+                            ps.setString(4, interaction.getInteractionType().name());
+                            if (interaction.getValue() != null) {
+                                ps.setDouble(5, interaction.getValue());
+                            } else {
+                                ps.setNull(5, Types.DOUBLE);
+                            }
+                            ps.setTimestamp(6, Timestamp.from(interaction.getTimestamp().toInstant()));
+                            ps.setString(7, interaction.getContextData());
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+
+                        // Listeners such as the interaction log's replay tell interactions apart by id
+                        try (ResultSet keys = ps.getGeneratedKeys()) {
+                            for (int i = 0; i < interactions.size() && keys.next(); i++) {
+                                interactions.get(i).setId(keys.getLong(1));
+                            }
+                        }
+                        return null;
+                    });
+
+            eventPublisher.publishEvent(new InteractionRecordedEvent(List.copyOf(interactions)));
+        });
+    }
+
+    /**
+     * Store the pending batch and record the outcome of each of its records.
+     */
+    private void flush(List<UserInteraction> pending,
+                       List<Integer> pendingIndexes,
+                       InteractionBatchResultDTO result) {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        InteractionBatchResultDTO.Status status = InteractionBatchResultDTO.Status.CREATED;
+        String message = null;
+        try {
+            insert(pending);
+            result.setCreated(result.getCreated() + pending.size());
+        } catch (Exception e) {
+            log.error("Error storing batch of {} interactions", pending.size(), e);
+            status = InteractionBatchResultDTO.Status.FAILED;
+            message = "Batch insert failed";
+            result.setFailed(result.getFailed() + pending.size());
+        }
+
+        for (Integer recordIndex : pendingIndexes) {
+            result.getResults().add(new InteractionBatchResultDTO.RecordResult(recordIndex, status, message));
+        }
+        pending.clear();
+        pendingIndexes.clear();
+    }
+}
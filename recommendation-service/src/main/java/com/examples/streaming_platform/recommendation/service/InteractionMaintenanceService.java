@@ -0,0 +1,232 @@
+package com.examples.streaming_platform.recommendation.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Maintenance of the partitioned {@code user_interactions} table.
+ * Creates monthly partitions ahead of time, folds new interactions into the hourly per-item and
+ * per-user rollups, and drops raw partitions once they are past retention and fully rolled up.
+ */
+@Service
+@Slf4j
+public class InteractionMaintenanceService {
+
+    private static final String PARTITION_PREFIX = "user_interactions_p";
+
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private static final String CREATE_PARTITION =
+            "CREATE TABLE IF NOT EXISTS %s PARTITION OF user_interactions FOR VALUES FROM ('%s') TO ('%s')";
+
+    private static final String LIST_PARTITIONS =
+            "SELECT child.relname FROM pg_inherits i " +
+            "JOIN pg_class child ON child.oid = i.inhrelid " +
+            "JOIN pg_class parent ON parent.oid = i.inhparent " +
+            "WHERE parent.relname = 'user_interactions' AND child.relname LIKE 'user_interactions\\_p%' " +
+            "ORDER BY child.relname";
+
+    private static final String LOCK_WATERMARK =
+            "SELECT last_interaction_id FROM interaction_rollup_state WHERE name = 'rollups' FOR UPDATE";
+
+    private static final String READ_WATERMARK =
+            "SELECT last_interaction_id FROM interaction_rollup_state WHERE name = 'rollups'";
+
+    private static final String UPDATE_WATERMARK =
+            "UPDATE interaction_rollup_state SET last_interaction_id = ?, updated_at = now() WHERE name = 'rollups'";
+
+    private static final String LOCK_PENDING_WATERMARK =
+            "SELECT CASE WHEN pending_at <= now() - make_interval(secs => ?) THEN pending_interaction_id END " +
+            "FROM interaction_rollup_state WHERE name = 'rollups' FOR UPDATE";
+
+    private static final String UPDATE_PENDING_WATERMARK =
+            "UPDATE interaction_rollup_state SET pending_interaction_id = " +
+            "(SELECT COALESCE(MAX(id), 0) FROM user_interactions), pending_at = now() WHERE name = 'rollups'";
+
+    private static final String ROLLUP_ITEMS =
+            "INSERT INTO item_interactions_hourly " +
+            "(item_id, interaction_type, bucket_start, item_type, interaction_count, value_sum) " +
+            "SELECT item_id, interaction_type, date_trunc('hour', timestamp), MAX(item_type), " +
+            "COUNT(*), COALESCE(SUM(value), 0) " +
+            "FROM user_interactions WHERE id > ? AND id <= ? " +
+            "GROUP BY item_id, interaction_type, date_trunc('hour', timestamp) " +
+            "ON CONFLICT (item_id, interaction_type, bucket_start) DO UPDATE SET " +
+            "interaction_count = item_interactions_hourly.interaction_count + EXCLUDED.interaction_count, " +
+            "value_sum = item_interactions_hourly.value_sum + EXCLUDED.value_sum";
+
+    private static final String ROLLUP_USERS =
+            "INSERT INTO user_item_interactions " +
+            "(user_id, item_id, interaction_type, item_type, interaction_count, value_sum, max_value, " +
+            "first_interaction_at, last_interaction_at) " +
+            "SELECT user_id, item_id, interaction_type, MAX(item_type), COUNT(*), COALESCE(SUM(value), 0), " +
+            "MAX(value), MIN(timestamp), MAX(timestamp) " +
+            "FROM user_interactions WHERE id > ? AND id <= ? " +
+            "GROUP BY user_id, item_id, interaction_type " +
+            "ON CONFLICT (user_id, item_id, interaction_type) DO UPDATE SET " +
+            "interaction_count = user_item_interactions.interaction_count + EXCLUDED.interaction_count, " +
+            "value_sum = user_item_interactions.value_sum + EXCLUDED.value_sum, " +
+            "max_value = GREATEST(user_item_interactions.max_value, EXCLUDED.max_value), " +
+            "first_interaction_at = LEAST(user_item_interactions.first_interaction_at, EXCLUDED.first_interaction_at), " +
+            "last_interaction_at = GREATEST(user_item_interactions.last_interaction_at, EXCLUDED.last_interaction_at)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+
+    @Value("${recommendation.interactions.partitions-ahead:3}")
+    private int partitionsAhead;
+
+    @Value("${recommendation.interactions.retention-days:365}")
+    private int retentionDays;
+
+    @Value("${recommendation.interactions.rollup-chunk-size:1000000}")
+    private long rollupChunkSize;
+
+    @Value("${recommendation.interactions.rollup-settle-seconds:600}")
+    private long rollupSettleSeconds;
+
+    public InteractionMaintenanceService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Make sure partitions exist for the coming months before interactions arrive for them.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void createPartitionsOnStartup() {
+        createPartitions();
+    }
+
+    /**
+     * Run partition creation, rollups and retention in that order.
+     */
+    @Scheduled(cron = "${recommendation.interactions.maintenance-schedule:0 5 * * * ?}")
+    public void maintain() {
+        long start = System.currentTimeMillis();
+        createPartitions();
+        long rolledUp = rollUp();
+        int dropped = dropExpiredPartitions();
+        log.info("Interaction maintenance finished in {} ms: {} interactions rolled up, {} partitions dropped",
+                System.currentTimeMillis() - start, rolledUp, dropped);
+    }
+
+    /**
+     * Create the partitions for the current month and the configured number of months ahead.
+     */
+    public void createPartitions() {
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+
+        for (int ahead = 0; ahead <= partitionsAhead; ahead++) {
+            YearMonth month = current.plusMonths(ahead);
+            String sql = String.format(CREATE_PARTITION, partitionName(month),
+                    monthStart(month), monthStart(month.plusMonths(1)));
+            try {
+                jdbcTemplate.execute(sql);
+            } catch (Exception e) {
+                // Fails if the default partition already holds rows for the month; those must be moved by hand
+                log.error("Error creating interaction partition for {}", month, e);
+            }
+        }
+    }
+
+    /**
+     * Fold interactions stored since the last run into the rollup tables.
+     * Ids are assigned at insert but become visible at commit, so a lower id can still appear after
+     * a higher one was rolled up. Each run therefore rolls up to the highest id observed by an
+     * earlier run at least {@code rollup-settle-seconds} ago, and records the current highest id for
+     * a later run; a transaction open for longer than that would still be missed.
+     * Work is split into id ranges, each committed with the watermark it advances to. The watermark
+     * row is locked for each range, so concurrent runs on several instances do not double count.
+     *
+     * @return the number of interaction ids covered
+     */
+    public long rollUp() {
+        Long settled = transaction.execute(status -> {
+            Long pending = jdbcTemplate.queryForObject(LOCK_PENDING_WATERMARK, Long.class, rollupSettleSeconds);
+            if (pending != null) {
+                jdbcTemplate.update(UPDATE_PENDING_WATERMARK);
+            }
+            return pending;
+        });
+        if (settled == null) {
+            return 0L;
+        }
+
+        long target = settled;
+        long covered = 0L;
+
+        while (true) {
+            Long advanced = transaction.execute(status -> {
+                long from = jdbcTemplate.queryForObject(LOCK_WATERMARK, Long.class);
+                if (from >= target) {
+                    return null;
+                }
+
+                long to = Math.min(target, from + rollupChunkSize);
+                jdbcTemplate.update(ROLLUP_ITEMS, from, to);
+                jdbcTemplate.update(ROLLUP_USERS, from, to);
+                jdbcTemplate.update(UPDATE_WATERMARK, to);
+                return to - from;
+            });
+
+            if (advanced == null) {
+                return covered;
+            }
+            covered += advanced;
+        }
+    }
+
+    /**
+     * Drop raw partitions that ended before the retention period, provided every row in them has
+     * been rolled up.
+     *
+     * @return the number of partitions dropped
+     */
+    public int dropExpiredPartitions() {
+        LocalDate cutoff = LocalDate.now(ZoneOffset.UTC).minusDays(retentionDays);
+        long watermark = jdbcTemplate.queryForObject(READ_WATERMARK, Long.class);
+        List<String> partitions = jdbcTemplate.queryForList(LIST_PARTITIONS, String.class);
+        int dropped = 0;
+
+        for (String partition : partitions) {
+            YearMonth month = YearMonth.parse(partition.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX);
+            if (month.plusMonths(1).atDay(1).isAfter(cutoff)) {
+                continue;
+            }
+
+            Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + partition, Long.class);
+            if (maxId > watermark) {
+                log.warn("Keeping expired partition {} until it is rolled up (max id {}, watermark {})",
+                        partition, maxId, watermark);
+                continue;
+            }
+
+            jdbcTemplate.execute("DROP TABLE " + partition);
+            log.info("Dropped expired interaction partition {}", partition);
+            dropped++;
+        }
+
+        return dropped;
+    }
+
+    private static String partitionName(YearMonth month) {
+        return PARTITION_PREFIX + month.format(PARTITION_SUFFIX);
+    }
+
+    private static String monthStart(YearMonth month) {
+        return month.atDay(1) + " 00:00:00+00";
+    }
+}
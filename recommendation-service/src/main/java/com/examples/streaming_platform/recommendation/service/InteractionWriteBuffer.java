@@ -0,0 +1,215 @@
+package com.examples.streaming_platform.recommendation.service;
+
+import com.examples.streaming_platform.recommendation.dto.UserInteractionDTO;
+import com.examples.streaming_platform.recommendation.engine.MpscRingBuffer;
+import com.examples.streaming_platform.recommendation.model.UserInteraction;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Write-behind buffer for asynchronous interaction ingestion.
+ * Request threads enqueue interactions into a bounded lock-free ring buffer and a single writer thread
+ * stores them in group commits, flushing when a batch is full or the oldest queued interaction has
+ * waited for the flush interval. Remaining interactions are flushed on shutdown.
+ */
+@Service
+@Slf4j
+public class InteractionWriteBuffer {
+
+    private static final int MAX_FLUSH_ATTEMPTS = 3;
+
+    // Rejections are counted per interaction but logged at most this often, so a full buffer doesn't flood the log
+    private static final long REJECTION_LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final InteractionIngestService interactionIngestService;
+    private final UserInteractionService userInteractionService;
+    private final MpscRingBuffer<UserInteraction> buffer;
+    private final boolean enabled;
+    private final Counter rejectedCounter;
+    private final Counter droppedCounter;
+    private final DistributionSummary flushSize;
+    private final Timer flushTimer;
+    private final AtomicLong lastRejectionLog = new AtomicLong(System.nanoTime() - REJECTION_LOG_INTERVAL_NANOS);
+    private volatile boolean running;
+    private Thread writer;
+
+    @Value("${recommendation.ingest.async.flush-size:1000}")
+    private int maxFlushSize;
+
+    @Value("${recommendation.ingest.async.flush-interval-ms:50}")
+    private long flushIntervalMs;
+
+    @Value("${recommendation.ingest.async.shutdown-timeout-ms:30000}")
+    private long shutdownTimeoutMs;
+
+    public InteractionWriteBuffer(InteractionIngestService interactionIngestService,
+                                  UserInteractionService userInteractionService,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${recommendation.ingest.async.enabled:false}") boolean enabled,
+                                  @Value("${recommendation.ingest.async.capacity:65536}") int capacity) {
+        this.interactionIngestService = interactionIngestService;
+        this.userInteractionService = userInteractionService;
+        this.enabled = enabled;
+        this.buffer = new MpscRingBuffer<>(enabled ? capacity : 2);
+
+        Gauge.builder("recommendation.ingest.buffer.depth", buffer, MpscRingBuffer::size)
+                .description("Interactions waiting to be written")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("recommendation.ingest.buffer.rejected")
+                .description("Interactions refused because the buffer was full")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("recommendation.ingest.buffer.dropped")
+                .description("Interactions discarded after repeated flush failures")
+                .register(meterRegistry);
+        this.flushSize = DistributionSummary.builder("recommendation.ingest.flush.size")
+                .description("Interactions written per group commit")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("recommendation.ingest.flush.duration")
+                .description("Time to write one group commit")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Check whether asynchronous ingestion is enabled.
+     *
+     * @return true if interactions should be enqueued rather than written synchronously
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enqueue an interaction for writing.
+     *
+     * @param interactionDTO the interaction data
+     * @return a copy of the interaction as it will be stored, without its id, or null if the buffer
+     *         is full; the queued instance itself is updated by the writer thread
+     */
+    public UserInteraction enqueue(UserInteractionDTO interactionDTO) {
+        if (!running) {
+            throw new IllegalStateException("Interaction write buffer is not running");
+        }
+
+        UserInteraction interaction = userInteractionService.toEntity(interactionDTO);
+        if (!buffer.offer(interaction)) {
+            rejectedCounter.increment();
+            long now = System.nanoTime();
+            long last = lastRejectionLog.get();
+            if (now - last >= REJECTION_LOG_INTERVAL_NANOS && lastRejectionLog.compareAndSet(last, now)) {
+                log.warn("Interaction write buffer full, {} interactions rejected since startup",
+                        (long) rejectedCounter.count());
+            }
+            return null;
+        }
+        return UserInteraction.builder()
+                .userId(interaction.getUserId())
+                .itemId(interaction.getItemId())
+                .itemType(interaction.getItemType())
+                .interactionType(interaction.getInteractionType())
+                .value(interaction.getValue())
+                .timestamp(interaction.getTimestamp())
+                .contextData(interaction.getContextData())
+                .build();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        running = true;
+        writer = new Thread(this::writeLoop, "interaction-writer");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("Asynchronous interaction ingestion enabled with capacity {}", buffer.capacity());
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(shutdownTimeoutMs);
+        if (writer.isAlive()) {
+            log.warn("Interaction writer did not finish within {} ms, {} interactions not written",
+                    shutdownTimeoutMs, buffer.size());
+        }
+    }
+
+    /**
+     * Drain the buffer and flush group commits until stopped, then flush whatever is left.
+     */
+    private void writeLoop() {
+        List<UserInteraction> batch = new ArrayList<>(maxFlushSize);
+        long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        long oldestQueuedAt = 0L;
+
+        while (running) {
+            int drained = buffer.drainTo(batch, maxFlushSize - batch.size());
+            if (drained > 0 && batch.size() == drained) {
+                oldestQueuedAt = System.nanoTime();
+            }
+
+            long waited = System.nanoTime() - oldestQueuedAt;
+            if (batch.size() >= maxFlushSize || (!batch.isEmpty() && waited >= flushIntervalNanos)) {
+                flush(batch);
+            } else if (drained == 0) {
+                LockSupport.parkNanos(batch.isEmpty()
+                        ? flushIntervalNanos
+                        : Math.min(flushIntervalNanos - waited, TimeUnit.MILLISECONDS.toNanos(1)));
+            }
+        }
+
+        do {
+            flush(batch);
+        } while (buffer.drainTo(batch, maxFlushSize) > 0);
+        log.info("Interaction writer stopped");
+    }
+
+    /**
+     * Write a batch in one transaction, retrying before giving up on it.
+     *
+     * @param batch the interactions; cleared afterwards
+     */
+    private void flush(List<UserInteraction> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        for (int attempt = 1; attempt <= MAX_FLUSH_ATTEMPTS; attempt++) {
+            long start = System.nanoTime();
+            try {
+                interactionIngestService.insert(batch);
+                flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                flushSize.record(batch.size());
+                batch.clear();
+                return;
+            } catch (Exception e) {
+                log.warn("Error writing {} interactions (attempt {} of {})", batch.size(), attempt, MAX_FLUSH_ATTEMPTS, e);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100L * attempt));
+            }
+        }
+
+        log.error("Dropping {} interactions after {} failed attempts", batch.size(), MAX_FLUSH_ATTEMPTS);
+        droppedCounter.increment(batch.size());
+        batch.clear();
+    }
+}
@@ -0,0 +1,211 @@
+package com.examples.streaming_platform.recommendation.service;
+
+import com.examples.streaming_platform.recommendation.dto.RecommendationDTO;
+import com.examples.streaming_platform.recommendation.repository.UserInteractionRepository;
+import com.examples.streaming_platform.recommendation.sharding.ShardMembership;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Nightly precomputation of personalized recommendations for recently active users. Active users
+ * are paged from the per-user rollup and ranked in parallel partitions, each loading its users'
+ * contexts with one query and writing their lists to {@code user_recommendations} in one
+ * transaction. Lists of users who are no longer active are removed once the batch completes.
+ * With sharded serving each instance precomputes the users it owns.
+ */
+@Service
+@Slf4j
+public class MaterializedRecommendationJob {
+
+    private final RecommendationService recommendationService;
+    private final UserContextService userContextService;
+    private final UserInteractionRepository userInteractionRepository;
+    private final MaterializedRecommendations materializedRecommendations;
+    private final ShardMembership shardMembership;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService executor;
+    private final ExecutorService pool;
+    private final int parallelism;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Value("${recommendation.materialized.active-days:7}")
+    private int activeDays;
+
+    @Value("${recommendation.materialized.top-n:50}")
+    private int topN;
+
+    @Value("${recommendation.materialized.partition-size:500}")
+    private int partitionSize;
+
+    public MaterializedRecommendationJob(RecommendationService recommendationService,
+                                         UserContextService userContextService,
+                                         UserInteractionRepository userInteractionRepository,
+                                         MaterializedRecommendations materializedRecommendations,
+                                         ShardMembership shardMembership,
+                                         MeterRegistry meterRegistry,
+                                         @Value("${recommendation.materialized.parallelism:2}") int parallelism) {
+        this.recommendationService = recommendationService;
+        this.userContextService = userContextService;
+        this.userInteractionRepository = userInteractionRepository;
+        this.materializedRecommendations = materializedRecommendations;
+        this.shardMembership = shardMembership;
+        this.meterRegistry = meterRegistry;
+        this.parallelism = parallelism;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "recommendation-batch");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        AtomicInteger counter = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "recommendation-batch-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Queue a precomputation batch on the configured schedule.
+     */
+    @Scheduled(cron = "${recommendation.materialized.schedule:0 0 4 * * ?}")
+    public void scheduledBatch() {
+        submit();
+    }
+
+    /**
+     * Queue a precomputation batch unless one is already in progress or serving is disabled.
+     *
+     * @return true if a batch was queued
+     */
+    public boolean submit() {
+        if (!materializedRecommendations.isEnabled()) {
+            return false;
+        }
+        if (!running.compareAndSet(false, true)) {
+            log.info("Recommendation precomputation already in progress, skipping this run");
+            return false;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    run();
+                } finally {
+                    running.set(false);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            running.set(false);
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        pool.shutdownNow();
+    }
+
+    private void run() {
+        long start = System.nanoTime();
+        OffsetDateTime computedAt = OffsetDateTime.now(ZoneOffset.UTC);
+        OffsetDateTime activeSince = computedAt.minusDays(activeDays);
+        String outcome = "failure";
+        // Ranked partitions waiting to be counted, bounded so partitions don't pile up in memory
+        Deque<Future<Integer>> inFlight = new ArrayDeque<>();
+        long users = 0;
+        try {
+            // Fill candidates are shared by every user of the batch
+            Function<UserContext, List<RecommendationDTO>> ranker = recommendationService.batchRanker(topN);
+
+            String after = "";
+            List<String> partition;
+            do {
+                partition = userInteractionRepository.findActiveUserIdsAfter(after, activeSince, partitionSize);
+                if (partition.isEmpty()) {
+                    break;
+                }
+                after = partition.get(partition.size() - 1);
+                List<String> userIds = partition.stream().filter(shardMembership::owns).toList();
+                if (userIds.isEmpty()) {
+                    continue;
+                }
+                inFlight.add(pool.submit(() -> materialize(userIds, ranker, computedAt)));
+                if (inFlight.size() >= 2 * parallelism) {
+                    users += inFlight.poll().get();
+                }
+            } while (partition.size() == partitionSize);
+            while (!inFlight.isEmpty()) {
+                users += inFlight.poll().get();
+            }
+
+            materializedRecommendations.completeBatch(computedAt, users, !shardMembership.isEnabled());
+            outcome = "success";
+            log.info("Precomputed recommendations for {} users active in the last {} days in {} ms",
+                    users, activeDays, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            inFlight.forEach(future -> future.cancel(true));
+        } catch (ExecutionException | RuntimeException e) {
+            inFlight.forEach(future -> future.cancel(true));
+            log.error("Recommendation precomputation failed after {} users", users, e);
+        } finally {
+            Timer.builder("recommendation.materialized.batch.duration")
+                    .description("Time taken by a recommendation precomputation batch")
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Rank a partition of users and store their lists.
+     *
+     * @param userIds the users of the partition
+     * @param ranker the batch's ranker
+     * @param computedAt the start time of the batch
+     * @return the number of users stored
+     */
+    private int materialize(List<String> userIds, Function<UserContext, List<RecommendationDTO>> ranker,
+                            OffsetDateTime computedAt) {
+        Map<String, List<RecommendationDTO>> recommendations = new LinkedHashMap<>();
+        for (UserContext context : userContextService.loadAll(userIds).values()) {
+            try {
+                List<RecommendationDTO> list = ranker.apply(context);
+                if (!list.isEmpty()) {
+                    recommendations.put(context.getUserId(), list);
+                }
+            } catch (RuntimeException e) {
+                // The user is served live until the next batch
+                log.debug("Failed to precompute recommendations for user {}", context.getUserId(), e);
+            }
+        }
+        materializedRecommendations.replace(recommendations, computedAt);
+        return recommendations.size();
+    }
+}
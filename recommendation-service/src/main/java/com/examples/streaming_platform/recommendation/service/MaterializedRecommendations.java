@@ -0,0 +1,258 @@
+package com.examples.streaming_platform.recommendation.service;
+
+import com.examples.streaming_platform.recommendation.dto.RecommendationDTO;
+import com.examples.streaming_platform.recommendation.model.UserInteraction;
+import com.examples.streaming_platform.recommendation.repository.UserInteractionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Precomputed top-N recommendations per user, stored in {@code user_recommendations} by the
+ * nightly {@link MaterializedRecommendationJob} and served with a primary key lookup. Items the
+ * user consumed since the batch ran are filtered out; when too few are left, or the list is older
+ * than the maximum age, the lookup misses and the caller computes recommendations live.
+ */
+@Service
+@Slf4j
+public class MaterializedRecommendations {
+
+    private static final String FIND_QUERY =
+            "SELECT item_id, item_type, score, algorithm, reason, computed_at FROM user_recommendations " +
+            "WHERE user_id = ? ORDER BY recommendation_rank";
+
+    private static final String DELETE_USER = "DELETE FROM user_recommendations WHERE user_id = ?";
+
+    private static final String INSERT =
+            "INSERT INTO user_recommendations (user_id, recommendation_rank, item_id, item_type, score, " +
+            "algorithm, reason, computed_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String DELETE_OLDER_THAN = "DELETE FROM user_recommendations WHERE computed_at < ?";
+
+    private static final String LAST_BATCH_QUERY =
+            "SELECT MAX(computed_at) FROM user_recommendations";
+
+    private static final String COUNT_USERS_QUERY =
+            "SELECT COUNT(*) FROM user_recommendations WHERE recommendation_rank = 0";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+    private final UserInteractionRepository userInteractionRepository;
+    private final boolean enabled;
+    private final Duration maxAge;
+    // Completion time of the last batch in epoch milliseconds, 0 before the first one
+    private final AtomicLong lastBatchMillis = new AtomicLong();
+    private final AtomicLong users = new AtomicLong();
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter staleCounter;
+    private final Counter consumedCounter;
+    private final DistributionSummary servedAge;
+
+    public MaterializedRecommendations(JdbcTemplate jdbcTemplate,
+                                       PlatformTransactionManager transactionManager,
+                                       UserInteractionRepository userInteractionRepository,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${recommendation.materialized.enabled:true}") boolean enabled,
+                                       @Value("${recommendation.materialized.max-age-hours:48}") long maxAgeHours) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.userInteractionRepository = userInteractionRepository;
+        this.enabled = enabled;
+        this.maxAge = Duration.ofHours(maxAgeHours);
+
+        this.hitCounter = lookupCounter(meterRegistry, "hit");
+        this.missCounter = lookupCounter(meterRegistry, "miss");
+        this.staleCounter = lookupCounter(meterRegistry, "stale");
+        this.consumedCounter = lookupCounter(meterRegistry, "consumed");
+        Gauge.builder("recommendation.materialized.coverage", this, MaterializedRecommendations::coverage)
+                .description("Share of personalized lookups served from precomputed recommendations")
+                .register(meterRegistry);
+        Gauge.builder("recommendation.materialized.users", users, AtomicLong::get)
+                .description("Users with precomputed recommendations")
+                .register(meterRegistry);
+        Gauge.builder("recommendation.materialized.staleness", lastBatchMillis,
+                        last -> last.get() == 0 ? Double.NaN : (System.currentTimeMillis() - last.get()) / 1000.0)
+                .description("Seconds since the last precomputation batch completed")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        this.servedAge = DistributionSummary.builder("recommendation.materialized.served.age")
+                .description("Age of the precomputed recommendations served")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Check whether precomputed recommendations are served.
+     *
+     * @return true if enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Pick up the state of the last batch, which may have run on another instance or before a restart.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            OffsetDateTime lastBatch = jdbcTemplate.queryForObject(LAST_BATCH_QUERY, OffsetDateTime.class);
+            if (lastBatch != null) {
+                lastBatchMillis.set(lastBatch.toInstant().toEpochMilli());
+                Long count = jdbcTemplate.queryForObject(COUNT_USERS_QUERY, Long.class);
+                users.set(count != null ? count : 0L);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Failed to read the last recommendation batch", e);
+        }
+    }
+
+    /**
+     * Look up a user's precomputed recommendations, without the items the user consumed since they
+     * were computed.
+     *
+     * @param userId the user ID
+     * @param limit the maximum number of recommendations
+     * @return the recommendations, or empty if fewer than {@code limit} are left or there are none
+     */
+    public Optional<List<RecommendationDTO>> find(String userId, int limit) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+
+        List<RecommendationDTO> stored = new ArrayList<>();
+        OffsetDateTime[] computedAt = new OffsetDateTime[1];
+        try {
+            jdbcTemplate.query(FIND_QUERY, rs -> {
+                stored.add(RecommendationDTO.builder()
+                        .itemId(rs.getString(1))
+                        .itemType(rs.getString(2))
+                        .score(rs.getDouble(3))
+                        .algorithm(rs.getString(4))
+                        .reason(rs.getString(5))
+                        .build());
+                computedAt[0] = rs.getObject(6, OffsetDateTime.class);
+            }, userId);
+        } catch (DataAccessException e) {
+            log.warn("Failed to look up precomputed recommendations for user {}", userId, e);
+            missCounter.increment();
+            return Optional.empty();
+        }
+
+        if (stored.size() < limit) {
+            missCounter.increment();
+            return Optional.empty();
+        }
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        Duration age = Duration.between(computedAt[0], now);
+        if (age.compareTo(maxAge) > 0) {
+            staleCounter.increment();
+            return Optional.empty();
+        }
+
+        // Drop what the user has consumed since the batch ran
+        Set<String> consumed = new HashSet<>();
+        for (UserInteraction interaction
+                : userInteractionRepository.findByUserIdAndTimestampBetween(userId, computedAt[0], now)) {
+            if (UserContextService.SEEN_TYPES.contains(interaction.getInteractionType())) {
+                consumed.add(interaction.getItemId());
+            }
+        }
+        List<RecommendationDTO> recommendations = new ArrayList<>(limit);
+        for (RecommendationDTO recommendation : stored) {
+            if (recommendations.size() == limit) {
+                break;
+            }
+            if (!consumed.contains(recommendation.getItemId())) {
+                recommendations.add(recommendation);
+            }
+        }
+        if (recommendations.size() < limit) {
+            consumedCounter.increment();
+            return Optional.empty();
+        }
+
+        hitCounter.increment();
+        servedAge.record(age.toSeconds());
+        return Optional.of(recommendations);
+    }
+
+    /**
+     * Replace the precomputed recommendations of a partition of users in one transaction.
+     *
+     * @param recommendations the recommendations per user, best first
+     * @param computedAt the start time of the batch
+     */
+    public void replace(Map<String, List<RecommendationDTO>> recommendations, OffsetDateTime computedAt) {
+        List<Object[]> deletes = new ArrayList<>(recommendations.size());
+        List<Object[]> inserts = new ArrayList<>();
+        recommendations.forEach((userId, list) -> {
+            deletes.add(new Object[]{userId});
+            for (int rank = 0; rank < list.size(); rank++) {
+                RecommendationDTO recommendation = list.get(rank);
+                inserts.add(new Object[]{userId, rank, recommendation.getItemId(), recommendation.getItemType(),
+                        recommendation.getScore(), recommendation.getAlgorithm(), recommendation.getReason(),
+                        computedAt});
+            }
+        });
+
+        transaction.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(DELETE_USER, deletes);
+            jdbcTemplate.batchUpdate(INSERT, inserts);
+        });
+    }
+
+    /**
+     * Finish a batch: remove the lists of users it no longer covers and update the exported state.
+     * A batch over one shard can't tell the other shards' users apart, so it only removes lists
+     * too old to be served.
+     *
+     * @param computedAt the start time of the batch
+     * @param batchUsers the number of users the batch stored
+     * @param allUsers whether the batch covered every active user rather than one shard
+     */
+    public void completeBatch(OffsetDateTime computedAt, long batchUsers, boolean allUsers) {
+        int removed = jdbcTemplate.update(DELETE_OLDER_THAN, allUsers ? computedAt : computedAt.minus(maxAge));
+        lastBatchMillis.set(System.currentTimeMillis());
+        users.set(batchUsers);
+        log.debug("Removed {} precomputed recommendations of users no longer active", removed);
+    }
+
+    private double coverage() {
+        double lookups = hitCounter.count() + missCounter.count() + staleCounter.count() + consumedCounter.count();
+        return lookups > 0 ? hitCounter.count() / lookups : Double.NaN;
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("recommendation.materialized.lookups")
+                .description("Lookups of precomputed recommendations")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,825 @@
+package com.examples.streaming_platform.recommendation.service;
+
+import com.examples.streaming_platform.recommendation.engine.ActiveModel;
+import com.examples.streaming_platform.recommendation.engine.ActiveModelRegistry;
+import com.examples.streaming_platform.recommendation.engine.AlsTrainer;
+import com.examples.streaming_platform.recommendation.engine.CollaborativeFilteringEngine;
+import com.examples.streaming_platform.recommendation.engine.FactorModel;
+import com.examples.streaming_platform.recommendation.engine.IdDictionaries;
+import com.examples.streaming_platform.recommendation.engine.IdDictionary;
+import com.examples.streaming_platform.recommendation.engine.InteractionLog;
+import com.examples.streaming_platform.recommendation.engine.InteractionMatrix;
+import com.examples.streaming_platform.recommendation.engine.ItemNeighborIndex;
+import com.examples.streaming_platform.recommendation.engine.ModelArtifact;
+import com.examples.streaming_platform.recommendation.engine.TopKSelector;
+import com.examples.streaming_platform.recommendation.model.RecommendationModel;
+import com.examples.streaming_platform.recommendation.model.UserInteraction;
+import com.examples.streaming_platform.recommendation.repository.RecommendationModelRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Service for training and serving implicit-feedback matrix factorization (ALS) models.
+ */
+@Service
+@Slf4j
+public class MatrixFactorizationService {
+
+    // Millisecond versions, so a requested and a scheduled run in the same second get their own files
+    private static final DateTimeFormatter VERSION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmssSSS");
+
+    private static final String TRAINING_QUERY =
+            "SELECT user_id, item_id, " +
+            "SUM(CASE interaction_type " +
+            "    WHEN 'VIEW' THEN ? " +
+            "    WHEN 'WATCH_TIME' THEN ? * COALESCE(value, 0) " +
+            "    WHEN 'LIKE' THEN ? " +
+            "    WHEN 'RATING' THEN ? * COALESCE(value, 0) " +
+            "    ELSE 0 END), " +
+            "MAX(timestamp) " +
+            "FROM user_interactions " +
+            "WHERE interaction_type IN ('VIEW', 'WATCH_TIME', 'LIKE', 'RATING') ";
+
+    private static final String FULL_TRAINING_QUERY = TRAINING_QUERY + "GROUP BY user_id, item_id";
+
+    // The full history of every user with an interaction since the given time
+    private static final String INCREMENTAL_TRAINING_QUERY = TRAINING_QUERY +
+            "AND user_id IN (SELECT user_id FROM user_interactions WHERE timestamp > ?) " +
+            "GROUP BY user_id, item_id";
+
+    private static final int EVALUATION_CUTOFF = 10;
+
+    private static final String TRAINING_PARAMETER = "training";
+    private static final String TRAINING_FULL = "full";
+    private static final String TRAINING_INCREMENTAL = "incremental";
+    private static final String INCREMENTAL_RUNS_PARAMETER = "incrementalRuns";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+    private final TransactionTemplate readOnlyTransaction;
+    private final RecommendationModelRepository recommendationModelRepository;
+    private final IdDictionaries dictionaries;
+    private final CollaborativeFilteringEngine collaborativeFilteringEngine;
+    private final ItemNeighborIndex itemNeighborIndex;
+    private final ActiveModelRegistry activeModelRegistry;
+    private final InteractionLog interactionLog;
+    private final ObjectMapper objectMapper;
+    private final ForkJoinPool trainingPool;
+    private OffsetDateTime lastCreatedAt;
+
+    @Value("${recommendation.model.path:models/}")
+    private String modelPath;
+
+    @Value("${recommendation.model.neighbors-per-item:20}")
+    private int neighborsPerItem;
+
+    @Value("${recommendation.model.retained-artifacts:2}")
+    private int retainedArtifacts;
+
+    @Value("${recommendation.engine.fetch-size:10000}")
+    private int fetchSize;
+
+    @Value("${recommendation.als.rank:32}")
+    private int rank;
+
+    @Value("${recommendation.als.iterations:10}")
+    private int iterations;
+
+    @Value("${recommendation.als.regularization:0.05}")
+    private float regularization;
+
+    @Value("${recommendation.als.alpha:10.0}")
+    private float alpha;
+
+    @Value("${recommendation.als.evaluation-users:1000}")
+    private int evaluationUsers;
+
+    @Value("${recommendation.als.weights.view:1.0}")
+    private double viewWeight;
+
+    @Value("${recommendation.als.weights.watch-time:0.05}")
+    private double watchTimeWeight;
+
+    @Value("${recommendation.als.weights.like:3.0}")
+    private double likeWeight;
+
+    @Value("${recommendation.als.weights.rating:0.5}")
+    private double ratingWeight;
+
+    public MatrixFactorizationService(JdbcTemplate jdbcTemplate,
+                                      PlatformTransactionManager transactionManager,
+                                      RecommendationModelRepository recommendationModelRepository,
+                                      IdDictionaries dictionaries,
+                                      CollaborativeFilteringEngine collaborativeFilteringEngine,
+                                      ItemNeighborIndex itemNeighborIndex,
+                                      ActiveModelRegistry activeModelRegistry,
+                                      InteractionLog interactionLog,
+                                      ObjectMapper objectMapper,
+                                      @Value("${recommendation.als.parallelism:2}") int parallelism) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.recommendationModelRepository = recommendationModelRepository;
+        this.dictionaries = dictionaries;
+        this.collaborativeFilteringEngine = collaborativeFilteringEngine;
+        this.itemNeighborIndex = itemNeighborIndex;
+        this.activeModelRegistry = activeModelRegistry;
+        this.interactionLog = interactionLog;
+        this.objectMapper = objectMapper;
+        this.trainingPool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Check whether a trained model is being served.
+     *
+     * @return true if a model is loaded
+     */
+    public boolean isReady() {
+        return activeModelRegistry.isLoaded();
+    }
+
+    /**
+     * Recommend items for a user by scoring every item vector against the user vector.
+     * Items the user already interacted with are excluded.
+     *
+     * @param userId the user ID
+     * @param limit the maximum number of items
+     * @return the top items sorted by descending score, or null if no model is loaded or the user is unknown
+     */
+    public TopKSelector recommend(String userId, int limit) {
+        try (ActiveModel model = activeModelRegistry.acquire()) {
+            if (model == null) {
+                return null;
+            }
+
+            return model.recommend(userId, limit, seenItems(dictionaries.users().indexOf(userId)));
+        }
+    }
+
+    /**
+     * Get the item neighbours stored with the active model.
+     *
+     * @param itemId the item ID
+     * @param limit the maximum number of items
+     * @return the neighbours sorted by descending score, or null if no model is loaded or it has none for the item
+     */
+    public TopKSelector similarItems(String itemId, int limit) {
+        try (ActiveModel model = activeModelRegistry.acquire()) {
+            return model == null ? null : model.similarItems(itemId, limit);
+        }
+    }
+
+    /**
+     * Get the item ID for an item index.
+     *
+     * @param item the item index
+     * @return the item ID
+     */
+    public String itemId(int item) {
+        return dictionaries.items().idOf(item);
+    }
+
+    /**
+     * Train a new model from all interactions, evaluate it on a leave-one-out holdout,
+     * store it as a model artifact and activate it.
+     *
+     * @return the stored model metadata
+     */
+    public RecommendationModel train() {
+        return train(progress -> { });
+    }
+
+    /**
+     * Train a new model from all interactions, evaluate it on a leave-one-out holdout,
+     * store it as a model artifact and activate it.
+     * The holdout model is evaluated and then trained for one more iteration on every interaction,
+     * so the served model keeps the held-out interactions.
+     *
+     * @param progress receives the completed fraction of the run, from 0 to 1
+     * @return the stored model metadata
+     */
+    public synchronized RecommendationModel train(DoubleConsumer progress) {
+        long start = System.currentTimeMillis();
+        OffsetDateTime createdAt = nextCreatedAt();
+
+        LatestItems latest = new LatestItems();
+        InteractionMatrix matrix = loadTrainingMatrix(FULL_TRAINING_QUERY, null, latest);
+        progress.accept(0.1);
+
+        // Hold out each sampled user's latest interaction to measure ranking quality
+        Holdout holdout = Holdout.sample(matrix, latest, evaluationUsers);
+        InteractionMatrix trainingMatrix = holdout.trainingMatrix(matrix);
+
+        // Iterations take most of the run
+        AlsTrainer trainer = new AlsTrainer(rank, iterations, regularization, alpha, trainingPool);
+        FactorModel holdoutModel = trainer.train(trainingMatrix, createdAt.toEpochSecond(),
+                iteration -> progress.accept(0.1 + 0.8 * iteration / (iterations + 1)));
+
+        Metrics metrics = evaluate(holdoutModel, trainingMatrix, holdout);
+
+        FactorModel model = trainer.train(matrix, holdoutModel.userFactors(), holdoutModel.itemFactors(), 1);
+        long trainingDuration = System.currentTimeMillis() - start;
+        progress.accept(0.95);
+
+        String version = createdAt.format(VERSION_FORMAT);
+        Path file = Paths.get(modelPath, "als-" + version + ".model");
+        writeArtifact(model, file);
+
+        RecommendationModel saved = activate(RecommendationModel.builder()
+                .modelType(RecommendationModel.ModelType.MATRIX_FACTORIZATION)
+                .version(version)
+                .filePath(file.toString())
+                .createdAt(createdAt)
+                .trainingDurationMs(trainingDuration)
+                .dataPointsCount(matrix.nonZeros())
+                .precisionMetric(metrics.precision)
+                .recallMetric(metrics.recall)
+                .f1Score(metrics.f1())
+                .meanAveragePrecision(metrics.meanAveragePrecision)
+                .isActive(true)
+                .parameters(parameters(TRAINING_FULL, null))
+                .build());
+        activateArtifact(saved);
+        deleteSupersededArtifacts();
+        progress.accept(1.0);
+
+        log.info("Trained ALS model {} on {} user-item pairs in {}ms (precision@{}={}, recall@{}={})",
+                version, matrix.nonZeros(), trainingDuration,
+                EVALUATION_CUTOFF, metrics.precision, EVALUATION_CUTOFF, metrics.recall);
+        return saved;
+    }
+
+    /**
+     * Update a model with the interactions recorded since it was created, store the result as a
+     * new model artifact and activate it. Users with new interactions are re-solved against the
+     * model's item factors and items new to the model against the updated user factors; every
+     * other vector is carried over. The holdout evaluation needs a full run, so the metrics of an
+     * incremental model are left empty.
+     *
+     * @param base the model to update
+     * @param progress receives the completed fraction of the run, from 0 to 1
+     * @return the stored model metadata, or null if the base model can't be updated and a full
+     *         retrain is needed
+     */
+    public synchronized RecommendationModel trainIncremental(RecommendationModel base, DoubleConsumer progress) {
+        long start = System.currentTimeMillis();
+        OffsetDateTime createdAt = nextCreatedAt();
+
+        FactorModel baseModel;
+        try {
+            baseModel = readModel(Paths.get(base.getFilePath()));
+        } catch (IOException e) {
+            log.warn("Can't read ALS model {} for an incremental update", base.getFilePath(), e);
+            return null;
+        }
+        if (baseModel.rank() != rank) {
+            log.info("ALS rank changed from {} to {}, incremental update not possible", baseModel.rank(), rank);
+            return null;
+        }
+        progress.accept(0.2);
+
+        InteractionMatrix matrix = loadTrainingMatrix(INCREMENTAL_TRAINING_QUERY,
+                Timestamp.from(base.getCreatedAt().toInstant()), null);
+        progress.accept(0.5);
+
+        float[] userFactors = Arrays.copyOf(baseModel.userFactors(), matrix.numUsers() * rank);
+        float[] itemFactors = Arrays.copyOf(baseModel.itemFactors(), matrix.numItems() * rank);
+        BitSet trainedUsers = new BitSet(matrix.numUsers());
+        BitSet updatedUsers = new BitSet(matrix.numUsers());
+        for (int user = 0; user < matrix.numUsers(); user++) {
+            if (matrix.hasUser(user)) {
+                updatedUsers.set(user);
+            }
+            if (matrix.hasUser(user) || baseModel.hasUser(user)) {
+                trainedUsers.set(user);
+            }
+        }
+        BitSet trainedItems = new BitSet(matrix.numItems());
+        BitSet newItems = new BitSet(matrix.numItems());
+        for (int item = 0; item < matrix.numItems(); item++) {
+            if (baseModel.hasItem(item)) {
+                trainedItems.set(item);
+            } else if (matrix.hasItem(item)) {
+                newItems.set(item);
+                trainedItems.set(item);
+            }
+        }
+
+        AlsTrainer trainer = new AlsTrainer(rank, iterations, regularization, alpha, trainingPool);
+        trainer.foldIn(matrix, true, itemFactors, userFactors, updatedUsers);
+        trainer.foldIn(matrix, false, userFactors, itemFactors, newItems);
+        FactorModel model = new FactorModel(rank, userFactors, itemFactors, trainedUsers, trainedItems);
+        long trainingDuration = System.currentTimeMillis() - start;
+        progress.accept(0.9);
+
+        String version = createdAt.format(VERSION_FORMAT);
+        Path file = Paths.get(modelPath, "als-" + version + ".model");
+        writeArtifact(model, file);
+
+        RecommendationModel saved = activate(RecommendationModel.builder()
+                .modelType(RecommendationModel.ModelType.MATRIX_FACTORIZATION)
+                .version(version)
+                .filePath(file.toString())
+                .createdAt(createdAt)
+                .trainingDurationMs(trainingDuration)
+                .dataPointsCount(matrix.nonZeros())
+                .isActive(true)
+                .parameters(parameters(TRAINING_INCREMENTAL, base))
+                .build());
+        activateArtifact(saved);
+        deleteSupersededArtifacts();
+        progress.accept(1.0);
+
+        log.info("Updated ALS model {} to {} with {} users and {} new items in {}ms",
+                base.getVersion(), version, updatedUsers.cardinality(), newItems.cardinality(), trainingDuration);
+        return saved;
+    }
+
+    /**
+     * Serve the active model, mapping its artifact when the active row changes. Rows can be
+     * activated by training in this or another instance.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${recommendation.model.poll-interval-ms:30000}",
+            fixedDelayString = "${recommendation.model.poll-interval-ms:30000}")
+    public void loadActiveModel() {
+        getActiveModel().ifPresent(this::activateArtifact);
+    }
+
+    /**
+     * Get the active model row.
+     *
+     * @return the active model, if any
+     */
+    public Optional<RecommendationModel> getActiveModel() {
+        return recommendationModelRepository
+                .findByModelTypeAndIsActiveTrue(RecommendationModel.ModelType.MATRIX_FACTORIZATION);
+    }
+
+    /**
+     * Count the incremental updates applied since a model's last full training.
+     *
+     * @param model the model
+     * @return the number of incremental updates, 0 for a fully trained model
+     */
+    public int incrementalRuns(RecommendationModel model) {
+        if (model.getParameters() == null) {
+            return 0;
+        }
+        try {
+            return objectMapper.readTree(model.getParameters()).path(INCREMENTAL_RUNS_PARAMETER).asInt(0);
+        } catch (JsonProcessingException e) {
+            log.warn("Can't read parameters of model {}", model.getVersion(), e);
+            return 0;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        trainingPool.shutdownNow();
+    }
+
+    /**
+     * Stream interactions into a weight matrix, one entry per (user, item).
+     * The interaction log is scanned instead of the database once it is complete.
+     * A model's data points are the entries of the matrix it was trained on, whichever the source.
+     *
+     * @param query the training query
+     * @param since the lower bound for new interactions, or null for the full query
+     * @param latest receives each user's most recently interacted item, or null
+     * @return the weight matrix
+     */
+    private InteractionMatrix loadTrainingMatrix(String query, Timestamp since, LatestItems latest) {
+        if (interactionLog.isReady()) {
+            return loadTrainingMatrixFromLog(since, latest);
+        }
+
+        long snapshotAt = System.currentTimeMillis();
+        InteractionMatrix.Builder builder = InteractionMatrix.builder(1 << 16);
+        IdDictionary users = dictionaries.users();
+        IdDictionary items = dictionaries.items();
+
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(
+                connection -> {
+                    PreparedStatement statement = connection.prepareStatement(query);
+                    statement.setFetchSize(fetchSize);
+                    statement.setDouble(1, viewWeight);
+                    statement.setDouble(2, watchTimeWeight);
+                    statement.setDouble(3, likeWeight);
+                    statement.setDouble(4, ratingWeight);
+                    if (since != null) {
+                        statement.setTimestamp(5, since);
+                    }
+                    return statement;
+                },
+                (RowCallbackHandler) rs -> {
+                    float weight = rs.getFloat(3);
+                    if (weight > 0f) {
+                        int user = users.getOrAssign(rs.getString(1));
+                        int item = items.getOrAssign(rs.getString(2));
+                        builder.add(user, item, weight);
+                        if (latest != null) {
+                            latest.offer(user, item, rs.getTimestamp(4).getTime());
+                        }
+                    }
+                }));
+
+        return builder.build(users.size(), items.size(), snapshotAt);
+    }
+
+    /**
+     * Scan the interaction log into a weight matrix, weighting and summing interactions the way the
+     * training query does. An incremental scan first collects the users with new interactions.
+     *
+     * @param since the lower bound for new interactions, or null for a full scan
+     * @param latest receives each user's most recently interacted item, or null
+     * @return the weight matrix
+     */
+    private InteractionMatrix loadTrainingMatrixFromLog(Timestamp since, LatestItems latest) {
+        long snapshotAt = System.currentTimeMillis();
+        BitSet changedUsers = new BitSet();
+        if (since != null) {
+            long sinceMillis = since.getTime();
+            interactionLog.scan((user, item, type, value, timestamp) -> {
+                if (timestamp > sinceMillis) {
+                    changedUsers.set(user);
+                }
+            });
+        }
+
+        InteractionMatrix.Builder builder = InteractionMatrix.builder(1 << 16);
+        interactionLog.scan((user, item, type, value, timestamp) -> {
+            if (since != null && !changedUsers.get(user)) {
+                return;
+            }
+            float weight = trainingWeight(type, Float.isNaN(value) ? 0f : value);
+            if (!Float.isNaN(weight)) {
+                builder.add(user, item, weight);
+                if (latest != null) {
+                    latest.offer(user, item, timestamp);
+                }
+            }
+        });
+
+        // Every index in the log was assigned before its record was appended
+        int numUsers = dictionaries.users().size();
+        int numItems = dictionaries.items().size();
+        return builder.mergeDuplicates(numUsers, Double::sum, true).build(numUsers, numItems, snapshotAt);
+    }
+
+    /**
+     * Weight one interaction for training.
+     *
+     * @param type the interaction type
+     * @param value the interaction value, 0 if it has none
+     * @return the weight, or NaN for types that are not trained on
+     */
+    private float trainingWeight(UserInteraction.InteractionType type, float value) {
+        return switch (type) {
+            case VIEW -> (float) viewWeight;
+            case WATCH_TIME -> (float) (watchTimeWeight * value);
+            case LIKE -> (float) likeWeight;
+            case RATING -> (float) (ratingWeight * value);
+            default -> Float.NaN;
+        };
+    }
+
+    /**
+     * Compute precision, recall and MAP at the evaluation cutoff for the held-out interactions.
+     */
+    private Metrics evaluate(FactorModel model, InteractionMatrix trainingMatrix, Holdout holdout) {
+        if (holdout.size() == 0) {
+            return new Metrics(0.0, 0.0, 0.0);
+        }
+
+        int hits = 0;
+        double averagePrecisionSum = 0.0;
+
+        for (int n = 0; n < holdout.size(); n++) {
+            int user = holdout.users[n];
+            int[] seen = trainingMatrix.rowItemsCopy(user);
+            Arrays.sort(seen);
+
+            TopKSelector top = model.recommend(user, EVALUATION_CUTOFF, seen);
+            for (int rank = 0; rank < top.size(); rank++) {
+                if (top.id(rank) == holdout.items[n]) {
+                    hits++;
+                    averagePrecisionSum += 1.0 / (rank + 1);
+                    break;
+                }
+            }
+        }
+
+        return new Metrics(
+                (double) hits / (holdout.size() * EVALUATION_CUTOFF),
+                (double) hits / holdout.size(),
+                averagePrecisionSum / holdout.size());
+    }
+
+    /**
+     * Store a model row and deactivate earlier models of the same type.
+     */
+    private RecommendationModel activate(RecommendationModel model) {
+        return transaction.execute(status -> {
+            recommendationModelRepository.findByModelTypeOrderByCreatedAtDesc(model.getModelType()).stream()
+                    .filter(existing -> Boolean.TRUE.equals(existing.getIsActive()))
+                    .forEach(existing -> {
+                        existing.setIsActive(false);
+                        recommendationModelRepository.save(existing);
+                    });
+            return recommendationModelRepository.save(model);
+        });
+    }
+
+    /**
+     * Get the sorted item indices a user has interacted with, according to the live matrix.
+     */
+    private int[] seenItems(int user) {
+        InteractionMatrix matrix = collaborativeFilteringEngine.getMatrix();
+        if (matrix == null || !matrix.hasUser(user)) {
+            return new int[0];
+        }
+
+        int[] seen = matrix.rowItemsCopy(user);
+        Arrays.sort(seen);
+        return seen;
+    }
+
+    private String parameters(String training, RecommendationModel base) {
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put(TRAINING_PARAMETER, training);
+        if (base != null) {
+            parameters.put("baseVersion", base.getVersion());
+            parameters.put(INCREMENTAL_RUNS_PARAMETER, incrementalRuns(base) + 1);
+        }
+        parameters.put("rank", rank);
+        parameters.put("iterations", iterations);
+        parameters.put("regularization", regularization);
+        parameters.put("alpha", alpha);
+        parameters.put("viewWeight", viewWeight);
+        parameters.put("watchTimeWeight", watchTimeWeight);
+        parameters.put("likeWeight", likeWeight);
+        parameters.put("ratingWeight", ratingWeight);
+
+        try {
+            return objectMapper.writeValueAsString(parameters);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Error serializing model parameters", e);
+        }
+    }
+
+    /**
+     * Get the creation time of a new model, later than the previous one from this instance, so
+     * every run gets its own version. Runs are serialized by the training methods' lock.
+     */
+    private OffsetDateTime nextCreatedAt() {
+        OffsetDateTime now = OffsetDateTime.now();
+        if (lastCreatedAt != null && !now.isAfter(lastCreatedAt)) {
+            now = lastCreatedAt.plusNanos(1_000_000L);
+        }
+        lastCreatedAt = now;
+        return now;
+    }
+
+    /**
+     * Delete the artifacts of superseded models beyond the newest {@code retainedArtifacts}, so the
+     * model directory doesn't grow by a model per run. The rows are kept as training history.
+     */
+    private void deleteSupersededArtifacts() {
+        int superseded = 0;
+        for (RecommendationModel model : recommendationModelRepository
+                .findByModelTypeOrderByCreatedAtDesc(RecommendationModel.ModelType.MATRIX_FACTORIZATION)) {
+            if (Boolean.TRUE.equals(model.getIsActive()) || superseded++ < retainedArtifacts) {
+                continue;
+            }
+            try {
+                if (Files.deleteIfExists(Paths.get(model.getFilePath()))) {
+                    log.info("Deleted artifact {} of superseded ALS model {}", model.getFilePath(), model.getVersion());
+                }
+            } catch (IOException e) {
+                log.warn("Can't delete artifact {} of superseded ALS model {}", model.getFilePath(),
+                        model.getVersion(), e);
+            }
+        }
+    }
+
+    /**
+     * Write the model as a memory-mappable artifact, with the current co-occurrence neighbours
+     * of its items, keyed by IDs so the file is independent of this process's dictionary indices.
+     */
+    private void writeArtifact(FactorModel model, Path file) {
+        IdDictionary items = dictionaries.items();
+        try {
+            ModelArtifact.write(file, model, dictionaries.users(), items,
+                    item -> itemNeighborIndex.get(items.idOf(item)), neighborsPerItem);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing ALS model to " + file, e);
+        }
+    }
+
+    /**
+     * Read a model artifact back into factor arrays indexed by this process's dictionaries.
+     */
+    private FactorModel readModel(Path file) throws IOException {
+        try (ModelArtifact artifact = ModelArtifact.open(file)) {
+            int modelRank = artifact.rank();
+            IdDictionary users = dictionaries.users();
+            IdDictionary items = dictionaries.items();
+            int[] userIndices = new int[artifact.numUsers()];
+            for (int row = 0; row < userIndices.length; row++) {
+                userIndices[row] = users.getOrAssign(artifact.userId(row));
+            }
+            int[] itemIndices = new int[artifact.numItems()];
+            for (int row = 0; row < itemIndices.length; row++) {
+                itemIndices[row] = items.getOrAssign(artifact.itemId(row));
+            }
+
+            float[] vector = new float[modelRank];
+            float[] userFactors = new float[users.size() * modelRank];
+            BitSet trainedUsers = new BitSet(users.size());
+            for (int row = 0; row < userIndices.length; row++) {
+                artifact.userVector(row, vector);
+                System.arraycopy(vector, 0, userFactors, userIndices[row] * modelRank, modelRank);
+                trainedUsers.set(userIndices[row]);
+            }
+            float[] itemFactors = new float[items.size() * modelRank];
+            BitSet trainedItems = new BitSet(items.size());
+            for (int row = 0; row < itemIndices.length; row++) {
+                artifact.itemVector(row, vector);
+                System.arraycopy(vector, 0, itemFactors, itemIndices[row] * modelRank, modelRank);
+                trainedItems.set(itemIndices[row]);
+            }
+
+            return new FactorModel(modelRank, userFactors, itemFactors, trainedUsers, trainedItems);
+        }
+    }
+
+    private void activateArtifact(RecommendationModel model) {
+        try {
+            activeModelRegistry.activate(model.getId(), model.getVersion(), Paths.get(model.getFilePath()));
+        } catch (Exception e) {
+            log.error("Error loading ALS model {}", model.getFilePath(), e);
+        }
+    }
+
+    /**
+     * The most recently interacted item of each user, by interaction time.
+     */
+    private static final class LatestItems {
+        private int[] items = new int[0];
+        private long[] timestamps = new long[0];
+
+        private void offer(int user, int item, long timestamp) {
+            if (user >= items.length) {
+                int length = Math.max(user + 1, 2 * items.length);
+                int from = items.length;
+                items = Arrays.copyOf(items, length);
+                timestamps = Arrays.copyOf(timestamps, length);
+                Arrays.fill(items, from, length, -1);
+                Arrays.fill(timestamps, from, length, Long.MIN_VALUE);
+            }
+            if (timestamp > timestamps[user]) {
+                items[user] = item;
+                timestamps[user] = timestamp;
+            }
+        }
+
+        /**
+         * Get the user's latest item.
+         *
+         * @return the item index, or -1 if the user has none
+         */
+        private int get(int user) {
+            return user < items.length ? items[user] : -1;
+        }
+    }
+
+    /**
+     * One held-out (user, item) pair per sampled user.
+     */
+    private static final class Holdout {
+        private final int[] users;
+        private final int[] items;
+
+        private Holdout(int[] users, int[] items) {
+            this.users = users;
+            this.items = items;
+        }
+
+        private int size() {
+            return users.length;
+        }
+
+        /**
+         * Pick users with at least three entries at an even stride and hold out the entry of their
+         * latest interaction.
+         */
+        private static Holdout sample(InteractionMatrix matrix, LatestItems latest, int maxUsers) {
+            int eligible = 0;
+            for (int user = 0; user < matrix.numUsers(); user++) {
+                if (isEligible(matrix, latest, user)) {
+                    eligible++;
+                }
+            }
+
+            int stride = Math.max(1, eligible / Math.max(1, maxUsers));
+            int count = Math.min(eligible, maxUsers);
+            int[] users = new int[count];
+            int[] items = new int[count];
+
+            int seen = 0;
+            int n = 0;
+            for (int user = 0; user < matrix.numUsers() && n < count; user++) {
+                if (isEligible(matrix, latest, user) && seen++ % stride == 0) {
+                    users[n] = user;
+                    items[n] = latest.get(user);
+                    n++;
+                }
+            }
+
+            return new Holdout(Arrays.copyOf(users, n), Arrays.copyOf(items, n));
+        }
+
+        private static boolean isEligible(InteractionMatrix matrix, LatestItems latest, int user) {
+            return matrix.rowEnd(user) - matrix.rowStart(user) >= 3 && position(matrix, user, latest.get(user)) >= 0;
+        }
+
+        private static int position(InteractionMatrix matrix, int user, int item) {
+            for (int p = matrix.rowStart(user); p < matrix.rowEnd(user); p++) {
+                if (matrix.rowItem(p) == item) {
+                    return p;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Copy the matrix without the held-out entries.
+         */
+        private InteractionMatrix trainingMatrix(InteractionMatrix matrix) {
+            int[] heldOutItems = new int[matrix.numUsers()];
+            Arrays.fill(heldOutItems, -1);
+            for (int n = 0; n < users.length; n++) {
+                heldOutItems[users[n]] = items[n];
+            }
+
+            InteractionMatrix.Builder builder = InteractionMatrix.builder(matrix.nonZeros());
+            for (int user = 0; user < matrix.numUsers(); user++) {
+                for (int p = matrix.rowStart(user); p < matrix.rowEnd(user); p++) {
+                    if (matrix.rowItem(p) != heldOutItems[user]) {
+                        builder.add(user, matrix.rowItem(p), matrix.rowValue(p));
+                    }
+                }
+            }
+            return builder.build(matrix.numUsers(), matrix.numItems(), matrix.builtAtMillis());
+        }
+    }
+
+    /**
+     * Ranking metrics at the evaluation cutoff.
+     */
+    private static final class Metrics {
+        private final double precision;
+        private final double recall;
+        private final double meanAveragePrecision;
+
+        private Metrics(double precision, double recall, double meanAveragePrecision) {
+            this.precision = precision;
+            this.recall = recall;
+            this.meanAveragePrecision = meanAveragePrecision;
+        }
+
+        private double f1() {
+            return precision + recall == 0 ? 0.0 : 2 * precision * recall / (precision + recall);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.examples.streaming_platform.recommendation.service;
+
+import com.examples.streaming_platform.recommendation.model.RecommendationModel;
+import com.examples.streaming_platform.recommendation.repository.UserInteractionRepository;
+import com.examples.streaming_platform.recommendation.sharding.ShardMembership;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scheduled retraining of the ALS model. Each run checks that enough interactions were recorded
+ * since the active model was created, then updates that model incrementally or, when there is no
+ * model to update or too many updates have piled up, retrains it from scratch.
+ * Runs go to a single dedicated thread and the solver's own bounded pool, never to request threads.
+ */
+@Service
+@Slf4j
+public class ModelTrainingOrchestrator {
+
+    private final MatrixFactorizationService matrixFactorizationService;
+    private final UserInteractionRepository userInteractionRepository;
+    private final ShardMembership shardMembership;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService executor;
+    private final AtomicBoolean running = new AtomicBoolean();
+    // Progress of the current run in parts per thousand, exported as a fraction
+    private final AtomicLong progress = new AtomicLong();
+    private final Counter skippedCounter;
+
+    @Value("${recommendation.model.min-data-points:1000}")
+    private long minDataPoints;
+
+    @Value("${recommendation.model.incremental.enabled:true}")
+    private boolean incrementalEnabled;
+
+    @Value("${recommendation.model.incremental.max-runs:6}")
+    private int maxIncrementalRuns;
+
+    public ModelTrainingOrchestrator(MatrixFactorizationService matrixFactorizationService,
+                                     UserInteractionRepository userInteractionRepository,
+                                     ShardMembership shardMembership,
+                                     MeterRegistry meterRegistry) {
+        this.matrixFactorizationService = matrixFactorizationService;
+        this.userInteractionRepository = userInteractionRepository;
+        this.shardMembership = shardMembership;
+        this.meterRegistry = meterRegistry;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "model-training");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+
+        Gauge.builder("recommendation.training.progress", progress, value -> value.get() / 1000.0)
+                .description("Completed fraction of the current training run")
+                .register(meterRegistry);
+        Gauge.builder("recommendation.training.running", running, value -> value.get() ? 1 : 0)
+                .description("Whether a training run is in progress")
+                .register(meterRegistry);
+        this.skippedCounter = Counter.builder("recommendation.training.skipped")
+                .description("Scheduled runs skipped for lack of new interactions")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queue a training run on the configured schedule. Training loads every user's interactions,
+     * so in a sharded cluster only the designated member trains; the others pick the model up
+     * when it is activated.
+     */
+    @Scheduled(cron = "${recommendation.model.update-schedule:0 0 2 * * ?}")
+    public void scheduledTraining() {
+        if (!shardMembership.isDesignated()) {
+            log.debug("Skipping scheduled model training, another shard member is designated to train");
+            return;
+        }
+        submit();
+    }
+
+    /**
+     * Queue a training run unless one is already in progress.
+     *
+     * @return true if a run was queued
+     */
+    public boolean submit() {
+        return submit(false);
+    }
+
+    /**
+     * Queue a full training run, whatever the number of new interactions, unless a run is already
+     * in progress.
+     *
+     * @return true if a run was queued
+     */
+    public boolean submitFull() {
+        return submit(true);
+    }
+
+    private boolean submit(boolean requested) {
+        if (!running.compareAndSet(false, true)) {
+            log.info("Model training already in progress, skipping this run");
+            return false;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    run(requested);
+                } finally {
+                    running.set(false);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            running.set(false);
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Train a model on the calling thread.
+     *
+     * @param requested true for a requested full run, false for a scheduled run that checks for
+     *                  new interactions and may update incrementally
+     */
+    private void run(boolean requested) {
+        Optional<RecommendationModel> active = matrixFactorizationService.getActiveModel();
+        if (!requested) {
+            long newDataPoints = active
+                    .map(model -> userInteractionRepository.countByTimestampAfter(model.getCreatedAt()))
+                    .orElseGet(userInteractionRepository::count);
+            if (newDataPoints < minDataPoints) {
+                log.info("Skipping model training: {} new interactions, {} required", newDataPoints, minDataPoints);
+                skippedCounter.increment();
+                return;
+            }
+        }
+
+        boolean incremental = !requested && incrementalEnabled && active.isPresent()
+                && matrixFactorizationService.incrementalRuns(active.get()) < maxIncrementalRuns;
+        String trigger = requested ? "requested" : "scheduled";
+        progress.set(0);
+        long start = System.nanoTime();
+        String mode = incremental ? "incremental" : "full";
+        String outcome = "failure";
+        try {
+            RecommendationModel model = null;
+            if (incremental) {
+                model = matrixFactorizationService.trainIncremental(active.get(), this::reportProgress);
+            }
+            if (model == null) {
+                // No incremental update possible, so retrain from scratch
+                mode = "full";
+                model = matrixFactorizationService.train(this::reportProgress);
+            }
+            outcome = "success";
+            log.info("{} {} training produced model {}", trigger, mode, model.getVersion());
+        } catch (RuntimeException e) {
+            log.error("{} {} model training failed", trigger, mode, e);
+        } finally {
+            Timer.builder("recommendation.training.duration")
+                    .description("Time taken by a training run")
+                    .tag("trigger", trigger)
+                    .tag("mode", mode)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void reportProgress(double fraction) {
+        progress.set(Math.round(fraction * 1000));
+    }
+}
@@ -0,0 +1,222 @@
+package com.examples.streaming_platform.recommendation.service;
+
+import com.examples.streaming_platform.recommendation.event.InteractionRecordedEvent;
+import com.examples.streaming_platform.recommendation.model.UserInteraction;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of per-user recommendation results with stale-while-revalidate.
+ * Entries are fresh for the TTL and then served stale for a grace period while they are recomputed in
+ * the background. A user's entries turn stale as soon as one of their interactions is recorded, and
+ * results that missed a pipeline stage are stale from the start.
+ */
+@Service
+@Slf4j
+public class RecommendationCache {
+
+    private final Cache<Key, Entry> results;
+    private final Cache<String, Long> lastInteractions;
+    private final Set<Key> refreshing = ConcurrentHashMap.newKeySet();
+    private final ExecutorService refreshExecutor;
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final Timer syncRecomputeTimer;
+    private final Timer asyncRecomputeTimer;
+    private final Counter staleCounter;
+
+    public RecommendationCache(MeterRegistry meterRegistry,
+                               @Value("${recommendation.cache.enabled:true}") boolean enabled,
+                               @Value("${recommendation.cache.max-size:100000}") long maxSize,
+                               @Value("${recommendation.cache.ttl-seconds:300}") long ttlSeconds,
+                               @Value("${recommendation.cache.stale-seconds:900}") long staleSeconds,
+                               @Value("${recommendation.cache.refresh-threads:2}") int refreshThreads) {
+        this.enabled = enabled;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.results = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds + staleSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        // Only interactions newer than a cached entry matter, so marks can expire with the entries
+        this.lastInteractions = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds + staleSeconds, TimeUnit.SECONDS)
+                .build();
+        this.refreshExecutor = Executors.newFixedThreadPool(refreshThreads, runnable -> {
+            Thread thread = new Thread(runnable, "recommendation-cache-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        GuavaCacheMetrics.monitor(meterRegistry, results, "recommendations");
+        this.syncRecomputeTimer = Timer.builder("recommendation.cache.recompute.duration")
+                .description("Time to compute recommendations for a cache miss or refresh")
+                .tag("mode", "sync")
+                .register(meterRegistry);
+        this.asyncRecomputeTimer = Timer.builder("recommendation.cache.recompute.duration")
+                .description("Time to compute recommendations for a cache miss or refresh")
+                .tag("mode", "async")
+                .register(meterRegistry);
+        this.staleCounter = Counter.builder("recommendation.cache.stale")
+                .description("Stale results served while being recomputed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Get cached recommendations, computing them on a miss. Concurrent misses for the same key
+     * share one computation. Stale entries are returned immediately and refreshed in the background.
+     * Exceptions from the computation propagate and nothing is cached.
+     *
+     * @param userId the user ID
+     * @param limit the maximum number of recommendations
+     * @param features the enabled feature flags
+     * @param compute computes the recommendations
+     * @return the recommendation result
+     */
+    public RecommendationResult get(String userId, int limit, int features,
+                                       Supplier<RecommendationResult> compute) {
+        if (!enabled) {
+            return compute.get();
+        }
+
+        Key key = new Key(userId, limit, features);
+        Entry entry;
+        try {
+            entry = results.get(key, () -> compute(compute, syncRecomputeTimer));
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : new IllegalStateException(e.getCause());
+        } catch (UncheckedExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : e;
+        }
+
+        if (isStale(key, entry)) {
+            staleCounter.increment();
+            refresh(key, compute);
+        }
+        return entry.result;
+    }
+
+    /**
+     * Mark the cached results of users with new interactions as stale.
+     *
+     * @param event the stored interactions
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onInteractionRecorded(InteractionRecordedEvent event) {
+        if (!enabled) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        for (UserInteraction interaction : event.getInteractions()) {
+            lastInteractions.put(interaction.getUserId(), now);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    private boolean isStale(Key key, Entry entry) {
+        // Results assembled without every stage are served once and recomputed
+        if (!entry.result.isComplete() || System.nanoTime() - entry.computedAtNanos >= ttlNanos) {
+            return true;
+        }
+        Long lastInteraction = lastInteractions.getIfPresent(key.userId);
+        return lastInteraction != null && lastInteraction - entry.computedAtNanos >= 0;
+    }
+
+    private void refresh(Key key, Supplier<RecommendationResult> compute) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    results.put(key, compute(compute, asyncRecomputeTimer));
+                } catch (Exception e) {
+                    log.warn("Error refreshing cached recommendations for user {}", key.userId, e);
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (Exception e) {
+            refreshing.remove(key);
+            log.warn("Could not schedule refresh of cached recommendations for user {}", key.userId, e);
+        }
+    }
+
+    private static Entry compute(Supplier<RecommendationResult> compute, Timer timer) {
+        long start = System.nanoTime();
+        RecommendationResult result = compute.get();
+        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return new Entry(result, start);
+    }
+
+    /**
+     * Cache key: the user plus everything else that changes the result.
+     */
+    private static final class Key {
+        private final String userId;
+        private final int limit;
+        private final int features;
+
+        private Key(String userId, int limit, int features) {
+            this.userId = userId;
+            this.limit = limit;
+            this.features = features;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key other)) {
+                return false;
+            }
+            return limit == other.limit && features == other.features && userId.equals(other.userId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, limit, features);
+        }
+    }
+
+    /**
+     * Cached result with the time its computation started, so interactions recorded while it
+     * was being computed still mark it stale.
+     */
+    private static final class Entry {
+        private final RecommendationResult result;
+        private final long computedAtNanos;
+
+        private Entry(RecommendationResult result, long computedAtNanos) {
+            this.result = result;
+            this.computedAtNanos = computedAtNanos;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.examples.streaming_platform.recommendation.service;
+
+import com.examples.streaming_platform.recommendation.dto.RecommendationDTO;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Personalized recommendations together with the pipeline stages that contributed to them.
+ */
+@Getter
+@RequiredArgsConstructor
+public class RecommendationResult {
+
+    /**
+     * The blended recommendations.
+     */
+    private final List<RecommendationDTO> recommendations;
+
+    /**
+     * Stages that finished within their deadline.
+     */
+    private final List<String> completedStages;
+
+    /**
+     * Stages that were cancelled at their deadline or failed.
+     */
+    private final List<String> missedStages;
+
+    /**
+     * Check whether every stage that ran made it into the result.
+     *
+     * @return true if no stage was missed
+     */
+    public boolean isComplete() {
+        return missedStages.isEmpty();
+    }
+}
@@ -1,8 +1,18 @@
 package com.examples.streaming_platform.recommendation.service;
 
 import com.examples.streaming_platform.recommendation.dto.RecommendationDTO;
+import com.examples.streaming_platform.recommendation.engine.IdDictionaries;
+import com.examples.streaming_platform.recommendation.engine.IdDictionary;
+import com.examples.streaming_platform.recommendation.engine.PopularityEngine;
+import com.examples.streaming_platform.recommendation.engine.TrendingEngine;
 import com.examples.streaming_platform.recommendation.model.ContentItem;
 import com.examples.streaming_platform.recommendation.model.UserInteraction;
+import com.examples.streaming_platform.recommendation.monitoring.RecommendationMetrics;
+import com.examples.streaming_platform.recommendation.ranking.CandidateFilter;
+import com.examples.streaming_platform.recommendation.ranking.CandidateGenerator;
+import com.examples.streaming_platform.recommendation.ranking.Candidates;
+import com.examples.streaming_platform.recommendation.ranking.RankedList;
+import com.examples.streaming_platform.recommendation.ranking.ScoreBlender;
 import com.examples.streaming_platform.recommendation.repository.UserInteractionRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -11,6 +21,17 @@ import org.springframework.stereotype.Service;
 
 import java.time.OffsetDateTime;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -21,10 +42,28 @@ import java.util.stream.Collectors;
 @Slf4j
 public class RecommendationService {
 
+    static final String STAGE_COLLABORATIVE_FILTERING = "collaborative_filtering";
+    static final String STAGE_CONTENT_BASED = "content_based";
+    static final String STAGE_TRENDING = "trending";
+    static final String STAGE_POPULARITY = "popularity";
+    static final String STAGE_MATERIALIZED = "materialized";
+    static final String STAGE_ITEM_COOCCURRENCE = "item_cooccurrence";
+    static final String STAGE_SIMILAR_CONTENT = "similar_content";
+    static final String STAGE_HYBRID_MERGE = "hybrid_merge";
+    static final String STAGE_USER_CONTEXT = "user_context";
+
     private final CollaborativeFilteringService collaborativeFilteringService;
     private final ContentBasedFilteringService contentBasedFilteringService;
     private final ContentItemService contentItemService;
     private final UserInteractionRepository userInteractionRepository;
+    private final TrendingEngine trendingEngine;
+    private final PopularityEngine popularityEngine;
+    private final RecommendationCache recommendationCache;
+    private final MaterializedRecommendations materializedRecommendations;
+    private final UserContextService userContextService;
+    private final ExecutorService recommendationExecutor;
+    private final IdDictionaries dictionaries;
+    private final RecommendationMetrics metrics;
     
     @Value("${recommendation.features.collaborative-filtering:true}")
     private boolean enableCollaborativeFiltering;
@@ -37,49 +76,62 @@ public class RecommendationService {
     
     @Value("${recommendation.features.trending:true}")
     private boolean enableTrending;
+    
+    @Value("${recommendation.hybrid.collaborative-filtering-weight:0.6}")
+    private float collaborativeFilteringWeight;
+    
+    @Value("${recommendation.hybrid.content-based-weight:0.4}")
+    private float contentBasedWeight;
+    
+    @Value("${recommendation.latency.budget-ms:200}")
+    private long defaultBudgetMs;
+    
+    @Value("${recommendation.latency.max-budget-ms:5000}")
+    private long maxBudgetMs;
+    
+    @Value("${recommendation.latency.generator-share:0.75}")
+    private double generatorShare;
 
     /**
-     * Get personalized recommendations for a user.
+     * Get personalized recommendations for a user within the default latency budget.
      *
      * @param userId the user ID
      * @param limit the maximum number of recommendations
      * @return a list of recommendations
      */
     public List<RecommendationDTO> getRecommendationsForUser(String userId, int limit) {
-        log.debug("Generating recommendations for user: {}, limit: {}", userId, limit);
-        
-        List<RecommendationDTO> recommendations = new ArrayList<>();
+        return getRecommendationsForUser(userId, limit, defaultBudgetMs).getRecommendations();
+    }
+
+    /**
+     * Get personalized recommendations for a user within a latency budget.
+     * Recommendations precomputed by the nightly batch are served when enough of them are left
+     * unconsumed. Otherwise, stages that do not finish within their share of the budget are
+     * cancelled and the recommendations are blended from the stages that did.
+     *
+     * @param userId the user ID
+     * @param limit the maximum number of recommendations
+     * @param budgetMs the latency budget in milliseconds
+     * @return the recommendations and the stages that produced them
+     */
+    public RecommendationResult getRecommendationsForUser(String userId, int limit, long budgetMs) {
+        long requestStart = System.nanoTime();
+        Thread requestThread = Thread.currentThread();
+        log.debug("Generating recommendations for user: {}, limit: {}, budget: {} ms", userId, limit, budgetMs);
+        long budget = Math.max(1L, Math.min(budgetMs, maxBudgetMs));
         
         try {
-            // Use hybrid approach if enabled
-            if (enableHybrid) {
-                recommendations = getHybridRecommendations(userId, limit);
-            }
-            // Otherwise, use individual algorithms
-            else {
-                if (enableCollaborativeFiltering) {
-                    recommendations.addAll(collaborativeFilteringService.getUserBasedRecommendations(userId, limit / 2));
-                }
-                
-                if (enableContentBased) {
-                    recommendations.addAll(contentBasedFilteringService.getRecommendationsForUser(userId, limit / 2));
-                }
-            }
-            
-            // If we don't have enough recommendations, add trending items
-            if (recommendations.size() < limit && enableTrending) {
-                int remainingCount = limit - recommendations.size();
-                recommendations.addAll(getTrendingRecommendations(remainingCount));
-            }
-            
-            // Deduplicate and limit
-            return deduplicateAndLimit(recommendations, limit);
-            
+            return recommendationCache.get(userId, limit, enabledFeatures(), () -> {
+                // Background refreshes run later on the cache's threads, with a budget of their own
+                long start = Thread.currentThread() == requestThread ? requestStart : System.nanoTime();
+                return computeRecommendationsForUser(userId, limit, start, budget);
+            });
         } catch (Exception e) {
             log.error("Error generating recommendations for user: {}", userId, e);
+            metrics.fallback("personalized", STAGE_TRENDING);
             
             // Fallback to trending recommendations
-            return getTrendingRecommendations(limit);
+            return new RecommendationResult(getTrendingRecommendations(limit), List.of(STAGE_TRENDING), List.of());
         }
     }
 
@@ -98,12 +150,14 @@ public class RecommendationService {
         try {
             // Get content-based recommendations
             if (enableContentBased) {
-                recommendations.addAll(contentBasedFilteringService.getSimilarContent(itemId, limit));
+                recommendations.addAll(metrics.record(STAGE_SIMILAR_CONTENT,
+                        () -> contentBasedFilteringService.getSimilarContent(itemId, limit), List::size));
             }
             
             // Add item-based collaborative filtering recommendations
             if (enableCollaborativeFiltering) {
-                recommendations.addAll(collaborativeFilteringService.getItemBasedRecommendations(itemId, limit));
+                recommendations.addAll(metrics.record(STAGE_ITEM_COOCCURRENCE,
+                        () -> collaborativeFilteringService.getItemBasedRecommendations(itemId, limit), List::size));
             }
             
             // Deduplicate and limit
@@ -111,6 +165,7 @@ public class RecommendationService {
             
         } catch (Exception e) {
             log.error("Error finding similar content for item: {}", itemId, e);
+            metrics.fallback("similar", STAGE_POPULARITY);
             
             // Fallback to popular items
             return getPopularRecommendations(limit);
@@ -125,9 +180,86 @@ public class RecommendationService {
      */
     public List<RecommendationDTO> getTrendingRecommendations(int limit) {
         log.debug("Getting trending content, limit: {}", limit);
+        return getTrendingCandidates(limit).toRecommendations(dictionaries.items(), limit);
+    }
+
+    /**
+     * Get popular content recommendations.
+     *
+     * @param limit the maximum number of recommendations
+     * @return a list of recommendations
+     */
+    public List<RecommendationDTO> getPopularRecommendations(int limit) {
+        log.debug("Getting popular content, limit: {}", limit);
+        return getPopularCandidates(limit).toRecommendations(dictionaries.items(), limit);
+    }
+
+    /**
+     * Create a ranker for batch jobs that computes personalized recommendations for many users.
+     * Trending and popular fill candidates are computed once and shared by all users. Each user's
+     * candidates are generated and blended on the calling thread, without the cache or a latency
+     * budget, so a batch job parallelizes over users instead of stages.
+     *
+     * @param limit the maximum number of recommendations per user
+     * @return a function from a loaded user context to the user's recommendations
+     */
+    public Function<UserContext, List<RecommendationDTO>> batchRanker(int limit) {
+        List<Candidates> fill = new ArrayList<>(2);
+        if (enableTrending) {
+            fill.add(getTrendingCandidates(limit));
+        }
+        fill.add(getPopularCandidates(limit));
+        int generatorLimit = enableHybrid ? limit : limit / 2;
         
+        return context -> {
+            ScoreBlender blender = newBlender(limit);
+            if (enableCollaborativeFiltering) {
+                blender.add(collaborativeFilteringCandidates(context, generatorLimit),
+                        enableHybrid ? collaborativeFilteringWeight : 1f);
+            }
+            if (enableContentBased) {
+                blender.add(contentBasedCandidates(context, generatorLimit),
+                        enableHybrid ? contentBasedWeight : 1f);
+            }
+            
+            return merge(blender, fill, context, limit);
+        };
+    }
+
+    /**
+     * Get trending candidates, scored by rank.
+     *
+     * @param limit the maximum number of candidates
+     * @return the candidates, best first
+     */
+    private Candidates getTrendingCandidates(int limit) {
+        return metrics.record(STAGE_TRENDING, () -> loadTrendingCandidates(limit), Candidates::size);
+    }
+
+    /**
+     * Load trending candidates from the in-memory window, or from the database until it is seeded.
+     *
+     * @param limit the maximum number of candidates
+     * @return the candidates, best first
+     */
+    private Candidates loadTrendingCandidates(int limit) {
         try {
+            // Serve from the in-memory window once it has been seeded
+            if (trendingEngine.isReady()) {
+                TrendingEngine.Snapshot trending = trendingEngine.top();
+                int count = Math.min(limit, trending.size());
+                Candidates candidates = new Candidates("trending", "Trending this week", count);
+                
+                for (int i = 0; i < count; i++) {
+                    // Simple score based on position
+                    candidates.add(trending.item(i), 1f - (float) i / count, trending.itemType(i));
+                }
+                
+                return candidates;
+            }
+            
             // Get trending items from the last 7 days
+            metrics.fallback(STAGE_TRENDING, "database");
             OffsetDateTime since = OffsetDateTime.now().minusDays(7);
             
             List<String> interactionTypes = Arrays.asList(
@@ -137,116 +269,252 @@ public class RecommendationService {
             List<String> trendingItemIds = userInteractionRepository.findTrendingItems(
                     interactionTypes, since, limit);
             
-            // Convert to DTOs
-            List<RecommendationDTO> recommendations = new ArrayList<>();
+            Map<String, ContentItem> contentItems = contentItemService.getContentItems(trendingItemIds);
+            IdDictionary items = dictionaries.items();
+            Candidates candidates = new Candidates("trending", "Trending this week", trendingItemIds.size());
             
             for (int i = 0; i < trendingItemIds.size(); i++) {
-                String itemId = trendingItemIds.get(i);
+                ContentItem contentItem = contentItems.get(trendingItemIds.get(i));
                 
-                Optional<ContentItem> contentItem = contentItemService.getContentItem(itemId);
-                
-                if (contentItem.isPresent()) {
-                    recommendations.add(RecommendationDTO.builder()
-                            .itemId(itemId)
-                            .itemType(contentItem.get().getItemType().name())
-                            .score(1.0 - (double) i / trendingItemIds.size()) // Simple score based on position
-                            .algorithm("trending")
-                            .reason("Trending this week")
-                            .build());
+                if (contentItem != null) {
+                    candidates.add(items.getOrAssign(contentItem.getId()),
+                            1f - (float) i / trendingItemIds.size(), contentItem.getItemType());
                 }
             }
             
-            return recommendations;
+            return candidates;
             
         } catch (Exception e) {
             log.error("Error getting trending recommendations", e);
+            metrics.fallback(STAGE_TRENDING, STAGE_POPULARITY);
             
             // Fallback to popular items
-            return getPopularRecommendations(limit);
+            return getPopularCandidates(limit);
         }
     }
 
     /**
-     * Get popular content recommendations.
+     * Get popular candidates, scored by rank.
      *
-     * @param limit the maximum number of recommendations
-     * @return a list of recommendations
+     * @param limit the maximum number of candidates
+     * @return the candidates, best first
      */
-    public List<RecommendationDTO> getPopularRecommendations(int limit) {
-        log.debug("Getting popular content, limit: {}", limit);
+    private Candidates getPopularCandidates(int limit) {
+        return metrics.record(STAGE_POPULARITY, () -> loadPopularCandidates(limit), Candidates::size);
+    }
+
+    /**
+     * Load popular candidates from the in-memory scores, or from the database until they are loaded.
+     *
+     * @param limit the maximum number of candidates
+     * @return the candidates, best first
+     */
+    private Candidates loadPopularCandidates(int limit) {
+        Candidates candidates = new Candidates("popularity", "Popular on our platform", limit);
         
         try {
+            // Serve from the in-memory scores once they have been loaded
+            if (popularityEngine.isReady()) {
+                PopularityEngine.Snapshot popular = popularityEngine.top();
+                int count = Math.min(limit, popular.size());
+                
+                for (int i = 0; i < count; i++) {
+                    // Simple score based on position
+                    candidates.add(popular.item(i), 1f - (float) i / count, popular.itemType(i));
+                }
+                
+                return candidates;
+            }
+            
             // Get most popular items
+            metrics.fallback(STAGE_POPULARITY, "database");
             List<ContentItem> popularItems = contentItemService.findMostPopular(limit);
-            
-            // Convert to DTOs
-            List<RecommendationDTO> recommendations = new ArrayList<>();
+            IdDictionary items = dictionaries.items();
             
             for (int i = 0; i < popularItems.size(); i++) {
                 ContentItem item = popularItems.get(i);
-                
-                recommendations.add(RecommendationDTO.builder()
-                        .itemId(item.getId())
-                        .itemType(item.getItemType().name())
-                        .score(1.0 - (double) i / popularItems.size()) // Simple score based on position
-                        .algorithm("popularity")
-                        .reason("Popular on our platform")
-                        .build());
+                // Simple score based on position
+                candidates.add(items.getOrAssign(item.getId()), 1f - (float) i / popularItems.size(),
+                        item.getItemType());
             }
             
-            return recommendations;
-            
         } catch (Exception e) {
             log.error("Error getting popular recommendations", e);
-            return Collections.emptyList();
+            metrics.fallback(STAGE_POPULARITY, "none");
         }
+        
+        return candidates;
     }
 
     /**
-     * Get hybrid recommendations using multiple algorithms.
+     * Compute personalized recommendations without the cache.
+     * Precomputed recommendations are looked up and the user context is loaded on the
+     * recommendation executor, each bounded by the generator deadline; without a context the user
+     * gets popular items. The candidate generators and trending then run concurrently and are
+     * blended in completion order until the generator deadline, when unfinished stages are
+     * cancelled. Popular items fill any remaining slots if there is budget left. Candidates stay
+     * item indices and scores until the final list is converted to DTOs.
      *
      * @param userId the user ID
      * @param limit the maximum number of recommendations
-     * @return a list of recommendations
+     * @param startNanos when the request started, as {@link System#nanoTime()}
+     * @param budgetMs the latency budget in milliseconds
+     * @return the recommendations and the stages that produced them
      */
-    private List<RecommendationDTO> getHybridRecommendations(String userId, int limit) {
-        // Get recommendations from both algorithms
-        List<RecommendationDTO> collaborativeRecs = enableCollaborativeFiltering ?
-                collaborativeFilteringService.getUserBasedRecommendations(userId, limit) :
-                Collections.emptyList();
+    private RecommendationResult computeRecommendationsForUser(String userId, int limit, long startNanos,
+                                                               long budgetMs) {
+        long deadline = startNanos + TimeUnit.MILLISECONDS.toNanos(budgetMs);
+        long generatorDeadline = startNanos + (long) (TimeUnit.MILLISECONDS.toNanos(budgetMs) * generatorShare);
+        StageRunner stages = new StageRunner();
         
-        List<RecommendationDTO> contentBasedRecs = enableContentBased ?
-                contentBasedFilteringService.getRecommendationsForUser(userId, limit) :
-                Collections.emptyList();
+        // Precomputed lists are a key lookup; only compute live when there is none to serve
+        Optional<List<RecommendationDTO>> precomputed = stages.await(STAGE_MATERIALIZED,
+                () -> metrics.time(STAGE_MATERIALIZED, () -> materializedRecommendations.find(userId, limit)),
+                generatorDeadline);
+        if (precomputed != null && precomputed.isPresent()) {
+            return new RecommendationResult(precomputed.get(), List.of(STAGE_MATERIALIZED), List.copyOf(stages.missed));
+        }
         
-        // Combine and re-rank
-        Map<String, RecommendationDTO> combinedRecs = new HashMap<>();
+        UserContext context = stages.await(STAGE_USER_CONTEXT,
+                () -> metrics.time(STAGE_USER_CONTEXT, () -> userContextService.load(userId)), generatorDeadline);
+        if (context == null) {
+            metrics.fallback("personalized", STAGE_POPULARITY);
+            RankedList popular = new RankedList(limit);
+            stages.submit(STAGE_POPULARITY, () -> getPopularCandidates(limit),
+                    candidates -> popular.fill(candidates, CandidateFilter.ACCEPT_ALL));
+            stages.awaitUntil(deadline);
+            return new RecommendationResult(
+                    List.copyOf(popular.toRecommendations(dictionaries.items())),
+                    List.copyOf(stages.completed),
+                    List.copyOf(stages.missed));
+        }
+        
+        ScoreBlender blender = newBlender(limit);
+        List<Candidates> fill = new ArrayList<>(2);
+        
+        // In hybrid mode both algorithms propose a full list; otherwise each fills half of it
+        int generatorLimit = enableHybrid ? limit : limit / 2;
         
-        // Process collaborative filtering recommendations
-        for (RecommendationDTO rec : collaborativeRecs) {
-            rec.setScore(rec.getScore() * 0.6); // Weight collaborative filtering
-            combinedRecs.put(rec.getItemId(), rec);
+        if (enableCollaborativeFiltering) {
+            submitGenerator(stages, STAGE_COLLABORATIVE_FILTERING, this::collaborativeFilteringCandidates, context, generatorLimit, blender, enableHybrid ? collaborativeFilteringWeight : 1f);
         }
         
-        // Process content-based recommendations
-        for (RecommendationDTO rec : contentBasedRecs) {
-            if (combinedRecs.containsKey(rec.getItemId())) {
-                // Item exists in both - combine scores
-                RecommendationDTO existing = combinedRecs.get(rec.getItemId());
-                existing.setScore(existing.getScore() + rec.getScore() * 0.4);
-                existing.setAlgorithm("hybrid");
-                existing.setReason("Recommended based on your preferences");
-            } else {
-                rec.setScore(rec.getScore() * 0.4); // Weight content-based
-                combinedRecs.put(rec.getItemId(), rec);
-            }
+        if (enableContentBased) {
+            submitGenerator(stages, STAGE_CONTENT_BASED, this::contentBasedCandidates, context, generatorLimit, blender, enableHybrid ? contentBasedWeight : 1f);
         }
         
-        // Convert to list, sort by score, and limit
-        return combinedRecs.values().stream()
-                .sorted(Comparator.comparing(RecommendationDTO::getScore).reversed())
-                .limit(limit)
-                .collect(Collectors.toList());
+        // Trending is only used to fill the list, but it runs alongside so it is ready in time
+        if (enableTrending) {
+            stages.submit(STAGE_TRENDING, () -> getTrendingCandidates(limit), fill::add);
+        }
+        
+        stages.awaitUntil(generatorDeadline);
+        
+        CandidateFilter unseen = CandidateFilter.excluding(context.getSeenItemIds(), dictionaries.items());
+        RankedList ranked = metrics.record(STAGE_HYBRID_MERGE, () -> {
+            RankedList top = blender.top(limit, unseen);
+            fill.forEach(candidates -> top.fill(candidates, unseen));
+            return top;
+        }, RankedList::size);
+        
+        // Fall back to popular items with whatever budget is left
+        if (!ranked.isFull() && System.nanoTime() < deadline) {
+            stages.submit(STAGE_POPULARITY, () -> getPopularCandidates(limit), popular -> ranked.fill(popular, unseen));
+            stages.awaitUntil(deadline);
+        }
+        
+        if (!stages.missed.isEmpty()) {
+            log.debug("Recommendations for user {} missed stages {} within {} ms", userId, stages.missed, budgetMs);
+        }
+        
+        return new RecommendationResult(
+                List.copyOf(ranked.toRecommendations(dictionaries.items())),
+                List.copyOf(stages.completed),
+                List.copyOf(stages.missed));
+    }
+
+    /**
+     * Generate a user's collaborative filtering candidates.
+     *
+     * @param context the user context
+     * @param limit the maximum number of candidates
+     * @return the candidates, best first
+     */
+    private Candidates collaborativeFilteringCandidates(UserContext context, int limit) {
+        return metrics.record(STAGE_COLLABORATIVE_FILTERING,
+                () -> collaborativeFilteringService.getUserBasedCandidates(context.getUserId(), limit),
+                Candidates::size);
+    }
+
+    /**
+     * Generate a user's content-based candidates.
+     *
+     * @param context the user context
+     * @param limit the maximum number of candidates
+     * @return the candidates, best first
+     */
+    private Candidates contentBasedCandidates(UserContext context, int limit) {
+        return metrics.record(STAGE_CONTENT_BASED,
+                () -> contentBasedFilteringService.getCandidatesForUser(context, limit), Candidates::size);
+    }
+
+    /**
+     * Merge a batch user's blended generator candidates with the shared fill candidates.
+     *
+     * @param blender the blender holding the user's generator candidates
+     * @param fill the fill candidates
+     * @param context the user context
+     * @param limit the maximum number of recommendations
+     * @return the recommendations
+     */
+    private List<RecommendationDTO> merge(ScoreBlender blender, List<Candidates> fill, UserContext context,
+                                          int limit) {
+        return metrics.record(STAGE_HYBRID_MERGE, () -> {
+            CandidateFilter unseen = CandidateFilter.excluding(context.getSeenItemIds(), dictionaries.items());
+            RankedList ranked = blender.top(limit, unseen);
+            fill.forEach(candidates -> ranked.fill(candidates, unseen));
+            return ranked.toRecommendations(dictionaries.items());
+        }, List::size);
+    }
+
+    /**
+     * Run a candidate generator as a pipeline stage, blending its candidates in as it completes.
+     *
+     * @param stages the stage runner
+     * @param name the stage name
+     * @param generator the candidate generator
+     * @param context the user context
+     * @param limit the maximum number of candidates
+     * @param blender the blender
+     * @param weight the weight of the generator's scores
+     */
+    private void submitGenerator(StageRunner stages, String name, CandidateGenerator generator, UserContext context,
+                                 int limit, ScoreBlender blender, float weight) {
+        stages.submit(name, () -> generator.generate(context, limit), candidates -> blender.add(candidates, weight));
+    }
+
+    /**
+     * Create the blender for a user's generator candidates. The hybrid approach sums the weighted
+     * scores of both algorithms; otherwise the best one wins.
+     *
+     * @param limit the maximum number of recommendations
+     * @return the blender
+     */
+    private ScoreBlender newBlender(int limit) {
+        return new ScoreBlender(enableHybrid ? ScoreBlender.Mode.SUM : ScoreBlender.Mode.MAX,
+                "hybrid", "Recommended based on your preferences", 2 * limit);
+    }
+
+    /**
+     * Encode the enabled features as bit flags, so cached results are keyed by configuration.
+     *
+     * @return the feature flags
+     */
+    private int enabledFeatures() {
+        return (enableCollaborativeFiltering ? 1 : 0)
+                | (enableContentBased ? 2 : 0)
+                | (enableHybrid ? 4 : 0)
+                | (enableTrending ? 8 : 0);
     }
 
     /**
@@ -272,4 +540,105 @@ public class RecommendationService {
                 .limit(limit)
                 .collect(Collectors.toList());
     }
+
+    /**
+     * Runs pipeline stages on the recommendation executor and hands each result to its consumer in
+     * completion order, on the request thread. Stages still running at a deadline are cancelled.
+     */
+    private class StageRunner {
+        private final ExecutorCompletionService<Candidates> completion =
+                new ExecutorCompletionService<>(recommendationExecutor);
+        private final Map<Future<Candidates>, String> pending = new HashMap<>();
+        private final Map<String, Consumer<Candidates>> consumers = new HashMap<>();
+        private final List<String> completed = new ArrayList<>();
+        private final List<String> missed = new ArrayList<>();
+
+        void submit(String name, Callable<Candidates> stage, Consumer<Candidates> consumer) {
+            try {
+                pending.put(completion.submit(stage), name);
+                consumers.put(name, consumer);
+            } catch (RejectedExecutionException e) {
+                log.warn("Recommendation executor saturated, skipping stage {}", name);
+                metrics.stageOutcome(name, "rejected");
+                missed.add(name);
+            }
+        }
+
+        /**
+         * Run a stage the rest of the request depends on and wait for it until a deadline.
+         *
+         * @return the stage's result, or null if it was rejected, failed or missed the deadline
+         */
+        <T> T await(String name, Callable<T> stage, long deadlineNanos) {
+            Future<T> future;
+            try {
+                future = recommendationExecutor.submit(stage);
+            } catch (RejectedExecutionException e) {
+                log.warn("Recommendation executor saturated, skipping stage {}", name);
+                metrics.stageOutcome(name, "rejected");
+                missed.add(name);
+                return null;
+            }
+            
+            try {
+                T result = future.get(Math.max(0L, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+                metrics.stageOutcome(name, "completed");
+                return result;
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                metrics.stageOutcome(name, "timed_out");
+            } catch (ExecutionException e) {
+                log.warn("Recommendation stage {} failed", name, e.getCause());
+                metrics.stageOutcome(name, "failed");
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+                metrics.stageOutcome(name, "timed_out");
+            }
+            missed.add(name);
+            return null;
+        }
+
+        void awaitUntil(long deadlineNanos) {
+            try {
+                while (!pending.isEmpty()) {
+                    long remaining = deadlineNanos - System.nanoTime();
+                    Future<Candidates> done = remaining > 0
+                            ? completion.poll(remaining, TimeUnit.NANOSECONDS)
+                            : completion.poll();
+                    if (done == null) {
+                        break;
+                    }
+                    
+                    // Stages cancelled at an earlier deadline are still queued on completion
+                    String name = pending.remove(done);
+                    if (name == null) {
+                        continue;
+                    }
+                    try {
+                        consumers.get(name).accept(done.get());
+                        metrics.stageOutcome(name, "completed");
+                        completed.add(name);
+                    } catch (ExecutionException e) {
+                        log.warn("Recommendation stage {} failed", name, e.getCause());
+                        metrics.stageOutcome(name, "failed");
+                        missed.add(name);
+                    } catch (CancellationException e) {
+                        metrics.stageOutcome(name, "timed_out");
+                        missed.add(name);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            
+            // Whatever is still running did not make the cut
+            pending.forEach((future, name) -> {
+                future.cancel(true);
+                metrics.stageOutcome(name, "timed_out");
+                missed.add(name);
+            });
+            pending.clear();
+        }
+    }
 }
@@ -0,0 +1,37 @@
+package com.examples.streaming_platform.recommendation.service;
+
+import com.examples.streaming_platform.recommendation.model.UserInteraction;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per-request view of a user shared by the candidate generators, loaded once per recommendation request.
+ */
+@Getter
+@RequiredArgsConstructor
+public class UserContext {
+
+    /**
+     * The user ID.
+     */
+    private final String userId;
+
+    /**
+     * The user's most recent interactions, newest first.
+     */
+    private final List<UserInteraction> recentInteractions;
+
+    /**
+     * Items the user has already consumed or rated and should not be recommended again.
+     */
+    private final Set<String> seenItemIds;
+
+    /**
+     * How often each genre appears among the items the user rated positively.
+     */
+    private final Map<String, Integer> genreFrequency;
+}
@@ -0,0 +1,142 @@
+package com.examples.streaming_platform.recommendation.service;
+
+import com.examples.streaming_platform.recommendation.model.ContentItem;
+import com.examples.streaming_platform.recommendation.model.UserInteraction;
+import com.examples.streaming_platform.recommendation.repository.UserInteractionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+
+/**
+ * Service for loading the per-request user context.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UserContextService {
+
+    // Interactions that show the user has already consumed or judged an item
+    static final Set<UserInteraction.InteractionType> SEEN_TYPES = EnumSet.of(
+            UserInteraction.InteractionType.VIEW,
+            UserInteraction.InteractionType.WATCH_TIME,
+            UserInteraction.InteractionType.RATING,
+            UserInteraction.InteractionType.LIKE,
+            UserInteraction.InteractionType.DISLIKE);
+
+    private static final int GENRE_PROFILE_RATINGS = 20;
+
+    private final UserInteractionRepository userInteractionRepository;
+    private final ContentItemService contentItemService;
+
+    @Value("${recommendation.context.recent-interactions:200}")
+    private int recentInteractions;
+
+    @Value("${recommendation.algorithm.min-positive-rating:3.5}")
+    private double minPositiveRating;
+
+    /**
+     * Load a user's recent interactions, seen items and genre profile with two interaction queries
+     * and at most one content query. The genre profile comes from the user's latest ratings, which
+     * may be older than the recent interactions.
+     *
+     * @param userId the user ID
+     * @return the user context
+     */
+    @Transactional(readOnly = true)
+    public UserContext load(String userId) {
+        List<UserInteraction> interactions = userInteractionRepository
+                .findByUserId(userId, PageRequest.of(0, recentInteractions, Sort.by("timestamp").descending()));
+        List<UserInteraction> ratings = userInteractionRepository
+                .findByUserIdAndInteractionType(userId, UserInteraction.InteractionType.RATING,
+                        PageRequest.of(0, GENRE_PROFILE_RATINGS, Sort.by("timestamp").descending()));
+        
+        Map<String, ContentItem> contentItems = contentItemService.getContentItems(positiveItemIds(ratings));
+        return toContext(userId, interactions, ratings, contentItems);
+    }
+
+    /**
+     * Load the contexts of several users with two interaction queries and at most one content query
+     * for all of them, for batch jobs.
+     *
+     * @param userIds the user IDs
+     * @return the user contexts by user ID, in the given order
+     */
+    @Transactional(readOnly = true)
+    public Map<String, UserContext> loadAll(Collection<String> userIds) {
+        Map<String, List<UserInteraction>> interactionsByUser = new HashMap<>();
+        for (UserInteraction interaction : userInteractionRepository.findRecentByUserIds(userIds, recentInteractions)) {
+            interactionsByUser.computeIfAbsent(interaction.getUserId(), user -> new ArrayList<>()).add(interaction);
+        }
+        Map<String, List<UserInteraction>> ratingsByUser = new HashMap<>();
+        for (UserInteraction rating : userInteractionRepository.findRecentByUserIdsAndInteractionType(
+                userIds, UserInteraction.InteractionType.RATING.name(), GENRE_PROFILE_RATINGS)) {
+            ratingsByUser.computeIfAbsent(rating.getUserId(), user -> new ArrayList<>()).add(rating);
+        }
+        
+        Set<String> positiveItemIds = new LinkedHashSet<>();
+        ratingsByUser.values().forEach(ratings -> positiveItemIds.addAll(positiveItemIds(ratings)));
+        Map<String, ContentItem> contentItems = contentItemService.getContentItems(positiveItemIds);
+        
+        Map<String, UserContext> contexts = new LinkedHashMap<>();
+        for (String userId : userIds) {
+            contexts.put(userId, toContext(userId, interactionsByUser.getOrDefault(userId, List.of()),
+                    ratingsByUser.getOrDefault(userId, List.of()), contentItems));
+        }
+        return contexts;
+    }
+
+    /**
+     * Find the items of the user's positive ratings, which make up the genre profile.
+     *
+     * @param ratings the user's most recent ratings
+     * @return the positively rated item IDs
+     */
+    private Set<String> positiveItemIds(List<UserInteraction> ratings) {
+        Set<String> positiveItemIds = new LinkedHashSet<>();
+        
+        for (UserInteraction rating : ratings) {
+            if (rating.getValue() != null && rating.getValue() > minPositiveRating) {
+                positiveItemIds.add(rating.getItemId());
+            }
+        }
+        
+        return positiveItemIds;
+    }
+
+    /**
+     * Build a user context from the user's interactions.
+     *
+     * @param userId the user ID
+     * @param interactions the user's interactions, newest first
+     * @param ratings the user's most recent ratings
+     * @param contentItems content items covering at least the user's positively rated items
+     * @return the user context
+     */
+    private UserContext toContext(String userId, List<UserInteraction> interactions, List<UserInteraction> ratings,
+                                  Map<String, ContentItem> contentItems) {
+        Set<String> seenItemIds = new HashSet<>();
+        for (UserInteraction interaction : interactions) {
+            if (SEEN_TYPES.contains(interaction.getInteractionType())) {
+                seenItemIds.add(interaction.getItemId());
+            }
+        }
+        
+        Map<String, Integer> genreFrequency = new HashMap<>();
+        for (String itemId : positiveItemIds(ratings)) {
+            ContentItem item = contentItems.get(itemId);
+            if (item != null) {
+                for (String genre : item.getGenres()) {
+                    genreFrequency.merge(genre, 1, Integer::sum);
+                }
+            }
+        }
+        
+        return new UserContext(userId, interactions, seenItemIds, genreFrequency);
+    }
+}
@@ -1,15 +1,18 @@
 package com.examples.streaming_platform.recommendation.service;
 
 import com.examples.streaming_platform.recommendation.dto.UserInteractionDTO;
+import com.examples.streaming_platform.recommendation.event.InteractionRecordedEvent;
 import com.examples.streaming_platform.recommendation.model.UserInteraction;
 import com.examples.streaming_platform.recommendation.repository.UserInteractionRepository;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.OffsetDateTime;
+import java.util.List;
 
 /**
  * Service for handling user interactions.
@@ -21,6 +24,7 @@ public class UserInteractionService {
 
     private final UserInteractionRepository userInteractionRepository;
     private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
 
     /**
      * Record a user interaction.
@@ -32,23 +36,12 @@ public class UserInteractionService {
     public UserInteraction recordInteraction(UserInteractionDTO interactionDTO) {
         log.debug("Recording interaction: {}", interactionDTO);
         
-        UserInteraction interaction = mapToEntity(interactionDTO);
+        UserInteraction interaction = toEntity(interactionDTO);
         
-        // Set timestamp if not provided
-        if (interaction.getTimestamp() == null) {
-            interaction.setTimestamp(OffsetDateTime.now());
-        }
-        
-        // Convert context data to JSON string if provided
-        if (interactionDTO.getContextData() != null) {
-            try {
-                interaction.setContextData(objectMapper.writeValueAsString(interactionDTO.getContextData()));
-            } catch (Exception e) {
-                log.error("Error serializing context data", e);
-            }
-        }
+        UserInteraction saved = userInteractionRepository.save(interaction);
+        eventPublisher.publishEvent(new InteractionRecordedEvent(List.of(saved)));
         
-        return userInteractionRepository.save(interaction);
+        return saved;
     }
 
     /**
@@ -66,13 +59,13 @@ public class UserInteractionService {
     }
 
     /**
-     * Map DTO to entity.
+     * Map DTO to entity, defaulting the timestamp to now and serializing the context data.
      *
      * @param dto the DTO
      * @return the entity
      */
-    private UserInteraction mapToEntity(UserInteractionDTO dto) {
-        return UserInteraction.builder()
+    public UserInteraction toEntity(UserInteractionDTO dto) {
+        UserInteraction interaction = UserInteraction.builder()
                 .userId(dto.getUserId())
                 .itemId(dto.getItemId())
                 .itemType(dto.getItemType())
@@ -80,5 +73,21 @@ public class UserInteractionService {
                 .value(dto.getValue())
                 .timestamp(dto.getTimestamp())
                 .build();
+        
+        // Set timestamp if not provided
+        if (interaction.getTimestamp() == null) {
+            interaction.setTimestamp(OffsetDateTime.now());
+        }
+        
+        // Convert context data to JSON string if provided
+        if (dto.getContextData() != null) {
+            try {
+                interaction.setContextData(objectMapper.writeValueAsString(dto.getContextData()));
+            } catch (Exception e) {
+                log.error("Error serializing context data", e);
+            }
+        }
+        
+        return interaction;
     }
 }
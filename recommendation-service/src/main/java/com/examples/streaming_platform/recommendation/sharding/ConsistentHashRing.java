@@ -0,0 +1,84 @@
+package com.examples.streaming_platform.recommendation.sharding;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable consistent-hash ring mapping keys to members. Each member is placed on the ring at a
+ * number of virtual node positions, so keys spread evenly and adding or removing a member only
+ * moves the keys of the ring segments it gains or loses. Positions are kept in sorted primitive
+ * arrays and looked up by binary search.
+ */
+public final class ConsistentHashRing {
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final List<String> members;
+    private final long[] positions;
+    private final int[] owners;
+
+    /**
+     * Build a ring.
+     *
+     * @param members the members, in any order; the ring only depends on the set
+     * @param virtualNodes the number of ring positions per member
+     */
+    public ConsistentHashRing(List<String> members, int virtualNodes) {
+        if (members.isEmpty()) {
+            throw new IllegalArgumentException("A hash ring needs at least one member");
+        }
+        this.members = members.stream().distinct().sorted().toList();
+
+        int size = this.members.size() * virtualNodes;
+        long[] unsortedPositions = new long[size];
+        int[] unsortedOwners = new int[size];
+        Integer[] order = new Integer[size];
+        for (int member = 0; member < this.members.size(); member++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                int slot = member * virtualNodes + node;
+                unsortedPositions[slot] = hash(this.members.get(member) + "#" + node);
+                unsortedOwners[slot] = member;
+                order[slot] = slot;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(unsortedPositions[a], unsortedPositions[b]));
+
+        this.positions = new long[size];
+        this.owners = new int[size];
+        for (int n = 0; n < size; n++) {
+            positions[n] = unsortedPositions[order[n]];
+            owners[n] = unsortedOwners[order[n]];
+        }
+    }
+
+    /**
+     * Get the members of the ring.
+     *
+     * @return the members, sorted
+     */
+    public List<String> members() {
+        return members;
+    }
+
+    /**
+     * Find the member owning a key: the first member at or clockwise after the key's position.
+     *
+     * @param key the key
+     * @return the owning member
+     */
+    public String ownerOf(String key) {
+        int index = Arrays.binarySearch(positions, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return members.get(owners[index == positions.length ? 0 : index]);
+    }
+
+    private static long hash(String key) {
+        return HASH.hashString(key, StandardCharsets.UTF_8).asLong();
+    }
+}
@@ -0,0 +1,168 @@
+package com.examples.streaming_platform.recommendation.sharding;
+
+import com.examples.streaming_platform.recommendation.event.ShardMembershipChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+/**
+ * Membership of the sharded serving cluster. Users are assigned to members on a consistent-hash
+ * ring; each member holds the interaction history of its own users only, and requests for other
+ * users are forwarded to their owner by {@link ShardRoutingFilter}.
+ * <p>
+ * Members are identified by their base URL. The list comes from {@code recommendation.sharding.members},
+ * or from {@code members-file} (one URL per line, {@code #} starts a comment), which is re-read
+ * when it changes. When sharding is disabled this instance owns every user.
+ * <p>
+ * Jobs that read every user's interactions, such as model training, run on one designated member:
+ * the ring owner of a fixed key, so the role moves to another member when membership changes.
+ */
+@Component
+@Slf4j
+public class ShardMembership {
+
+    private static final String DESIGNATED_MEMBER_KEY = "cluster-jobs";
+
+    private final ApplicationEventPublisher eventPublisher;
+    private final boolean enabled;
+    private final String self;
+    private final Path membersFile;
+    private final int virtualNodes;
+    private volatile ConsistentHashRing ring;
+    private FileTime membersFileModified;
+
+    public ShardMembership(ApplicationEventPublisher eventPublisher,
+                           @Value("${recommendation.sharding.enabled:false}") boolean enabled,
+                           @Value("${recommendation.sharding.self:}") String self,
+                           @Value("${recommendation.sharding.members:}") String members,
+                           @Value("${recommendation.sharding.members-file:}") String membersFile,
+                           @Value("${recommendation.sharding.virtual-nodes:128}") int virtualNodes) {
+        this.eventPublisher = eventPublisher;
+        this.enabled = enabled;
+        this.self = normalize(self);
+        this.membersFile = membersFile.isBlank() ? null : Paths.get(membersFile);
+        this.virtualNodes = virtualNodes;
+
+        if (!enabled) {
+            return;
+        }
+        if (this.self.isEmpty()) {
+            throw new IllegalStateException("recommendation.sharding.self is required when sharding is enabled");
+        }
+        try {
+            List<String> initial = this.membersFile != null ? readMembersFile() : parse(List.of(members.split(",")));
+            this.ring = newRing(initial);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read shard members from " + this.membersFile, e);
+        }
+        log.info("Sharded serving enabled: {} of members {}", this.self, ring.members());
+    }
+
+    /**
+     * Check whether users are sharded across members.
+     *
+     * @return true if sharding is enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get this member's base URL.
+     *
+     * @return the base URL, or an empty string when sharding is disabled and none is configured
+     */
+    public String self() {
+        return self;
+    }
+
+    /**
+     * Check whether this member owns a user.
+     *
+     * @param userId the user ID
+     * @return true if the user's history is held here
+     */
+    public boolean owns(String userId) {
+        return !enabled || ring.ownerOf(userId).equals(self);
+    }
+
+    /**
+     * Check whether this member runs the jobs that read every user's interactions.
+     *
+     * @return true if sharding is disabled or this member owns the designated key
+     */
+    public boolean isDesignated() {
+        return !enabled || ring.ownerOf(DESIGNATED_MEMBER_KEY).equals(self);
+    }
+
+    /**
+     * Find the member owning a user.
+     *
+     * @param userId the user ID
+     * @return the owner's base URL
+     */
+    public String ownerOf(String userId) {
+        return enabled ? ring.ownerOf(userId) : self;
+    }
+
+    /**
+     * Re-read the members file when it has changed, and rebuild the ring if the members differ.
+     */
+    @Scheduled(fixedDelayString = "${recommendation.sharding.members-refresh-ms:10000}")
+    public synchronized void refreshMembers() {
+        if (!enabled || membersFile == null) {
+            return;
+        }
+
+        try {
+            if (Files.getLastModifiedTime(membersFile).equals(membersFileModified)) {
+                return;
+            }
+            List<String> members = readMembersFile();
+            if (members.stream().distinct().sorted().toList().equals(ring.members())) {
+                return;
+            }
+
+            ring = newRing(members);
+            log.info("Shard members changed to {}", ring.members());
+            eventPublisher.publishEvent(new ShardMembershipChangedEvent(ring.members()));
+        } catch (IOException | IllegalStateException e) {
+            log.error("Failed to reload shard members from {}, keeping {}", membersFile, ring.members(), e);
+        }
+    }
+
+    private List<String> readMembersFile() throws IOException {
+        membersFileModified = Files.getLastModifiedTime(membersFile);
+        return parse(Files.readAllLines(membersFile).stream()
+                .map(line -> line.replaceFirst("#.*", ""))
+                .toList());
+    }
+
+    private ConsistentHashRing newRing(List<String> members) {
+        if (!members.contains(self)) {
+            throw new IllegalStateException("Shard members " + members + " do not include this instance " + self);
+        }
+        return new ConsistentHashRing(members, virtualNodes);
+    }
+
+    private static List<String> parse(List<String> members) {
+        return members.stream()
+                .map(ShardMembership::normalize)
+                .filter(member -> !member.isEmpty())
+                .toList();
+    }
+
+    private static String normalize(String member) {
+        String trimmed = member.trim();
+        return trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed;
+    }
+}
@@ -0,0 +1,144 @@
+package com.examples.streaming_platform.recommendation.sharding;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Forwards personalized recommendation requests for users owned by another shard to the owner,
+ * which holds their history in memory. Forwarded requests carry {@value #FORWARDED_HEADER} and are
+ * always served where they arrive, so a request is forwarded at most once even while members
+ * disagree about the ring. If the owner can't be reached the request is served locally, from the
+ * database-backed user context and the shared item data.
+ */
+@Component
+@Slf4j
+public class ShardRoutingFilter extends OncePerRequestFilter {
+
+    static final String FORWARDED_HEADER = "X-Shard-Forwarded";
+
+    private static final Pattern USER_PATH = Pattern.compile("^/api/v1/recommendations/user/([^/]+)$");
+
+    // Request headers passed on to the owner
+    private static final List<String> FORWARDED_REQUEST_HEADERS = List.of(
+            HttpHeaders.AUTHORIZATION, HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_LANGUAGE, "X-Latency-Budget-Ms");
+
+    // Response headers the servlet container manages itself
+    private static final Set<String> SKIPPED_RESPONSE_HEADERS = Set.of(
+            "connection", "content-length", "transfer-encoding", "keep-alive", ":status");
+
+    private final ShardMembership membership;
+    private final HttpClient httpClient;
+    private final Duration forwardTimeout;
+    private final Counter localCounter;
+    private final Counter forwardedCounter;
+    private final Counter fallbackCounter;
+
+    public ShardRoutingFilter(ShardMembership membership,
+                              MeterRegistry meterRegistry,
+                              @Value("${recommendation.sharding.connect-timeout-ms:500}") long connectTimeoutMs,
+                              @Value("${recommendation.sharding.forward-timeout-ms:2000}") long forwardTimeoutMs) {
+        this.membership = membership;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+        this.forwardTimeout = Duration.ofMillis(forwardTimeoutMs);
+        this.localCounter = routeCounter(meterRegistry, "local");
+        this.forwardedCounter = routeCounter(meterRegistry, "forwarded");
+        this.fallbackCounter = routeCounter(meterRegistry, "fallback");
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !membership.isEnabled() || !"GET".equals(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Matcher matcher = USER_PATH.matcher(request.getRequestURI().substring(request.getContextPath().length()));
+        if (!matcher.matches() || request.getHeader(FORWARDED_HEADER) != null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        String userId = URLDecoder.decode(matcher.group(1), StandardCharsets.UTF_8);
+        String owner = membership.ownerOf(userId);
+        if (owner.equals(membership.self())) {
+            localCounter.increment();
+            chain.doFilter(request, response);
+            return;
+        }
+
+        HttpResponse<byte[]> forwarded;
+        try {
+            forwarded = forward(request, owner);
+        } catch (IOException e) {
+            log.warn("Failed to forward recommendations for user {} to {}, serving locally", userId, owner, e);
+            fallbackCounter.increment();
+            chain.doFilter(request, response);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fallbackCounter.increment();
+            chain.doFilter(request, response);
+            return;
+        }
+
+        forwardedCounter.increment();
+        response.setStatus(forwarded.statusCode());
+        forwarded.headers().map().forEach((name, values) -> {
+            if (!SKIPPED_RESPONSE_HEADERS.contains(name.toLowerCase())) {
+                values.forEach(value -> response.addHeader(name, value));
+            }
+        });
+        response.getOutputStream().write(forwarded.body());
+    }
+
+    private HttpResponse<byte[]> forward(HttpServletRequest request, String owner)
+            throws IOException, InterruptedException {
+        String query = request.getQueryString();
+        URI uri = URI.create(owner + request.getRequestURI().substring(request.getContextPath().length())
+                + (query != null ? "?" + query : ""));
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(forwardTimeout)
+                .header(FORWARDED_HEADER, membership.self())
+                .GET();
+        for (String name : FORWARDED_REQUEST_HEADERS) {
+            String value = request.getHeader(name);
+            if (value != null) {
+                builder.header(name, value);
+            }
+        }
+        return httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private static Counter routeCounter(MeterRegistry meterRegistry, String route) {
+        return Counter.builder("recommendation.sharding.requests")
+                .description("Personalized recommendation requests by where they were served")
+                .tag("route", route)
+                .register(meterRegistry);
+    }
+}
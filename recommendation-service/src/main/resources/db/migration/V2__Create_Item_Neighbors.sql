@@ -0,0 +1,9 @@
+-- Create item_neighbors table (precomputed top-K co-occurring items per item)
+CREATE TABLE item_neighbors (
+    item_id VARCHAR(255) NOT NULL,
+    neighbor_rank INTEGER NOT NULL,
+    neighbor_item_id VARCHAR(255) NOT NULL,
+    cooccurrence_count INTEGER NOT NULL,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    PRIMARY KEY (item_id, neighbor_rank)
+);
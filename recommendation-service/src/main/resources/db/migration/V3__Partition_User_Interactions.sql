@@ -0,0 +1,98 @@
+-- Convert user_interactions to monthly range partitions on timestamp.
+-- The existing id sequence is kept so ids stay monotonic across the conversion.
+ALTER TABLE user_interactions RENAME TO user_interactions_legacy;
+ALTER SEQUENCE user_interactions_id_seq OWNED BY NONE;
+
+CREATE TABLE user_interactions (
+    id BIGINT NOT NULL DEFAULT nextval('user_interactions_id_seq'),
+    user_id VARCHAR(255) NOT NULL,
+    item_id VARCHAR(255) NOT NULL,
+    item_type VARCHAR(50) NOT NULL,
+    interaction_type VARCHAR(50) NOT NULL,
+    value DOUBLE PRECISION,
+    timestamp TIMESTAMP WITH TIME ZONE NOT NULL,
+    context_data JSONB,
+    PRIMARY KEY (id, timestamp)
+) PARTITION BY RANGE (timestamp);
+
+ALTER SEQUENCE user_interactions_id_seq OWNED BY user_interactions.id;
+
+-- Catches rows outside the created partitions; the maintenance job keeps it empty by creating partitions ahead
+CREATE TABLE user_interactions_default PARTITION OF user_interactions DEFAULT;
+
+-- One partition per month from the oldest stored interaction to three months ahead
+DO $$
+DECLARE
+    month_start TIMESTAMP WITH TIME ZONE;
+    last_month TIMESTAMP WITH TIME ZONE := date_trunc('month', now() AT TIME ZONE 'UTC') AT TIME ZONE 'UTC' + INTERVAL '3 months';
+BEGIN
+    SELECT COALESCE(date_trunc('month', MIN(timestamp) AT TIME ZONE 'UTC') AT TIME ZONE 'UTC',
+                    date_trunc('month', now() AT TIME ZONE 'UTC') AT TIME ZONE 'UTC')
+    INTO month_start
+    FROM user_interactions_legacy;
+
+    WHILE month_start <= last_month LOOP
+        EXECUTE format(
+            'CREATE TABLE user_interactions_p%s PARTITION OF user_interactions FOR VALUES FROM (%L) TO (%L)',
+            to_char(month_start AT TIME ZONE 'UTC', 'YYYYMM'),
+            month_start,
+            month_start + INTERVAL '1 month');
+        month_start := month_start + INTERVAL '1 month';
+    END LOOP;
+END $$;
+
+INSERT INTO user_interactions (id, user_id, item_id, item_type, interaction_type, value, timestamp, context_data)
+SELECT id, user_id, item_id, item_type, interaction_type, value, timestamp, context_data
+FROM user_interactions_legacy;
+
+DROP TABLE user_interactions_legacy;
+
+-- Indexes are created on every partition
+CREATE INDEX idx_user_interactions_user_id ON user_interactions(user_id);
+CREATE INDEX idx_user_interactions_item_id ON user_interactions(item_id);
+CREATE INDEX idx_user_interactions_user_item ON user_interactions(user_id, item_id);
+CREATE INDEX idx_user_interactions_item_type ON user_interactions(item_id, interaction_type);
+CREATE INDEX idx_user_interactions_timestamp ON user_interactions(timestamp);
+
+-- Hourly interaction counts per item
+CREATE TABLE item_interactions_hourly (
+    item_id VARCHAR(255) NOT NULL,
+    interaction_type VARCHAR(50) NOT NULL,
+    bucket_start TIMESTAMP WITH TIME ZONE NOT NULL,
+    item_type VARCHAR(50) NOT NULL,
+    interaction_count BIGINT NOT NULL,
+    value_sum DOUBLE PRECISION NOT NULL,
+    PRIMARY KEY (item_id, interaction_type, bucket_start)
+);
+
+CREATE INDEX idx_item_interactions_hourly_bucket ON item_interactions_hourly(bucket_start, interaction_type);
+
+-- Interaction totals per user and item, kept after raw partitions are dropped
+CREATE TABLE user_item_interactions (
+    user_id VARCHAR(255) NOT NULL,
+    item_id VARCHAR(255) NOT NULL,
+    interaction_type VARCHAR(50) NOT NULL,
+    item_type VARCHAR(50) NOT NULL,
+    interaction_count BIGINT NOT NULL,
+    value_sum DOUBLE PRECISION NOT NULL,
+    max_value DOUBLE PRECISION,
+    first_interaction_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    last_interaction_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    PRIMARY KEY (user_id, item_id, interaction_type)
+);
+
+CREATE INDEX idx_user_item_interactions_item ON user_item_interactions(item_id, interaction_type);
+
+-- Highest interaction id folded into the rollups. Interaction ids become visible when their
+-- transaction commits, not in id order, so the rollups only advance to a pending MAX(id) observed
+-- at least the settle interval earlier
+CREATE TABLE interaction_rollup_state (
+    name VARCHAR(50) PRIMARY KEY,
+    last_interaction_id BIGINT NOT NULL,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    pending_interaction_id BIGINT NOT NULL DEFAULT 0,
+    pending_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now()
+);
+
+INSERT INTO interaction_rollup_state (name, last_interaction_id, updated_at)
+VALUES ('rollups', 0, now());
@@ -0,0 +1,11 @@
+-- The popularity engine keeps its ordering score in log form, so rows written at different
+-- times still compare correctly; popularity_score stays a plain score for display
+ALTER TABLE content_items ADD COLUMN popularity_log_score DOUBLE PRECISION;
+
+COMMENT ON COLUMN content_items.popularity_log_score IS
+    'ln of the forward-decayed interaction score relative to 2020-01-01 UTC; higher is more popular now';
+COMMENT ON COLUMN content_items.popularity_score IS
+    'Decayed weighted interaction count when the score was last written';
+
+-- Serves the most-popular fallback query without sorting the catalogue
+CREATE INDEX idx_content_items_popularity ON content_items (popularity_log_score DESC NULLS LAST);
@@ -0,0 +1,15 @@
+-- Create user_recommendations table (nightly precomputed top-N recommendations per active user)
+CREATE TABLE user_recommendations (
+    user_id VARCHAR(255) NOT NULL,
+    recommendation_rank INTEGER NOT NULL,
+    item_id VARCHAR(255) NOT NULL,
+    item_type VARCHAR(50),
+    score DOUBLE PRECISION NOT NULL,
+    algorithm VARCHAR(50),
+    reason VARCHAR(255),
+    computed_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    PRIMARY KEY (user_id, recommendation_rank)
+);
+
+-- Finds rows left over from users who dropped out of the active set
+CREATE INDEX idx_user_recommendations_computed_at ON user_recommendations(computed_at);
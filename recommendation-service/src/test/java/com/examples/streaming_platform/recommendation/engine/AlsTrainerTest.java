@@ -0,0 +1,160 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AlsTrainerTest {
+
+    private static final int RANK = 4;
+    private static final float REGULARIZATION = 0.1f;
+    private static final float ALPHA = 10f;
+
+    private final ForkJoinPool pool = new ForkJoinPool(2);
+    private final AlsTrainer trainer = new AlsTrainer(RANK, 10, REGULARIZATION, ALPHA, pool);
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void gram_ShouldAddRegularizationToTheFactorProducts() {
+        float[] factors = randomFactors(5, 1L);
+
+        double[] gram = trainer.gram(factors);
+
+        for (int i = 0; i < RANK; i++) {
+            for (int j = 0; j < RANK; j++) {
+                double expected = i == j ? REGULARIZATION : 0.0;
+                for (int row = 0; row < 5; row++) {
+                    expected += (double) factors[row * RANK + i] * factors[row * RANK + j];
+                }
+                assertEquals(expected, gram[i * RANK + j], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    void solve_ShouldSatisfyTheWeightedNormalEquations() {
+        InteractionMatrix matrix = InteractionMatrix.builder(4)
+                .add(0, 1, 1f)
+                .add(0, 3, 2f)
+                .add(1, 2, 1f)
+                .build(2, 5, 0L);
+        float[] itemFactors = randomFactors(5, 2L);
+        float[] userFactors = new float[2 * RANK];
+
+        trainer.solve(matrix, true, itemFactors, userFactors);
+
+        // (Y^T Y + lambda I + Y^T (C - I) Y) x = Y^T C p for user 0
+        double[] a = trainer.gram(itemFactors);
+        double[] b = new double[RANK];
+        int[] items = {1, 3};
+        float[] values = {1f, 2f};
+        for (int n = 0; n < items.length; n++) {
+            double confidence = 1 + ALPHA * values[n];
+            for (int i = 0; i < RANK; i++) {
+                double yi = itemFactors[items[n] * RANK + i];
+                for (int j = 0; j < RANK; j++) {
+                    a[i * RANK + j] += (confidence - 1) * yi * itemFactors[items[n] * RANK + j];
+                }
+                b[i] += confidence * yi;
+            }
+        }
+        for (int i = 0; i < RANK; i++) {
+            double lhs = 0;
+            for (int j = 0; j < RANK; j++) {
+                lhs += a[i * RANK + j] * userFactors[j];
+            }
+            assertEquals(b[i], lhs, 1e-3 * Math.max(1, Math.abs(b[i])));
+        }
+    }
+
+    @Test
+    void train_ShouldScoreObservedClusterAboveTheOtherCluster() {
+        // Users 0-3 watch items 0-3, users 4-7 watch items 4-7, each leaving one item of its cluster unseen
+        InteractionMatrix.Builder builder = InteractionMatrix.builder(32);
+        for (int user = 0; user < 8; user++) {
+            int base = user < 4 ? 0 : 4;
+            for (int item = base; item < base + 4; item++) {
+                if (item != base + user % 4) {
+                    builder.add(user, item, 1f);
+                }
+            }
+        }
+        InteractionMatrix matrix = builder.build(8, 8, 0L);
+
+        FactorModel model = trainer.train(matrix, 7L);
+
+        for (int user = 0; user < 8; user++) {
+            int base = user < 4 ? 0 : 4;
+            int unseen = base + user % 4;
+            int other = (base + 4) % 8 + user % 4;
+            assertTrue(model.score(user, unseen) > model.score(user, other),
+                    "user " + user + " should prefer item " + unseen + " over " + other);
+        }
+    }
+
+    @Test
+    void train_ShouldLeaveUsersAndItemsWithoutInteractionsUntrained() {
+        InteractionMatrix matrix = InteractionMatrix.builder(2)
+                .add(0, 0, 1f)
+                .add(2, 1, 1f)
+                .build(3, 3, 0L);
+        AtomicInteger iterations = new AtomicInteger();
+
+        FactorModel model = trainer.train(matrix, 3L, iterations::set);
+
+        assertEquals(10, iterations.get());
+        assertTrue(model.hasUser(0));
+        assertFalse(model.hasUser(1));
+        assertFalse(model.hasItem(2));
+        for (int f = 0; f < RANK; f++) {
+            assertEquals(0f, model.userFactors()[RANK + f]);
+            assertEquals(0f, model.itemFactors()[2 * RANK + f]);
+        }
+        assertEquals(0, model.recommend(1, 5, new int[0]).size());
+    }
+
+    @Test
+    void foldIn_ShouldOnlyUpdateTheSelectedRows() {
+        InteractionMatrix matrix = InteractionMatrix.builder(4)
+                .add(0, 0, 1f)
+                .add(1, 1, 1f)
+                .add(2, 2, 1f)
+                .build(3, 3, 0L);
+        float[] itemFactors = randomFactors(3, 4L);
+        float[] userFactors = randomFactors(3, 5L);
+        float[] before = userFactors.clone();
+        BitSet rows = new BitSet();
+        rows.set(1);
+
+        trainer.foldIn(matrix, true, itemFactors, userFactors, rows);
+
+        for (int f = 0; f < RANK; f++) {
+            assertEquals(before[f], userFactors[f]);
+            assertEquals(before[2 * RANK + f], userFactors[2 * RANK + f]);
+        }
+        float[] solved = new float[3 * RANK];
+        trainer.solve(matrix, true, itemFactors, solved);
+        for (int f = RANK; f < 2 * RANK; f++) {
+            assertEquals(solved[f], userFactors[f], 1e-6);
+        }
+    }
+
+    private static float[] randomFactors(int rows, long seed) {
+        Random random = new Random(seed);
+        float[] factors = new float[rows * RANK];
+        for (int n = 0; n < factors.length; n++) {
+            factors[n] = (float) random.nextGaussian();
+        }
+        return factors;
+    }
+}
@@ -0,0 +1,154 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import com.examples.streaming_platform.recommendation.sharding.ShardMembership;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CollaborativeFilteringEngineTest {
+
+    @TempDir
+    Path directory;
+
+    private final List<Object[]> rows = new ArrayList<>();
+    private CollaborativeFilteringEngine engine;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (Object[] row : rows) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getString(1)).thenReturn((String) row[0]);
+                when(rs.getString(2)).thenReturn((String) row[1]);
+                when(rs.getFloat(3)).thenReturn((Float) row[2]);
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+        ShardMembership shardMembership = mock(ShardMembership.class);
+        when(shardMembership.owns(anyString())).thenReturn(true);
+
+        engine = new CollaborativeFilteringEngine(jdbcTemplate, mock(PlatformTransactionManager.class),
+                new IdDictionaries(directory.toString(), false, "users.dict", "items.dict"),
+                shardMembership, mock(InteractionLog.class));
+        ReflectionTestUtils.setField(engine, "enabled", true);
+
+        row("u0", "i0", 1f);
+        row("u0", "i1", 1f);
+        row("u1", "i0", 1f);
+        row("u1", "i1", 1f);
+        row("u1", "i2", 1f);
+        row("u2", "i0", 1f);
+        row("u2", "i3", 1f);
+        row("u3", "i4", 1f);
+    }
+
+    @Test
+    void recommendForUser_ShouldWeightUnseenItemsByNeighbourSimilarity() {
+        engine.refresh();
+
+        TopKSelector result = engine.recommendForUser("u0", 10, 10, 0.1f);
+
+        // u1 (cosine 0.816) brings i2 and u2 (cosine 0.5) brings i3; seen and unrelated items are left out
+        assertEquals(2, result.size());
+        assertEquals("i2", engine.itemId(result.id(0)));
+        assertEquals("i3", engine.itemId(result.id(1)));
+        float u1 = (float) (2 / (Math.sqrt(2) * Math.sqrt(3)));
+        float u2 = 0.5f;
+        assertEquals(u1 / (u1 + u2), result.score(0), 1e-5);
+        assertEquals(u2 / (u1 + u2), result.score(1), 1e-5);
+    }
+
+    @Test
+    void recommendForUser_ShouldApplySimilarityThresholdAndNeighbourhoodSize() {
+        engine.refresh();
+
+        assertEquals(1, engine.recommendForUser("u0", 10, 10, 0.6f).size());
+        TopKSelector closest = engine.recommendForUser("u0", 10, 1, 0.1f);
+        assertEquals(1, closest.size());
+        assertEquals("i2", engine.itemId(closest.id(0)));
+        assertEquals(1f, closest.score(0), 1e-6);
+    }
+
+    @Test
+    void recommendForUser_ShouldReturnNothingForUnknownUsersOrBeforeLoading() {
+        assertNull(engine.recommendForUser("u0", 10, 10, 0.1f));
+
+        engine.refresh();
+        assertEquals(0, engine.recommendForUser("nobody", 10, 10, 0.1f).size());
+        assertEquals(0, engine.recommendForUser("u3", 10, 10, 0.1f).size());
+    }
+
+    @Test
+    void recommendSimilarItems_ShouldRankByCosineAndRequireSharedUsers() {
+        engine.refresh();
+
+        TopKSelector similar = engine.recommendSimilarItems("i0", 10, 1);
+        assertEquals(3, similar.size());
+        assertEquals("i1", engine.itemId(similar.id(0)));
+        assertEquals(2 / (Math.sqrt(3) * Math.sqrt(2)), similar.score(0), 1e-5);
+        Set<String> rest = new HashSet<>(List.of(engine.itemId(similar.id(1)), engine.itemId(similar.id(2))));
+        assertEquals(Set.of("i2", "i3"), rest);
+
+        TopKSelector shared = engine.recommendSimilarItems("i0", 10, 2);
+        assertEquals(1, shared.size());
+        assertEquals("i1", engine.itemId(shared.id(0)));
+    }
+
+    @Test
+    void scoring_ShouldSkipZeroNormVectors() {
+        row("u4", "i0", 0f);
+        row("u4", "i5", 0f);
+        engine.refresh();
+
+        assertEquals(0, engine.recommendForUser("u4", 10, 10, 0f).size());
+        assertEquals(0, engine.recommendSimilarItems("i5", 10, 1).size());
+
+        TopKSelector similar = engine.recommendSimilarItems("i0", 10, 1);
+        for (int rank = 0; rank < similar.size(); rank++) {
+            assertNotEquals("i5", engine.itemId(similar.id(rank)));
+            assertTrue(Float.isFinite(similar.score(rank)));
+        }
+    }
+
+    @Test
+    void scoring_ShouldReuseScratchAcrossCalls() {
+        engine.refresh();
+
+        TopKSelector first = engine.recommendForUser("u0", 10, 10, 0.1f);
+        engine.recommendSimilarItems("i4", 10, 1);
+        TopKSelector second = engine.recommendForUser("u0", 10, 10, 0.1f);
+
+        assertEquals(first.size(), second.size());
+        for (int rank = 0; rank < first.size(); rank++) {
+            assertEquals(first.id(rank), second.id(rank));
+            assertEquals(first.score(rank), second.score(rank));
+        }
+    }
+
+    private void row(String userId, String itemId, float value) {
+        rows.add(new Object[]{userId, itemId, value});
+    }
+}
@@ -0,0 +1,225 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HnswIndexTest {
+
+    private static final int DIMENSION = 16;
+    private static final int ITEMS = 2000;
+    private static final int QUERIES = 100;
+    private static final int K = 10;
+
+    @Test
+    void search_ShouldMatchBruteForceRecall() {
+        float[][] vectors = randomVectors(ITEMS, new Random(1));
+        HnswIndex index = build(vectors);
+
+        assertTrue(recall(index, vectors, new Random(2)) >= 0.95, "recall against brute force");
+    }
+
+    @Test
+    void searchByItem_ShouldExcludeItemAndReturnSortedNeighbours() {
+        float[][] vectors = randomVectors(ITEMS, new Random(3));
+        HnswIndex index = build(vectors);
+
+        TopKSelector result = index.searchByItem(7, K, 64);
+        assertEquals(K, result.size());
+        for (int n = 0; n < result.size(); n++) {
+            assertNotEquals(7, result.id(n));
+            if (n > 0) {
+                assertTrue(result.score(n - 1) >= result.score(n));
+            }
+        }
+        assertEquals(0, index.searchByItem(ITEMS + 5, K, 64).size());
+    }
+
+    @Test
+    void insert_ShouldTombstoneReplacedVector() {
+        HnswIndex index = new HnswIndex(2, 8, 32);
+        index.insert(0, new float[]{1f, 0f});
+        index.insert(1, new float[]{0f, 1f});
+        index.insert(0, new float[]{0f, 1f});
+
+        assertEquals(2, index.size());
+        assertEquals(1.0 / 3, index.tombstoneRatio(), 1e-9);
+
+        TopKSelector result = index.search(new float[]{1f, 0f}, 2, 16);
+        assertEquals(2, result.size());
+        assertEquals(Set.of(0, 1), Set.of(result.id(0), result.id(1)));
+        assertEquals(0f, result.score(0), 1e-6f);
+    }
+
+    @Test
+    void remove_ShouldTombstoneItem() {
+        HnswIndex index = new HnswIndex(2, 8, 32);
+        index.insert(0, new float[]{1f, 0f});
+        index.insert(1, new float[]{0f, 1f});
+
+        assertTrue(index.remove(0));
+        assertFalse(index.remove(0));
+        assertFalse(index.contains(0));
+        assertEquals(1, index.size());
+        TopKSelector result = index.search(new float[]{1f, 0f}, 2, 16);
+        assertEquals(1, result.size());
+        assertEquals(1, result.id(0));
+    }
+
+    @Test
+    void compacted_ShouldDropTombstonesAndKeepRecall() {
+        Random random = new Random(4);
+        float[][] vectors = randomVectors(ITEMS, random);
+        HnswIndex index = build(vectors);
+        for (int item = 0; item < ITEMS; item += 2) {
+            vectors[item] = randomVector(random);
+            index.insert(item, vectors[item]);
+        }
+        assertTrue(index.tombstoneRatio() > 0.3);
+
+        HnswIndex compacted = index.compacted();
+        index.replayOnto(compacted);
+        assertEquals(0.0, compacted.tombstoneRatio());
+        assertEquals(ITEMS, compacted.size());
+        assertTrue(recall(compacted, vectors, new Random(5)) >= 0.95, "recall after compaction");
+
+        // Inserts after a compaction still grow the copied arrays
+        compacted.insert(ITEMS, randomVector(random));
+        assertTrue(compacted.contains(ITEMS));
+        assertEquals(ITEMS + 1, compacted.size());
+    }
+
+    @Test
+    void replayOnto_ShouldApplyChangesMadeDuringCompaction() {
+        Random random = new Random(7);
+        float[][] vectors = randomVectors(ITEMS, random);
+        HnswIndex index = build(vectors);
+        index.insert(1, vectors[1]);
+        HnswIndex compacted = index.compacted();
+
+        // Changes after the copy was taken: a replaced vector, a new item and a removal
+        vectors[2] = randomVector(random);
+        index.insert(2, vectors[2]);
+        index.insert(ITEMS, randomVector(random));
+        index.remove(3);
+        index.replayOnto(compacted);
+
+        assertEquals(index.size(), compacted.size());
+        assertTrue(compacted.contains(ITEMS));
+        assertFalse(compacted.contains(3));
+        TopKSelector nearest = compacted.search(vectors[2], 1, 64);
+        assertEquals(2, nearest.id(0));
+        assertEquals(1f, nearest.score(0), 1e-5f);
+    }
+
+    @Test
+    void read_ShouldRoundTripWrittenIndex() throws IOException {
+        IdDictionary items = new IdDictionary();
+        float[][] vectors = randomVectors(500, new Random(6));
+        HnswIndex index = new HnswIndex(DIMENSION, 16, 100);
+        for (int item = 0; item < vectors.length; item++) {
+            index.insert(items.getOrAssign("item-" + item), vectors[item]);
+        }
+        index.insert(items.indexOf("item-3"), vectors[4]);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            index.write(out, items);
+        }
+
+        // A fresh dictionary assigns different indices, so results are compared by ID
+        IdDictionary readItems = new IdDictionary();
+        readItems.getOrAssign("unrelated");
+        HnswIndex read;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            read = HnswIndex.read(in, readItems);
+        }
+
+        assertEquals(index.size(), read.size());
+        assertEquals(index.tombstoneRatio(), read.tombstoneRatio());
+        TopKSelector expected = index.searchByItem(items.indexOf("item-10"), K, 64);
+        TopKSelector actual = read.searchByItem(readItems.indexOf("item-10"), K, 64);
+        assertEquals(expected.size(), actual.size());
+        for (int n = 0; n < expected.size(); n++) {
+            assertEquals(items.idOf(expected.id(n)), readItems.idOf(actual.id(n)));
+            assertEquals(expected.score(n), actual.score(n));
+        }
+    }
+
+    @Test
+    void read_ShouldRejectOtherFiles() {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(new byte[]{0, 0, 0, 1}));
+        assertThrows(IOException.class, () -> HnswIndex.read(in, new IdDictionary()));
+    }
+
+    private static HnswIndex build(float[][] vectors) {
+        HnswIndex index = new HnswIndex(DIMENSION, 16, 100);
+        for (int item = 0; item < vectors.length; item++) {
+            index.insert(item, vectors[item]);
+        }
+        return index;
+    }
+
+    /**
+     * Fraction of the exact top-k (by cosine similarity) that the index returns, over random queries.
+     */
+    private static double recall(HnswIndex index, float[][] vectors, Random random) {
+        int found = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            float[] query = randomVector(random);
+            TopKSelector exact = new TopKSelector(K);
+            for (int item = 0; item < vectors.length; item++) {
+                exact.offer(item, cosine(query, vectors[item]));
+            }
+
+            Set<Integer> expected = new HashSet<>();
+            for (int n = 0; n < exact.size(); n++) {
+                expected.add(exact.id(n));
+            }
+            TopKSelector approximate = index.search(query, K, 64);
+            for (int n = 0; n < approximate.size(); n++) {
+                if (expected.contains(approximate.id(n))) {
+                    found++;
+                }
+            }
+        }
+        return (double) found / (QUERIES * K);
+    }
+
+    private static float cosine(float[] a, float[] b) {
+        double dot = 0.0;
+        double normA = 0.0;
+        double normB = 0.0;
+        for (int d = 0; d < a.length; d++) {
+            dot += a[d] * b[d];
+            normA += a[d] * a[d];
+            normB += b[d] * b[d];
+        }
+        return (float) (dot / Math.sqrt(normA * normB));
+    }
+
+    private static float[][] randomVectors(int count, Random random) {
+        float[][] vectors = new float[count][];
+        for (int n = 0; n < count; n++) {
+            vectors[n] = randomVector(random);
+        }
+        return vectors;
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int d = 0; d < DIMENSION; d++) {
+            vector[d] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,142 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdDictionariesTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void load_ShouldRestoreIndicesAcrossAppends() {
+        IdDictionaries dictionaries = open();
+        dictionaries.users().getOrAssign("user-a");
+        dictionaries.users().getOrAssign("usér-ß");
+        dictionaries.items().getOrAssign("item-a");
+        dictionaries.save();
+
+        IdDictionaries reopened = open();
+        assertEquals(2, reopened.users().size());
+        assertEquals(1, reopened.users().indexOf("usér-ß"));
+        assertEquals(0, reopened.items().indexOf("item-a"));
+
+        // IDs assigned after a load are appended behind the loaded ones
+        reopened.users().getOrAssign("user-c");
+        reopened.shutdown();
+
+        IdDictionaries again = open();
+        assertEquals(3, again.users().size());
+        assertEquals("user-a", again.users().idOf(0));
+        assertEquals("user-c", again.users().idOf(2));
+        assertEquals(1, again.items().size());
+    }
+
+    @Test
+    void load_ShouldTruncateRecordCutShortByCrash() throws IOException {
+        IdDictionaries dictionaries = open();
+        for (int n = 0; n < 10; n++) {
+            dictionaries.items().getOrAssign("item-" + n);
+        }
+        dictionaries.save();
+        Path file = directory.resolve("items.dict");
+        long complete = Files.size(file);
+
+        // Cut into the last record's bytes
+        truncate(file, complete - 3);
+        IdDictionaries reopened = open();
+        assertEquals(9, reopened.items().size());
+        assertEquals(-1, reopened.items().indexOf("item-9"));
+        assertEquals(complete - Short.BYTES - "item-9".length(), Files.size(file));
+
+        reopened.items().getOrAssign("item-new");
+        reopened.save();
+        IdDictionaries again = open();
+        assertEquals(10, again.items().size());
+        assertEquals(9, again.items().indexOf("item-new"));
+    }
+
+    @Test
+    void load_ShouldTruncateLengthCutShortByCrash() throws IOException {
+        IdDictionaries dictionaries = open();
+        dictionaries.items().getOrAssign("item-0");
+        dictionaries.save();
+        Path file = directory.resolve("items.dict");
+        long complete = Files.size(file);
+
+        // Half of a length prefix left behind by a crashed append
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0}));
+        }
+
+        IdDictionaries reopened = open();
+        assertEquals(1, reopened.items().size());
+        assertEquals(complete, Files.size(file));
+    }
+
+    @Test
+    void load_ShouldRewriteFileWithIncompleteHeader() throws IOException {
+        Path file = directory.resolve("users.dict");
+        Files.write(file, new byte[]{0x49, 0x44});
+
+        IdDictionaries dictionaries = open();
+        assertEquals(0, dictionaries.users().size());
+        dictionaries.users().getOrAssign("user-a");
+        dictionaries.save();
+
+        IdDictionaries reopened = open();
+        assertEquals(0, reopened.users().indexOf("user-a"));
+    }
+
+    @Test
+    void load_ShouldKeepRecordsBeforeCorruption() throws IOException {
+        IdDictionaries dictionaries = open();
+        dictionaries.items().getOrAssign("item-0");
+        dictionaries.items().getOrAssign("item-1");
+        dictionaries.save();
+        Path file = directory.resolve("items.dict");
+
+        // A record repeating an earlier ID can't keep its index, so loading stops before it
+        byte[] repeated = {0, 6, 'i', 't', 'e', 'm', '-', '0'};
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(repeated));
+        }
+        long corrupted = Files.size(file);
+
+        IdDictionaries reopened = open();
+        assertEquals(2, reopened.items().size());
+        assertEquals(corrupted - repeated.length, Files.size(file));
+    }
+
+    @Test
+    void save_ShouldNotWriteWhenNotPersistent() {
+        IdDictionaries dictionaries = new IdDictionaries(directory.toString(), false, "users.dict", "items.dict");
+        dictionaries.load();
+        dictionaries.users().getOrAssign("user-a");
+        dictionaries.save();
+
+        assertFalse(Files.exists(directory.resolve("users.dict")));
+        assertFalse(dictionaries.isPersistent());
+    }
+
+    private IdDictionaries open() {
+        IdDictionaries dictionaries = new IdDictionaries(directory.toString(), true, "users.dict", "items.dict");
+        dictionaries.load();
+        return dictionaries;
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+}
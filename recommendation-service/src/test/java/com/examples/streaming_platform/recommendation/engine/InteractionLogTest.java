@@ -0,0 +1,214 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import com.examples.streaming_platform.recommendation.event.InteractionRecordedEvent;
+import com.examples.streaming_platform.recommendation.model.UserInteraction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class InteractionLogTest {
+
+    private static final long TIMESTAMP = 1_700_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final List<InteractionLog> opened = new ArrayList<>();
+    private final RowCallbackHandler[] replayHandler = new RowCallbackHandler[1];
+    private Runnable replayRows = () -> { };
+
+    @BeforeEach
+    void setUp() {
+        doAnswer(invocation -> {
+            replayHandler[0] = invocation.getArgument(1);
+            replayRows.run();
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        // Stop the replay threads without the clean shutdown some tests leave out on purpose
+        opened.forEach(log -> ((ExecutorService) ReflectionTestUtils.getField(log, "executor")).shutdownNow());
+    }
+
+    @Test
+    void open_ShouldNeedAReplayWithoutACleanShutdown() {
+        InteractionLog log = open(dictionaries());
+
+        assertFalse(log.isReady());
+    }
+
+    @Test
+    void open_ShouldTrustTheLogAfterACleanShutdown() {
+        IdDictionaries dictionaries = dictionaries();
+        InteractionLog log = open(dictionaries);
+        replay(log, row(1, "u1", "i1", "VIEW", null), row(2, "u2", "i1", "RATING", 4f));
+        log.onInteractionRecorded(event(3, "u1", "i2", UserInteraction.InteractionType.LIKE));
+        log.shutdown();
+
+        InteractionLog reopened = open(dictionaries());
+
+        assertTrue(reopened.isReady());
+        List<String> records = scan(reopened);
+        assertEquals(List.of("0 0 VIEW NaN", "1 0 RATING 4.0", "0 1 LIKE NaN"), records);
+    }
+
+    @Test
+    void open_ShouldNeedAReplayAfterACrash() {
+        IdDictionaries dictionaries = dictionaries();
+        InteractionLog log = open(dictionaries);
+        replay(log, row(1, "u1", "i1", "VIEW", null));
+        log.shutdown();
+
+        // The marker is removed when the log is opened, so a run that never shuts down leaves none
+        InteractionLog crashed = open(dictionaries());
+        crashed.onInteractionRecorded(event(2, "u1", "i2", UserInteraction.InteractionType.VIEW));
+
+        assertFalse(open(dictionaries()).isReady());
+    }
+
+    @Test
+    void open_ShouldNeedAReplayWhenTheDictionariesWereNotSaved() throws Exception {
+        IdDictionaries dictionaries = dictionaries();
+        InteractionLog log = open(dictionaries);
+        replay(log, row(1, "u1", "i1", "VIEW", null));
+        log.shutdown();
+        // Dictionaries from before the records were appended
+        Files.delete(directory.resolve("users.dict"));
+
+        assertFalse(open(dictionaries()).isReady());
+    }
+
+    @Test
+    void replay_ShouldLogInteractionsAppendedDuringTheReplayOnce() {
+        IdDictionaries dictionaries = dictionaries();
+        InteractionLog log = open(dictionaries);
+        replayRows = () -> {
+            process(row(1, "u1", "i1", "VIEW", null));
+            // Live appends of an interaction already replayed, and of one the snapshot includes later
+            log.onInteractionRecorded(event(1, "u1", "i1", UserInteraction.InteractionType.VIEW));
+            log.onInteractionRecorded(event(3, "u3", "i3", UserInteraction.InteractionType.CLICK));
+            process(row(2, "u2", "i2", "VIEW", null));
+            process(row(3, "u3", "i3", "CLICK", null));
+        };
+
+        assertTrue(log.replay());
+        awaitReady(log);
+
+        assertEquals(List.of("0 0 VIEW NaN", "1 1 CLICK NaN", "2 2 VIEW NaN"), scan(log));
+        assertEquals("u3", dictionaries.users().idOf(1));
+    }
+
+    @Test
+    void constructor_ShouldRefuseShardedServing() {
+        assertThrows(IllegalStateException.class, () -> new InteractionLog(jdbcTemplate,
+                mock(PlatformTransactionManager.class), dictionaries(), true, directory.resolve("log").toString(), 1, true));
+    }
+
+    private IdDictionaries dictionaries() {
+        IdDictionaries dictionaries = new IdDictionaries(directory.toString(), true, "users.dict", "items.dict");
+        dictionaries.load();
+        return dictionaries;
+    }
+
+    private InteractionLog open(IdDictionaries dictionaries) {
+        InteractionLog log = new InteractionLog(jdbcTemplate, mock(PlatformTransactionManager.class), dictionaries,
+                true, directory.resolve("log").toString(), 1, false);
+        opened.add(log);
+        log.open();
+        return log;
+    }
+
+    private void replay(InteractionLog log, ResultSet... rows) {
+        replayRows = () -> {
+            for (ResultSet row : rows) {
+                process(row);
+            }
+        };
+        assertTrue(log.replay());
+        awaitReady(log);
+    }
+
+    private void process(ResultSet row) {
+        try {
+            replayHandler[0].processRow(row);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void awaitReady(InteractionLog log) {
+        for (int attempt = 0; attempt < 500 && !log.isReady(); attempt++) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        assertTrue(log.isReady());
+    }
+
+    private static List<String> scan(InteractionLog log) {
+        List<String> records = new ArrayList<>();
+        log.scan((user, item, type, value, timestampMillis) -> {
+            assertEquals(TIMESTAMP, timestampMillis);
+            records.add(user + " " + item + " " + type + " " + value);
+        });
+        return records;
+    }
+
+    private static ResultSet row(long id, String userId, String itemId, String type, Float value) {
+        try {
+            ResultSet rs = mock(ResultSet.class);
+            when(rs.getLong(1)).thenReturn(id);
+            when(rs.getString(2)).thenReturn(userId);
+            when(rs.getString(3)).thenReturn(itemId);
+            when(rs.getString(4)).thenReturn(type);
+            when(rs.getFloat(5)).thenReturn(value != null ? value : 0f);
+            when(rs.wasNull()).thenReturn(value == null);
+            when(rs.getTimestamp(6)).thenReturn(new Timestamp(TIMESTAMP));
+            return rs;
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static InteractionRecordedEvent event(long id, String userId, String itemId,
+                                                  UserInteraction.InteractionType type) {
+        return new InteractionRecordedEvent(List.of(UserInteraction.builder()
+                .id(id)
+                .userId(userId)
+                .itemId(itemId)
+                .itemType(UserInteraction.ItemType.MOVIE)
+                .interactionType(type)
+                .timestamp(OffsetDateTime.ofInstant(Instant.ofEpochMilli(TIMESTAMP), ZoneOffset.UTC))
+                .build()));
+    }
+}
@@ -0,0 +1,73 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InteractionMatrixTest {
+
+    @Test
+    void build_ShouldLayOutRowsAndColumns() {
+        InteractionMatrix matrix = InteractionMatrix.builder(4)
+                .add(1, 2, 3f)
+                .add(0, 0, 1f)
+                .add(1, 0, 4f)
+                .build(3, 4, 42L);
+
+        assertEquals(3, matrix.numUsers());
+        assertEquals(4, matrix.numItems());
+        assertEquals(3, matrix.nonZeros());
+        assertEquals(42L, matrix.builtAtMillis());
+
+        assertTrue(matrix.hasUser(1));
+        assertFalse(matrix.hasUser(2));
+        assertFalse(matrix.hasUser(3));
+        assertTrue(matrix.hasItem(0));
+        assertFalse(matrix.hasItem(1));
+        assertFalse(matrix.hasItem(-1));
+
+        assertEquals(2, matrix.rowEnd(1) - matrix.rowStart(1));
+        assertEquals(2, matrix.columnEnd(0) - matrix.columnStart(0));
+        for (int p = matrix.rowStart(1); p < matrix.rowEnd(1); p++) {
+            assertEquals(matrix.rowItem(p) == 2 ? 3f : 4f, matrix.rowValue(p));
+        }
+        for (int q = matrix.columnStart(0); q < matrix.columnEnd(0); q++) {
+            assertEquals(matrix.columnUser(q) == 0 ? 1f : 4f, matrix.columnValue(q));
+        }
+
+        assertEquals(5f, matrix.userNorm(1), 1e-6);
+        assertEquals((float) Math.sqrt(17), matrix.itemNorm(0), 1e-6);
+        assertEquals(0f, matrix.userNorm(2));
+    }
+
+    @Test
+    void mergeDuplicates_ShouldCombineEntriesOfTheSamePair() {
+        InteractionMatrix matrix = InteractionMatrix.builder(8)
+                .add(0, 1, 2f)
+                .add(1, 1, 1f)
+                .add(0, 1, 5f)
+                .add(0, 0, 1f)
+                .add(1, 1, -3f)
+                .mergeDuplicates(2, Math::max, false)
+                .build(2, 2, 0L);
+
+        assertEquals(3, matrix.nonZeros());
+        assertArrayEquals(new int[]{0, 1}, matrix.rowItemsCopy(0));
+        assertEquals(5f, matrix.rowValue(matrix.rowStart(0) + 1));
+        assertEquals(1f, matrix.rowValue(matrix.rowStart(1)));
+    }
+
+    @Test
+    void mergeDuplicates_ShouldDropNonPositiveSumsWhenAsked() {
+        InteractionMatrix matrix = InteractionMatrix.builder(8)
+                .add(0, 0, 1f)
+                .add(0, 0, -1f)
+                .add(0, 1, 2f)
+                .mergeDuplicates(1, Double::sum, true)
+                .build(1, 2, 0L);
+
+        assertEquals(1, matrix.nonZeros());
+        assertFalse(matrix.hasItem(0));
+        assertTrue(matrix.hasItem(1));
+    }
+}
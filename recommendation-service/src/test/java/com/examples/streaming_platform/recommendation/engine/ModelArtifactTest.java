@@ -0,0 +1,150 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ModelArtifactTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void open_ShouldRoundTripTrainedRowsAndFactors() throws IOException {
+        int rank = 8;
+        // Large enough that the writer flushes its buffer several times
+        int users = 3000;
+        int items = 2000;
+        IdDictionary userIds = dictionary("user-", users);
+        IdDictionary itemIds = dictionary("item-", items);
+        Random random = new Random(1);
+        FactorModel model = new FactorModel(rank, randomFactors(users * rank, random), randomFactors(items * rank, random),
+                everyOtherBit(users), everyOtherBit(items));
+        Path file = directory.resolve("model.bin");
+
+        ModelArtifact.write(file, model, userIds, itemIds, item -> null, 4);
+
+        assertFalse(Files.exists(directory.resolve("model.bin.tmp")));
+        try (ModelArtifact artifact = ModelArtifact.open(file)) {
+            assertEquals(rank, artifact.rank());
+            assertEquals(users / 2, artifact.numUsers());
+            assertEquals(items / 2, artifact.numItems());
+            assertEquals(-1, artifact.userRow("user-1"));
+            assertEquals(-1, artifact.itemRow("item-unknown"));
+
+            float[] vector = new float[rank];
+            for (int user = 0; user < users; user += 2) {
+                int row = artifact.userRow("user-" + user);
+                assertEquals("user-" + user, artifact.userId(row));
+                artifact.userVector(row, vector);
+                for (int f = 0; f < rank; f++) {
+                    assertEquals(model.userFactors()[user * rank + f], vector[f]);
+                }
+            }
+
+            artifact.userVector(artifact.userRow("user-10"), vector);
+            for (int item = 0; item < items; item += 2) {
+                int row = artifact.itemRow("item-" + item);
+                assertEquals("item-" + item, artifact.itemId(row));
+                assertEquals(model.score(10, item), artifact.score(vector, row), 1e-5f);
+                assertEquals(-1, artifact.neighbor(row, 0));
+            }
+        }
+    }
+
+    @Test
+    void open_ShouldRoundTripNeighboursOfModelItems() throws IOException {
+        IdDictionary userIds = dictionary("user-", 2);
+        IdDictionary itemIds = dictionary("item-", 4);
+        BitSet trainedItems = new BitSet();
+        trainedItems.set(0, 4);
+        trainedItems.clear(2);
+        FactorModel model = new FactorModel(2, new float[4], new float[8], everyOtherBit(2), trainedItems);
+
+        // Item 2 is not in the model, so it is dropped from item 0's list
+        ItemNeighborIndex.Neighbors neighbors = mock(ItemNeighborIndex.Neighbors.class);
+        when(neighbors.size()).thenReturn(3);
+        when(neighbors.item(0)).thenReturn(1);
+        when(neighbors.item(1)).thenReturn(2);
+        when(neighbors.item(2)).thenReturn(3);
+        when(neighbors.count(0)).thenReturn(10);
+        when(neighbors.count(1)).thenReturn(8);
+        when(neighbors.count(2)).thenReturn(5);
+        Path file = directory.resolve("model.bin");
+
+        ModelArtifact.write(file, model, userIds, itemIds, item -> item == 0 ? neighbors : null, 3);
+
+        try (ModelArtifact artifact = ModelArtifact.open(file)) {
+            assertEquals(3, artifact.neighborsPerItem());
+            int row = artifact.itemRow("item-0");
+            assertEquals("item-1", artifact.itemId(artifact.neighbor(row, 0)));
+            assertEquals(1f, artifact.neighborScore(row, 0));
+            assertEquals("item-3", artifact.itemId(artifact.neighbor(row, 1)));
+            assertEquals(0.5f, artifact.neighborScore(row, 1));
+            assertEquals(-1, artifact.neighbor(row, 2));
+            assertEquals(-1, artifact.neighbor(artifact.itemRow("item-3"), 0));
+        }
+    }
+
+    @Test
+    void open_ShouldRejectTruncatedFile() throws IOException {
+        IdDictionary userIds = dictionary("user-", 100);
+        IdDictionary itemIds = dictionary("item-", 100);
+        FactorModel model = new FactorModel(4, new float[400], new float[400], everyOtherBit(100), everyOtherBit(100));
+        Path file = directory.resolve("model.bin");
+        ModelArtifact.write(file, model, userIds, itemIds, item -> null, 2);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        assertThrows(IOException.class, () -> ModelArtifact.open(file));
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(10);
+        }
+        assertThrows(IOException.class, () -> ModelArtifact.open(file));
+    }
+
+    @Test
+    void open_ShouldRejectOtherFiles() throws IOException {
+        Path file = directory.resolve("other.bin");
+        Files.write(file, new byte[256]);
+
+        assertThrows(IOException.class, () -> ModelArtifact.open(file));
+    }
+
+    private static IdDictionary dictionary(String prefix, int count) {
+        IdDictionary dictionary = new IdDictionary();
+        for (int n = 0; n < count; n++) {
+            dictionary.getOrAssign(prefix + n);
+        }
+        return dictionary;
+    }
+
+    private static BitSet everyOtherBit(int count) {
+        BitSet bits = new BitSet(count);
+        for (int n = 0; n < count; n += 2) {
+            bits.set(n);
+        }
+        return bits;
+    }
+
+    private static float[] randomFactors(int count, Random random) {
+        float[] factors = new float[count];
+        for (int n = 0; n < count; n++) {
+            factors[n] = (float) random.nextGaussian();
+        }
+        return factors;
+    }
+}
@@ -0,0 +1,119 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MpscRingBufferTest {
+
+    @Test
+    void capacity_ShouldRoundUpToPowerOfTwo() {
+        assertEquals(8, new MpscRingBuffer<Integer>(8).capacity());
+        assertEquals(16, new MpscRingBuffer<Integer>(9).capacity());
+        assertTrue(new MpscRingBuffer<Integer>(1).capacity() >= 2);
+    }
+
+    @Test
+    void drainTo_ShouldReturnNothingWhenEmpty() {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(4);
+        List<Integer> drained = new ArrayList<>();
+
+        assertEquals(0, buffer.drainTo(drained, 10));
+        assertTrue(drained.isEmpty());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    void offer_ShouldRejectWhenFullUntilDrained() {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertEquals(4, buffer.size());
+        assertFalse(buffer.offer(4));
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(1, buffer.drainTo(drained, 1));
+        assertEquals(List.of(0), drained);
+        assertTrue(buffer.offer(4));
+        assertFalse(buffer.offer(5));
+
+        drained.clear();
+        assertEquals(4, buffer.drainTo(drained, 10));
+        assertEquals(List.of(1, 2, 3, 4), drained);
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    void drainTo_ShouldKeepOrderAcrossWraparound() {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(4);
+        List<Integer> drained = new ArrayList<>();
+        int next = 0;
+
+        // Uneven offer and drain sizes walk the head and tail around the ring many times
+        for (int round = 0; round < 100; round++) {
+            int offers = 1 + round % 4;
+            for (int i = 0; i < offers && buffer.offer(next); i++) {
+                next++;
+            }
+            buffer.drainTo(drained, 1 + round % 3);
+        }
+        buffer.drainTo(drained, Integer.MAX_VALUE);
+
+        assertEquals(next, drained.size());
+        for (int i = 0; i < drained.size(); i++) {
+            assertEquals(i, drained.get(i));
+        }
+    }
+
+    @Test
+    void offer_ShouldDeliverEveryElementFromConcurrentProducers() throws Exception {
+        int producers = 4;
+        int perProducer = 50_000;
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(256);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                int producer = p;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perProducer; i++) {
+                        while (!buffer.offer(producer * perProducer + i)) {
+                            Thread.onSpinWait();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+
+            List<Integer> drained = new ArrayList<>();
+            while (drained.size() < producers * perProducer) {
+                buffer.drainTo(drained, 64);
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            // Each producer's elements arrive in the order it offered them
+            int[] expected = new int[producers];
+            for (int element : drained) {
+                int producer = element / perProducer;
+                assertEquals(producer * perProducer + expected[producer]++, element);
+            }
+            assertEquals(0, buffer.drainTo(drained, 1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
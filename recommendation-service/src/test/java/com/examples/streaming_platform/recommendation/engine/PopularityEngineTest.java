@@ -0,0 +1,237 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import com.examples.streaming_platform.recommendation.event.InteractionRecordedEvent;
+import com.examples.streaming_platform.recommendation.model.UserInteraction;
+import com.examples.streaming_platform.recommendation.sharding.ShardMembership;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PopularityEngineTest {
+
+    private static final long HOUR_MILLIS = 3_600_000L;
+    private static final long EPOCH_MILLIS = 1_577_836_800_000L;
+    // Scores halve every hour
+    private static final double LAMBDA = Math.log(2) / HOUR_MILLIS;
+
+    @TempDir
+    Path directory;
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final ShardMembership shardMembership = mock(ShardMembership.class);
+    // Rows returned by the queries starting with each key
+    private final Map<String, List<Object[]>> rows = new HashMap<>();
+    private PopularityEngine engine;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        doAnswer(invocation -> {
+            Connection connection = mock(Connection.class);
+            when(connection.prepareStatement(anyString())).thenReturn(mock(PreparedStatement.class));
+            invocation.<PreparedStatementCreator>getArgument(0).createPreparedStatement(connection);
+            ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+            verify(connection).prepareStatement(sql.capture());
+
+            RowCallbackHandler handler = invocation.getArgument(1);
+            List<Object[]> result = rows.entrySet().stream()
+                    .filter(entry -> sql.getValue().startsWith(entry.getKey()))
+                    .map(Map.Entry::getValue)
+                    .findFirst()
+                    .orElse(List.of());
+            for (Object[] row : result) {
+                ResultSet rs = mock(ResultSet.class);
+                for (int column = 0; column < row.length; column++) {
+                    if (row[column] instanceof String value) {
+                        when(rs.getString(column + 1)).thenReturn(value);
+                    } else if (row[column] instanceof Long value) {
+                        when(rs.getLong(column + 1)).thenReturn(value);
+                    } else {
+                        when(rs.getDouble(column + 1)).thenReturn((Double) row[column]);
+                    }
+                }
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+        when(shardMembership.isDesignated()).thenReturn(true);
+
+        engine = new PopularityEngine(jdbcTemplate, mock(PlatformTransactionManager.class),
+                new IdDictionaries(directory.toString(), false, "users.dict", "items.dict"), shardMembership,
+                0.5, 1.0, 10);
+    }
+
+    @Test
+    void top_ShouldRankItemsByWeightedDecayedScore() {
+        long now = System.currentTimeMillis();
+        record("recent-view", UserInteraction.InteractionType.VIEW, null, now);
+        record("older-like", UserInteraction.InteractionType.LIKE, null, now - HOUR_MILLIS);
+        record("old-view", UserInteraction.InteractionType.VIEW, null, now - 3 * HOUR_MILLIS);
+        record("old-view", UserInteraction.InteractionType.CLICK, null, now - 3 * HOUR_MILLIS);
+
+        PopularityEngine.Snapshot top = engine.top();
+
+        assertEquals(3, top.size());
+        assertEquals("older-like", top.itemId(0));
+        assertEquals(1.5, top.score(0), 1e-3);
+        assertEquals("recent-view", top.itemId(1));
+        assertEquals(1.0, top.score(1), 1e-3);
+        assertEquals("old-view", top.itemId(2));
+        assertEquals(0.1875, top.score(2), 1e-3);
+        assertEquals(UserInteraction.ItemType.MOVIE, top.itemType(2));
+    }
+
+    @Test
+    void top_ShouldWeightRatingsByValueAndIgnoreUnweightedTypes() {
+        long now = System.currentTimeMillis();
+        record("five-stars", UserInteraction.InteractionType.RATING, 5.0, now);
+        record("one-star", UserInteraction.InteractionType.RATING, 1.0, now);
+        record("unrated", UserInteraction.InteractionType.RATING, null, now);
+        record("disliked", UserInteraction.InteractionType.DISLIKE, null, now);
+        // From the future, so counted as now
+        record("one-star", UserInteraction.InteractionType.VIEW, null, now + 5 * HOUR_MILLIS);
+
+        PopularityEngine.Snapshot top = engine.top();
+
+        assertEquals(2, top.size());
+        assertEquals("five-stars", top.itemId(0));
+        assertEquals(3.0, top.score(0), 1e-3);
+        assertEquals("one-star", top.itemId(1));
+        assertEquals(1.6, top.score(1), 1e-3);
+    }
+
+    @Test
+    void load_ShouldRestoreStoredLogScoresDecayedToNow() {
+        long now = System.currentTimeMillis();
+        rows.put("SELECT item_id, item_type, popularity_log", List.<Object[]>of(
+                new Object[]{"stored", "SERIES", LAMBDA * (now - HOUR_MILLIS - EPOCH_MILLIS) + Math.log(4)}));
+
+        engine.load();
+
+        assertTrue(engine.isReady());
+        PopularityEngine.Snapshot top = engine.top();
+        assertEquals(1, top.size());
+        assertEquals("stored", top.itemId(0));
+        assertEquals(2.0, top.score(0), 1e-3);
+        assertEquals(UserInteraction.ItemType.SERIES, top.itemType(0));
+
+        // Restored scores are already stored
+        engine.writeScores();
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    void load_ShouldRebuildScoresFromTheRollupWhenNoneAreStored() {
+        long now = System.currentTimeMillis();
+        rows.put("SELECT item_id, item_type, interaction_ty", List.<Object[]>of(
+                new Object[]{"rolled-up", "MOVIE", "VIEW", now - HOUR_MILLIS, 4L, 0.0},
+                new Object[]{"rolled-up", "MOVIE", "RATING", now - HOUR_MILLIS, 2L, 10.0}));
+
+        engine.load();
+
+        PopularityEngine.Snapshot top = engine.top();
+        assertEquals(1, top.size());
+        // (4 views + 2 five-star ratings) halved once
+        assertEquals((4 + 2 * 3.0) / 2, top.score(0), 1e-3);
+
+        engine.writeScores();
+        verify(jdbcTemplate).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    void load_ShouldLeaveRebuiltScoresToTheDesignatedMember() {
+        when(shardMembership.isDesignated()).thenReturn(false);
+        rows.put("SELECT item_id, item_type, interaction_ty", List.<Object[]>of(
+                new Object[]{"rolled-up", "MOVIE", "VIEW", System.currentTimeMillis(), 4L, 0.0}));
+
+        engine.load();
+        engine.writeScores();
+
+        assertEquals(1, engine.top().size());
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    void writeScores_ShouldAddOnlyTheScoreAccumulatedSinceTheLastWrite() {
+        engine.load();
+        long now = System.currentTimeMillis();
+        record("item", UserInteraction.InteractionType.LIKE, null, now);
+
+        engine.writeScores();
+        engine.writeScores();
+
+        List<Object[]> first = capturedUpdates(1).get(0);
+        assertEquals(1, first.size());
+        // ln(3) plus the decay from the epoch to the interaction
+        assertEquals(Math.log(3) + LAMBDA * (now - EPOCH_MILLIS), (double) first.get(0)[0], 1e-6);
+        assertEquals("item", first.get(0)[5]);
+
+        record("item", UserInteraction.InteractionType.VIEW, null, now);
+        engine.writeScores();
+
+        List<Object[]> second = capturedUpdates(2).get(1);
+        assertEquals(LAMBDA * (now - EPOCH_MILLIS), (double) second.get(0)[0], 1e-6);
+    }
+
+    @Test
+    void writeScores_ShouldRetryFailedWrites() {
+        engine.load();
+        long now = System.currentTimeMillis();
+        record("item", UserInteraction.InteractionType.VIEW, null, now);
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+                .thenThrow(new QueryTimeoutException("timeout"))
+                .thenReturn(new int[]{1});
+
+        engine.writeScores();
+        engine.writeScores();
+
+        List<List<Object[]>> updates = capturedUpdates(2);
+        assertEquals((double) updates.get(0).get(0)[0], (double) updates.get(1).get(0)[0], 1e-9);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<List<Object[]>> capturedUpdates(int times) {
+        ArgumentCaptor<List<Object[]>> updates = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(times)).batchUpdate(anyString(), updates.capture());
+        return new ArrayList<>(updates.getAllValues());
+    }
+
+    private void record(String itemId, UserInteraction.InteractionType type, Double value, long timestampMillis) {
+        engine.onInteractionRecorded(new InteractionRecordedEvent(List.of(UserInteraction.builder()
+                .userId("user")
+                .itemId(itemId)
+                .itemType(UserInteraction.ItemType.MOVIE)
+                .interactionType(type)
+                .value(value)
+                .timestamp(OffsetDateTime.ofInstant(Instant.ofEpochMilli(timestampMillis), ZoneOffset.UTC))
+                .build())));
+    }
+}
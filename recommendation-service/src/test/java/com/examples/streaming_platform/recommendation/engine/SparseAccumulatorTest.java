@@ -0,0 +1,58 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SparseAccumulatorTest {
+
+    @Test
+    void add_ShouldSumAndCountPerKeyInInsertionOrder() {
+        SparseAccumulator accumulator = new SparseAccumulator(4);
+        accumulator.add(7, 1f);
+        accumulator.add(3, 2f);
+        accumulator.add(7, 0.5f);
+
+        assertEquals(2, accumulator.size());
+        assertEquals(7, accumulator.key(0));
+        assertEquals(1.5f, accumulator.sum(0));
+        assertEquals(2, accumulator.count(0));
+        assertEquals(3, accumulator.key(1));
+        assertTrue(accumulator.contains(3));
+        assertFalse(accumulator.contains(4));
+    }
+
+    @Test
+    void add_ShouldGrowPastTheExpectedKeys() {
+        SparseAccumulator accumulator = new SparseAccumulator(8);
+        for (int key = 0; key < 1000; key++) {
+            accumulator.add(key * 16, key);
+        }
+
+        assertEquals(1000, accumulator.size());
+        for (int entry = 0; entry < 1000; entry++) {
+            assertEquals(entry * 16, accumulator.key(entry));
+            assertEquals(entry, accumulator.sum(entry));
+        }
+        assertTrue(accumulator.capacity() >= 2000);
+    }
+
+    @Test
+    void clear_ShouldForgetEveryKeyAndAllowReuse() {
+        SparseAccumulator accumulator = new SparseAccumulator(8);
+        for (int key = 0; key < 100; key++) {
+            accumulator.add(key, 1f);
+        }
+        accumulator.clear();
+
+        assertEquals(0, accumulator.size());
+        for (int key = 0; key < 100; key++) {
+            assertFalse(accumulator.contains(key));
+        }
+
+        accumulator.add(42, 2f);
+        assertEquals(1, accumulator.size());
+        assertEquals(2f, accumulator.sum(0));
+        assertEquals(1, accumulator.count(0));
+    }
+}
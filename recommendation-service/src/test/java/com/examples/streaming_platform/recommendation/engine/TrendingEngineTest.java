@@ -0,0 +1,138 @@
+package com.examples.streaming_platform.recommendation.engine;
+
+import com.examples.streaming_platform.recommendation.event.InteractionRecordedEvent;
+import com.examples.streaming_platform.recommendation.model.UserInteraction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class TrendingEngineTest {
+
+    private static final long HOUR_MILLIS = 3_600_000L;
+    private static final int WINDOW_HOURS = 3;
+    private static final int TOP_N = 5;
+
+    @TempDir
+    Path directory;
+
+    private TrendingEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        engine = new TrendingEngine(mock(JdbcTemplate.class), mock(PlatformTransactionManager.class),
+                new IdDictionaries(directory.toString(), false, "users.dict", "items.dict"),
+                WINDOW_HOURS, TOP_N);
+    }
+
+    @Test
+    void top_ShouldRankViewsAndRatingsInsideTheWindow() {
+        long now = System.currentTimeMillis();
+        record("a", UserInteraction.InteractionType.VIEW, now, 3);
+        record("b", UserInteraction.InteractionType.RATING, now - HOUR_MILLIS, 2);
+        record("c", UserInteraction.InteractionType.LIKE, now, 5);
+        // Older than the window, so ignored
+        record("d", UserInteraction.InteractionType.VIEW, now - WINDOW_HOURS * HOUR_MILLIS, 4);
+        // From the future, so counted in the current hour
+        record("b", UserInteraction.InteractionType.VIEW, now + 5 * HOUR_MILLIS, 2);
+
+        TrendingEngine.Snapshot top = engine.top();
+
+        assertEquals(2, top.size());
+        assertEquals("b", top.itemId(0));
+        assertEquals(4, top.count(0));
+        assertEquals("a", top.itemId(1));
+        assertEquals(3, top.count(1));
+        assertEquals(UserInteraction.ItemType.MOVIE, top.itemType(1));
+    }
+
+    @Test
+    void top_ShouldKeepTheHeaviestItemsUnderRandomIncrements() {
+        long now = System.currentTimeMillis();
+        Random random = new Random(11);
+        Map<String, Integer> expected = new HashMap<>();
+        for (int n = 0; n < 2000; n++) {
+            String item = "item-" + random.nextInt(40);
+            record(item, UserInteraction.InteractionType.VIEW, now - random.nextInt(WINDOW_HOURS) * HOUR_MILLIS, 1);
+            expected.merge(item, 1, Integer::sum);
+        }
+
+        TrendingEngine.Snapshot top = engine.top();
+
+        List<Integer> counts = new ArrayList<>(expected.values());
+        counts.sort((a, b) -> Integer.compare(b, a));
+        assertEquals(TOP_N, top.size());
+        for (int rank = 0; rank < TOP_N; rank++) {
+            assertEquals(counts.get(rank), top.count(rank));
+            assertEquals(expected.get(top.itemId(rank)), top.count(rank));
+        }
+    }
+
+    @Test
+    void top_ShouldExpireTheOldestHourWhenTheWindowSlides() {
+        long now = System.currentTimeMillis();
+        record("expiring", UserInteraction.InteractionType.VIEW, now, 1);
+        record("kept", UserInteraction.InteractionType.VIEW, now - HOUR_MILLIS, 2);
+        assertEquals(2, engine.top().size());
+
+        // Step the window back one hour. The ring slot of the current hour then holds the oldest hour of
+        // the window, and the next read slides the window forward and expires it
+        long currentHour = (long) ReflectionTestUtils.getField(engine, "currentHour");
+        ReflectionTestUtils.setField(engine, "currentHour", currentHour - 1);
+        ReflectionTestUtils.setField(engine, "snapshotStale", true);
+
+        TrendingEngine.Snapshot top = engine.top();
+
+        assertEquals(1, top.size());
+        assertEquals("kept", top.itemId(0));
+        assertEquals(2, top.count(0));
+    }
+
+    @Test
+    void top_ShouldBeEmptyOnceTheWholeWindowHasPassed() {
+        long now = System.currentTimeMillis();
+        record("a", UserInteraction.InteractionType.VIEW, now, 1);
+        record("b", UserInteraction.InteractionType.VIEW, now - HOUR_MILLIS, 1);
+        assertEquals(2, engine.top().size());
+
+        long currentHour = (long) ReflectionTestUtils.getField(engine, "currentHour");
+        ReflectionTestUtils.setField(engine, "currentHour", currentHour - WINDOW_HOURS);
+        ReflectionTestUtils.setField(engine, "snapshotStale", true);
+
+        assertEquals(0, engine.top().size());
+
+        record("c", UserInteraction.InteractionType.VIEW, now, 1);
+        TrendingEngine.Snapshot top = engine.top();
+        assertEquals(1, top.size());
+        assertEquals("c", top.itemId(0));
+    }
+
+    private void record(String itemId, UserInteraction.InteractionType type, long timestampMillis, int times) {
+        List<UserInteraction> interactions = new ArrayList<>();
+        for (int n = 0; n < times; n++) {
+            interactions.add(UserInteraction.builder()
+                    .userId("user")
+                    .itemId(itemId)
+                    .itemType(UserInteraction.ItemType.MOVIE)
+                    .interactionType(type)
+                    .timestamp(OffsetDateTime.ofInstant(Instant.ofEpochMilli(timestampMillis), ZoneOffset.UTC))
+                    .build());
+        }
+        engine.onInteractionRecorded(new InteractionRecordedEvent(interactions));
+    }
+}
@@ -0,0 +1,70 @@
+package com.examples.streaming_platform.recommendation.ranking;
+
+import com.examples.streaming_platform.recommendation.dto.RecommendationDTO;
+import com.examples.streaming_platform.recommendation.engine.IdDictionaries;
+import com.examples.streaming_platform.recommendation.engine.IdDictionary;
+import com.examples.streaming_platform.recommendation.model.UserInteraction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RankedListTest {
+
+    @TempDir
+    Path directory;
+
+    private IdDictionary items;
+
+    @BeforeEach
+    void setUp() {
+        items = new IdDictionaries(directory.toString(), false, "users.dict", "items.dict").items();
+    }
+
+    @Test
+    void fill_ShouldAppendUnlistedCandidatesUntilFull() {
+        RankedList ranked = new RankedList(3);
+        ranked.add(items.getOrAssign("a"), 0.9f, (byte) UserInteraction.ItemType.MOVIE.ordinal(), "cf", "cf");
+
+        ranked.fill(candidates("trending", "a", "seen", "b", "c", "d"), CandidateFilter.excluding(Set.of("seen"), items));
+
+        assertTrue(ranked.isFull());
+        List<RecommendationDTO> recommendations = ranked.toRecommendations(items);
+        assertEquals(List.of("a", "b", "c"), recommendations.stream().map(RecommendationDTO::getItemId).toList());
+        assertEquals("cf", recommendations.get(0).getAlgorithm());
+        assertEquals("trending", recommendations.get(1).getAlgorithm());
+        assertEquals("SERIES", recommendations.get(1).getItemType());
+    }
+
+    @Test
+    void toRecommendations_ShouldOrderByDescendingScore() {
+        RankedList ranked = new RankedList(5);
+        ranked.add(items.getOrAssign("low"), 0.1f, (byte) -1, "cf", "cf");
+        ranked.fill(candidates("trending", "high"), CandidateFilter.ACCEPT_ALL);
+
+        List<RecommendationDTO> recommendations = ranked.toRecommendations(items);
+
+        assertFalse(ranked.isFull());
+        assertEquals(List.of("high", "low"), recommendations.stream().map(RecommendationDTO::getItemId).toList());
+        assertNull(recommendations.get(1).getItemType());
+    }
+
+    @Test
+    void toRecommendations_ShouldBeEmptyWithoutItems() {
+        assertTrue(new RankedList(0).isFull());
+        assertEquals(List.of(), new RankedList(3).toRecommendations(items));
+    }
+
+    private Candidates candidates(String algorithm, String... itemIds) {
+        Candidates candidates = new Candidates(algorithm, algorithm, itemIds.length);
+        for (int n = 0; n < itemIds.length; n++) {
+            candidates.add(items.getOrAssign(itemIds[n]), 1f - n * 0.1f, UserInteraction.ItemType.SERIES);
+        }
+        return candidates;
+    }
+}
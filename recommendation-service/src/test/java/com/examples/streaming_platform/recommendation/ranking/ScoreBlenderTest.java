@@ -0,0 +1,102 @@
+package com.examples.streaming_platform.recommendation.ranking;
+
+import com.examples.streaming_platform.recommendation.dto.RecommendationDTO;
+import com.examples.streaming_platform.recommendation.engine.IdDictionaries;
+import com.examples.streaming_platform.recommendation.engine.IdDictionary;
+import com.examples.streaming_platform.recommendation.model.UserInteraction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScoreBlenderTest {
+
+    @TempDir
+    Path directory;
+
+    private IdDictionary items;
+
+    @BeforeEach
+    void setUp() {
+        items = new IdDictionaries(directory.toString(), false, "users.dict", "items.dict").items();
+    }
+
+    @Test
+    void top_ShouldSumWeightedScoresAndLabelBlendedItems() {
+        ScoreBlender blender = new ScoreBlender(ScoreBlender.Mode.SUM, "hybrid", "blended", 4);
+        blender.add(candidates("cf", "a", 1f, "b", 0.5f), 0.6f);
+        blender.add(candidates("content", "b", 1f, "c", 0.2f), 0.4f);
+
+        List<RecommendationDTO> top = blender.top(10, CandidateFilter.ACCEPT_ALL).toRecommendations(items);
+
+        assertEquals(List.of("b", "a", "c"), top.stream().map(RecommendationDTO::getItemId).toList());
+        assertEquals(0.7, top.get(0).getScore(), 1e-6);
+        assertEquals("hybrid", top.get(0).getAlgorithm());
+        assertEquals("blended", top.get(0).getReason());
+        assertEquals("cf", top.get(1).getAlgorithm());
+        assertEquals("content", top.get(2).getAlgorithm());
+        assertEquals(0.08, top.get(2).getScore(), 1e-6);
+    }
+
+    @Test
+    void top_ShouldKeepTheBestWeightedScoreAndItsSourceInMaxMode() {
+        ScoreBlender blender = new ScoreBlender(ScoreBlender.Mode.MAX, "hybrid", "blended", 4);
+        blender.add(candidates("cf", "a", 1f, "b", 0.5f), 1f);
+        blender.add(candidates("content", "b", 0.9f, "a", 0.1f), 1f);
+
+        List<RecommendationDTO> top = blender.top(10, CandidateFilter.ACCEPT_ALL).toRecommendations(items);
+
+        assertEquals(List.of("a", "b"), top.stream().map(RecommendationDTO::getItemId).toList());
+        assertEquals(1.0, top.get(0).getScore(), 1e-6);
+        assertEquals("cf", top.get(0).getAlgorithm());
+        assertEquals(0.9, top.get(1).getScore(), 1e-6);
+        assertEquals("content", top.get(1).getAlgorithm());
+    }
+
+    @Test
+    void top_ShouldApplyTheFilterAndLimit() {
+        ScoreBlender blender = new ScoreBlender(ScoreBlender.Mode.SUM, "hybrid", "blended", 4);
+        blender.add(candidates("cf", "a", 0.9f, "b", 0.8f, "c", 0.7f, "d", 0.6f), 1f);
+
+        RankedList ranked = blender.top(2, CandidateFilter.excluding(Set.of("a", "unknown"), items));
+
+        assertTrue(ranked.isFull());
+        assertEquals(List.of("b", "c"),
+                ranked.toRecommendations(items).stream().map(RecommendationDTO::getItemId).toList());
+    }
+
+    @Test
+    void add_ShouldGrowPastTheExpectedItems() {
+        ScoreBlender blender = new ScoreBlender(ScoreBlender.Mode.SUM, "hybrid", "blended", 1);
+        Candidates first = new Candidates("cf", "cf", 1000);
+        Candidates second = new Candidates("content", "content", 1000);
+        for (int n = 0; n < 1000; n++) {
+            first.add(items.getOrAssign("item-" + n), n, UserInteraction.ItemType.MOVIE);
+            second.add(items.getOrAssign("item-" + n), 1f, null);
+        }
+        blender.add(first, 1f);
+        blender.add(second, 1f);
+
+        List<RecommendationDTO> top = blender.top(3, CandidateFilter.ACCEPT_ALL).toRecommendations(items);
+
+        assertEquals(List.of("item-999", "item-998", "item-997"),
+                top.stream().map(RecommendationDTO::getItemId).toList());
+        assertEquals(1000.0, top.get(0).getScore(), 1e-3);
+        assertEquals("MOVIE", top.get(0).getItemType());
+        assertEquals("hybrid", top.get(0).getAlgorithm());
+    }
+
+    private Candidates candidates(String algorithm, Object... itemsAndScores) {
+        Candidates candidates = new Candidates(algorithm, algorithm, itemsAndScores.length / 2);
+        for (int n = 0; n < itemsAndScores.length; n += 2) {
+            candidates.add(items.getOrAssign((String) itemsAndScores[n]), (Float) itemsAndScores[n + 1],
+                    UserInteraction.ItemType.MOVIE);
+        }
+        return candidates;
+    }
+}
@@ -0,0 +1,146 @@
+package com.examples.streaming_platform.recommendation.service;
+
+import com.examples.streaming_platform.recommendation.dto.InteractionBatchResultDTO;
+import com.examples.streaming_platform.recommendation.event.InteractionRecordedEvent;
+import com.examples.streaming_platform.recommendation.repository.UserInteractionRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validation;
+import jakarta.validation.ValidatorFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class InteractionIngestServiceTest {
+
+    private static final String VALID =
+            "{\"userId\":\"u%d\",\"itemId\":\"i%d\",\"itemType\":\"MOVIE\",\"interactionType\":\"VIEW\"}";
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private UserInteractionRepository userInteractionRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private ValidatorFactory validatorFactory;
+    private InteractionIngestService ingestService;
+
+    @BeforeEach
+    void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        ingestService = new InteractionIngestService(jdbcTemplate, transactionManager, objectMapper,
+                validatorFactory.getValidator(),
+                new UserInteractionService(userInteractionRepository, objectMapper, eventPublisher),
+                eventPublisher);
+        ReflectionTestUtils.setField(ingestService, "batchSize", 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        validatorFactory.close();
+    }
+
+    @Test
+    void ingest_ShouldStoreJsonArrayInBatches() throws IOException {
+        InteractionBatchResultDTO result = ingest("[" + valid(0) + "," + valid(1) + "," + valid(2) + "]");
+
+        assertEquals(3, result.getReceived());
+        assertEquals(3, result.getCreated());
+        assertEquals(0, result.getRejected());
+        assertStatuses(result, InteractionBatchResultDTO.Status.CREATED,
+                InteractionBatchResultDTO.Status.CREATED, InteractionBatchResultDTO.Status.CREATED);
+
+        verify(jdbcTemplate, times(2)).execute(any(PreparedStatementCreator.class), any());
+        ArgumentCaptor<InteractionRecordedEvent> events = ArgumentCaptor.forClass(InteractionRecordedEvent.class);
+        verify(eventPublisher, times(2)).publishEvent(events.capture());
+        assertEquals(2, events.getAllValues().get(0).getInteractions().size());
+        assertEquals("i2", events.getAllValues().get(1).getInteractions().get(0).getItemId());
+        assertNotNull(events.getAllValues().get(1).getInteractions().get(0).getTimestamp());
+    }
+
+    @Test
+    void ingest_ShouldRejectInvalidRecordsOfNewlineDelimitedJson() throws IOException {
+        InteractionBatchResultDTO result = ingest(valid(0) + "\n"
+                + "{\"itemId\":\"i1\",\"itemType\":\"MOVIE\"}\n"
+                + valid(2) + "\n");
+
+        assertEquals(3, result.getReceived());
+        assertEquals(2, result.getCreated());
+        assertEquals(1, result.getRejected());
+        assertStatuses(result, InteractionBatchResultDTO.Status.CREATED,
+                InteractionBatchResultDTO.Status.REJECTED, InteractionBatchResultDTO.Status.CREATED);
+        assertEquals("Interaction type is required, User ID is required", result.getResults().get(1).getMessage());
+    }
+
+    @Test
+    void ingest_ShouldStopAtTheFirstMalformedRecord() throws IOException {
+        InteractionBatchResultDTO result = ingest(valid(0) + "\n{\"userId\": \n" + valid(2) + "\n");
+
+        assertEquals(2, result.getReceived());
+        assertEquals(1, result.getCreated());
+        assertEquals(1, result.getRejected());
+        assertStatuses(result, InteractionBatchResultDTO.Status.CREATED, InteractionBatchResultDTO.Status.REJECTED);
+        assertTrue(result.getResults().get(1).getMessage().startsWith("Malformed record"));
+    }
+
+    @Test
+    void ingest_ShouldReportFailedBatchesAndCarryOn() throws IOException {
+        when(jdbcTemplate.execute(any(PreparedStatementCreator.class), any()))
+                .thenThrow(new DataIntegrityViolationException("boom"))
+                .thenReturn(null);
+
+        InteractionBatchResultDTO result = ingest(valid(0) + "\n" + valid(1) + "\n" + valid(2) + "\n");
+
+        assertEquals(3, result.getReceived());
+        assertEquals(1, result.getCreated());
+        assertEquals(2, result.getFailed());
+        assertStatuses(result, InteractionBatchResultDTO.Status.FAILED,
+                InteractionBatchResultDTO.Status.FAILED, InteractionBatchResultDTO.Status.CREATED);
+        assertEquals("Batch insert failed", result.getResults().get(0).getMessage());
+    }
+
+    private InteractionBatchResultDTO ingest(String body) throws IOException {
+        return ingestService.ingest(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String valid(int n) {
+        return String.format(VALID, n, n);
+    }
+
+    private static void assertStatuses(InteractionBatchResultDTO result, InteractionBatchResultDTO.Status... expected) {
+        List<InteractionBatchResultDTO.RecordResult> results = result.getResults();
+        assertEquals(expected.length, results.size());
+        for (int n = 0; n < expected.length; n++) {
+            assertEquals(n, results.get(n).getIndex());
+            assertEquals(expected[n], results.get(n).getStatus());
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.examples.streaming_platform.recommendation.service;
+
+import com.examples.streaming_platform.recommendation.dto.RecommendationDTO;
+import com.examples.streaming_platform.recommendation.event.InteractionRecordedEvent;
+import com.examples.streaming_platform.recommendation.model.UserInteraction;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecommendationCacheTest {
+
+    private final AtomicInteger computations = new AtomicInteger();
+    private RecommendationCache cache;
+
+    @AfterEach
+    void tearDown() {
+        if (cache != null) {
+            cache.shutdown();
+        }
+    }
+
+    @Test
+    void get_ShouldComputeOnceAndServeFreshEntriesFromCache() {
+        cache = cache(true, 300);
+
+        assertEquals("item-1", firstItem(cache.get("user", 10, 0, counting(true))));
+        assertEquals("item-1", firstItem(cache.get("user", 10, 0, counting(true))));
+        assertEquals(1, computations.get());
+
+        // Another limit or feature set is another entry
+        assertEquals("item-2", firstItem(cache.get("user", 5, 0, counting(true))));
+        assertEquals(2, computations.get());
+    }
+
+    @Test
+    void get_ShouldServeStaleEntryAndRefreshItAfterAnInteraction() throws InterruptedException {
+        cache = cache(true, 300);
+        cache.get("user", 10, 0, counting(true));
+
+        cache.onInteractionRecorded(new InteractionRecordedEvent(List.of(interaction("other"))));
+        assertEquals("item-1", firstItem(cache.get("user", 10, 0, counting(true))));
+        assertEquals(1, computations.get());
+
+        cache.onInteractionRecorded(new InteractionRecordedEvent(List.of(interaction("user"))));
+        assertEquals("item-1", firstItem(cache.get("user", 10, 0, counting(true))));
+
+        assertEquals("item-2", awaitRefresh("item-1"));
+        assertEquals(2, computations.get());
+    }
+
+    @Test
+    void get_ShouldRefreshEntriesPastTheirTtl() throws InterruptedException {
+        cache = cache(true, 0);
+
+        assertEquals("item-1", firstItem(cache.get("user", 10, 0, counting(true))));
+        assertNotEquals("item-1", awaitRefresh("item-1"));
+    }
+
+    @Test
+    void get_ShouldRecomputeIncompleteResults() throws InterruptedException {
+        cache = cache(true, 300);
+
+        // Only the first computation misses a stage
+        AtomicBoolean missing = new AtomicBoolean(true);
+        Supplier<RecommendationResult> compute = () -> counting(!missing.getAndSet(false)).get();
+
+        RecommendationResult partial = cache.get("user", 10, 0, compute);
+        assertFalse(partial.isComplete());
+
+        assertEquals("item-2", awaitRefresh("item-1"));
+        assertTrue(cache.get("user", 10, 0, compute).isComplete());
+        assertEquals(2, computations.get());
+    }
+
+    @Test
+    void get_ShouldPropagateFailuresWithoutCaching() {
+        cache = cache(true, 300);
+
+        IllegalStateException thrown = assertThrows(IllegalStateException.class,
+                () -> cache.get("user", 10, 0, () -> {
+                    throw new IllegalStateException("boom");
+                }));
+        assertEquals("boom", thrown.getMessage());
+
+        assertEquals("item-1", firstItem(cache.get("user", 10, 0, counting(true))));
+    }
+
+    @Test
+    void get_ShouldComputeEveryTimeWhenDisabled() {
+        cache = cache(false, 300);
+
+        cache.get("user", 10, 0, counting(true));
+        cache.get("user", 10, 0, counting(true));
+
+        assertEquals(2, computations.get());
+    }
+
+    private RecommendationCache cache(boolean enabled, long ttlSeconds) {
+        return new RecommendationCache(new SimpleMeterRegistry(), enabled, 100, ttlSeconds, 900, 1);
+    }
+
+    private Supplier<RecommendationResult> counting(boolean complete) {
+        return () -> {
+            String itemId = "item-" + computations.incrementAndGet();
+            return new RecommendationResult(
+                    List.of(RecommendationDTO.builder().itemId(itemId).build()),
+                    List.of("collaborative"),
+                    complete ? List.of() : List.of("content"));
+        };
+    }
+
+    /**
+     * Poll until a background refresh has replaced the cached entry. Polls that find the entry stale ask
+     * for another refresh, which is a no-op while one is running.
+     */
+    private String awaitRefresh(String previous) throws InterruptedException {
+        String itemId = previous;
+        for (int attempt = 0; attempt < 500 && previous.equals(itemId); attempt++) {
+            Thread.sleep(10);
+            itemId = firstItem(cache.get("user", 10, 0, counting(true)));
+        }
+        return itemId;
+    }
+
+    private static String firstItem(RecommendationResult result) {
+        return result.getRecommendations().get(0).getItemId();
+    }
+
+    private static UserInteraction interaction(String userId) {
+        return UserInteraction.builder()
+                .userId(userId)
+                .itemId("item")
+                .interactionType(UserInteraction.InteractionType.VIEW)
+                .build();
+    }
+}
@@ -0,0 +1,173 @@
+package com.examples.streaming_platform.recommendation.service;
+
+import com.examples.streaming_platform.recommendation.engine.IdDictionaries;
+import com.examples.streaming_platform.recommendation.engine.PopularityEngine;
+import com.examples.streaming_platform.recommendation.engine.TrendingEngine;
+import com.examples.streaming_platform.recommendation.model.UserInteraction;
+import com.examples.streaming_platform.recommendation.monitoring.RecommendationMetrics;
+import com.examples.streaming_platform.recommendation.ranking.Candidates;
+import com.examples.streaming_platform.recommendation.repository.UserInteractionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RecommendationServiceTest {
+
+    private static final String USER_ID = "user";
+
+    @TempDir
+    Path directory;
+
+    private final CollaborativeFilteringService collaborativeFilteringService = mock(CollaborativeFilteringService.class);
+    private final ContentBasedFilteringService contentBasedFilteringService = mock(ContentBasedFilteringService.class);
+    private final RecommendationCache recommendationCache = mock(RecommendationCache.class);
+    private final UserContextService userContextService = mock(UserContextService.class);
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private IdDictionaries dictionaries;
+    private RecommendationService recommendationService;
+
+    @BeforeEach
+    void setUp() {
+        dictionaries = new IdDictionaries(directory.toString(), false, "users.dict", "items.dict");
+        recommendationService = new RecommendationService(collaborativeFilteringService, contentBasedFilteringService,
+                mock(ContentItemService.class), mock(UserInteractionRepository.class), mock(TrendingEngine.class),
+                mock(PopularityEngine.class), recommendationCache, mock(MaterializedRecommendations.class),
+                userContextService, executor, dictionaries, new RecommendationMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(recommendationService, "enableCollaborativeFiltering", true);
+        ReflectionTestUtils.setField(recommendationService, "enableContentBased", true);
+        ReflectionTestUtils.setField(recommendationService, "enableHybrid", true);
+        ReflectionTestUtils.setField(recommendationService, "collaborativeFilteringWeight", 0.6f);
+        ReflectionTestUtils.setField(recommendationService, "contentBasedWeight", 0.4f);
+        ReflectionTestUtils.setField(recommendationService, "maxBudgetMs", 5000L);
+        ReflectionTestUtils.setField(recommendationService, "generatorShare", 0.75);
+
+        when(recommendationCache.get(eq(USER_ID), anyInt(), anyInt(), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<RecommendationResult>>getArgument(3).get());
+        when(userContextService.load(USER_ID))
+                .thenReturn(new UserContext(USER_ID, List.of(), Set.of("seen"), Map.of()));
+        when(collaborativeFilteringService.getUserBasedCandidates(eq(USER_ID), anyInt()))
+                .thenReturn(candidates("collaborative", "cf-item", "seen"));
+        when(contentBasedFilteringService.getCandidatesForUser(any(), anyInt()))
+                .thenReturn(candidates("content", "content-item"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void getRecommendationsForUser_ShouldBlendEveryStageThatFinishesInTime() {
+        RecommendationResult result = recommendationService.getRecommendationsForUser(USER_ID, 10, 1000);
+
+        assertTrue(result.isComplete());
+        assertTrue(result.getCompletedStages().containsAll(List.of(
+                RecommendationService.STAGE_COLLABORATIVE_FILTERING, RecommendationService.STAGE_CONTENT_BASED)));
+        assertEquals(List.of("cf-item", "content-item"), itemIds(result));
+    }
+
+    @Test
+    void getRecommendationsForUser_ShouldCancelGeneratorsPastTheirDeadline() {
+        when(contentBasedFilteringService.getCandidatesForUser(any(), anyInt())).thenAnswer(invocation -> hang());
+
+        long start = System.nanoTime();
+        RecommendationResult result = recommendationService.getRecommendationsForUser(USER_ID, 10, 200);
+
+        assertTrue(elapsedMs(start) < 1000);
+        assertEquals(List.of(RecommendationService.STAGE_CONTENT_BASED), result.getMissedStages());
+        assertTrue(result.getCompletedStages().contains(RecommendationService.STAGE_COLLABORATIVE_FILTERING));
+        assertEquals(List.of("cf-item"), itemIds(result));
+    }
+
+    @Test
+    void getRecommendationsForUser_ShouldReportFailedGeneratorsAsMissed() {
+        when(collaborativeFilteringService.getUserBasedCandidates(eq(USER_ID), anyInt()))
+                .thenThrow(new IllegalStateException("boom"));
+
+        RecommendationResult result = recommendationService.getRecommendationsForUser(USER_ID, 10, 1000);
+
+        assertEquals(List.of(RecommendationService.STAGE_COLLABORATIVE_FILTERING), result.getMissedStages());
+        assertEquals(List.of("content-item"), itemIds(result));
+    }
+
+    @Test
+    void getRecommendationsForUser_ShouldFallBackToPopularItemsWhenTheContextIsLate() {
+        when(userContextService.load(USER_ID)).thenAnswer(invocation -> hang());
+
+        long start = System.nanoTime();
+        RecommendationResult result = recommendationService.getRecommendationsForUser(USER_ID, 10, 200);
+
+        assertTrue(elapsedMs(start) < 1000);
+        assertEquals(List.of(RecommendationService.STAGE_USER_CONTEXT), result.getMissedStages());
+        assertEquals(List.of(RecommendationService.STAGE_POPULARITY), result.getCompletedStages());
+    }
+
+    @Test
+    void getRecommendationsForUser_ShouldCapTheBudget() {
+        ReflectionTestUtils.setField(recommendationService, "maxBudgetMs", 300L);
+        when(contentBasedFilteringService.getCandidatesForUser(any(), anyInt())).thenAnswer(invocation -> hang());
+
+        long start = System.nanoTime();
+        RecommendationResult result = recommendationService.getRecommendationsForUser(USER_ID, 10, 60_000);
+
+        assertTrue(elapsedMs(start) < 1000);
+        assertEquals(List.of(RecommendationService.STAGE_CONTENT_BASED), result.getMissedStages());
+    }
+
+    @Test
+    void getRecommendationsForUser_ShouldCountTheBudgetFromRequestEntry() {
+        // Time spent before the computation starts, such as a cache lookup, comes out of the same budget
+        when(recommendationCache.get(eq(USER_ID), anyInt(), anyInt(), any())).thenAnswer(invocation -> {
+            Thread.sleep(400);
+            return invocation.<Supplier<RecommendationResult>>getArgument(3).get();
+        });
+        when(contentBasedFilteringService.getCandidatesForUser(any(), anyInt())).thenAnswer(invocation -> hang());
+
+        long start = System.nanoTime();
+        RecommendationResult result = recommendationService.getRecommendationsForUser(USER_ID, 10, 1000);
+
+        // The generators are cut off 750 ms after entry, not 750 ms after the lookup
+        assertTrue(elapsedMs(start) < 1100);
+        assertEquals(List.of(RecommendationService.STAGE_CONTENT_BASED), result.getMissedStages());
+    }
+
+    private Candidates candidates(String algorithm, String... itemIds) {
+        Candidates candidates = new Candidates(algorithm, algorithm, itemIds.length);
+        for (int n = 0; n < itemIds.length; n++) {
+            candidates.add(dictionaries.items().getOrAssign(itemIds[n]), 1f - n * 0.1f, UserInteraction.ItemType.MOVIE);
+        }
+        return candidates;
+    }
+
+    private static Candidates hang() throws InterruptedException {
+        Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+        return null;
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static List<String> itemIds(RecommendationResult result) {
+        return result.getRecommendations().stream().map(recommendation -> recommendation.getItemId()).toList();
+    }
+}
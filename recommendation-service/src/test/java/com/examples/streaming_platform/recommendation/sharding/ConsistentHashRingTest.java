@@ -0,0 +1,127 @@
+package com.examples.streaming_platform.recommendation.sharding;
+
+import com.google.common.hash.Hashing;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsistentHashRingTest {
+
+    private static final int KEYS = 20_000;
+
+    @Test
+    void constructor_ShouldRejectEmptyMembers() {
+        assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing(List.of(), 16));
+    }
+
+    @Test
+    void ownerOf_ShouldNotDependOnMemberOrderOrDuplicates() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("http://c", "http://a", "http://b"), 32);
+        ConsistentHashRing shuffled = new ConsistentHashRing(List.of("http://b", "http://c", "http://a", "http://b"), 32);
+
+        assertEquals(List.of("http://a", "http://b", "http://c"), shuffled.members());
+        for (int n = 0; n < KEYS; n++) {
+            assertEquals(ring.ownerOf("user-" + n), shuffled.ownerOf("user-" + n));
+        }
+    }
+
+    @Test
+    void ownerOf_ShouldWrapPastTheLastPosition() {
+        // With one position per member the ring is easy to check against a linear scan
+        List<String> members = List.of("http://a", "http://b", "http://c");
+        ConsistentHashRing ring = new ConsistentHashRing(members, 1);
+        boolean wrapped = false;
+
+        for (int n = 0; n < KEYS; n++) {
+            String key = "user-" + n;
+            long position = hash(key);
+            String expected = null;
+            long expectedPosition = Long.MAX_VALUE;
+            String first = null;
+            long firstPosition = Long.MAX_VALUE;
+            for (String member : members) {
+                long memberPosition = hash(member + "#0");
+                if (memberPosition >= position && memberPosition <= expectedPosition) {
+                    expected = member;
+                    expectedPosition = memberPosition;
+                }
+                if (memberPosition <= firstPosition) {
+                    first = member;
+                    firstPosition = memberPosition;
+                }
+            }
+            if (expected == null) {
+                expected = first;
+                wrapped = true;
+            }
+            assertEquals(expected, ring.ownerOf(key), key);
+        }
+        assertTrue(wrapped, "some key should fall past the last position");
+    }
+
+    @Test
+    void ownerOf_ShouldSpreadKeysEvenly() {
+        List<String> members = List.of("http://a", "http://b", "http://c", "http://d");
+        Map<String, Integer> counts = ownerCounts(new ConsistentHashRing(members, 128));
+
+        for (String member : members) {
+            double share = counts.getOrDefault(member, 0) / (double) KEYS;
+            assertEquals(0.25, share, 0.07, member);
+        }
+    }
+
+    @Test
+    void ownerOf_ShouldOnlyMoveKeysToAnAddedMember() {
+        ConsistentHashRing before = new ConsistentHashRing(List.of("http://a", "http://b", "http://c"), 128);
+        ConsistentHashRing after = new ConsistentHashRing(List.of("http://a", "http://b", "http://c", "http://d"), 128);
+        int moved = 0;
+
+        for (int n = 0; n < KEYS; n++) {
+            String key = "user-" + n;
+            String owner = after.ownerOf(key);
+            if (!owner.equals(before.ownerOf(key))) {
+                assertEquals("http://d", owner, key);
+                moved++;
+            }
+        }
+        assertEquals(0.25, moved / (double) KEYS, 0.07);
+    }
+
+    @Test
+    void ownerOf_ShouldOnlyMoveKeysOfARemovedMember() {
+        ConsistentHashRing before = new ConsistentHashRing(List.of("http://a", "http://b", "http://c"), 128);
+        ConsistentHashRing after = new ConsistentHashRing(List.of("http://a", "http://c"), 128);
+
+        for (int n = 0; n < KEYS; n++) {
+            String key = "user-" + n;
+            String owner = before.ownerOf(key);
+            if (!owner.equals("http://b")) {
+                assertEquals(owner, after.ownerOf(key), key);
+            }
+        }
+    }
+
+    @Test
+    void ownerOf_ShouldMapEveryKeyToASingleMember() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("http://a"), 8);
+
+        assertEquals(Map.of("http://a", KEYS), ownerCounts(ring));
+    }
+
+    private static Map<String, Integer> ownerCounts(ConsistentHashRing ring) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (int n = 0; n < KEYS; n++) {
+            counts.merge(ring.ownerOf("user-" + n), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    private static long hash(String key) {
+        return Hashing.murmur3_128().hashString(key, StandardCharsets.UTF_8).asLong();
+    }
+}